@@ -0,0 +1,176 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package mgui.geometry.neuro;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
+import mgui.interfaces.logs.LoggingType;
+
+/********************************************************
+ * Runs sets of worker tasks in parallel, for the multi-threaded neuro geometry functions. Workers 
+ * are expected to poll a shared <code>cancelled</code> flag; if any worker fails, or the calling 
+ * thread is interrupted, the flag is set so that the others stop, and the remaining tasks are 
+ * cancelled. Progress can be reported from the calling thread while it waits.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public final class ParallelWorkers {
+
+	/** Interval, in milliseconds, at which progress and cancellation are polled */
+	public static final long POLL_INTERVAL = 100;
+	
+	private ParallelWorkers(){
+		
+	}
+	
+	/*********************************
+	 * Runs <code>workers</code>; on the calling thread if there is only one (which should then 
+	 * update <code>progress</code> itself), otherwise in parallel, updating <code>progress</code> 
+	 * with <code>done</code> from this thread. Failures are logged.
+	 * 
+	 * @param workers
+	 * @param progress 		Optional; may be <code>null</code>
+	 * @param done			Optional count of work done, for <code>progress</code>
+	 * @param cancelled		Flag polled by the workers
+	 * @param source		Name of the calling method, for logging
+	 * @return <code>false</code> if the workers were cancelled or failed
+	 */
+	public static boolean run(Runnable[] workers, ProgressUpdater progress, AtomicInteger done, 
+							  AtomicBoolean cancelled, String source){
+		try{
+			invokeAll(workers, progress, done, cancelled);
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			return false;
+		}catch (ExecutionException ex){
+			InterfaceSession.log(source + ": Worker failed: " + ex.getCause(), LoggingType.Errors);
+			return false;
+			}
+		return !cancelled.get();
+	}
+	
+	/*********************************
+	 * Runs <code>workers</code> as for {@link #run}, on a new pool of one thread per worker, 
+	 * throwing rather than logging failures.
+	 * 
+	 * @throws InterruptedException if the calling thread is interrupted; <code>cancelled</code> is set
+	 * @throws ExecutionException if a worker fails; <code>cancelled</code> is set
+	 */
+	public static void invokeAll(Runnable[] workers, ProgressUpdater progress, AtomicInteger done, 
+								 AtomicBoolean cancelled) throws InterruptedException, ExecutionException{
+		if (workers.length == 1){
+			try{
+				workers[0].run();
+			}catch (RuntimeException ex){
+				cancelled.set(true);
+				throw new ExecutionException(ex);
+			}catch (Error ex){
+				cancelled.set(true);
+				throw new ExecutionException(ex);
+				}
+			return;
+			}
+		
+		ExecutorService executor = newPool(workers.length);
+		try{
+			invokeAll(executor, workers, progress, done, cancelled);
+		}finally{
+			executor.shutdownNow();
+			}
+	}
+	
+	/*********************************
+	 * Runs <code>workers</code> on <code>executor</code>, which is left running, so that it can be 
+	 * reused for successive passes. Returns once all workers have completed, or as soon as any 
+	 * of them fails.
+	 * 
+	 * @param executor
+	 * @param workers
+	 * @param progress 		Optional; may be <code>null</code>
+	 * @param done			Optional count of work done, for <code>progress</code>
+	 * @param cancelled		Flag polled by the workers; set if <code>progress</code> is cancelled
+	 * @throws InterruptedException if the calling thread is interrupted; <code>cancelled</code> is set
+	 * @throws ExecutionException if a worker fails; <code>cancelled</code> is set
+	 */
+	public static void invokeAll(ExecutorService executor, Runnable[] workers, ProgressUpdater progress, 
+								 AtomicInteger done, AtomicBoolean cancelled) 
+										 throws InterruptedException, ExecutionException{
+		//take futures as they complete, so that a failure is seen before slower workers finish
+		CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+		ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>(workers.length);
+		try{
+			for (int t = 0; t < workers.length; t++)
+				futures.add(completion.submit(workers[t], null));
+			for (int t = 0; t < workers.length; t++){
+				Future<Object> future;
+				while ((future = completion.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null){
+					if (progress != null){
+						if (progress.isCancelled())
+							cancelled.set(true);
+						else if (done != null)
+							progress.update(done.get());
+						}
+					}
+				future.get();
+				}
+		}catch (InterruptedException ex){
+			stop(futures, cancelled);
+			throw ex;
+		}catch (ExecutionException ex){
+			stop(futures, cancelled);
+			throw ex;
+			}
+	}
+	
+	/*********************************
+	 * Returns a new fixed pool of <code>n_threads</code> threads, to pass to 
+	 * {@link #invokeAll(ExecutorService, Runnable[], ProgressUpdater, AtomicInteger, AtomicBoolean)}.
+	 * The caller is responsible for shutting it down.
+	 * 
+	 * @param n_threads
+	 * @return
+	 */
+	public static ExecutorService newPool(int n_threads){
+		return Executors.newFixedThreadPool(n_threads);
+	}
+	
+	//workers poll cancelled; interrupting them is not enough to stop a running loop
+	private static void stop(ArrayList<Future<Object>> futures, AtomicBoolean cancelled){
+		cancelled.set(true);
+		for (int t = 0; t < futures.size(); t++)
+			futures.get(t).cancel(true);
+	}
+	
+}
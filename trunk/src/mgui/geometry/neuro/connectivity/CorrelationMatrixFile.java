@@ -0,0 +1,227 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.connectivity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mgui.geometry.neuro.ParallelWorkers;
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
+import mgui.interfaces.logs.LoggingType;
+
+/***************************************************************
+ * An N x N correlation matrix stored on disk, from which single values, rows and columns can be read 
+ * without loading the whole matrix. Files are written from a {@link CorticalPatchMatrix} in bands of 
+ * rows, so that memory use is bounded by the band size rather than N<sup>2</sup>; see 
+ * {@link DenseCorrelationFile} and {@link SparseCorrelationFile}. Only the columns of each band on or 
+ * above its first row are computed; the remainder of each row is taken from the bands above it, by 
+ * symmetry.
+ * 
+ * <p>Readers are thread-safe.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public abstract class CorrelationMatrixFile {
+
+	/** Approximate size, in bytes, of the band of rows computed before it is written. */
+	public static long band_bytes = 1L << 28;
+	/** Number of rows computed by a thread at a time. */
+	static final int ROW_CHUNK = 32;
+	
+	static final int DENSE_MAGIC = 0x43524D44;		//"CRMD"
+	static final int SPARSE_MAGIC = 0x43524D53;		//"CRMS"
+	static final int FILE_VERSION = 1;
+	
+	protected int n;
+	
+	/*********************************
+	 * Returns N, the number of rows and columns of this matrix.
+	 * 
+	 * @return
+	 */
+	public int getSize(){
+		return n;
+	}
+	
+	/*********************************
+	 * Returns the correlation between {@code i} and {@code j}.
+	 * 
+	 * @param i
+	 * @param j
+	 * @return
+	 * @throws IOException
+	 */
+	public abstract float get(int i, int j) throws IOException;
+	
+	/*********************************
+	 * Reads row {@code i} into {@code row}, which must have length at least N.
+	 * 
+	 * @param i
+	 * @param row
+	 * @throws IOException
+	 */
+	public abstract void getRow(int i, float[] row) throws IOException;
+	
+	/*********************************
+	 * Reads column {@code j} into {@code column}, which must have length at least N.
+	 * 
+	 * @param j
+	 * @param column
+	 * @throws IOException
+	 */
+	public abstract void getColumn(int j, float[] column) throws IOException;
+	
+	/*********************************
+	 * Closes this file.
+	 * 
+	 * @throws IOException
+	 */
+	public abstract void close() throws IOException;
+	
+	/*********************************
+	 * Receives the rows of a correlation matrix as they are computed. {@link #setRow} is called by 
+	 * worker threads, for distinct rows of the current band; {@link #flush} is called by the calling
+	 * thread, once all rows of a band have been set, in band order.
+	 * 
+	 * <p>Only columns {@code [row0, N)} of the rows passed to {@link #setRow} are computed, where 
+	 * {@code row0} is the first row of the band; the values of the lower columns are undefined, and must
+	 * be recovered by the writer from the rows of previous bands.
+	 * 
+	 */
+	static abstract class BandWriter {
+		
+		abstract void startBand(int row0, int row1);
+		
+		abstract void setRow(int i, float[] values, int offset);
+		
+		abstract void flush(int row0, int row1) throws IOException;
+		
+	}
+	
+	/*********************************
+	 * Computes the correlation matrix of {@code patches} in bands of rows, on {@code n_threads} threads, 
+	 * passing the rows to {@code writer}. Each band computes only the columns on or above its first row,
+	 * which halves the work of a full matrix.
+	 * 
+	 * @param patches
+	 * @param writer
+	 * @param n_threads
+	 * @param progress 		Optional; may be {@code null}
+	 * @return {@code false} if the process was cancelled or failed
+	 * @throws IOException if {@code writer} fails
+	 */
+	static boolean writeBands(final CorticalPatchMatrix patches, final BandWriter writer, 
+							  int n_threads, ProgressUpdater progress) throws IOException{
+		
+		final int n = patches.getPatchCount();
+		int band_rows = (int)Math.max(ROW_CHUNK, Math.min(n, band_bytes / (4L * Math.max(1, n))));
+		n_threads = Math.max(1, Math.min(n_threads, (band_rows + ROW_CHUNK - 1) / ROW_CHUNK));
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(n);
+			}
+		
+		ExecutorService executor = ParallelWorkers.newPool(n_threads);
+		try{
+			AtomicBoolean cancelled = new AtomicBoolean(false);
+			Runnable[] workers = new Runnable[n_threads];
+			for (int row0 = 0; row0 < n; row0 += band_rows){
+				final int b0 = row0, b1 = Math.min(n, row0 + band_rows);
+				final AtomicInteger next = new AtomicInteger(b0);
+				writer.startBand(b0, b1);
+				
+				for (int t = 0; t < n_threads; t++){
+					workers[t] = new Runnable(){
+						public void run(){
+							float[] rows = new float[ROW_CHUNK * n];
+							int start;
+							while ((start = next.getAndAdd(ROW_CHUNK)) < b1){
+								int end = Math.min(b1, start + ROW_CHUNK);
+								patches.getCorrelationRows(start, end, b0, rows);
+								for (int i = start; i < end; i++)
+									writer.setRow(i, rows, (i - start) * n);
+								}
+						}
+					};
+					}
+				ParallelWorkers.invokeAll(executor, workers, null, null, cancelled);
+				
+				writer.flush(b0, b1);
+				
+				if (progress != null){
+					if (progress.isCancelled()) return false;
+					progress.update(b1);
+					}
+				}
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			InterfaceSession.log("CorrelationMatrixFile: Interrupted while writing correlations.", 
+								 LoggingType.Errors);
+			return false;
+		}catch (ExecutionException ex){
+			InterfaceSession.log("CorrelationMatrixFile: Error computing correlations: " + ex.getCause(), 
+								 LoggingType.Errors);
+			return false;
+		}finally{
+			executor.shutdownNow();
+			}
+		
+		return true;
+	}
+	
+	/*********************************
+	 * Writes {@code buffer}, from its position to its limit, to {@code channel}.
+	 * 
+	 */
+	static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+	
+	/*********************************
+	 * Reads {@code buffer.remaining()} bytes from {@code channel} at {@code position}, and flips the 
+	 * buffer. Positional reads do not change the channel's position, so are safe for concurrent use.
+	 * 
+	 */
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		while (buffer.hasRemaining()){
+			int read = channel.read(buffer, position);
+			if (read < 0) throw new IOException("Unexpected end of file.");
+			position += read;
+			}
+		buffer.flip();
+	}
+	
+	static ByteBuffer allocate(int bytes){
+		return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+	
+}
@@ -0,0 +1,287 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.connectivity;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mgui.geometry.neuro.ParallelWorkers;
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.logs.LoggingType;
+import Jama.Matrix;
+
+/***************************************************************
+ * Stores the values of N cortical patches of equal size P as a contiguous N x P matrix, with each row
+ * centred and scaled to unit length. The Pearson correlation between patches i and j is then simply the
+ * dot product of rows i and j, and the full correlation matrix is Z * Z<sup>T</sup>.
+ * 
+ * <p>Rows which are excluded (e.g., because their patch is too small) or which have zero variance are 
+ * flagged as invalid; their correlations are {@code Double.NaN}.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CorticalPatchMatrix {
+
+	/** Number of rows per block when computing correlations. */
+	public static int BLOCK_SIZE = 64;
+	
+	protected final int n, p;
+	protected final double[] z;
+	protected final boolean[] valid;
+	
+	/*********************************
+	 * Creates a new matrix for {@code n} patches of size {@code p}. All rows are initially invalid.
+	 * 
+	 * @param n
+	 * @param p
+	 */
+	public CorticalPatchMatrix(int n, int p){
+		this.n = n;
+		this.p = p;
+		z = new double[n * p];
+		valid = new boolean[n];
+	}
+	
+	public int getPatchCount(){
+		return n;
+	}
+	
+	public int getPatchSize(){
+		return p;
+	}
+	
+	public boolean isValid(int i){
+		return valid[i];
+	}
+	
+	/*********************************
+	 * Returns the backing N x P row-major array of normalized values. Invalid rows are zero.
+	 * 
+	 * @return
+	 */
+	public double[] getNormalizedValues(){
+		return z;
+	}
+	
+	/*********************************
+	 * Sets the values of patch {@code i}, from the first P elements of {@code values}. These are centred 
+	 * and scaled to unit length. If {@code values} is {@code null} or has zero variance, the row is 
+	 * marked invalid.
+	 * 
+	 * @param i
+	 * @param values
+	 * @return {@code true} if the row is valid
+	 */
+	public boolean setPatch(int i, double[] values){
+		int offset = i * p;
+		valid[i] = false;
+		Arrays.fill(z, offset, offset + p, 0);
+		if (values == null) return false;
+		
+		double mean = 0;
+		for (int k = 0; k < p; k++)
+			mean += values[k];
+		mean /= p;
+		double ss = 0;
+		for (int k = 0; k < p; k++){
+			double d = values[k] - mean;
+			z[offset + k] = d;
+			ss += d * d;
+			}
+		if (!(ss > 0)){
+			Arrays.fill(z, offset, offset + p, 0);
+			return false;
+			}
+		double scale = 1.0 / Math.sqrt(ss);
+		for (int k = 0; k < p; k++)
+			z[offset + k] *= scale;
+		valid[i] = true;
+		return true;
+	}
+	
+	/*********************************
+	 * Returns the Pearson correlation between patches {@code i} and {@code j}.
+	 * 
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public double getCorrelation(int i, int j){
+		if (!valid[i] || !valid[j]) return Double.NaN;
+		if (i == j) return 1;
+		return dot(i * p, j * p);
+	}
+	
+	protected final double dot(int a, int b){
+		double sum = 0;
+		for (int k = 0; k < p; k++)
+			sum += z[a + k] * z[b + k];
+		return sum;
+	}
+	
+	/*********************************
+	 * Computes the correlations between rows {@code [row0, row1)} and columns {@code [col0, col1)}, into
+	 * {@code out}, which is indexed as {@code out[i - row0][j - col0]}.
+	 * 
+	 * @param row0
+	 * @param row1
+	 * @param col0
+	 * @param col1
+	 * @param out
+	 */
+	public void getCorrelations(int row0, int row1, int col0, int col1, double[][] out){
+		for (int i = row0; i < row1; i++){
+			double[] row = out[i - row0];
+			for (int j = col0; j < col1; j++)
+				row[j - col0] = getCorrelation(i, j);
+			}
+	}
+	
+	/*********************************
+	 * Computes complete rows {@code [row0, row1)} of the correlation matrix into {@code out}, which is 
+	 * row-major with a stride of N. Columns are processed in blocks, so that each block of rows is reused 
+	 * from cache for all rows.
+	 * 
+	 * @param row0
+	 * @param row1
+	 * @param out
+	 */
+	public void getCorrelationRows(int row0, int row1, float[] out){
+		getCorrelationRows(row0, row1, 0, out);
+	}
+	
+	/*********************************
+	 * Computes columns {@code [col0, N)} of rows {@code [row0, row1)} of the correlation matrix into 
+	 * {@code out}, which is row-major with a stride of N; columns below {@code col0} are not changed.
+	 * 
+	 * @param row0
+	 * @param row1
+	 * @param col0
+	 * @param out
+	 */
+	public void getCorrelationRows(int row0, int row1, int col0, float[] out){
+		for (int j0 = col0; j0 < n; j0 += BLOCK_SIZE){
+			int j1 = Math.min(n, j0 + BLOCK_SIZE);
+			for (int i = row0; i < row1; i++){
+				int offset = (i - row0) * n;
+				if (!valid[i]){
+					Arrays.fill(out, offset + j0, offset + j1, Float.NaN);
+					continue;
+					}
+				int a = i * p;
+				for (int j = j0; j < j1; j++){
+					if (!valid[j])
+						out[offset + j] = Float.NaN;
+					else if (i == j)
+						out[offset + j] = 1;
+					else
+						out[offset + j] = (float)dot(a, j * p);
+					}
+				}
+			}
+	}
+	
+	/*********************************
+	 * Computes the full N x N correlation matrix, using all available processors. 
+	 * 
+	 * @return
+	 */
+	public Matrix getCorrelationMatrix(){
+		return getCorrelationMatrix(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/*********************************
+	 * Computes the full N x N correlation matrix, using {@code n_threads} threads. Only blocks on or above
+	 * the diagonal are computed; each is mirrored into the lower triangle.
+	 * 
+	 * @param n_threads
+	 * @return
+	 */
+	public Matrix getCorrelationMatrix(int n_threads){
+		
+		final double[][] C = new double[n][n];
+		final int n_blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final AtomicInteger next = new AtomicInteger();
+		n_threads = Math.max(1, Math.min(n_threads, n_blocks));
+		
+		Runnable worker = new Runnable(){
+			public void run(){
+				int bi;
+				// Row blocks are taken in order, so the largest (top) strips are scheduled first
+				while ((bi = next.getAndIncrement()) < n_blocks){
+					int i0 = bi * BLOCK_SIZE, i1 = Math.min(n, i0 + BLOCK_SIZE);
+					for (int bj = bi; bj < n_blocks; bj++){
+						int j0 = bj * BLOCK_SIZE, j1 = Math.min(n, j0 + BLOCK_SIZE);
+						for (int i = i0; i < i1; i++){
+							double[] row_i = C[i];
+							if (!valid[i]){
+								for (int j = Math.max(i, j0); j < j1; j++){
+									row_i[j] = Double.NaN;
+									C[j][i] = Double.NaN;
+									}
+								continue;
+								}
+							int a = i * p;
+							for (int j = Math.max(i, j0); j < j1; j++){
+								double r;
+								if (!valid[j])
+									r = Double.NaN;
+								else if (i == j)
+									r = 1;
+								else
+									r = dot(a, j * p);
+								row_i[j] = r;
+								C[j][i] = r;
+								}
+							}
+						}
+					}
+			}
+		};
+		
+		if (n_threads == 1){
+			worker.run();
+			return new Matrix(C);
+			}
+		
+		Runnable[] workers = new Runnable[n_threads];
+		Arrays.fill(workers, worker);
+		try{
+			ParallelWorkers.invokeAll(workers, null, null, new AtomicBoolean(false));
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			InterfaceSession.log("CorticalPatchMatrix: Interrupted while computing correlations.", 
+								 LoggingType.Errors);
+			return null;
+		}catch (ExecutionException ex){
+			InterfaceSession.log("CorticalPatchMatrix: Error computing correlations: " + ex.getCause(), 
+								 LoggingType.Errors);
+			return null;
+			}
+		
+		return new Matrix(C);
+	}
+	
+}
@@ -0,0 +1,209 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.connectivity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import mgui.interfaces.ProgressUpdater;
+
+/***************************************************************
+ * A dense N x N correlation matrix stored as row-major, little-endian float32 values, following a 
+ * 16-byte header (magic, version, N, reserved). The file is memory-mapped for reading, in segments of 
+ * complete rows; the operating system pages in only the rows which are actually read.
+ * 
+ * <p>Since correlation matrices are symmetric, {@link #getColumn(int, float[])} reads the corresponding
+ * row, which is contiguous. When writing, the part of each row below the diagonal band is not computed, 
+ * but written as the transpose of the bands above it.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class DenseCorrelationFile extends CorrelationMatrixFile {
+
+	static final int HEADER_BYTES = 16;
+	/** Maximum size of a mapped segment; must be less than 2 GB. */
+	static final long SEGMENT_BYTES = 1L << 30;
+	
+	protected RandomAccessFile raf;
+	protected MappedByteBuffer[] segments;
+	protected int segment_rows;
+	
+	protected DenseCorrelationFile(){
+		
+	}
+	
+	/*********************************
+	 * Computes the correlation matrix of {@code patches} and writes it to {@code file}.
+	 * 
+	 * @param patches
+	 * @param file
+	 * @param n_threads
+	 * @param progress 		Optional; may be {@code null}
+	 * @return the file, opened for reading, or {@code null} if the process was cancelled or failed
+	 * @throws IOException
+	 */
+	public static DenseCorrelationFile write(CorticalPatchMatrix patches, File file, 
+											 int n_threads, ProgressUpdater progress) throws IOException{
+		
+		final int n = patches.getPatchCount();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		boolean success = false;
+		try{
+			raf.setLength(0);
+			final FileChannel channel = raf.getChannel();
+			ByteBuffer header = allocate(HEADER_BYTES);
+			header.putInt(DENSE_MAGIC).putInt(FILE_VERSION).putInt(n).putInt(0);
+			header.flip();
+			writeFully(channel, header);
+			
+			raf.setLength(HEADER_BYTES + 4L * n * n);
+			success = writeBands(patches, new BandWriter(){
+					float[] band;
+					int band_row0;
+					ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 22).order(ByteOrder.LITTLE_ENDIAN);
+					
+					void startBand(int row0, int row1){
+						int size = (row1 - row0) * n;
+						if (band == null || band.length < size)
+							band = new float[size];
+						band_row0 = row0;
+					}
+					
+					void setRow(int i, float[] values, int offset){
+						System.arraycopy(values, offset + band_row0, band, (i - band_row0) * n + band_row0, 
+										 n - band_row0);
+					}
+					
+					void flush(int row0, int row1) throws IOException{
+						// Computed part of each row of this band
+						for (int i = row0; i < row1; i++)
+							write(band, (i - row0) * n + row0, 1, n - row0, 
+								  HEADER_BYTES + 4L * ((long)i * n + row0));
+						// Its transpose, into the rows of the following bands
+						int rows = row1 - row0;
+						for (int j = row1; j < n; j++)
+							write(band, j, n, rows, HEADER_BYTES + 4L * ((long)j * n + row0));
+					}
+					
+					void write(float[] values, int offset, int stride, int length, long position) throws IOException{
+						for (int k = 0; k < length; ){
+							buffer.clear();
+							int len = Math.min(length - k, buffer.capacity() / 4);
+							for (int m = 0; m < len; m++)
+								buffer.putFloat(values[offset + (k + m) * stride]);
+							buffer.flip();
+							while (buffer.hasRemaining())
+								position += channel.write(buffer, position);
+							k += len;
+							}
+					}
+				}, n_threads, progress);
+		}finally{
+			raf.close();
+			if (!success) file.delete();
+			}
+		
+		if (!success) return null;
+		return open(file);
+	}
+	
+	/*********************************
+	 * Opens a dense correlation file for reading.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException if the file is not a valid dense correlation file
+	 */
+	public static DenseCorrelationFile open(File file) throws IOException{
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = allocate(HEADER_BYTES);
+			readFully(channel, header, 0);
+			if (header.getInt() != DENSE_MAGIC || header.getInt() != FILE_VERSION)
+				throw new IOException("Not a dense correlation file, or unsupported version.");
+			int n = header.getInt();
+			long row_bytes = 4L * n;
+			if (n < 0 || channel.size() != HEADER_BYTES + row_bytes * n)
+				throw new IOException("Correlation file is truncated or corrupt.");
+			
+			DenseCorrelationFile matrix = new DenseCorrelationFile();
+			matrix.n = n;
+			matrix.raf = raf;
+			matrix.segment_rows = (int)Math.max(1, Math.min(n, SEGMENT_BYTES / Math.max(1, row_bytes)));
+			int n_segments = n == 0 ? 0 : (n + matrix.segment_rows - 1) / matrix.segment_rows;
+			matrix.segments = new MappedByteBuffer[n_segments];
+			for (int s = 0; s < n_segments; s++){
+				int rows = Math.min(matrix.segment_rows, n - s * matrix.segment_rows);
+				matrix.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, 
+												 HEADER_BYTES + row_bytes * s * matrix.segment_rows, 
+												 row_bytes * rows);
+				matrix.segments[s].order(ByteOrder.LITTLE_ENDIAN);
+				}
+			return matrix;
+		}catch (IOException ex){
+			raf.close();
+			throw ex;
+			}
+	}
+	
+	/*********************************
+	 * Returns a view of the segment containing row {@code i}; views have independent positions, so are 
+	 * safe to use from several threads.
+	 * 
+	 */
+	protected FloatBuffer getSegment(int i){
+		return segments[i / segment_rows].duplicate().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+	}
+	
+	@Override
+	public float get(int i, int j){
+		return segments[i / segment_rows].getFloat(4 * ((i % segment_rows) * n + j));
+	}
+	
+	@Override
+	public void getRow(int i, float[] row){
+		FloatBuffer segment = getSegment(i);
+		segment.position((i % segment_rows) * n);
+		segment.get(row, 0, n);
+	}
+	
+	@Override
+	public void getColumn(int j, float[] column){
+		getRow(j, column);
+	}
+	
+	@Override
+	public void close() throws IOException{
+		segments = null;
+		raf.close();
+	}
+	
+}
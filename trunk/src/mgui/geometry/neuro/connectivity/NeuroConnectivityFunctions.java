@@ -20,15 +20,23 @@
 
 package mgui.geometry.neuro.connectivity;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
 
 import mgui.geometry.Mesh3D;
+import mgui.geometry.neuro.mesh.GeodesicNeighbourhoodIndex;
 import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
 import mgui.interfaces.Utility;
 import mgui.interfaces.logs.LoggingType;
 import mgui.numbers.MguiNumber;
-import mgui.stats.StatFunctions;
 import Jama.Matrix;
 
 /***************************************************************
@@ -41,6 +49,8 @@ import Jama.Matrix;
  */
 public class NeuroConnectivityFunctions extends Utility {
 
+	/** Number of threads used to compute correlations. */
+	public static int correlation_threads = Runtime.getRuntime().availableProcessors();
 	
 	/*****************************************************************
 	 * Computes correlations between "patches" of cortex, defined by a set of vertices and a patch
@@ -48,21 +58,25 @@ public class NeuroConnectivityFunctions extends Utility {
 	 * 
 	 * <ul>
 	 * <li>Radius 			All neighbours of vertex i within a fixed radius are included in the correlation
-	 * 						computation. In the case of unequal vertex counts, the farthest vertices will be
-	 * 						removed from the largest patch until both patches have the same size.
-	 * <li>Neighbours 		N nearest neighbours of vertex i will be included in the patch
+	 * 						computation.
+	 * <li>Neighbours 		Vertex i and its N nearest neighbours will be included in the patch
 	 * <li>Gaussian			All neighbours of vertex i within a cut-off standard deviation value will be
 	 * 						included in the patch. Values of these vertices will be scaled by a Gaussian
-	 * 						kernel, as a function of their distance along the surface from vertex i. In the
-	 * 						case of unequal vertex counts, the farthest vertices will be
-	 * 						removed from the largest patch until both patches have the same size.
-	 * <li>ROIs 			Regions-of-interest defined a priori. In the case of unequal vertex counts, 
-	 * 						a random subset of the largest patch will be used to equalize the counts.
+	 * 						kernel, as a function of their distance along the surface from vertex i.
+	 * <li>ROIs 			Regions-of-interest defined a priori. 
 	 * </ul>
 	 * 
-	 * Patch functions can be modulated by general or specific parameters. For example, the general parameters
-	 * {@code n_min} and {@code n_max} set lower and upper limits on the number of values used to compute
-	 * a correlation.
+	 * Distances along the surface are shortest paths along mesh edges, obtained from a cached
+	 * {@link GeodesicNeighbourhoodIndex}. In order that all correlations can
+	 * be computed from a single normalized matrix (see {@link CorticalPatchMatrix}), every correlation
+	 * uses the same number of values, p: all patches are reduced to the size of the smallest patch having 
+	 * at least {@code n_min} vertices (and at most {@code n_max}): for distance-based patches, the farthest
+	 * vertices are removed; for 'ROIs', a random subset is used. Patches smaller than this are not used.
+	 * Since a single small patch determines p for all patches, a warning is logged if p is less than 
+	 * half the median patch size.
+	 * 
+	 * <p>Patch functions can be modulated by general or specific parameters. For example, the general parameters
+	 * {@code n_min} and {@code n_max} set lower and upper limits on p.
 	 * 
 	 * <p>Parameters are specified using the {@code parameters} argument, which is a map of parameter names to
 	 * values. Acceptable parameters are:
@@ -71,12 +85,12 @@ public class NeuroConnectivityFunctions extends Utility {
 	 * <li>n_min 			[Optional: {@code int}]
 	 * 						Lower limit on the number of values used to compute correlations. Patches which
 	 * 						have less vertices than this value are not used to compute; their Pearson
-	 * 						correlation values will be assigned a value of {@code Double.NaN}. Default is 0.
+	 * 						correlation values will be assigned a value of {@code Double.NaN}. Default is 
+	 * 						half the median patch size, and at least 3.
 	 * <li>n_max 			[Optional: {@code int}]
 	 * 						Upper limit on the number of values used to compute correlations. Patches which
-	 * 						have more vertices than this number will be subsampled to match it: according
-	 * 						to distance from vertex i, or randomly, in the case of 'ROIs'
-	 * 						Default is {@code Double.MAX_VALUE}.
+	 * 						have more vertices than p are subsampled to match it: according to distance 
+	 * 						from vertex i, or randomly, in the case of 'ROIs'. Default is 0 (no limit).
 	 * <li>patch_function	[Required: {@code String}
 	 * 						Function with which to derive patches; see above.
 	 * <li>patch_radius 	[Required for 'Radius': {@code double}]
@@ -91,8 +105,16 @@ public class NeuroConnectivityFunctions extends Utility {
 	 * 							The sigma value determining the boundary of the patch.
 	 * <li>roi_values 		[Required for 'ROIs': {@code ArrayList<MguiInteger}]
 	 * 						The vertex-wise ROI assignments determining the patches
+	 * <li>filter_indices 	[Optional: {@code Collection<Integer>}]
+	 * 						The vertices for which to compute patches; or, for 'ROIs', the ROI values to
+	 * 						include. Default is all vertices, or all ROIs in ascending order.
+	 * <li>random_seed 		[Optional: {@code long}]
+	 * 						Seed for the random subsets of 'ROIs'. Default is 0.
 	 * </ul>
 	 * 
+	 * <p>The returned matrix requires 8M<sup>2</sup> bytes; for vertex-level correlations on large meshes, use
+	 * {@link #writeCorticalPatchCorrelations(Mesh3D, ArrayList, HashMap, File, ProgressUpdater)}.
+	 * 
 	 * @param mesh 			The mesh from which to derive connectivity
 	 * @param v_data 		The values which are to be used to compute correlations
 	 * @param parameters 	A map of parameter names to the corresponding values
@@ -104,6 +126,100 @@ public class NeuroConnectivityFunctions extends Utility {
 														  ArrayList<MguiNumber> v_data,
 														  HashMap<String,Object> parameters){
 		
+		CorticalPatchMatrix patches = getCorticalPatchMatrix(mesh, v_data, parameters);
+		if (patches == null) return null;
+		return patches.getCorrelationMatrix(correlation_threads);
+		
+	}
+	
+	/*****************************************************************
+	 * Computes correlations between cortical patches as for 
+	 * {@link #computeCorticalPatchCorrelations(Mesh3D, ArrayList, HashMap)}, but writes them to 
+	 * {@code file} in bands of rows, rather than returning a dense in-memory matrix. This is intended
+	 * for vertex-level connectivity on large meshes, for which an N x N matrix does not fit in memory.
+	 * In addition to those of {@code computeCorticalPatchCorrelations}, parameters are:
+	 * 
+	 * <ul>
+	 * <li>output_format 	[Optional: {@code String}]
+	 * 						One of 'Dense' (a memory-mapped float32 matrix; see {@link DenseCorrelationFile})
+	 * 						or 'Sparse' (thresholded rows; see {@link SparseCorrelationFile}). Default is 'Dense'.
+	 * <li>sparse_threshold [Required for 'Sparse' if {@code sparse_top_k} is not defined: {@code double}]
+	 * 						Retain only correlations whose absolute value exceeds this. Default is 0.
+	 * <li>sparse_top_k 	[Required for 'Sparse' if {@code sparse_threshold} is not defined: {@code int}]
+	 * 						Retain at most this many correlations per row, with the largest absolute values.
+	 * 						Default is 0 (no limit).
+	 * </ul>
+	 * 
+	 * <p>For 'Sparse', at least one of {@code sparse_threshold} and {@code sparse_top_k} must be greater
+	 * than zero; otherwise every entry would be retained, in a file twice the size of the dense one.
+	 * 
+	 * @param mesh 			The mesh from which to derive connectivity
+	 * @param v_data 		The values which are to be used to compute correlations
+	 * @param parameters 	A map of parameter names to the corresponding values
+	 * @param file 			The file to write
+	 * @param progress 		Optional; may be {@code null}
+	 * @return 				The written file, opened for reading, or {@code null} if there was an error
+	 */
+	public static CorrelationMatrixFile writeCorticalPatchCorrelations(Mesh3D mesh, 
+																	   ArrayList<MguiNumber> v_data,
+																	   HashMap<String,Object> parameters,
+																	   File file,
+																	   ProgressUpdater progress){
+		
+		String format = "Dense";
+		if (parameters.containsKey("output_format"))
+			format = (String)parameters.get("output_format");
+		if (!format.equals("Dense") && !format.equals("Sparse")){
+			InterfaceSession.log("writeCorticalPatchCorrelations: Unrecognized output format: '" +
+								 format + "'.", 
+								 LoggingType.Errors);
+			return null;
+			}
+		
+		double threshold = 0;
+		if (parameters.containsKey("sparse_threshold"))
+			threshold = ((Number)parameters.get("sparse_threshold")).doubleValue();
+		int top_k = 0;
+		if (parameters.containsKey("sparse_top_k"))
+			top_k = ((Number)parameters.get("sparse_top_k")).intValue();
+		if (format.equals("Sparse") && !(threshold > 0) && top_k <= 0){
+			InterfaceSession.log("writeCorticalPatchCorrelations: 'Sparse' output requires a positive " +
+								 "sparse_threshold or sparse_top_k.", 
+								 LoggingType.Errors);
+			return null;
+			}
+		
+		CorticalPatchMatrix patches = getCorticalPatchMatrix(mesh, v_data, parameters);
+		if (patches == null) return null;
+		
+		try{
+			if (format.equals("Dense"))
+				return DenseCorrelationFile.write(patches, file, correlation_threads, progress);
+			
+			return SparseCorrelationFile.write(patches, file, threshold, top_k, correlation_threads, progress);
+			
+		}catch (IOException ex){
+			InterfaceSession.log("writeCorticalPatchCorrelations: Error writing '" + file.getAbsolutePath() + 
+								 "': " + ex.getMessage(), 
+								 LoggingType.Errors);
+			return null;
+			}
+	}
+	
+	/*****************************************************************
+	 * Extracts the patches defined by {@code parameters} into a normalized {@link CorticalPatchMatrix}, 
+	 * from which correlations can be computed. See 
+	 * {@link #computeCorticalPatchCorrelations(Mesh3D, ArrayList, HashMap)} for a description of the 
+	 * parameters.
+	 * 
+	 * @param mesh 			The mesh from which to derive connectivity
+	 * @param v_data 		The values which are to be used to compute correlations
+	 * @param parameters 	A map of parameter names to the corresponding values
+	 * @return 				The patch matrix, or {@code null} if there was an error
+	 */
+	public static CorticalPatchMatrix getCorticalPatchMatrix(Mesh3D mesh, 
+															 ArrayList<MguiNumber> v_data,
+															 HashMap<String,Object> parameters){
 		
 		// Extract parameters
 		String patch_function = (String)parameters.get("patch_function");
@@ -114,29 +230,88 @@ public class NeuroConnectivityFunctions extends Utility {
 			return null;
 			}
 		
+		if (v_data.size() != mesh.n){
+			InterfaceSession.log("computeCorticalPatchCorrelations: Data size (" + v_data.size() + 
+								 ") does not match vertex count (" + mesh.n + ").", 
+								 LoggingType.Errors);
+			return null;
+			}
+		
 		// General parameters
-		int n_min = 0;
+		int n_min = -1;
 		if (parameters.containsKey("n_min"))
-			n_min = (Integer)parameters.get("n_min");
+			n_min = ((Number)parameters.get("n_min")).intValue();
 		int n_max = 0;
 		if (parameters.containsKey("n_max"))
-			n_max = (Integer)parameters.get("n_max");
+			n_max = ((Number)parameters.get("n_max")).intValue();
+		int max_count = n_max > 0 ? n_max : Integer.MAX_VALUE;
+		int[] filter = null;
+		if (parameters.containsKey("filter_indices"))
+			filter = toIntArray((Collection<?>)parameters.get("filter_indices"));
 		
-		// Determine the patches
-		ArrayList<ArrayList<MguiNumber>> patches = new ArrayList<ArrayList<MguiNumber>>();
+		double[] values = new double[mesh.n];
+		for (int i = 0; i < mesh.n; i++)
+			values[i] = v_data.get(i).getValue();
 		
 		if (patch_function.equals("ROIs")){
 			
+			@SuppressWarnings("unchecked")
+			ArrayList<MguiNumber> roi_values = (ArrayList<MguiNumber>)parameters.get("roi_values");
+			if (roi_values == null || roi_values.size() != mesh.n){
+				InterfaceSession.log("computeCorticalPatchCorrelations: Parameter 'roi_values' is required " +
+									 "for 'ROIs' and must have one value per vertex.", 
+									 LoggingType.Errors);
+				return null;
+				}
+			long seed = 0;
+			if (parameters.containsKey("random_seed"))
+				seed = ((Number)parameters.get("random_seed")).longValue();
+			return getRoiPatchMatrix(values, roi_values, filter, n_min, max_count, seed);
 			
+			}
+		
+		double max_distance = Double.POSITIVE_INFINITY;
+		double sigma = 0;
+		
+		if (patch_function.equals("Radius")){
 			
-		}else if (patch_function.equals("Radius")){
-			
+			if (!parameters.containsKey("patch_radius")){
+				InterfaceSession.log("computeCorticalPatchCorrelations: Parameter 'patch_radius' is required " +
+									 "for 'Radius'.", 
+									 LoggingType.Errors);
+				return null;
+				}
+			max_distance = ((Number)parameters.get("patch_radius")).doubleValue();
 			
 		}else if (patch_function.equals("Neighbours")){
 		
+			if (!parameters.containsKey("n_neighbours")){
+				InterfaceSession.log("computeCorticalPatchCorrelations: Parameter 'n_neighbours' is required " +
+									 "for 'Neighbours'.", 
+									 LoggingType.Errors);
+				return null;
+				}
+			max_count = Math.min(max_count, ((Number)parameters.get("n_neighbours")).intValue() + 1);
 			
 		}else if (patch_function.equals("Gaussian")){
 			
+			if (parameters.containsKey("gaussian_sigma")){
+				sigma = ((Number)parameters.get("gaussian_sigma")).doubleValue();
+			}else if (parameters.containsKey("gaussian_fwhm")){
+				sigma = ((Number)parameters.get("gaussian_fwhm")).doubleValue() / (2.0 * Math.sqrt(2.0 * Math.log(2)));
+			}else{
+				InterfaceSession.log("computeCorticalPatchCorrelations: One of 'gaussian_sigma' or 'gaussian_fwhm' " +
+									 "is required for 'Gaussian'.", 
+									 LoggingType.Errors);
+				return null;
+				}
+			if (!parameters.containsKey("gaussian_sigma_max")){
+				InterfaceSession.log("computeCorticalPatchCorrelations: Parameter 'gaussian_sigma_max' is required " +
+									 "for 'Gaussian'.", 
+									 LoggingType.Errors);
+				return null;
+				}
+			max_distance = sigma * ((Number)parameters.get("gaussian_sigma_max")).doubleValue();
 			
 		}else{
 			InterfaceSession.log("computeCorticalPatchCorrelations: Unrecognized patch function: '" +
@@ -145,43 +320,174 @@ public class NeuroConnectivityFunctions extends Utility {
 			return null;
 			}
 		
-		// Patch statistics
-		int n = patches.size();
-		ArrayList<Double> patch_means = new ArrayList<Double>();
-		ArrayList<Double> patch_std = new ArrayList<Double>();
-		for (int i = 0; i < n; i++){
-			double[] stats = StatFunctions.getBasicNormalStats(patches.get(i));
-			patch_means.add(stats[0]);
-			patch_std.add(stats[2]);
+		if (filter == null){
+			filter = new int[mesh.n];
+			for (int i = 0; i < mesh.n; i++)
+				filter[i] = i;
+			}
+		
+		return getDistancePatchMatrix(mesh, values, filter, n_min, max_distance, max_count, sigma);
+	}
+	
+	/*****************************************************************
+	 * Extracts distance-based patches centred on each vertex in {@code centres}, from a (cached) 
+	 * {@link GeodesicNeighbourhoodIndex}. Each patch is limited to the global patch size.
+	 * 
+	 * @param sigma 	Sigma of the Gaussian weighting, or 0 for no weighting
+	 */
+	static CorticalPatchMatrix getDistancePatchMatrix(Mesh3D mesh, double[] values, int[] centres, 
+													  int n_min, double max_distance, int max_count, 
+													  double sigma){
+		
+		GeodesicNeighbourhoodIndex index = GeodesicNeighbourhoodIndex.getIndex(mesh, max_distance, max_count, null);
+		if (index == null){
+			InterfaceSession.log("computeCorticalPatchCorrelations: Could not compute surface neighbourhoods.", 
+								 LoggingType.Errors);
+			return null;
 			}
 		
-		// Compute correlations
-		Matrix M = new Matrix(n,n);
+		int n = centres.length;
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++)
+			sizes[i] = index.getCount(centres[i], max_distance, max_count);
+		
+		int p = getGlobalPatchSize(sizes, n_min, max_count);
+		if (p < 0) return null;
+		
+		// Normalized values of the p nearest vertices
+		int[] row_ptr = index.getRowPointers();
+		int[] col_idx = index.getNeighbourIndices();
+		float[] distances = index.getDistances();
+		CorticalPatchMatrix matrix = new CorticalPatchMatrix(n, p);
+		double g = sigma > 0 ? -0.5 / (sigma * sigma) : 0;
+		double[] patch = new double[p];
 		for (int i = 0; i < n; i++){
-			for (int j = 0; j < n; j++){
-				if (i != j){
-					// Each pair of values
-					ArrayList<MguiNumber> patch_i = patches.get(i);
-					ArrayList<MguiNumber> patch_j = patches.get(j);
-					double sum_of_diffs = 0;
-					
-					for (int k = 0; k < patch_i.size(); k++)
-						for (int l = 0; l < patch_j.size(); l++){
-							sum_of_diffs += ((patch_i.get(k).getValue() - patch_means.get(i)) -
-											((patch_j.get(l).getValue() - patch_means.get(j))));
-							}
-					
-					double r = sum_of_diffs / (patch_std.get(i) * patch_std.get(j));
-					M.set(i, j, r);
+			if (sizes[i] < p || sizes[i] < n_min){
+				matrix.setPatch(i, null);
+				continue;
+				}
+			int offset = row_ptr[centres[i]];
+			for (int k = 0; k < p; k++){
+				patch[k] = values[col_idx[offset + k]];
+				if (g != 0){
+					double d = distances[offset + k];
+					patch[k] *= Math.exp(g * d * d);
 					}
 				}
+			matrix.setPatch(i, patch);
 			}
 		
+		return matrix;
+	}
+	
+	/*****************************************************************
+	 * Extracts ROI patches. ROIs larger than the global patch size are reduced to a random subset, 
+	 * drawn in ascending order of ROI value from a single generator with the given seed.
+	 * 
+	 */
+	static CorticalPatchMatrix getRoiPatchMatrix(double[] values, ArrayList<MguiNumber> roi_values, int[] filter, 
+												 int n_min, int max_count, long seed){
 		
+		TreeMap<Integer,ArrayList<Integer>> rois = new TreeMap<Integer,ArrayList<Integer>>();
+		for (int i = 0; i < values.length; i++){
+			int roi = (int)roi_values.get(i).getValue();
+			ArrayList<Integer> members = rois.get(roi);
+			if (members == null){
+				members = new ArrayList<Integer>();
+				rois.put(roi, members);
+				}
+			members.add(i);
+			}
 		
-		return null;
+		if (filter == null){
+			filter = new int[rois.size()];
+			Iterator<Integer> itr = rois.keySet().iterator();
+			for (int i = 0; i < filter.length; i++)
+				filter[i] = itr.next();
+			}
+		
+		int n = filter.length;
+		int[][] members = new int[n][];
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++){
+			members[i] = toIntArray(rois.get(filter[i]));
+			sizes[i] = members[i] == null ? 0 : members[i].length;
+			}
+		
+		int p = getGlobalPatchSize(sizes, n_min, max_count);
+		if (p < 0) return null;
+		
+		CorticalPatchMatrix matrix = new CorticalPatchMatrix(n, p);
+		Random random = new Random(seed);
+		double[] patch = new double[p];
+		for (int i = 0; i < n; i++){
+			if (sizes[i] < p || sizes[i] < n_min){
+				matrix.setPatch(i, null);
+				continue;
+				}
+			// Partial Fisher-Yates shuffle; the first p members are a random subset
+			int[] m = members[i];
+			if (m.length > p){
+				for (int k = 0; k < p; k++){
+					int r = k + random.nextInt(m.length - k);
+					int temp = m[k];
+					m[k] = m[r];
+					m[r] = temp;
+					}
+				}
+			for (int k = 0; k < p; k++)
+				patch[k] = values[m[k]];
+			matrix.setPatch(i, patch);
+			}
+		
+		return matrix;
 	}
 	
+	/*****************************************************************
+	 * Returns the size of the smallest patch having at least {@code n_min} (and at least two) vertices,
+	 * limited to {@code max_count}; or -1 if there are no such patches. If {@code n_min} is negative, 
+	 * half the median patch size (and at least three) is used. Logs a warning if the result is less than
+	 * half the median patch size.
+	 * 
+	 */
+	static int getGlobalPatchSize(int[] sizes, int n_min, int max_count){
+		int median = 0;
+		if (sizes.length > 0){
+			int[] sorted = sizes.clone();
+			Arrays.sort(sorted);
+			median = Math.min(sorted[sorted.length / 2], max_count);
+			}
+		if (n_min < 0)
+			n_min = Math.max(3, median / 2);
+		
+		int p = max_count;
+		boolean found = false;
+		for (int i = 0; i < sizes.length; i++){
+			if (sizes[i] >= n_min && sizes[i] >= 2){
+				p = Math.min(p, sizes[i]);
+				found = true;
+				}
+			}
+		if (!found || p < 2){
+			InterfaceSession.log("computeCorticalPatchCorrelations: No patches have at least " + 
+								 Math.max(2, n_min) + " vertices.", 
+								 LoggingType.Errors);
+			return -1;
+			}
+		if (p < median / 2)
+			InterfaceSession.log("computeCorticalPatchCorrelations: Patch size " + p + " is less than half " +
+								 "the median patch size (" + median + "); consider increasing n_min.", 
+								 LoggingType.Warnings);
+		return p;
+	}
 	
+	static int[] toIntArray(Collection<?> list){
+		if (list == null) return null;
+		int[] array = new int[list.size()];
+		int i = 0;
+		for (Object o : list)
+			array[i++] = ((Number)o).intValue();
+		return array;
+	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,529 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.connectivity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mgui.geometry.Mesh3D;
+import mgui.geometry.neuro.ParallelWorkers;
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
+import mgui.interfaces.logs.LoggingType;
+import mgui.numbers.MguiNumber;
+import Jama.Matrix;
+
+/***************************************************************
+ * Resampling engine for group-level patch correlations (e.g., between ROIs) across subjects. The 
+ * correlations of each subject are computed once from its {@link CorticalPatchMatrix}, Fisher-transformed 
+ * and stored as the upper triangle of an N x N matrix; each resample is then a weighted sum of these
+ * over subjects. Two procedures are provided:
+ * 
+ * <ul>
+ * <li>{@link #permute} 	Subject-label permutation test for the difference in mean (Fisher z) correlation
+ * 							between two groups. For each pair, counts how often the permuted difference is at 
+ * 							least as extreme as the observed one; and records the maximum over all pairs of 
+ * 							each permutation, for family-wise error correction.
+ * <li>{@link #bootstrap} 	Bootstrap over subjects of the mean (Fisher z) correlation, accumulating the sum and 
+ * 							sum of squares of each pair, for standard errors.
+ * </ul>
+ * 
+ * Only these summary statistics are kept, so memory is O(N<sup>2</sup>) per thread regardless of the number 
+ * of resamples. Each resample draws from its own {@link SplittableRandom} stream, split in order from a 
+ * single seed, so that results do not depend on the number of threads (summed statistics may differ in
+ * the last digits, due to the order of summation).
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class PatchCorrelationResampler {
+
+	/** Number of threads used for resampling. */
+	public static int resampling_threads = Runtime.getRuntime().availableProcessors();
+	
+	protected final int n, n_subjects, n_pairs;
+	
+	/** Fisher z-transformed correlations; [subject][pair] */
+	protected final float[][] z;
+	
+	/*********************************
+	 * Creates a resampler for the given subject patch matrices, which must all have the same number of 
+	 * patches. The correlations of each subject are computed here.
+	 * 
+	 * @param subjects
+	 */
+	public PatchCorrelationResampler(ArrayList<CorticalPatchMatrix> subjects){
+		n_subjects = subjects.size();
+		n = n_subjects == 0 ? 0 : subjects.get(0).getPatchCount();
+		n_pairs = n * (n - 1) / 2;
+		z = new float[n_subjects][];
+		for (int s = 0; s < n_subjects; s++){
+			CorticalPatchMatrix patches = subjects.get(s);
+			if (patches.getPatchCount() != n)
+				throw new IllegalArgumentException("PatchCorrelationResampler: subject " + s + " has " + 
+												   patches.getPatchCount() + " patches; expected " + n + ".");
+			float[] values = new float[n_pairs];
+			int k = 0;
+			for (int i = 0; i < n; i++)
+				for (int j = i + 1; j < n; j++)
+					values[k++] = (float)fisher(patches.getCorrelation(i, j));
+			z[s] = values;
+			}
+	}
+	
+	/*********************************
+	 * Creates a resampler from vertex-wise data for each subject, on a common mesh. Patches are obtained
+	 * with {@link NeuroConnectivityFunctions#getCorticalPatchMatrix(Mesh3D, ArrayList, HashMap)}; typically
+	 * the 'ROIs' patch function is used.
+	 * 
+	 * @param mesh
+	 * @param subject_data
+	 * @param parameters
+	 * @return the resampler, or {@code null} if patches could not be obtained for a subject
+	 */
+	public static PatchCorrelationResampler getResampler(Mesh3D mesh, 
+														 ArrayList<ArrayList<MguiNumber>> subject_data,
+														 HashMap<String,Object> parameters){
+		ArrayList<CorticalPatchMatrix> subjects = new ArrayList<CorticalPatchMatrix>(subject_data.size());
+		for (int s = 0; s < subject_data.size(); s++){
+			CorticalPatchMatrix patches = NeuroConnectivityFunctions.getCorticalPatchMatrix(mesh, subject_data.get(s), parameters);
+			if (patches == null){
+				InterfaceSession.log("PatchCorrelationResampler: Could not obtain patches for subject " + s + ".", 
+									 LoggingType.Errors);
+				return null;
+				}
+			subjects.add(patches);
+			}
+		try{
+			return new PatchCorrelationResampler(subjects);
+		}catch (IllegalArgumentException ex){
+			InterfaceSession.log(ex.getMessage(), LoggingType.Errors);
+			return null;
+			}
+	}
+	
+	public int getPatchCount(){
+		return n;
+	}
+	
+	public int getSubjectCount(){
+		return n_subjects;
+	}
+	
+	static double fisher(double r){
+		if (Double.isNaN(r)) return r;
+		r = Math.max(-0.9999999, Math.min(0.9999999, r));
+		return 0.5 * Math.log((1 + r) / (1 - r));
+	}
+	
+	/*********************************
+	 * Computes the weighted sum of subject correlations into {@code t}.
+	 * 
+	 */
+	protected void weightedSum(double[] weights, double[] t){
+		Arrays.fill(t, 0);
+		for (int s = 0; s < n_subjects; s++){
+			double w = weights[s];
+			if (w == 0) continue;
+			float[] zs = z[s];
+			for (int k = 0; k < n_pairs; k++)
+				t[k] += w * zs[k];
+			}
+	}
+	
+	/*********************************
+	 * Sets {@code weights} to give the difference in means between group 1 and group 0.
+	 * 
+	 */
+	static void setGroupWeights(int[] groups, int n_1, int n_0, double[] weights){
+		for (int s = 0; s < groups.length; s++)
+			weights[s] = groups[s] == 1 ? 1.0 / n_1 : -1.0 / n_0;
+	}
+	
+	/*********************************
+	 * Performs a subject-label permutation test of the difference in mean Fisher z correlation between
+	 * group 1 and group 0.
+	 * 
+	 * @param groups 			Group (0 or 1) of each subject
+	 * @param n_permutations
+	 * @param seed
+	 * @param progress 			Optional; may be {@code null}
+	 * @return the result, or {@code null} if the process was cancelled or failed
+	 */
+	public PermutationResult permute(int[] groups, int n_permutations, long seed, ProgressUpdater progress){
+		
+		if (groups.length != n_subjects){
+			InterfaceSession.log("PatchCorrelationResampler: Group count (" + groups.length + 
+								 ") does not match subject count (" + n_subjects + ").", 
+								 LoggingType.Errors);
+			return null;
+			}
+		int n_1 = 0;
+		for (int s = 0; s < n_subjects; s++){
+			if (groups[s] != 0 && groups[s] != 1){
+				InterfaceSession.log("PatchCorrelationResampler: Groups must be 0 or 1.", LoggingType.Errors);
+				return null;
+				}
+			n_1 += groups[s];
+			}
+		int n_0 = n_subjects - n_1;
+		if (n_1 == 0 || n_0 == 0){
+			InterfaceSession.log("PatchCorrelationResampler: Both groups must have at least one subject.", 
+								 LoggingType.Errors);
+			return null;
+			}
+		
+		PermutationResult result = new PermutationResult(n, n_permutations);
+		double[] weights = new double[n_subjects];
+		setGroupWeights(groups, n_1, n_0, weights);
+		weightedSum(weights, result.observed);
+		
+		SplittableRandom[] streams = getStreams(seed, n_permutations);
+		int n_threads = Math.max(1, Math.min(resampling_threads, n_permutations));
+		PermutationWorker[] workers = new PermutationWorker[n_threads];
+		AtomicInteger next = new AtomicInteger(0);
+		for (int t = 0; t < n_threads; t++)
+			workers[t] = new PermutationWorker(result, groups, n_1, n_0, streams, next);
+		
+		if (!runWorkers(workers, n_permutations, progress)) return null;
+		for (int t = 0; t < n_threads; t++)
+			for (int k = 0; k < n_pairs; k++)
+				result.counts[k] += workers[t].counts[k];
+		return result;
+	}
+	
+	/*********************************
+	 * Bootstraps the mean Fisher z correlation over subjects.
+	 * 
+	 * @param n_resamples
+	 * @param seed
+	 * @param progress 			Optional; may be {@code null}
+	 * @return the result, or {@code null} if the process was cancelled or failed
+	 */
+	public BootstrapResult bootstrap(int n_resamples, long seed, ProgressUpdater progress){
+		
+		BootstrapResult result = new BootstrapResult(n, n_resamples);
+		double[] weights = new double[n_subjects];
+		Arrays.fill(weights, 1.0 / n_subjects);
+		weightedSum(weights, result.observed);
+		
+		SplittableRandom[] streams = getStreams(seed, n_resamples);
+		int n_threads = Math.max(1, Math.min(resampling_threads, n_resamples));
+		BootstrapWorker[] workers = new BootstrapWorker[n_threads];
+		AtomicInteger next = new AtomicInteger(0);
+		for (int t = 0; t < n_threads; t++)
+			workers[t] = new BootstrapWorker(streams, next);
+		
+		if (!runWorkers(workers, n_resamples, progress)) return null;
+		for (int t = 0; t < n_threads; t++){
+			for (int k = 0; k < n_pairs; k++){
+				result.sum[k] += workers[t].sum[k];
+				result.sum_sq[k] += workers[t].sum_sq[k];
+				}
+			}
+		return result;
+	}
+	
+	/*********************************
+	 * Splits one stream per resample from a root stream with the given seed.
+	 * 
+	 */
+	static SplittableRandom[] getStreams(long seed, int n_resamples){
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] streams = new SplittableRandom[n_resamples];
+		for (int r = 0; r < n_resamples; r++)
+			streams[r] = root.split();
+		return streams;
+	}
+	
+	/*********************************
+	 * Runs {@code workers} in parallel, updating {@code progress} from this thread with the number of
+	 * resamples completed, and stopping the workers if it is cancelled.
+	 * 
+	 * @return {@code false} if the process was cancelled or failed
+	 */
+	static boolean runWorkers(ResampleWorker[] workers, int n_resamples, ProgressUpdater progress){
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(n_resamples);
+			}
+		
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		AtomicInteger done = new AtomicInteger(0);
+		for (int t = 0; t < workers.length; t++){
+			workers[t].cancelled = cancelled;
+			workers[t].done = done;
+			}
+		
+		//always pooled, so that progress is updated from this thread
+		ExecutorService executor = ParallelWorkers.newPool(workers.length);
+		try{
+			ParallelWorkers.invokeAll(executor, workers, progress, done, cancelled);
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			return false;
+		}catch (ExecutionException ex){
+			InterfaceSession.log("PatchCorrelationResampler: Error resampling: " + ex.getCause(), 
+								 LoggingType.Errors);
+			return false;
+		}finally{
+			executor.shutdownNow();
+			}
+		if (cancelled.get())
+			return false;
+		
+		if (progress != null)
+			progress.update(n_resamples);
+		return true;
+	}
+	
+	/*********************************
+	 * Takes resamples from a shared counter; each worker keeps its own accumulators and scratch.
+	 * 
+	 */
+	abstract class ResampleWorker implements Runnable {
+		
+		final SplittableRandom[] streams;
+		final AtomicInteger next;
+		AtomicBoolean cancelled;
+		AtomicInteger done;
+		
+		final double[] w = new double[n_subjects];
+		final double[] t = new double[n_pairs];
+		
+		ResampleWorker(SplittableRandom[] streams, AtomicInteger next){
+			this.streams = streams;
+			this.next = next;
+		}
+		
+		public void run(){
+			int r;
+			while (!cancelled.get() && (r = next.getAndIncrement()) < streams.length){
+				resample(r, streams[r]);
+				done.incrementAndGet();
+				}
+		}
+		
+		abstract void resample(int r, SplittableRandom random);
+		
+	}
+	
+	class PermutationWorker extends ResampleWorker {
+		
+		final PermutationResult result;
+		final int[] groups, labels;
+		final int n_1, n_0;
+		final int[] counts = new int[n_pairs];
+		
+		PermutationWorker(PermutationResult result, int[] groups, int n_1, int n_0, 
+						  SplittableRandom[] streams, AtomicInteger next){
+			super(streams, next);
+			this.result = result;
+			this.groups = groups;
+			this.labels = new int[groups.length];
+			this.n_1 = n_1;
+			this.n_0 = n_0;
+		}
+		
+		void resample(int r, SplittableRandom random){
+			//shuffle from the original labels, so that each permutation depends only on its stream
+			System.arraycopy(groups, 0, labels, 0, n_subjects);
+			for (int s = n_subjects - 1; s > 0; s--){
+				int q = random.nextInt(s + 1);
+				int temp = labels[s];
+				labels[s] = labels[q];
+				labels[q] = temp;
+				}
+			setGroupWeights(labels, n_1, n_0, w);
+			weightedSum(w, t);
+			double[] observed = result.observed;
+			double max = 0;
+			for (int k = 0; k < n_pairs; k++){
+				double abs = Math.abs(t[k]);
+				if (abs >= Math.abs(observed[k])) counts[k]++;		//false for NaN
+				if (abs > max) max = abs;
+				}
+			result.max_null[r] = max;
+		}
+		
+	}
+	
+	class BootstrapWorker extends ResampleWorker {
+		
+		final double[] sum = new double[n_pairs];
+		final double[] sum_sq = new double[n_pairs];
+		
+		BootstrapWorker(SplittableRandom[] streams, AtomicInteger next){
+			super(streams, next);
+		}
+		
+		void resample(int r, SplittableRandom random){
+			Arrays.fill(w, 0);
+			for (int s = 0; s < n_subjects; s++)
+				w[random.nextInt(n_subjects)] += 1.0 / n_subjects;
+			weightedSum(w, t);
+			for (int k = 0; k < n_pairs; k++){
+				sum[k] += t[k];
+				sum_sq[k] += t[k] * t[k];
+				}
+		}
+		
+	}
+	
+	/*********************************
+	 * Returns a symmetric N x N matrix from upper-triangle pair values, with the given diagonal.
+	 * 
+	 */
+	static Matrix toMatrix(int n, double[] pairs, double diagonal){
+		double[][] M = new double[n][n];
+		int k = 0;
+		for (int i = 0; i < n; i++){
+			M[i][i] = diagonal;
+			for (int j = i + 1; j < n; j++){
+				M[i][j] = pairs[k];
+				M[j][i] = pairs[k++];
+				}
+			}
+		return new Matrix(M);
+	}
+	
+	/*********************************
+	 * Result of a permutation test. P-values are computed as (count + 1) / (permutations + 1).
+	 * 
+	 */
+	public static class PermutationResult {
+		
+		final int n, n_permutations;
+		final double[] observed;
+		final int[] counts;
+		final double[] max_null;
+		
+		PermutationResult(int n, int n_permutations){
+			this.n = n;
+			this.n_permutations = n_permutations;
+			observed = new double[n * (n - 1) / 2];
+			counts = new int[observed.length];
+			max_null = new double[n_permutations];
+		}
+		
+		public int getPermutationCount(){
+			return n_permutations;
+		}
+		
+		/** Observed difference in mean Fisher z correlation (group 1 - group 0). */
+		public Matrix getObserved(){
+			return toMatrix(n, observed, Double.NaN);
+		}
+		
+		/** Two-sided p-values, uncorrected for multiple comparisons. */
+		public Matrix getUncorrectedP(){
+			double[] p = new double[observed.length];
+			for (int k = 0; k < p.length; k++)
+				p[k] = Double.isNaN(observed[k]) ? Double.NaN : (counts[k] + 1.0) / (n_permutations + 1.0);
+			return toMatrix(n, p, Double.NaN);
+		}
+		
+		/** Two-sided p-values, corrected for family-wise error using the null distribution of the maximum. */
+		public Matrix getCorrectedP(){
+			double[] sorted = max_null.clone();
+			Arrays.sort(sorted);
+			double[] p = new double[observed.length];
+			for (int k = 0; k < p.length; k++){
+				if (Double.isNaN(observed[k])){
+					p[k] = Double.NaN;
+					continue;
+					}
+				// number of maxima >= |observed|
+				double abs = Math.abs(observed[k]);
+				int lo = 0, hi = sorted.length;
+				while (lo < hi){
+					int mid = (lo + hi) >>> 1;
+					if (sorted[mid] < abs) lo = mid + 1;
+					else hi = mid;
+					}
+				p[k] = (sorted.length - lo + 1.0) / (n_permutations + 1.0);
+				}
+			return toMatrix(n, p, Double.NaN);
+		}
+		
+		/** Maximum absolute difference over all pairs, for each permutation. */
+		public double[] getMaxNull(){
+			return max_null.clone();
+		}
+		
+	}
+	
+	/*********************************
+	 * Result of a bootstrap.
+	 * 
+	 */
+	public static class BootstrapResult {
+		
+		final int n, n_resamples;
+		final double[] observed, sum, sum_sq;
+		
+		BootstrapResult(int n, int n_resamples){
+			this.n = n;
+			this.n_resamples = n_resamples;
+			observed = new double[n * (n - 1) / 2];
+			sum = new double[observed.length];
+			sum_sq = new double[observed.length];
+		}
+		
+		public int getResampleCount(){
+			return n_resamples;
+		}
+		
+		/** Observed mean Fisher z correlation. */
+		public Matrix getObserved(){
+			return toMatrix(n, observed, Double.NaN);
+		}
+		
+		/** Mean of the bootstrapped mean Fisher z correlations. */
+		public Matrix getMean(){
+			double[] mean = new double[sum.length];
+			for (int k = 0; k < mean.length; k++)
+				mean[k] = sum[k] / n_resamples;
+			return toMatrix(n, mean, Double.NaN);
+		}
+		
+		/** Bootstrap standard error of the mean Fisher z correlations. */
+		public Matrix getStandardError(){
+			double[] se = new double[sum.length];
+			for (int k = 0; k < se.length; k++){
+				double mean = sum[k] / n_resamples;
+				double var = (sum_sq[k] - n_resamples * mean * mean) / Math.max(1, n_resamples - 1);
+				se[k] = Math.sqrt(Math.max(0, var));
+				}
+			return toMatrix(n, se, Double.NaN);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,413 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.connectivity;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import mgui.interfaces.ProgressUpdater;
+
+/***************************************************************
+ * A sparse N x N correlation matrix, in which each row retains only the correlations with an absolute 
+ * value above a threshold and/or the {@code top_k} correlations with the largest absolute values. The
+ * diagonal is always stored, and is not counted in {@code top_k}, so that it reads the same as a 
+ * {@link DenseCorrelationFile}. Values which are not stored are read as zero.
+ * 
+ * <p>The file consists of a 24-byte header (magic, version, N, top_k, threshold, reserved), followed 
+ * by the (column, value) pairs of each row, in ascending column order, followed by the N + 1 row 
+ * offsets and the position of these offsets. The row offsets are read into memory when the file is 
+ * opened; rows are read on demand. Since thresholding by rank is not symmetric, 
+ * {@link #getColumn(int, float[])} searches every row, and is much slower than {@link #getRow(int, float[])}.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SparseCorrelationFile extends CorrelationMatrixFile {
+
+	static final int HEADER_BYTES = 24;
+	
+	protected RandomAccessFile raf;
+	protected FileChannel channel;
+	protected long[] row_ptr;
+	protected int top_k;
+	protected float threshold;
+	
+	protected SparseCorrelationFile(){
+		
+	}
+	
+	/*********************************
+	 * Computes the correlation matrix of {@code patches} and writes its retained values to {@code file}.
+	 * The candidates of each row from the bands above it are kept in memory until its band is written; 
+	 * if {@code top_k} is set these are at most 2 * {@code top_k} per row, otherwise they are the 
+	 * retained values below the diagonal band.
+	 * 
+	 * @param patches
+	 * @param file
+	 * @param threshold 	Retain only correlations with an absolute value greater than this
+	 * @param top_k 		If greater than zero, retain at most this many correlations per row
+	 * @param n_threads
+	 * @param progress 		Optional; may be {@code null}
+	 * @return the file, opened for reading, or {@code null} if the process was cancelled or failed
+	 * @throws IOException
+	 */
+	public static SparseCorrelationFile write(CorticalPatchMatrix patches, File file, 
+											  final double threshold, final int top_k,
+											  int n_threads, ProgressUpdater progress) throws IOException{
+		
+		final int n = patches.getPatchCount();
+		final long[] row_ptr = new long[n + 1];
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		boolean success = false;
+		try{
+			raf.setLength(0);
+			final FileChannel channel = raf.getChannel();
+			ByteBuffer header = allocate(HEADER_BYTES);
+			header.putInt(SPARSE_MAGIC).putInt(FILE_VERSION).putInt(n).putInt(top_k)
+				  .putFloat((float)threshold).putInt(0);
+			header.flip();
+			writeFully(channel, header);
+			
+			success = writeBands(patches, new BandWriter(){
+					int band_row0, band_row1;
+					int[][] band_columns;
+					float[][] band_values;
+					// Retained values of each band row in the columns of following bands, to be mirrored
+					int[][] upper_columns;
+					float[][] upper_values;
+					// Mirrored candidates of each row from the bands above it, in columns < its band's row0
+					int[][] lower_columns = new int[n][];
+					float[][] lower_values = new float[n][];
+					int[] lower_count = new int[n];
+					ByteBuffer buffer = allocate(1 << 22);
+					ThreadLocal<int[]> candidates = new ThreadLocal<int[]>(){
+						protected int[] initialValue(){
+							return new int[n];
+						}
+					};
+					
+					void startBand(int row0, int row1){
+						band_row0 = row0;
+						band_row1 = row1;
+						if (band_columns == null || band_columns.length < row1 - row0){
+							band_columns = new int[row1 - row0][];
+							band_values = new float[row1 - row0][];
+							upper_columns = new int[row1 - row0][];
+							upper_values = new float[row1 - row0][];
+							}
+					}
+					
+					void setRow(int i, float[] values, int offset){
+						int[] c = candidates.get();
+						int m = 0;
+						// Columns of previous bands, which are not computed
+						int[] lower = lower_columns[i];
+						for (int k = 0; k < lower_count[i]; k++){
+							values[offset + lower[k]] = lower_values[i][k];
+							c[m++] = lower[k];
+							}
+						for (int j = band_row0; j < n; j++){
+							float v = values[offset + j];
+							if (j != i && Math.abs(v) > threshold)		//false for NaN
+								c[m++] = j;
+							}
+						
+						// Candidates for the rows of following bands, before these are selected
+						int u = 0;
+						for (int k = 0; k < m; k++)
+							if (c[k] >= band_row1) u++;
+						int[] up_columns = new int[u];
+						float[] up_values = new float[u];
+						u = 0;
+						for (int k = 0; k < m; k++)
+							if (c[k] >= band_row1){
+								up_columns[u] = c[k];
+								up_values[u++] = values[offset + c[k]];
+								}
+						upper_columns[i - band_row0] = up_columns;
+						upper_values[i - band_row0] = up_values;
+						
+						if (top_k > 0 && m > top_k){
+							selectLargest(c, m, top_k, values, offset);
+							m = top_k;
+							}
+						c[m++] = i;
+						Arrays.sort(c, 0, m);
+						int[] columns = Arrays.copyOf(c, m);
+						float[] retained = new float[m];
+						for (int k = 0; k < m; k++)
+							retained[k] = values[offset + columns[k]];
+						band_columns[i - band_row0] = columns;
+						band_values[i - band_row0] = retained;
+					}
+					
+					void flush(int row0, int row1) throws IOException{
+						buffer.clear();
+						for (int i = row0; i < row1; i++){
+							int[] columns = band_columns[i - row0];
+							float[] retained = band_values[i - row0];
+							for (int k = 0; k < columns.length; k++){
+								if (buffer.remaining() < 8){
+									buffer.flip();
+									writeFully(channel, buffer);
+									buffer.clear();
+									}
+								buffer.putInt(columns[k]).putFloat(retained[k]);
+								}
+							row_ptr[i + 1] = row_ptr[i] + columns.length;
+							band_columns[i - row0] = null;
+							band_values[i - row0] = null;
+							lower_columns[i] = null;
+							lower_values[i] = null;
+							
+							int[] up_columns = upper_columns[i - row0];
+							float[] up_values = upper_values[i - row0];
+							for (int k = 0; k < up_columns.length; k++)
+								addLower(up_columns[k], i, up_values[k]);
+							upper_columns[i - row0] = null;
+							upper_values[i - row0] = null;
+							}
+						buffer.flip();
+						writeFully(channel, buffer);
+					}
+					
+					// Adds the mirrored value (j, i) to row j; if rows are ranked, only the top_k largest
+					// candidates of row j can be retained, so the rest are discarded
+					void addLower(int j, int i, float v){
+						int m = lower_count[j];
+						if (lower_columns[j] == null){
+							lower_columns[j] = new int[top_k > 0 ? 2 * top_k : 16];
+							lower_values[j] = new float[lower_columns[j].length];
+						}else if (m == lower_columns[j].length){
+							if (top_k > 0){
+								m = selectLargest(lower_columns[j], lower_values[j], m, top_k);
+							}else{
+								lower_columns[j] = Arrays.copyOf(lower_columns[j], 2 * m);
+								lower_values[j] = Arrays.copyOf(lower_values[j], 2 * m);
+								}
+							}
+						lower_columns[j][m] = i;
+						lower_values[j][m] = v;
+						lower_count[j] = m + 1;
+					}
+				}, n_threads, progress);
+			
+			if (success){
+				// Footer: row offsets and their position
+				long position = channel.position();
+				ByteBuffer buffer = allocate(8 * 4096);
+				for (int i = 0; i <= n; i++){
+					if (buffer.remaining() < 8){
+						buffer.flip();
+						writeFully(channel, buffer);
+						buffer.clear();
+						}
+					buffer.putLong(row_ptr[i]);
+					}
+				buffer.putLong(position);
+				buffer.flip();
+				writeFully(channel, buffer);
+				}
+		}finally{
+			raf.close();
+			if (!success) file.delete();
+			}
+		
+		if (!success) return null;
+		return open(file);
+	}
+	
+	/*********************************
+	 * Partially sorts the pairs {@code (columns[0, m), values[0, m))} so that the first {@code k} are those
+	 * with the largest absolute values.
+	 * 
+	 * @return {@code k}
+	 */
+	static int selectLargest(int[] columns, float[] values, int m, int k){
+		int[] indices = new int[m];
+		for (int i = 0; i < m; i++)
+			indices[i] = i;
+		selectLargest(indices, m, k, values, 0);
+		int[] c = new int[k];
+		float[] v = new float[k];
+		for (int i = 0; i < k; i++){
+			c[i] = columns[indices[i]];
+			v[i] = values[indices[i]];
+			}
+		System.arraycopy(c, 0, columns, 0, k);
+		System.arraycopy(v, 0, values, 0, k);
+		return k;
+	}
+	
+	/*********************************
+	 * Partially sorts {@code indices[0, m)} so that the first {@code k} are those with the largest absolute
+	 * values of {@code values[offset + index]} (quickselect).
+	 * 
+	 */
+	static void selectLargest(int[] indices, int m, int k, float[] values, int offset){
+		int lo = 0, hi = m - 1;
+		while (lo < hi){
+			float pivot = Math.abs(values[offset + indices[(lo + hi) >>> 1]]);
+			int i = lo, j = hi;
+			while (i <= j){
+				while (Math.abs(values[offset + indices[i]]) > pivot) i++;
+				while (Math.abs(values[offset + indices[j]]) < pivot) j--;
+				if (i <= j){
+					int temp = indices[i];
+					indices[i++] = indices[j];
+					indices[j--] = temp;
+					}
+				}
+			if (k - 1 <= j) hi = j;
+			else if (k - 1 >= i) lo = i;
+			else break;
+			}
+	}
+	
+	/*********************************
+	 * Opens a sparse correlation file for reading.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException if the file is not a valid sparse correlation file
+	 */
+	public static SparseCorrelationFile open(File file) throws IOException{
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = allocate(HEADER_BYTES);
+			readFully(channel, header, 0);
+			if (header.getInt() != SPARSE_MAGIC || header.getInt() != FILE_VERSION)
+				throw new IOException("Not a sparse correlation file, or unsupported version.");
+			SparseCorrelationFile matrix = new SparseCorrelationFile();
+			matrix.n = header.getInt();
+			matrix.top_k = header.getInt();
+			matrix.threshold = header.getFloat();
+			
+			ByteBuffer buffer = allocate(8);
+			readFully(channel, buffer, channel.size() - 8);
+			long position = buffer.getLong();
+			if (matrix.n < 0 || position != channel.size() - 8L * (matrix.n + 2))
+				throw new IOException("Correlation file is truncated or corrupt.");
+			
+			buffer = allocate(8 * (matrix.n + 1));
+			readFully(channel, buffer, position);
+			matrix.row_ptr = new long[matrix.n + 1];
+			buffer.asLongBuffer().get(matrix.row_ptr);
+			if (HEADER_BYTES + 8 * matrix.row_ptr[matrix.n] != position)
+				throw new IOException("Correlation file is truncated or corrupt.");
+			
+			matrix.raf = raf;
+			matrix.channel = channel;
+			return matrix;
+		}catch (IOException ex){
+			raf.close();
+			throw ex;
+			}
+	}
+	
+	public int getTopK(){
+		return top_k;
+	}
+	
+	public float getThreshold(){
+		return threshold;
+	}
+	
+	/*********************************
+	 * Returns the number of values retained for row {@code i}.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public int getRowCount(int i){
+		return (int)(row_ptr[i + 1] - row_ptr[i]);
+	}
+	
+	/*********************************
+	 * Reads the retained values of row {@code i}, in ascending column order, into {@code columns} and
+	 * {@code values}, which must have length at least {@link #getRowCount(int)}.
+	 * 
+	 * @param i
+	 * @param columns
+	 * @param values
+	 * @return the number of values read
+	 * @throws IOException
+	 */
+	public int getRowEntries(int i, int[] columns, float[] values) throws IOException{
+		int m = getRowCount(i);
+		if (m == 0) return 0;
+		ByteBuffer buffer = allocate(8 * m);
+		readFully(channel, buffer, HEADER_BYTES + 8 * row_ptr[i]);
+		for (int k = 0; k < m; k++){
+			columns[k] = buffer.getInt();
+			values[k] = buffer.getFloat();
+			}
+		return m;
+	}
+	
+	@Override
+	public float get(int i, int j) throws IOException{
+		int m = getRowCount(i);
+		int[] columns = new int[m];
+		float[] values = new float[m];
+		getRowEntries(i, columns, values);
+		int k = Arrays.binarySearch(columns, 0, m, j);
+		return k < 0 ? 0 : values[k];
+	}
+	
+	@Override
+	public void getRow(int i, float[] row) throws IOException{
+		Arrays.fill(row, 0, n, 0);
+		int m = getRowCount(i);
+		int[] columns = new int[m];
+		float[] values = new float[m];
+		getRowEntries(i, columns, values);
+		for (int k = 0; k < m; k++)
+			row[columns[k]] = values[k];
+	}
+	
+	@Override
+	public void getColumn(int j, float[] column) throws IOException{
+		int max = 0;
+		for (int i = 0; i < n; i++)
+			max = Math.max(max, getRowCount(i));
+		int[] columns = new int[max];
+		float[] values = new float[max];
+		for (int i = 0; i < n; i++){
+			int m = getRowEntries(i, columns, values);
+			int k = Arrays.binarySearch(columns, 0, m, j);
+			column[i] = k < 0 ? 0 : values[k];
+			}
+	}
+	
+	@Override
+	public void close() throws IOException{
+		raf.close();
+	}
+	
+}
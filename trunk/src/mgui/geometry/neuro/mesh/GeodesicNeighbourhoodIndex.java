@@ -0,0 +1,511 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mgui.geometry.Mesh3D;
+import mgui.geometry.neuro.ParallelWorkers;
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
+import mgui.interfaces.logs.LoggingType;
+
+/********************************************************
+ * Index of the geodesic neighbourhood of every vertex of a {@link Mesh3D}: all vertices within a 
+ * maximum surface distance (shortest path along mesh edges; see {@link GeodesicSearch}), up to a maximum
+ * count. Neighbourhoods are stored in compressed sparse row (CSR) form; each row includes the vertex 
+ * itself and is sorted by increasing distance, so that the neighbourhood for any smaller radius or count 
+ * is a prefix of the row (see {@link #getCount(int, double, int)}). Distances are stored in single
+ * precision.
+ * 
+ * <p>Neighbourhoods are computed in parallel, with a bounded Dijkstra search per vertex. Since this
+ * is expensive for large meshes, indices obtained with {@link #getIndex(Mesh3D, double, int, ProgressUpdater)}
+ * are cached: in memory, for the most recent index, and on disk in {@link #cache_dir}, keyed by a hash of 
+ * the mesh geometry, the radius and the count.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class GeodesicNeighbourhoodIndex {
+
+	/** Directory in which indices are cached; set to <code>null</code> to disable disk caching. */
+	public static File cache_dir = new File(System.getProperty("java.io.tmpdir"), "mgui_geodesic");
+	/** Number of threads used to build indices. */
+	public static int index_threads = Runtime.getRuntime().availableProcessors();
+	/** Number of vertices searched per work unit. */
+	static final int INDEX_BLOCK = 512;
+	
+	static final int FILE_MAGIC = 0x47454F44;		//"GEOD"
+	static final int FILE_VERSION = 1;
+	
+	static SoftReference<GeodesicNeighbourhoodIndex> last_index;
+	
+	protected final int n;
+	protected final long mesh_hash;
+	protected final double radius;
+	protected final int max_count;
+	protected final int[] row_ptr;
+	protected final int[] col_idx;
+	protected final float[] distances;
+	
+	protected GeodesicNeighbourhoodIndex(long mesh_hash, double radius, int max_count, 
+										 int[] row_ptr, int[] col_idx, float[] distances){
+		this.n = row_ptr.length - 1;
+		this.mesh_hash = mesh_hash;
+		this.radius = radius;
+		this.max_count = max_count;
+		this.row_ptr = row_ptr;
+		this.col_idx = col_idx;
+		this.distances = distances;
+	}
+	
+	/*********************************
+	 * Returns an index for <code>mesh</code> with at least the given radius and count, from the 
+	 * memory or disk cache if possible, otherwise by building it (and caching it).
+	 * 
+	 * @param mesh
+	 * @param radius 		Maximum distance; may be <code>Double.POSITIVE_INFINITY</code>
+	 * @param max_count 	Maximum neighbourhood size, including the vertex itself; may be 
+	 * 						<code>Integer.MAX_VALUE</code>
+	 * @param progress 		Optional progress updater; may be <code>null</code>
+	 * @return the index, or <code>null</code> if it was cancelled or failed
+	 */
+	public static GeodesicNeighbourhoodIndex getIndex(Mesh3D mesh, double radius, int max_count, 
+													  ProgressUpdater progress){
+		
+		long hash = getMeshHash(mesh);
+		
+		synchronized (GeodesicNeighbourhoodIndex.class){
+			GeodesicNeighbourhoodIndex index = last_index == null ? null : last_index.get();
+			if (index != null && index.covers(hash, radius, max_count))
+				return index;
+			}
+		
+		File file = getCacheFile(hash, radius, max_count);
+		GeodesicNeighbourhoodIndex index = null;
+		if (file != null && file.exists()){
+			try{
+				index = read(file);
+				if (!index.covers(hash, radius, max_count)) index = null;
+			}catch (IOException ex){
+				InterfaceSession.log("GeodesicNeighbourhoodIndex: Could not read cached index '" + 
+									 file.getAbsolutePath() + "': " + ex.getMessage(), 
+									 LoggingType.Errors);
+				index = null;
+				}
+			}
+		
+		if (index == null){
+			index = build(mesh, radius, max_count, index_threads, progress);
+			if (index == null) return null;
+			if (file != null){
+				try{
+					index.write(file);
+				}catch (IOException ex){
+					InterfaceSession.log("GeodesicNeighbourhoodIndex: Could not cache index to '" + 
+										 file.getAbsolutePath() + "': " + ex.getMessage(), 
+										 LoggingType.Errors);
+					}
+				}
+			}
+		
+		synchronized (GeodesicNeighbourhoodIndex.class){
+			last_index = new SoftReference<GeodesicNeighbourhoodIndex>(index);
+			}
+		return index;
+	}
+	
+	/*********************************
+	 * Builds an index for <code>mesh</code>, without caching, on <code>n_threads</code> threads. Each
+	 * thread searches blocks of vertices into per-block buffers, which are assembled into CSR arrays once 
+	 * all searches are done.
+	 * 
+	 * @param mesh
+	 * @param radius
+	 * @param max_count
+	 * @param n_threads
+	 * @param progress 		Optional progress updater; may be <code>null</code>
+	 * @return the index, or <code>null</code> if it was cancelled or failed
+	 */
+	public static GeodesicNeighbourhoodIndex build(Mesh3D mesh, double radius, int max_count, 
+												   int n_threads, ProgressUpdater progress){
+		
+		int n = mesh.n;
+		int n_blocks = (n + INDEX_BLOCK - 1) / INDEX_BLOCK;
+		MeshAdjacency adjacency = new MeshAdjacency(mesh);
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(n);
+			}
+		
+		n_threads = Math.max(1, Math.min(n_threads, n_blocks));
+		IndexWorker[] workers = new IndexWorker[n_threads];
+		int[] counts = new int[n];
+		int[][] block_indices = new int[n_blocks][];
+		float[][] block_distances = new float[n_blocks][];
+		AtomicInteger next_block = new AtomicInteger(0);
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		for (int t = 0; t < n_threads; t++){
+			IndexWorker worker = new IndexWorker(new GeodesicSearch(mesh, adjacency), radius, max_count);
+			worker.counts = counts;
+			worker.block_indices = block_indices;
+			worker.block_distances = block_distances;
+			worker.next_block = next_block;
+			worker.done = done;
+			worker.cancelled = cancelled;
+			workers[t] = worker;
+			}
+		if (n_threads == 1)
+			workers[0].progress = progress;
+		
+		if (!ParallelWorkers.run(workers, progress, done, cancelled, "GeodesicNeighbourhoodIndex.buildGeodesicIndex"))
+			return null;
+		
+		// Assemble CSR arrays
+		int[] row_ptr = new int[n + 1];
+		long nnz = 0;
+		for (int i = 0; i < n; i++){
+			nnz += counts[i];
+			if (nnz > Integer.MAX_VALUE){
+				InterfaceSession.log("GeodesicNeighbourhoodIndex: Index too large (> " + Integer.MAX_VALUE + 
+									 " entries); reduce the radius or count.", 
+									 LoggingType.Errors);
+				return null;
+				}
+			row_ptr[i + 1] = (int)nnz;
+			}
+		int[] col_idx = new int[(int)nnz];
+		float[] distances = new float[(int)nnz];
+		for (int b = 0; b < n_blocks; b++){
+			int offset = row_ptr[b * INDEX_BLOCK];
+			System.arraycopy(block_indices[b], 0, col_idx, offset, block_indices[b].length);
+			System.arraycopy(block_distances[b], 0, distances, offset, block_distances[b].length);
+			block_indices[b] = null;
+			block_distances[b] = null;
+			}
+		
+		return new GeodesicNeighbourhoodIndex(getMeshHash(mesh), radius, max_count, row_ptr, col_idx, distances);
+	}
+	
+	/*********************************
+	 * Searches blocks of vertices, taken from a shared counter, into per-block buffers.
+	 * 
+	 */
+	static class IndexWorker implements Runnable {
+		
+		final GeodesicSearch search;
+		final double radius;
+		final int max_count;
+		
+		int[] counts;
+		int[][] block_indices;
+		float[][] block_distances;
+		
+		AtomicInteger next_block, done;
+		AtomicBoolean cancelled;
+		
+		//only set when run on the calling thread
+		ProgressUpdater progress;
+		
+		//scratch
+		int[] indices = new int[INDEX_BLOCK * 16];
+		float[] dists = new float[INDEX_BLOCK * 16];
+		
+		IndexWorker(GeodesicSearch search, double radius, int max_count){
+			this.search = search;
+			this.radius = radius;
+			this.max_count = max_count;
+		}
+		
+		public void run(){
+			int n = counts.length;
+			int block;
+			while (!cancelled.get() && (block = next_block.getAndIncrement()) * INDEX_BLOCK < n){
+				int start = block * INDEX_BLOCK;
+				int end = Math.min(start + INDEX_BLOCK, n);
+				int size = 0;
+				for (int i = start; i < end; i++){
+					int count = search.search(i, radius, max_count);
+					if (size + count > indices.length){
+						int length = Math.max(indices.length * 2, size + count);
+						indices = Arrays.copyOf(indices, length);
+						dists = Arrays.copyOf(dists, length);
+						}
+					int[] idx = search.getIndices();
+					double[] d = search.getDistances();
+					for (int k = 0; k < count; k++){
+						indices[size + k] = idx[k];
+						dists[size + k] = (float)d[k];
+						}
+					counts[i] = count;
+					size += count;
+					}
+				block_indices[block] = Arrays.copyOf(indices, size);
+				block_distances[block] = Arrays.copyOf(dists, size);
+				int d = done.addAndGet(end - start);
+				if (progress != null){
+					if (progress.isCancelled())
+						cancelled.set(true);
+					else
+						progress.update(d);
+					}
+				}
+		}
+		
+	}
+	
+	/*********************************
+	 * Determines whether this index contains the neighbourhoods for the given mesh hash, radius and count.
+	 * 
+	 */
+	protected boolean covers(long hash, double radius, int max_count){
+		return hash == mesh_hash && this.radius >= radius && this.max_count >= max_count;
+	}
+	
+	public int getVertexCount(){
+		return n;
+	}
+	
+	public double getRadius(){
+		return radius;
+	}
+	
+	public int getMaxCount(){
+		return max_count;
+	}
+	
+	/*********************************
+	 * Returns the size of the neighbourhood of vertex <code>i</code>, including <code>i</code> itself.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public int getCount(int i){
+		return row_ptr[i + 1] - row_ptr[i];
+	}
+	
+	/*********************************
+	 * Returns the size of the neighbourhood of vertex <code>i</code> restricted to <code>radius</code>
+	 * and <code>max_count</code>, which may be smaller than those of this index. This is the length of 
+	 * the corresponding prefix of the row.
+	 * 
+	 * @param i
+	 * @param radius
+	 * @param max_count
+	 * @return
+	 */
+	public int getCount(int i, double radius, int max_count){
+		int start = row_ptr[i];
+		int end = start + Math.min(row_ptr[i + 1] - start, max_count);
+		if (radius >= this.radius) return end - start;
+		int lo = start, hi = end;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (distances[mid] <= radius) lo = mid + 1;
+			else hi = mid;
+			}
+		return lo - start;
+	}
+	
+	/*********************************
+	 * Returns the CSR row pointers; the neighbourhood of vertex <code>i</code> occupies entries 
+	 * [<code>row_ptr[i]</code>, <code>row_ptr[i + 1]</code>) of {@link #getNeighbourIndices()} and
+	 * {@link #getDistances()}. The array is not copied, and must not be modified.
+	 * 
+	 * @return
+	 */
+	public int[] getRowPointers(){
+		return row_ptr;
+	}
+	
+	/*********************************
+	 * Returns the CSR neighbour indices. The array is not copied, and must not be modified.
+	 * 
+	 * @return
+	 */
+	public int[] getNeighbourIndices(){
+		return col_idx;
+	}
+	
+	/*********************************
+	 * Returns the CSR neighbour distances. The array is not copied, and must not be modified.
+	 * 
+	 * @return
+	 */
+	public float[] getDistances(){
+		return distances;
+	}
+	
+	/*********************************
+	 * Computes a 64-bit FNV-1a hash of the vertex coordinates and faces of <code>mesh</code>.
+	 * 
+	 * @param mesh
+	 * @return
+	 */
+	public static long getMeshHash(Mesh3D mesh){
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, mesh.n);
+		for (int i = 0; i < mesh.n * 3; i++)
+			hash = hash(hash, Float.floatToIntBits(mesh.nodes[i]));
+		hash = hash(hash, mesh.f);
+		for (int i = 0; i < mesh.f * 3; i++)
+			hash = hash(hash, mesh.faces[i]);
+		return hash;
+	}
+	
+	static long hash(long hash, int value){
+		for (int b = 0; b < 4; b++){
+			hash ^= (value >>> (b * 8)) & 0xff;
+			hash *= 0x100000001b3L;
+			}
+		return hash;
+	}
+	
+	static File getCacheFile(long hash, double radius, int max_count){
+		if (cache_dir == null) return null;
+		if (!cache_dir.exists() && !cache_dir.mkdirs()) return null;
+		String r = Double.isInfinite(radius) ? "inf" : Long.toHexString(Double.doubleToLongBits(radius));
+		String c = max_count == Integer.MAX_VALUE ? "all" : String.valueOf(max_count);
+		return new File(cache_dir, "geodesic_" + Long.toHexString(hash) + "_" + r + "_" + c + ".idx");
+	}
+	
+	/*********************************
+	 * Writes this index to <code>file</code>. The index is written to a temporary file which is then
+	 * renamed, so that concurrent readers never see a partial file.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException{
+		File temp = new File(file.getParentFile(), file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(mesh_hash).putDouble(radius)
+				  .putInt(max_count).putInt(n).putInt(col_idx.length);
+			header.flip();
+			while (header.hasRemaining()) channel.write(header);
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			writeInts(channel, buffer, row_ptr);
+			writeInts(channel, buffer, col_idx);
+			for (int i = 0; i < distances.length; ){
+				buffer.clear();
+				int len = Math.min(distances.length - i, buffer.capacity() / 4);
+				buffer.asFloatBuffer().put(distances, i, len);
+				buffer.limit(len * 4);
+				while (buffer.hasRemaining()) channel.write(buffer);
+				i += len;
+				}
+		}finally{
+			raf.close();
+			}
+		if (file.exists()) file.delete();
+		if (!temp.renameTo(file)){
+			temp.delete();
+			throw new IOException("Could not rename '" + temp.getAbsolutePath() + "'.");
+			}
+	}
+	
+	static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException{
+		for (int i = 0; i < values.length; ){
+			buffer.clear();
+			int len = Math.min(values.length - i, buffer.capacity() / 4);
+			buffer.asIntBuffer().put(values, i, len);
+			buffer.limit(len * 4);
+			while (buffer.hasRemaining()) channel.write(buffer);
+			i += len;
+			}
+	}
+	
+	/*********************************
+	 * Reads an index from <code>file</code>.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException if the file is not a valid index
+	 */
+	public static GeodesicNeighbourhoodIndex read(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header);
+			if (header.getInt() != FILE_MAGIC || header.getInt() != FILE_VERSION)
+				throw new IOException("Not a geodesic index file, or unsupported version.");
+			long hash = header.getLong();
+			double radius = header.getDouble();
+			int max_count = header.getInt();
+			int n = header.getInt();
+			int nnz = header.getInt();
+			if (n < 0 || nnz < 0 || channel.size() != 36L + 4L * (n + 1) + 8L * nnz)
+				throw new IOException("Index file is truncated or corrupt.");
+			
+			int[] row_ptr = new int[n + 1];
+			int[] col_idx = new int[nnz];
+			float[] distances = new float[nnz];
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			readInts(channel, buffer, row_ptr);
+			readInts(channel, buffer, col_idx);
+			for (int i = 0; i < nnz; ){
+				int len = Math.min(nnz - i, buffer.capacity() / 4);
+				buffer.clear().limit(len * 4);
+				readFully(channel, buffer);
+				buffer.asFloatBuffer().get(distances, i, len);
+				i += len;
+				}
+			return new GeodesicNeighbourhoodIndex(hash, radius, max_count, row_ptr, col_idx, distances);
+		}finally{
+			raf.close();
+			}
+	}
+	
+	static void readInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException{
+		for (int i = 0; i < values.length; ){
+			int len = Math.min(values.length - i, buffer.capacity() / 4);
+			buffer.clear().limit(len * 4);
+			readFully(channel, buffer);
+			buffer.asIntBuffer().get(values, i, len);
+			i += len;
+			}
+	}
+	
+	static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException{
+		while (buffer.hasRemaining())
+			if (channel.read(buffer) < 0) throw new IOException("Unexpected end of file.");
+		buffer.flip();
+	}
+	
+}
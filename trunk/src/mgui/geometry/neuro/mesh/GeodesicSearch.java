@@ -0,0 +1,215 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.util.Arrays;
+
+import mgui.geometry.Mesh3D;
+
+/********************************************************
+ * Bounded shortest-path search over the edges of a {@link Mesh3D}, as an approximation of geodesic 
+ * distance along the surface. Starting from a source vertex, vertices are settled in order of increasing
+ * distance (Dijkstra's algorithm), until either a maximum distance or a maximum number of vertices is
+ * reached. Edge lengths are Euclidean distances between vertices.
+ * 
+ * <p>Scratch arrays are allocated once per instance and reset only where touched, so a search costs 
+ * time proportional to the size of the neighbourhood found, not the size of the mesh. Instances are
+ * not thread-safe; use one per thread. The adjacency can be shared.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class GeodesicSearch {
+
+	protected final float[] nodes;
+	protected final MeshAdjacency adjacency;
+	
+	//scratch
+	protected final double[] distance;
+	protected final boolean[] settled;
+	protected int[] touched = new int[64];
+	protected int n_touched;
+	
+	//binary heap, with lazy deletion
+	protected double[] heap_keys = new double[64];
+	protected int[] heap_vertices = new int[64];
+	protected int heap_size;
+	
+	//results
+	protected int[] result_indices = new int[64];
+	protected double[] result_distances = new double[64];
+	protected int n_results;
+	
+	public GeodesicSearch(Mesh3D mesh){
+		this(mesh, new MeshAdjacency(mesh));
+	}
+	
+	public GeodesicSearch(Mesh3D mesh, MeshAdjacency adjacency){
+		this.nodes = mesh.nodes;
+		this.adjacency = adjacency;
+		distance = new double[mesh.n];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		settled = new boolean[mesh.n];
+	}
+	
+	public MeshAdjacency getAdjacency(){
+		return adjacency;
+	}
+	
+	/*********************************
+	 * Finds the vertices within <code>max_distance</code> of <code>source</code>, up to a maximum of 
+	 * <code>max_count</code> (including <code>source</code> itself), in order of increasing distance. 
+	 * Results are available from {@link #getIndices()} and {@link #getDistances()}, until the next 
+	 * search.
+	 * 
+	 * @param source
+	 * @param max_distance 		Maximum distance; may be <code>Double.POSITIVE_INFINITY</code>
+	 * @param max_count 		Maximum number of vertices; may be <code>Integer.MAX_VALUE</code>
+	 * @return the number of vertices found
+	 */
+	public int search(int source, double max_distance, int max_count){
+		
+		reset();
+		int[] row_ptr = adjacency.row_ptr;
+		int[] col_idx = adjacency.col_idx;
+		
+		touch(source, 0);
+		push(0, source);
+		
+		while (heap_size > 0 && n_results < max_count){
+			double d = heap_keys[0];
+			int v = heap_vertices[0];
+			pop();
+			if (settled[v] || d > distance[v]) continue;
+			settled[v] = true;
+			addResult(v, d);
+			
+			float x = nodes[v * 3], y = nodes[v * 3 + 1], z = nodes[v * 3 + 2];
+			for (int p = row_ptr[v]; p < row_ptr[v + 1]; p++){
+				int u = col_idx[p];
+				if (settled[u]) continue;
+				double dx = nodes[u * 3] - x, dy = nodes[u * 3 + 1] - y, dz = nodes[u * 3 + 2] - z;
+				double du = d + Math.sqrt(dx * dx + dy * dy + dz * dz);
+				if (du <= max_distance && du < distance[u]){
+					touch(u, du);
+					push(du, u);
+					}
+				}
+			}
+		
+		return n_results;
+	}
+	
+	/*********************************
+	 * Returns the number of vertices found by the last search.
+	 * 
+	 * @return
+	 */
+	public int getCount(){
+		return n_results;
+	}
+	
+	/*********************************
+	 * Returns the vertices found by the last search, in order of increasing distance; only the first
+	 * {@link #getCount()} entries are valid. This is a scratch array, which is overwritten by the next 
+	 * search.
+	 * 
+	 * @return
+	 */
+	public int[] getIndices(){
+		return result_indices;
+	}
+	
+	/*********************************
+	 * Returns the distances of the vertices found by the last search; only the first 
+	 * {@link #getCount()} entries are valid. This is a scratch array, which is overwritten by the next 
+	 * search.
+	 * 
+	 * @return
+	 */
+	public double[] getDistances(){
+		return result_distances;
+	}
+	
+	protected void reset(){
+		for (int i = 0; i < n_touched; i++){
+			distance[touched[i]] = Double.POSITIVE_INFINITY;
+			settled[touched[i]] = false;
+			}
+		n_touched = 0;
+		heap_size = 0;
+		n_results = 0;
+	}
+	
+	protected void touch(int v, double d){
+		if (distance[v] == Double.POSITIVE_INFINITY){
+			if (n_touched == touched.length)
+				touched = Arrays.copyOf(touched, n_touched * 2);
+			touched[n_touched++] = v;
+			}
+		distance[v] = d;
+	}
+	
+	protected void addResult(int v, double d){
+		if (n_results == result_indices.length){
+			result_indices = Arrays.copyOf(result_indices, n_results * 2);
+			result_distances = Arrays.copyOf(result_distances, n_results * 2);
+			}
+		result_indices[n_results] = v;
+		result_distances[n_results++] = d;
+	}
+	
+	protected void push(double key, int v){
+		if (heap_size == heap_keys.length){
+			heap_keys = Arrays.copyOf(heap_keys, heap_size * 2);
+			heap_vertices = Arrays.copyOf(heap_vertices, heap_size * 2);
+			}
+		int i = heap_size++;
+		while (i > 0){
+			int parent = (i - 1) >>> 1;
+			if (heap_keys[parent] <= key) break;
+			heap_keys[i] = heap_keys[parent];
+			heap_vertices[i] = heap_vertices[parent];
+			i = parent;
+			}
+		heap_keys[i] = key;
+		heap_vertices[i] = v;
+	}
+	
+	protected void pop(){
+		double key = heap_keys[--heap_size];
+		int v = heap_vertices[heap_size];
+		int i = 0;
+		while (true){
+			int child = 2 * i + 1;
+			if (child >= heap_size) break;
+			if (child + 1 < heap_size && heap_keys[child + 1] < heap_keys[child]) child++;
+			if (key <= heap_keys[child]) break;
+			heap_keys[i] = heap_keys[child];
+			heap_vertices[i] = heap_vertices[child];
+			i = child;
+			}
+		heap_keys[i] = key;
+		heap_vertices[i] = v;
+	}
+	
+}
@@ -0,0 +1,118 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import mgui.geometry.Mesh3D;
+import mgui.geometry.mesh.NeighbourhoodMesh;
+
+/********************************************************
+ * Vertex adjacency of a {@link Mesh3D}, in compressed sparse row form: the neighbours of vertex 
+ * <code>i</code> are <code>col_idx[row_ptr[i]]</code> to <code>col_idx[row_ptr[i + 1] - 1]</code>, in the
+ * order given by {@link NeighbourhoodMesh}. Compared to a {@link NeighbourhoodMesh}, this holds two
+ * primitive arrays rather than an object per vertex, and can be traversed without allocation.
+ * 
+ * <p>Instances are immutable, and can be shared between threads.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class MeshAdjacency {
+
+	protected final int[] row_ptr, col_idx;
+	
+	/*********************************
+	 * Builds the adjacency of <code>mesh</code>.
+	 * 
+	 * @param mesh
+	 */
+	public MeshAdjacency(Mesh3D mesh){
+		this(new NeighbourhoodMesh(mesh), mesh.n);
+	}
+	
+	/*********************************
+	 * Builds the adjacency of the first <code>n</code> vertices of <code>n_mesh</code>.
+	 * 
+	 * @param n_mesh
+	 * @param n
+	 */
+	public MeshAdjacency(NeighbourhoodMesh n_mesh, int n){
+		int[][] lists = new int[n][];
+		row_ptr = new int[n + 1];
+		for (int i = 0; i < n; i++){
+			lists[i] = n_mesh.getNeighbourhood(i).getNeighbourList();
+			row_ptr[i + 1] = row_ptr[i] + lists[i].length;
+			}
+		col_idx = new int[row_ptr[n]];
+		for (int i = 0; i < n; i++)
+			System.arraycopy(lists[i], 0, col_idx, row_ptr[i], lists[i].length);
+	}
+	
+	/*********************************
+	 * Creates an adjacency from CSR arrays, which are not copied.
+	 * 
+	 * @param row_ptr
+	 * @param col_idx
+	 */
+	public MeshAdjacency(int[] row_ptr, int[] col_idx){
+		this.row_ptr = row_ptr;
+		this.col_idx = col_idx;
+	}
+	
+	public int getVertexCount(){
+		return row_ptr.length - 1;
+	}
+	
+	public int getNeighbourCount(int i){
+		return row_ptr[i + 1] - row_ptr[i];
+	}
+	
+	/*********************************
+	 * Returns the neighbours of vertex <code>i</code> as a new array.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public int[] getNeighbours(int i){
+		int[] nbrs = new int[row_ptr[i + 1] - row_ptr[i]];
+		System.arraycopy(col_idx, row_ptr[i], nbrs, 0, nbrs.length);
+		return nbrs;
+	}
+	
+	/*********************************
+	 * Returns the row pointer array; this is the backing array, not a copy.
+	 * 
+	 * @return
+	 */
+	public int[] getRowPointers(){
+		return row_ptr;
+	}
+	
+	/*********************************
+	 * Returns the column index array; this is the backing array, not a copy.
+	 * 
+	 * @return
+	 */
+	public int[] getColumnIndices(){
+		return col_idx;
+	}
+	
+}
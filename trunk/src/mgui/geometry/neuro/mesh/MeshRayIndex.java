@@ -0,0 +1,333 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.util.Arrays;
+
+import org.jogamp.vecmath.Point3f;
+import org.jogamp.vecmath.Vector3f;
+
+import mgui.geometry.Mesh3D;
+import mgui.geometry.mesh.MeshFunctions;
+
+/********************************************************
+ * Bounding volume hierarchy over the faces of a {@link Mesh3D}, used to speed up repeated ray 
+ * intersection queries against the same surface. An index is built once, in O(f log f) time for f
+ * faces; each query then only visits the boxes its line passes through.
+ * 
+ * <p>Queries are conservative: {@link #getCandidateFaces} returns every face whose (slightly 
+ * inflated) bounding box meets the infinite line through the ray, in ascending face order. 
+ * {@link #getIntersectionPoint} passes only these faces to 
+ * {@link MeshFunctions#getIntersectionPoint(Mesh3D, Point3f, Vector3f)}, so its results are 
+ * identical to querying the full mesh.
+ * 
+ * <p>The index does not track changes to the mesh; it must be rebuilt if vertices or faces change. 
+ * Queries are thread-safe.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class MeshRayIndex {
+
+	/** Maximum number of faces in a leaf node */
+	static final int LEAF_SIZE = 8;
+	
+	protected final Mesh3D mesh;
+	protected final int n_faces;
+	
+	//node boxes, as min x, y, z, max x, y, z
+	protected float[] bounds;
+	//for internal nodes, the index of the first child (the second is first + 1); -1 for leaves
+	protected int[] child;
+	//for leaves, the range of face_order covered
+	protected int[] first, count;
+	protected int n_nodes;
+	
+	protected int[] face_order;
+	protected float[] face_bounds;
+	protected float epsilon;
+	
+	/*********************************
+	 * Builds an index for the faces of <code>mesh</code>.
+	 * 
+	 * @param mesh
+	 */
+	public MeshRayIndex(Mesh3D mesh){
+		this.mesh = mesh;
+		this.n_faces = mesh.f;
+		build();
+	}
+	
+	/*********************************
+	 * Returns the mesh indexed by this object.
+	 * 
+	 * @return
+	 */
+	public Mesh3D getMesh(){
+		return mesh;
+	}
+	
+	protected void build(){
+		
+		float[] nodes = mesh.nodes;
+		int[] faces = mesh.faces;
+		
+		face_bounds = new float[n_faces * 6];
+		float[] centroids = new float[n_faces * 3];
+		face_order = new int[n_faces];
+		
+		float[] root = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, 
+						-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+		
+		for (int i = 0; i < n_faces; i++){
+			face_order[i] = i;
+			int b = i * 6;
+			for (int a = 0; a < 3; a++){
+				face_bounds[b + a] = Float.MAX_VALUE;
+				face_bounds[b + a + 3] = -Float.MAX_VALUE;
+				}
+			for (int v = 0; v < 3; v++){
+				int node = faces[i * 3 + v] * 3;
+				for (int a = 0; a < 3; a++){
+					float x = nodes[node + a];
+					face_bounds[b + a] = Math.min(face_bounds[b + a], x);
+					face_bounds[b + a + 3] = Math.max(face_bounds[b + a + 3], x);
+					}
+				}
+			for (int a = 0; a < 3; a++){
+				centroids[i * 3 + a] = (face_bounds[b + a] + face_bounds[b + a + 3]) / 2f;
+				root[a] = Math.min(root[a], face_bounds[b + a]);
+				root[a + 3] = Math.max(root[a + 3], face_bounds[b + a + 3]);
+				}
+			}
+		
+		//boxes are inflated by a small fraction of the mesh extent, so that rounding can't 
+		//exclude a face that the intersection routine would accept 
+		float extent = 0;
+		for (int a = 0; a < 3; a++)
+			extent = Math.max(extent, root[a + 3] - root[a]);
+		epsilon = Math.max(extent * 1e-5f, Float.MIN_NORMAL);
+		
+		//split nodes have more than LEAF_SIZE faces, so each leaf has at least LEAF_SIZE / 2
+		int max_nodes = 2 * (n_faces / (LEAF_SIZE / 2) + 1);
+		bounds = new float[max_nodes * 6];
+		child = new int[max_nodes];
+		first = new int[max_nodes];
+		count = new int[max_nodes];
+		n_nodes = 1;
+		
+		//build top-down, with an explicit stack of nodes to split
+		int[] stack = new int[128];
+		int top = 0;
+		first[0] = 0;
+		count[0] = n_faces;
+		stack[top++] = 0;
+		
+		while (top > 0){
+			int node = stack[--top];
+			int lo = first[node], n = count[node];
+			
+			//node box
+			int nb = node * 6;
+			for (int a = 0; a < 3; a++){
+				bounds[nb + a] = Float.MAX_VALUE;
+				bounds[nb + a + 3] = -Float.MAX_VALUE;
+				}
+			float[] c_box = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, 
+							 -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+			for (int i = lo; i < lo + n; i++){
+				int f = face_order[i];
+				for (int a = 0; a < 3; a++){
+					bounds[nb + a] = Math.min(bounds[nb + a], face_bounds[f * 6 + a]);
+					bounds[nb + a + 3] = Math.max(bounds[nb + a + 3], face_bounds[f * 6 + a + 3]);
+					c_box[a] = Math.min(c_box[a], centroids[f * 3 + a]);
+					c_box[a + 3] = Math.max(c_box[a + 3], centroids[f * 3 + a]);
+					}
+				}
+			for (int a = 0; a < 3; a++){
+				bounds[nb + a] -= epsilon;
+				bounds[nb + a + 3] += epsilon;
+				}
+			
+			if (n <= LEAF_SIZE){
+				child[node] = -1;
+				continue;
+				}
+			
+			//split at the median centroid along the longest axis
+			int axis = 0;
+			for (int a = 1; a < 3; a++)
+				if (c_box[a + 3] - c_box[a] > c_box[axis + 3] - c_box[axis]) axis = a;
+			int mid = lo + n / 2;
+			select(centroids, axis, lo, lo + n - 1, mid);
+			
+			int left = n_nodes;
+			n_nodes += 2;
+			child[node] = left;
+			first[left] = lo;
+			count[left] = mid - lo;
+			first[left + 1] = mid;
+			count[left + 1] = lo + n - mid;
+			
+			if (top + 2 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			stack[top++] = left;
+			stack[top++] = left + 1;
+			}
+		
+	}
+	
+	/*********************************
+	 * Partially sorts <code>face_order[lo..hi]</code> by centroid along <code>axis</code>, so that the
+	 * k-th element is in place (quickselect).
+	 * 
+	 */
+	protected void select(float[] centroids, int axis, int lo, int hi, int k){
+		while (hi > lo){
+			float pivot = centroids[face_order[(lo + hi) >>> 1] * 3 + axis];
+			int i = lo, j = hi;
+			while (i <= j){
+				while (centroids[face_order[i] * 3 + axis] < pivot) i++;
+				while (centroids[face_order[j] * 3 + axis] > pivot) j--;
+				if (i <= j){
+					int temp = face_order[i];
+					face_order[i] = face_order[j];
+					face_order[j] = temp;
+					i++;
+					j--;
+					}
+				}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+			}
+	}
+	
+	/*********************************
+	 * Returns the indices of all faces whose bounding boxes meet the infinite line through 
+	 * <code>p</code> in direction <code>v</code>, in ascending order.
+	 * 
+	 * @param p
+	 * @param v
+	 * @return
+	 */
+	public int[] getCandidateFaces(Point3f p, Vector3f v){
+		
+		int[] result = new int[16];
+		int n_result = 0;
+		if (n_faces == 0) return new int[0];
+		
+		double[] origin = {p.x, p.y, p.z};
+		double[] dir = {v.x, v.y, v.z};
+		
+		int[] stack = new int[64];
+		int top = 0;
+		stack[top++] = 0;
+		
+		while (top > 0){
+			int node = stack[--top];
+			if (!intersects(bounds, node * 6, origin, dir)) continue;
+			
+			if (child[node] < 0){
+				int end = first[node] + count[node];
+				for (int i = first[node]; i < end; i++){
+					int f = face_order[i];
+					if (!intersects(face_bounds, f * 6, origin, dir, epsilon)) continue;
+					if (n_result == result.length)
+						result = Arrays.copyOf(result, n_result * 2);
+					result[n_result++] = f;
+					}
+				continue;
+				}
+			
+			if (top + 2 > stack.length)
+				stack = Arrays.copyOf(stack, stack.length * 2);
+			stack[top++] = child[node];
+			stack[top++] = child[node] + 1;
+			}
+		
+		result = Arrays.copyOf(result, n_result);
+		Arrays.sort(result);
+		return result;
+	}
+	
+	/*********************************
+	 * Returns the intersection of the ray from <code>p</code> along <code>v</code> with the indexed 
+	 * mesh, as {@link MeshFunctions#getIntersectionPoint(Mesh3D, Point3f, Vector3f)} would for the full 
+	 * mesh.
+	 * 
+	 * @param p
+	 * @param v
+	 * @return the intersection point, or <code>null</code> if there is none
+	 */
+	public Point3f getIntersectionPoint(Point3f p, Vector3f v){
+		
+		int[] candidates = getCandidateFaces(p, v);
+		if (candidates.length == 0) return null;
+		
+		//sub-mesh of candidate faces, in their original order
+		float[] nodes = mesh.nodes;
+		int[] faces = mesh.faces;
+		Mesh3D sub_mesh = new Mesh3D();
+		for (int i = 0; i < candidates.length; i++){
+			for (int j = 0; j < 3; j++){
+				int node = faces[candidates[i] * 3 + j] * 3;
+				sub_mesh.addVertex(new Point3f(nodes[node], nodes[node + 1], nodes[node + 2]));
+				}
+			sub_mesh.addFace(i * 3, i * 3 + 1, i * 3 + 2);
+			}
+		sub_mesh.finalize();
+		
+		return MeshFunctions.getIntersectionPoint(sub_mesh, p, v);
+	}
+	
+	static boolean intersects(float[] box, int b, double[] origin, double[] dir){
+		return intersects(box, b, origin, dir, 0);
+	}
+	
+	//slab test of an infinite line against an axis-aligned box, inflated by epsilon
+	static boolean intersects(float[] box, int b, double[] origin, double[] dir, float epsilon){
+		double t_min = Double.NEGATIVE_INFINITY, t_max = Double.POSITIVE_INFINITY;
+		for (int a = 0; a < 3; a++){
+			double min = box[b + a] - epsilon, max = box[b + a + 3] + epsilon;
+			if (dir[a] == 0){
+				if (origin[a] < min || origin[a] > max) return false;
+				continue;
+				}
+			double t1 = (min - origin[a]) / dir[a];
+			double t2 = (max - origin[a]) / dir[a];
+			if (t1 > t2){
+				double temp = t1;
+				t1 = t2;
+				t2 = temp;
+				}
+			t_min = Math.max(t_min, t1);
+			t_max = Math.min(t_max, t2);
+			if (t_min > t_max) return false;
+			}
+		return true;
+	}
+	
+}
@@ -67,6 +67,7 @@ public class NeuroMeshEngine implements Engine {
 		//attribute_list.add(new Attribute("vertex_thickness", VariableObject.class));
 		attribute_list.add(new Attribute<MguiBoolean>("write matrix file", new MguiBoolean(false)));
 		attribute_list.add(new Attribute<String>("watrix file", "c:\\matrix_file.mat"));
+		attribute_list.add(new Attribute<MguiBoolean>("tabulated_kernels", new MguiBoolean(false)));
 		attributes.put("Volume -> Cortex", attribute_list);
 		
 		attribute_list = new AttributeList();
@@ -80,6 +81,8 @@ public class NeuroMeshEngine implements Engine {
 		attribute_list.add(new Attribute<MguiInteger>("debug_index", new MguiInteger(-1)));
 		attribute_list.add(new Attribute<MguiBoolean>("normal_weight", new MguiBoolean(false)));
 		attribute_list.add(new Attribute<MguiBoolean>("no_weight", new MguiBoolean(false)));
+		attribute_list.add(new Attribute<MguiBoolean>("float_accumulation", new MguiBoolean(false)));
+		attribute_list.add(new Attribute<MguiBoolean>("tabulated_kernels", new MguiBoolean(false)));
 		//attribute_list.add(new Attribute("vertex_thickness", VariableObject.class));
 		attribute_list.add(new Attribute<MguiBoolean>("normalize_values", new MguiBoolean(false)));
 		attributes.put("Cortex -> Volume", attribute_list);
@@ -128,6 +131,8 @@ public class NeuroMeshEngine implements Engine {
 		
 		NeuroMeshFunctions.debug_index = (int)((MguiInteger)list.getValue("debug_index")).getValue();
 		NeuroMeshFunctions.normal_weight = ((MguiBoolean)list.getValue("normal_weight")).getTrue();
+		NeuroMeshFunctions.mapping_float_accumulation = ((MguiBoolean)list.getValue("float_accumulation")).getTrue();
+		NeuroMeshFunctions.mapping_tabulated_kernels = ((MguiBoolean)list.getValue("tabulated_kernels")).getTrue();
 		
 		return
 		NeuroMeshFunctions.mapCortexToVolumeGaussian(mesh_int, 
@@ -156,6 +161,7 @@ public class NeuroMeshEngine implements Engine {
 												 Object thickness, ProgressUpdater progress){
 		
 		AttributeList list = attributes.get("Volume -> Cortex");
+		NeuroMeshFunctions.mapping_tabulated_kernels = ((MguiBoolean)list.getValue("tabulated_kernels")).getTrue();
 		
 		return
 		NeuroMeshFunctions.mapVolumeToCortexGaussian(mesh, 
@@ -173,6 +179,37 @@ public class NeuroMeshEngine implements Engine {
 		
 	}
 	
+	/**************************************************
+	 * Maps each time point of a volume time series to a cortical surface, using the "Volume -> Cortex"
+	 * parameters, and writes the result to <code>sink</code> (e.g., a 
+	 * {@link mgui.io.standard.gifti.GiftiTimeSeriesWriter}).
+	 * 
+	 * @param mesh
+	 * @param series
+	 * @param thickness
+	 * @param sink
+	 * @param progress
+	 * @return <code>true</code> if successful
+	 */
+	public boolean mapVolumeTimeSeriesToCortex(Mesh3D mesh, VolumeTimeSeries series, Object thickness,
+											   VertexTimeSeriesSink sink, ProgressUpdater progress){
+		
+		AttributeList list = attributes.get("Volume -> Cortex");
+		NeuroMeshFunctions.mapping_tabulated_kernels = ((MguiBoolean)list.getValue("tabulated_kernels")).getTrue();
+		
+		return
+		NeuroMeshFunctions.mapVolumeTimeSeriesToCortexGaussian(mesh, 
+															   series, 
+															   ((MguiDouble)list.getValue("sigma_normal")).getValue(), 
+															   ((MguiDouble)list.getValue("sigma_tangent")).getValue(),
+															   ((MguiDouble)list.getValue("sigma_max_normal")).getValue(), 
+															   ((MguiDouble)list.getValue("sigma_max_tangent")).getValue(), 
+															   thickness, 
+															   sink,
+															   progress);
+		
+	}
+	
 	@Override
 	public Attribute<?> getAttribute(String name) {
 		
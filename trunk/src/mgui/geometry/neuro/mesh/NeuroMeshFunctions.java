@@ -27,7 +27,15 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jogamp.vecmath.Point3f;
 import org.jogamp.vecmath.Vector3f;
@@ -38,6 +46,7 @@ import mgui.geometry.Plane3D;
 import mgui.geometry.Vector3D;
 import mgui.geometry.mesh.MeshFunctions;
 import mgui.geometry.mesh.NeighbourhoodMesh;
+import mgui.geometry.neuro.ParallelWorkers;
 import mgui.geometry.util.GeometryFunctions;
 import mgui.geometry.volume.VolumeFunctions;
 import mgui.interfaces.InterfaceSession;
@@ -78,6 +87,22 @@ public class NeuroMeshFunctions extends Utility {
 	public static boolean normal_weight = false;
 	public static boolean no_weight = false;
 	
+	/** Number of threads used to map volume data to cortical surfaces; defaults to the number of
+	 *  available processors. */
+	public static int mapping_threads = Runtime.getRuntime().availableProcessors();
+	/** Number of vertices processed per work unit when mapping in parallel */
+	static final int MAPPING_BLOCK = 1024;
+	/** Whether to accumulate cortex-to-volume projections in single precision, halving the memory
+	 *  needed for per-thread buffers */
+	public static boolean mapping_float_accumulation = false;
+	/** Number of volumes buffered when mapping a time series */
+	public static int time_series_buffers = 2;
+	/** Whether the parallel Gaussian mapping functions evaluate their kernels from lookup tables 
+	 *  (see {@link GaussianKernelTable}) rather than exactly */
+	public static boolean mapping_tabulated_kernels = false;
+	/** Number of samples per sigma in kernel lookup tables */
+	public static int mapping_kernel_resolution = GaussianKernelTable.DEFAULT_RESOLUTION;
+	
 	public static boolean modelSkullAndScalp2(){
 		
 		return false;
@@ -98,6 +123,7 @@ public class NeuroMeshFunctions extends Utility {
 		Point3f center_resample = (new Mesh3DInt(resample_mesh)).getCenterOfGravity();
 		Mesh3D new_mesh = (Mesh3D)resample_mesh.clone();
 		float radius = source_int.getBoundBox().getMinPt().distance(source_int.getBoundBox().getMaxPt());
+		MeshRayIndex index = new MeshRayIndex(source_mesh);
 		
 		for (int i = 0; i < new_mesh.n; i++){
 			Vector3f v = new Vector3f(new_mesh.getVertex(i));
@@ -105,7 +131,7 @@ public class NeuroMeshFunctions extends Utility {
 			v.normalize();
 			v.scale(radius * 2);
 			
-			Point3f new_node = MeshFunctions.getIntersectionPoint(source_mesh, center_source, v);
+			Point3f new_node = index.getIntersectionPoint(center_source, v);
 			new_mesh.setVertex(i, new_node);
 			}
 		
@@ -320,38 +346,23 @@ public class NeuroMeshFunctions extends Utility {
 									 Mesh3D mesh,
 									 ScalpAndSkullModelOptions options){
 		
-		
 		float scale = 1f / options.sample_rate;
-		NeighbourhoodMesh n_mesh = new NeighbourhoodMesh(mesh);
+		MeshAdjacency adjacency = new MeshAdjacency(mesh);
 		int[][] A2 = new int[mesh.n][4];
-		float[] maxes = new float[4];
-		int[] max_idx = new int[4];
+		float[] A_i = new float[mesh.n];
 		
 		for (int m = 0; m < 4; m++){
-			//maxes[m] = -Float.MAX_VALUE;
-			//max_idx[m] = -1;
-			ArrayList<Float> A_i = new ArrayList<Float>(mesh.n);
 			for (int i = 0; i < mesh.n; i++)
-				A_i.add((float)A[i][m] * scale);
+				A_i[i] = (float)A[i][m] * scale;
 			
 			for (int i = 0; i < mesh.n; i++){
-				float distance2 = correctSphereNodeDistance(i, n_mesh, A_i, 
+				float distance2 = correctSphereNodeDistance(i, adjacency, A_i, 
 															options.threshold_stdev, 
 															options.correction_stdev);
-				//if (distance2 > maxes[m]){
-				//	maxes[m] = distance2;
-				//	max_idx[m] = i;
-				//	}
 				A2[i][m] = (int)Math.round(distance2 / scale);
 				}
-			
-			
 			}
 		
-		//for (int m = 0; m <4; m++){
-		//	System.out.println("Max distance [" + max_idx[m] + "]: " + maxes[m]);
-		//	}
-		
 		return A2;
 		
 	}
@@ -739,7 +750,7 @@ public class NeuroMeshFunctions extends Utility {
 			test_vector.scale(100000);
 			
 			//start at intersection with convex hull surface
-			Point3f int_pt = MeshFunctions.getIntersectionPoint(options.brain_surface, test_point, test_vector);
+			Point3f int_pt = options.getBrainSurfaceIndex().getIntersectionPoint(test_point, test_vector);
 			start_points.add(new Point3f(int_pt));
 			test_point.set(int_pt);
 			if (hull_mesh != null)
@@ -893,7 +904,7 @@ public class NeuroMeshFunctions extends Utility {
 			Vector3f v = new Vector3f(test_point);
 			test_point.set(test_sphere.getVertex(i));
 			v.sub(test_point);
-			Point3f int_pt = MeshFunctions.getIntersectionPoint(options.brain_surface, test_point, v);
+			Point3f int_pt = options.getBrainSurfaceIndex().getIntersectionPoint(test_point, v);
 			
 			if (int_pt == null) 
 				test_point.add(v);
@@ -1097,7 +1108,7 @@ public class NeuroMeshFunctions extends Utility {
 		for (int i = 0; i < 3; i++)
 			spheres[i] = new Mesh3D(test_sphere);
 		
-		//TEST output test lines
+		//debug output of test lines, if options.debug_output_dir is set
 		BufferedWriter writer_success_before = null;
 		BufferedWriter writer_success_after = null;
 		BufferedWriter writer_success_deriv = null;
@@ -1107,23 +1118,14 @@ public class NeuroMeshFunctions extends Utility {
 		BufferedWriter writer_mins_line = null;
 		BufferedWriter writer_maxes_line = null;
 		try{
-			writer_success_before = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\success_lines_before_" + subject + ".txt")));
-			writer_success_after = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\success_lines_after_" + subject + ".txt")));
-			writer_success_deriv = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\success_lines_deriv_" + subject + ".txt")));
-			writer_failure = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\failure_lines_" + subject + ".txt")));
-			
-			writer_mins_deriv = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\mins_deriv_" + subject + ".txt")));
-			writer_maxes_deriv = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\maxes_deriv_" + subject + ".txt")));
-			writer_mins_line = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\mins_line_" + subject + ".txt")));
-			writer_maxes_line = new BufferedWriter(new FileWriter(
-				new File("C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Modelling\\neuro model\\maxes_line_" + subject + ".txt")));
+			writer_success_before = getDebugWriter(options, "success_lines_before_" + subject + ".txt");
+			writer_success_after = getDebugWriter(options, "success_lines_after_" + subject + ".txt");
+			writer_success_deriv = getDebugWriter(options, "success_lines_deriv_" + subject + ".txt");
+			writer_failure = getDebugWriter(options, "failure_lines_" + subject + ".txt");
+			writer_mins_deriv = getDebugWriter(options, "mins_deriv_" + subject + ".txt");
+			writer_maxes_deriv = getDebugWriter(options, "maxes_deriv_" + subject + ".txt");
+			writer_mins_line = getDebugWriter(options, "mins_line_" + subject + ".txt");
+			writer_maxes_line = getDebugWriter(options, "maxes_line_" + subject + ".txt");
 		}catch (IOException e){
 			e.printStackTrace();
 			return false;
@@ -1171,7 +1173,7 @@ public class NeuroMeshFunctions extends Utility {
 			Vector3f v = new Vector3f(test_point);
 			test_point.set(test_sphere.getVertex(i));
 			v.sub(test_point);
-			Point3f int_pt = MeshFunctions.getIntersectionPoint(options.brain_surface, test_point, v);
+			Point3f int_pt = options.getBrainSurfaceIndex().getIntersectionPoint(test_point, v);
 			
 			if (int_pt == null) 
 				test_point.add(v);
@@ -1257,7 +1259,7 @@ public class NeuroMeshFunctions extends Utility {
 				scalp_distances.add((float)curve.size() * test_vector.length());
 				curves.add(curve);
 				
-				try{
+				if (writer_success_before != null) try{
 					writer_success_before.write(getDelimitedTestLine(SignalProcessing.smoothCurveMovingAverage(samples, (int)(options.sample_rate * 2) + 1)) + "\n");
 				}catch (Exception e){
 					
@@ -1319,7 +1321,7 @@ public class NeuroMeshFunctions extends Utility {
 			if (progress_bar != null)
 				progress_bar.update(p_count + i);
 			
-			try{
+			if (writer_success_after != null) try{
 				
 				writer_success_after.write(getDelimitedTestLine(curve) + "\n");
 				writer_success_deriv.write(getDelimitedTestLine(SignalProcessing.smoothCurveMovingAverage(
@@ -1421,7 +1423,7 @@ public class NeuroMeshFunctions extends Utility {
 		
 		System.out.println("Skull and scalp modelling finished with " + failures.size() + " failures.");
 		
-		try{
+		if (writer_failure != null) try{
 			writer_failure.close();
 			writer_success_after.close();
 			writer_success_before.close();
@@ -1438,48 +1440,90 @@ public class NeuroMeshFunctions extends Utility {
 		return failures.size() == 0;
 	}
 	
+	/*****************************************
+	 * Returns a writer for the debug file <code>name</code> in <code>options.debug_output_dir</code>, or 
+	 * <code>null</code> if no debug directory is set.
+	 * 
+	 * @param options
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	static BufferedWriter getDebugWriter(ScalpAndSkullModelOptions options, String name) throws IOException{
+		if (options.debug_output_dir == null) return null;
+		File dir = new File(options.debug_output_dir);
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("Cannot create debug dir '" + options.debug_output_dir + "'.");
+		return new BufferedWriter(new FileWriter(new File(dir, name)));
+	}
+	
+	/*****************************************
+	 * As {@link #correctSphereNodeDistance(int, MeshAdjacency, float[], float, float)}, for distances in
+	 * a list and neighbours in <code>n_mesh</code>. The node and its neighbours are copied into a 
+	 * single-row adjacency, with the node as row 0.
+	 * 
+	 */
 	static float correctSphereNodeDistance(int index,
 									 	   NeighbourhoodMesh n_mesh,
 									 	   ArrayList<Float> distances, 
 									 	   float threshold_stdevs,
 									 	   float new_stdev){
 		
-		//get mean, stdev of neighbours
-		//if distance is > threshold_stdev from mean,
-		//reduce this to new_stdev
-		
 		int[] nbrs = n_mesh.getNeighbourhood(index).getNeighbourList();
+		float[] local = new float[nbrs.length + 1];
+		int[] col_idx = new int[nbrs.length];
+		local[0] = distances.get(index);
+		for (int i = 0; i < nbrs.length; i++){
+			local[i + 1] = distances.get(nbrs[i]);
+			col_idx[i] = i + 1;
+			}
+		
+		return correctSphereNodeDistance(0, new MeshAdjacency(new int[]{0, nbrs.length}, col_idx), local, 
+										 threshold_stdevs, new_stdev);
+	}
+	
+	/*****************************************
+	 * Corrects the distance of node <code>index</code>, if it is the most deviant of its neighbourhood
+	 * and lies more than <code>threshold_stdevs</code> standard deviations from the neighbourhood mean,
+	 * by moving it to <code>new_stdev</code> from the mean.
+	 * 
+	 */
+	static float correctSphereNodeDistance(int index,
+									 	   MeshAdjacency adjacency,
+									 	   float[] distances, 
+									 	   float threshold_stdevs,
+									 	   float new_stdev){
+		
+		int first = adjacency.row_ptr[index], last = adjacency.row_ptr[index + 1];
+		int[] nbrs = adjacency.col_idx;
 		
-		float distance = distances.get(index);
-		if (nbrs.length == 0) return distance;
+		float distance = distances[index];
+		if (last == first) return distance;
 		
 		float mean = 0;
-		for (int i = 0; i < nbrs.length; i++)
-			mean += distances.get(nbrs[i]);
+		for (int i = first; i < last; i++)
+			mean += distances[nbrs[i]];
 		
-		mean /= nbrs.length;
+		mean /= (last - first);
 		
 		float s_squares = 0;
-		for (int i = 0; i < nbrs.length; i++)
-			s_squares += Math.pow((distances.get(nbrs[i]) - mean), 2);
+		for (int i = first; i < last; i++)
+			s_squares += Math.pow((distances[nbrs[i]] - mean), 2);
 		
-		float st_dev = (float)Math.sqrt(s_squares / nbrs.length);
-		float st_dev_i = (float)Math.abs(distances.get(index) - mean);
+		float st_dev = (float)Math.sqrt(s_squares / (last - first));
+		float st_dev_i = (float)Math.abs(distances[index] - mean);
 		
 		//only change if this node is the most deviant of its neighbourhood
-		for (int i = 0; i < nbrs.length; i++){
-			float st_dev_nbr = (float)Math.abs(distances.get(nbrs[i]) - mean);
+		for (int i = first; i < last; i++){
+			float st_dev_nbr = (float)Math.abs(distances[nbrs[i]] - mean);
 			if (st_dev_nbr > st_dev_i) return distance;
 			}
 		
 		float sign = 1;
 		if (distance < mean) sign = -1;
 		
-		if (st_dev_i / st_dev > threshold_stdevs){
-			//System.out.print("Corrected distance [" + index + "]: " + distance + " ->");
+		if (st_dev_i / st_dev > threshold_stdevs)
 			distance = mean + (sign * new_stdev);
-			//System.out.println(" " + distance + "; stdev_i = " + (st_dev_i / st_dev));
-			}
 			
 		return distance;
 	}
@@ -1849,13 +1893,20 @@ public class NeuroMeshFunctions extends Utility {
 	//remove the air beyond the scalp; curve should be smoothed for best results
 	static ArrayList<Double> removeAir(ArrayList<Double> curve, double delta_x, double threshold_v, double threshold_dist){
 		
+		double[] culled = removeAir(SignalProcessing.toArray(curve), delta_x, threshold_v, threshold_dist);
+		return SignalProcessing.toList(culled);
+		
+	}
+	
+	static double[] removeAir(double[] curve, double delta_x, double threshold_v, double threshold_dist){
+		
 		double distance = 0;
 		int cut_point = -1;
-		int i = curve.size() - 1;
+		int i = curve.length - 1;
 		boolean is_below = true;
 		
 		while (distance < threshold_dist && i > 0){
-			if (curve.get(i) < threshold_v){
+			if (curve[i] < threshold_v){
 				is_below = true;
 				distance = 0;
 			}else{
@@ -1870,13 +1921,9 @@ public class NeuroMeshFunctions extends Utility {
 			i--;
 			}
 		
-		if (i == 0) return new ArrayList<Double>(curve);
-		
-		ArrayList<Double> culled = new ArrayList<Double>();
-		for (int k = 0; k < cut_point; k++)
-			culled.add(curve.get(k));
+		if (i == 0) return curve.clone();
 		
-		return culled;
+		return Arrays.copyOf(curve, Math.max(0, cut_point));
 		
 	}
 	
@@ -2053,6 +2100,10 @@ public class NeuroMeshFunctions extends Utility {
 	 * Generates and fills three sets of sample rays based upon the parameters in <code>options</code>.
 	 * ArrayList arguments should already be instantiated.
 	 * 
+	 * <p>Rays are independent, and are sampled in parallel using {@link #mapping_threads} threads. Each 
+	 * ray is written to its own slot, so the rays are added to <code>rays_1</code> and <code>rays_2</code> 
+	 * in node order, as for a sequential run. Nothing is added if the process is cancelled.
+	 * 
 	 * @param options Specifies the source T1, brain mask hull, thresholds, etc.
 	 * @param rays_1 Rays from mask hull to T1 boundary
 	 * @param rays_2 Rays from mask hull to scalp surface
@@ -2063,122 +2114,206 @@ public class NeuroMeshFunctions extends Utility {
 									   ArrayList<SampleRay> rays_2,
 									   ProgressUpdater progress) throws NeuroMeshFunctionsException {
 		
-		Volume3DInt t1_volume = options.t1_volume;
-		Grid3D t1_grid = t1_volume.getGrid();
 		Mesh3D test_sphere = MeshFunctions.getMeanSphereMesh(options.center_of_mass, 
 													 		 options.initial_radius, 
 													 		 options.n_nodes, 
 													 		 0, 
 													 		 1000);
 		
-		//set start points (i.e., hull intersection points) array
-		ArrayList<Point3f> start_points = new ArrayList<Point3f>();
-		
 		if (progress != null){
 			progress.setMinimum(0);
 			progress.setMaximum(test_sphere.n);
 			progress.update(0);
 			}
 		
-		int debug;
+		SampleRay[] slots_1 = new SampleRay[test_sphere.n];
+		SampleRay[] slots_2 = new SampleRay[test_sphere.n];
+		MeshRayIndex brain_index = options.getBrainSurfaceIndex();
+		VolumeSampler t1_sampler = new VolumeSampler(options.t1_volume);
+		
+		AtomicInteger next = new AtomicInteger(0);
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		
+		int n_threads = Math.max(1, Math.min(mapping_threads, test_sphere.n));
+		RaySampleWorker[] workers = new RaySampleWorker[n_threads];
+		for (int t = 0; t < n_threads; t++){
+			workers[t] = new RaySampleWorker(options, brain_index, t1_sampler, test_sphere, slots_1, slots_2);
+			workers[t].next = next;
+			workers[t].done = done;
+			workers[t].cancelled = cancelled;
+			}
+		if (n_threads == 1)
+			workers[0].progress = progress;
+		
+		boolean success = ParallelWorkers.run(workers, progress, done, cancelled, "NeuroMeshFunctions.getRaysBlocking");
+		
+		for (int t = 0; t < n_threads; t++){
+			if (workers[t].error != null)
+				throw new NeuroMeshFunctionsException("Ray sampling failed: " + workers[t].error, workers[t].error);
+			}
+		
+		if (!success){
+			if (progress != null && progress.isCancelled()) return;
+			throw new NeuroMeshFunctionsException("Ray sampling failed..");
+			}
 		
 		for (int i = 0; i < test_sphere.n; i++){
-			try{
-				//get test vector as radius through node i
-				Point3f test_point = new Point3f(test_sphere.getVertex(i));
-				
-				Vector3f test_vector = new Vector3f(test_point);
-				test_vector.sub(options.center_of_mass);
-				test_vector.scale(100000);
-				
-				//start at intersection with convex hull surface
-				Point3f int_pt = MeshFunctions.getIntersectionPoint(options.brain_surface, test_point, test_vector);
-				test_point.set(int_pt);
-			
-				//move test_point the minimum distance from the brain surface
-				test_vector.normalize();
-				test_vector.scale(1f / options.sample_rate);
-				Vector3f min_vect = new Vector3f(test_vector);
-				min_vect.normalize();
-				min_vect.scale(options.min_dist_B_IS);
-				test_point.add(min_vect);
-				int_pt.set(test_point);
-				start_points.add(new Point3f(int_pt));
-				
-				//sample voxels along radius
-				ArrayList<Double> samples = new ArrayList<Double>();
-				boolean in_bounds = t1_grid.getBoundBox().contains(test_point);
-				while (in_bounds){
-					double value = Double.NaN;
-					if (options.apply_gaussian){
-						int[] voxel = t1_grid.getEnclosingVoxel(test_point);
-						if (voxel != null)
-							value = VolumeFunctions.getGaussianSmoothedValue(t1_volume, voxel, 0, test_vector, 
-																			 options.sigma_normal, 
-																			 options.sigma_tangent, 
-																			 options.gaussian_cutoff);
-					}else{
-						value = t1_volume.getDatumAtPoint(test_point).getValue();
-						}
-					if (Double.isNaN(value) || Double.isInfinite(value) || value > t1_volume.getDataMax())
-						value = t1_volume.getDataMin();
-					samples.add(value);
-					
-					//sample next point
-					test_point.add(test_vector);
-					in_bounds = t1_grid.getBoundBox().contains(test_point);
+			rays_1.add(slots_1[i]);
+			rays_2.add(slots_2[i]);
+			}
+		
+	}
+	
+	/**************************************************
+	 * Samples the rays for {@link NeuroMeshFunctions#getRaysBlocking}. Nodes of the test sphere are
+	 * taken one at a time from a counter shared by all workers, and their rays written to the 
+	 * corresponding slots. The first exception encountered is kept in <code>error</code>, and stops 
+	 * all workers.
+	 * 
+	 * <p>The T1 volume is read through a shared {@link VolumeSampler}, rather than directly, since 
+	 * <code>Volume3DInt</code> is not safe for concurrent reads. 
+	 * 
+	 */
+	static class RaySampleWorker implements Runnable {
+		
+		final ScalpAndSkullModelOptions options;
+		final MeshRayIndex brain_index;
+		final VolumeSampler t1_sampler;
+		final Mesh3D test_sphere;
+		final Grid3D t1_grid;
+		final SampleRay[] rays_1, rays_2;
+		
+		final double data_min, data_max;
+		
+		AtomicInteger next, done;
+		AtomicBoolean cancelled;
+		Exception error;
+		
+		//sample buffer, grown as required
+		double[] samples = new double[256];
+		
+		//only set when run on the calling thread
+		ProgressUpdater progress;
+		
+		RaySampleWorker(ScalpAndSkullModelOptions options, MeshRayIndex brain_index, VolumeSampler t1_sampler,
+						Mesh3D test_sphere, SampleRay[] rays_1, SampleRay[] rays_2){
+			this.options = options;
+			this.brain_index = brain_index;
+			this.t1_sampler = t1_sampler;
+			this.test_sphere = test_sphere;
+			this.t1_grid = t1_sampler.getGrid();
+			this.data_min = options.t1_volume.getDataMin();
+			this.data_max = options.t1_volume.getDataMax();
+			this.rays_1 = rays_1;
+			this.rays_2 = rays_2;
+		}
+		
+		public void run(){
+			int i;
+			while (!cancelled.get() && (i = next.getAndIncrement()) < test_sphere.n){
+				try{
+					sampleRay(i);
+				}catch (Exception e){
+					error = e;
+					cancelled.set(true);
+					return;
 					}
-				
-				//smooth curve with half window the size of sample_rate + 1
-				ArrayList<Double> curve = SignalProcessing.smoothCurveMovingAverage(samples, (int)(options.sample_rate * 2) + 1);
-				
-				//normalize curve
-				//ArrayList<Double> norm = SignalProcessing.getNormalizedCurve(curve);
-				double max = -Double.MAX_VALUE;
-				for (int j = 0; j < curve.size(); j++){
-					max = Math.max(max, curve.get(j));
+				int d = done.incrementAndGet();
+				if (progress != null){
+					if (progress.isCancelled())
+						cancelled.set(true);
+					else
+						progress.update(d);
 					}
-				ArrayList<Double> norm = SignalProcessing.getNormalizedCurve(curve, t1_volume.getDataMin(), max);
-				
-				//step test_point back one so it is in bounds
-				Vector3f vector = new Vector3f(test_vector);
-				vector.scale(-1);
-				test_point.add(vector);
-				
-				//get ray 1
-				vector.set(test_point);
-				vector.sub(int_pt);
-				
-				SampleRay ray1 = new SampleRay(new Vector3D(int_pt, vector), norm);
-				ray1.resample(100);
-				rays_1.add(ray1);
-				
-				if (i == 885)
-					i += 0;
-				
-				//use curve normalized to volume min and max for scalp determination
-				//curve = SignalProcessing.getNormalizedCurve(curve, t1_grid.getDataMin(), t1_grid.getDataMax());
-				
-				//cull curve to scalp
-				curve = removeAir(norm, 
-								  1.0 / options.sample_rate, 
-								  options.min_intensity, 
-								  options.max_intensity_dist);
+				}
+		}
+		
+		void sampleRay(int i){
+			
+			//get test vector as radius through node i
+			Point3f test_point = new Point3f(test_sphere.getVertex(i));
+			
+			Vector3f test_vector = new Vector3f(test_point);
+			test_vector.sub(options.center_of_mass);
+			test_vector.scale(100000);
+			
+			//start at intersection with convex hull surface
+			Point3f int_pt = brain_index.getIntersectionPoint(test_point, test_vector);
+			test_point.set(int_pt);
+		
+			//move test_point the minimum distance from the brain surface
+			test_vector.normalize();
+			test_vector.scale(1f / options.sample_rate);
+			Vector3f min_vect = new Vector3f(test_vector);
+			min_vect.normalize();
+			min_vect.scale(options.min_dist_B_IS);
+			test_point.add(min_vect);
+			int_pt.set(test_point);
+			
+			//sample voxels along radius
+			int n_samples = 0;
+			boolean in_bounds = t1_grid.getBoundBox().contains(test_point);
+			while (in_bounds){
+				double value = Double.NaN;
+				if (options.apply_gaussian){
+					int[] voxel = t1_grid.getEnclosingVoxel(test_point);
+					if (voxel != null)
+						value = t1_sampler.getGaussianSmoothedValue(voxel, test_vector, 
+																	options.sigma_normal, 
+																	options.sigma_tangent, 
+																	options.gaussian_cutoff);
+				}else{
+					value = t1_sampler.getValueAtPoint(test_point);
+					}
+				if (Double.isNaN(value) || Double.isInfinite(value) || value > data_max)
+					value = data_min;
+				if (n_samples == samples.length)
+					samples = Arrays.copyOf(samples, samples.length * 2);
+				samples[n_samples++] = value;
 				
-				//get ray 2
-				float ratio = (float)curve.size() / (float)norm.size();
-				//vector.set(test_vector);
-				vector.scale(ratio);
-				SampleRay ray2 = new SampleRay(new Vector3D(int_pt, vector), curve);
-				ray2.resample(100);
-				rays_2.add(ray2);
-				if (progress != null)
-					progress.update(i);
-			}catch (Exception e){
-				e.printStackTrace();
-				throw new NeuroMeshFunctionsException("Ray sampling failed..");
+				//sample next point
+				test_point.add(test_vector);
+				in_bounds = t1_grid.getBoundBox().contains(test_point);
 				}
-			}
+			
+			//smooth curve with half window the size of sample_rate + 1
+			double[] curve = SignalProcessing.smoothCurveMovingAverage(Arrays.copyOf(samples, n_samples), 
+																	   (int)(options.sample_rate * 2) + 1);
+			
+			//normalize curve
+			double max = -Double.MAX_VALUE;
+			for (int j = 0; j < curve.length; j++){
+				max = Math.max(max, curve[j]);
+				}
+			double[] norm = SignalProcessing.getNormalizedCurve(curve, data_min, max);
+			
+			//step test_point back one so it is in bounds
+			Vector3f vector = new Vector3f(test_vector);
+			vector.scale(-1);
+			test_point.add(vector);
+			
+			//get ray 1
+			vector.set(test_point);
+			vector.sub(int_pt);
+			
+			SampleRay ray1 = new SampleRay(new Vector3D(int_pt, vector), norm);
+			ray1.resample(100);
+			rays_1[i] = ray1;
+			
+			//cull curve to scalp
+			curve = removeAir(norm, 
+							  1.0 / options.sample_rate, 
+							  options.min_intensity, 
+							  options.max_intensity_dist);
+			
+			//get ray 2
+			float ratio = (float)curve.length / (float)norm.length;
+			vector.scale(ratio);
+			SampleRay ray2 = new SampleRay(new Vector3D(int_pt, vector), curve);
+			ray2.resample(100);
+			rays_2[i] = ray2;
+		}
 		
 	}
 	
@@ -2458,7 +2593,9 @@ public class NeuroMeshFunctions extends Utility {
 													 		 1000);
 		
 		if (options.average_neighbour_rays)
-			scalp_rays = getNeighbourAveragedSampleRays(test_sphere, scalp_rays, options.average_neighbour_weight);
+			scalp_rays = getNeighbourAveragedSampleRays(new MeshAdjacency(test_sphere), scalp_rays, 
+														options.average_neighbour_weight,
+														options.average_neighbour_iterations);
 		
 		ArrayList<MguiBoolean> has_plateau = null;
 		if (!Double.isNaN(options.plateau_slope))
@@ -2675,24 +2812,24 @@ public class NeuroMeshFunctions extends Utility {
 	 */
 	static ArrayList<SampleRay> getNeighbourAveragedSampleRays(Mesh3D mesh, ArrayList<SampleRay> samples, 
 														   	   double neighbour_weight){
+		return getNeighbourAveragedSampleRays(new MeshAdjacency(mesh), samples, neighbour_weight, 1);
+	}
 	
-		ArrayList<SampleRay> averages = new ArrayList<SampleRay>();
-		NeighbourhoodMesh n_mesh = new NeighbourhoodMesh(mesh);
-		
-		for (int i = 0; i < samples.size(); i++){
-			SampleRay thisRay = new SampleRay(samples.get(i));
-			int[] nbrs = n_mesh.getNeighbourhood(i).getNeighbourList();
-			for (int k = 0; k < thisRay.getSize(); k++){
-				double value = thisRay.getSample(k);
-				for (int j = 0; j < nbrs.length; j++)
-					value += samples.get(nbrs[j]).getSample(k) * neighbour_weight;
-				value /= (1.0 + ((double)nbrs.length * neighbour_weight));
-				thisRay.setSample(k, value);
-				}
-			averages.add(thisRay);
-			}
-		
-		return averages;
+	/*************************************************************
+	 * Returns a list of sample rays which are a weighted average of the original rays and their neighbours
+	 * in <code>adjacency</code>, applied <code>iterations</code> times. See 
+	 * {@link SampleRayMatrix#getNeighbourAveraged}.
+	 * 
+	 * @param adjacency
+	 * @param samples
+	 * @param neighbour_weight
+	 * @param iterations
+	 * @return
+	 */
+	static ArrayList<SampleRay> getNeighbourAveragedSampleRays(MeshAdjacency adjacency, ArrayList<SampleRay> samples, 
+														   	   double neighbour_weight, int iterations){
+		SampleRayMatrix matrix = new SampleRayMatrix(samples);
+		return matrix.getNeighbourAveraged(adjacency, neighbour_weight, iterations).getSampleRays();
 	}
 	
 	public static ArrayList<MguiNumber> mapGrid3DToCortexGaussian(Mesh3D mesh,
@@ -2734,6 +2871,9 @@ public class NeuroMeshFunctions extends Utility {
 	 *  </ul>
 	 *  The values returned will be those obtained by the <code>Grid3D.getDoubleValue</code> method, but can
 	 *  alternatively be normalized by setting the <code>normalized</code> flag.
+	 *  
+	 *  <p>Vertices are mapped in parallel, using {@link #mapping_threads} threads, unless 
+	 *  <code>output_matrix</code> is set, in which case the mapping runs on a single thread.
 	 * 
 	 * 
 	 * @param mesh
@@ -2809,21 +2949,11 @@ public class NeuroMeshFunctions extends Utility {
 															   final String matrix_file){
 		
 		Grid3D grid = volume.getGrid();
-		ArrayList<MguiNumber> values = new ArrayList<MguiNumber>();
-		for (int i = 0; i < mesh.n; i++)
-			values.add(new MguiDouble(0));
-		
-		//list of normals
-		ArrayList<Vector3f> normals = mesh.getNormals();
 		
 		double thickness = -1;
-		ArrayList<MguiNumber> vertex_thickness = null;
-		
-		if (_thickness instanceof Double){
+		double[] vertex_thickness = getVertexThickness(_thickness);
+		if (vertex_thickness == null)
 			thickness = (Double)_thickness;
-		}else{
-			vertex_thickness = (ArrayList<MguiNumber>)_thickness;
-			}
 		
 		int null_count = 0;
 		
@@ -2844,36 +2974,615 @@ public class NeuroMeshFunctions extends Utility {
 			writer.open();
 			}
 		
-		int prog_int = (int)(0.01 * mesh.n);
-		int last_prog = 0;
+		//read the channel once, rather than boxing each voxel for each vertex
+		double[] data = getVoxelData(volume, channel);
+		double[] mapped = new double[mesh.n];
 		
-		//iterate through vertices
-		for (int m = 0; m < mesh.n; m++){
-			
-			if (vertex_thickness != null)
-				thickness = vertex_thickness.get(m).getValue();
-			
-			if (progress != null){
-				if (progress.isCancelled()){
-					return null;
-					}
-				if (m > last_prog){
-					progress.update(m);
-					last_prog += prog_int;
-					}
+		//list of normals
+		ArrayList<Vector3f> normals = mesh.getNormals();
+		
+		//the matrix writer expects vertices in order, so matrix output is done on this thread
+		int n_threads = 1;
+		if (!output_matrix)
+			n_threads = Math.max(1, Math.min(mapping_threads, mesh.n / MAPPING_BLOCK));
+		
+		AtomicInteger next_block = new AtomicInteger(0);
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		VolumeToCortexWorker[] workers = new VolumeToCortexWorker[n_threads];
+		GaussianKernelTable normal_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian2, sigma_normal, sigma_max_normal);
+		GaussianKernelTable tangent_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian2, sigma_tangent, sigma_max_tangent);
+		for (int t = 0; t < n_threads; t++){
+			VolumeToCortexWorker worker = new VolumeToCortexWorker(mesh, normals, grid, data, mapped);
+			worker.sigma_normal = sigma_normal;
+			worker.sigma_tangent = sigma_tangent;
+			worker.sigma_max_normal = sigma_max_normal;
+			worker.sigma_max_tangent = sigma_max_tangent;
+			worker.normal_table = normal_table;
+			worker.tangent_table = tangent_table;
+			worker.thickness = thickness;
+			worker.vertex_thickness = vertex_thickness;
+			worker.next_block = next_block;
+			worker.done = done;
+			worker.cancelled = cancelled;
+			workers[t] = worker;
+			}
+		
+		if (n_threads == 1){
+			workers[0].writer = writer;
+			workers[0].progress = progress;
+			}
+		
+		if (!ParallelWorkers.run(workers, progress, done, cancelled, "NeuroMeshFunctions.mapVolumeToCortexGaussian"))
+			return null;
+		
+		ArrayList<MguiNumber> values = new ArrayList<MguiNumber>(mesh.n);
+		for (int i = 0; i < mesh.n; i++)
+			values.add(new MguiDouble(mapped[i]));
+		
+		if (output_matrix){
+			System.out.print("Writing transfer matrix to '" + matrix_file + "...");
+			writer.finalize(grid.getSizeS() * grid.getSizeT() * grid.getSizeR(), mesh.n);
+			System.out.println("done.");
+			}
+		System.out.println("\nAll done. " + null_count + " vertices not mapped");
+		return values;
+		
+	}
+	
+	/**************************************************
+	 * Returns the values of <code>channel</code> as a primitive array, indexed by absolute voxel
+	 * index (see {@link Grid3D#getAbsoluteIndex(int, int, int)}).
+	 * 
+	 * @param volume
+	 * @param channel
+	 * @return
+	 */
+	static double[] getVoxelData(Volume3DInt volume, String channel){
+		int size = volume.getGrid().getSize();
+		double[] data = new double[size];
+		for (int i = 0; i < size; i++)
+			data[i] = volume.getDatumAtVertex(channel, i).getValue();
+		return data;
+	}
+	
+	/**************************************************
+	 * Returns vertex-wise thickness values as a primitive array, or <code>null</code> if
+	 * <code>_thickness</code> is a single <code>Double</code>.
+	 * 
+	 * @param _thickness
+	 * @return
+	 */
+	static double[] getVertexThickness(Object _thickness){
+		if (_thickness instanceof Double) return null;
+		ArrayList<MguiNumber> list = (ArrayList<MguiNumber>)_thickness;
+		double[] thickness = new double[list.size()];
+		for (int i = 0; i < thickness.length; i++)
+			thickness[i] = list.get(i).getValue();
+		return thickness;
+	}
+	
+	/**************************************************
+	 * Smooths vertex-wise <code>data</code> along the surface of <code>mesh</code>, by replacing each 
+	 * value with the Gaussian-weighted mean of all values within <code>sigma * sigma_max</code>, where
+	 * distance is measured along the surface. Neighbourhoods are obtained from a cached 
+	 * {@link GeodesicNeighbourhoodIndex}, so repeated smoothing of the same mesh (e.g., of several
+	 * data sets) only computes them once.
+	 * 
+	 * @param mesh
+	 * @param data
+	 * @param sigma
+	 * @param sigma_max
+	 * @param progress 		Progress of building the neighbourhood index, if necessary; may be 
+	 * 						<code>null</code>
+	 * @return the smoothed values, or <code>null</code> if the process fails or was cancelled
+	 */
+	public static ArrayList<MguiNumber> smoothSurfaceDataGaussian(Mesh3D mesh,
+																  ArrayList<MguiNumber> data,
+																  double sigma,
+																  double sigma_max,
+																  ProgressUpdater progress){
+		
+		if (data.size() != mesh.n){
+			InterfaceSession.log("NeuroMeshFunctions.smoothSurfaceDataGaussian: Data size (" + data.size() + 
+								 ") does not match vertex count (" + mesh.n + ").", 
+								 LoggingType.Errors);
+			return null;
+			}
+		
+		double radius = sigma * sigma_max;
+		GeodesicNeighbourhoodIndex index = GeodesicNeighbourhoodIndex.getIndex(mesh, radius, Integer.MAX_VALUE, progress);
+		if (index == null) return null;
+		
+		double[] values = new double[mesh.n];
+		for (int i = 0; i < mesh.n; i++)
+			values[i] = data.get(i).getValue();
+		
+		GaussianKernelTable table = getKernelTable(GaussianKernelTable.Kernel.Gaussian, sigma, sigma_max);
+		int[] row_ptr = index.getRowPointers();
+		int[] col_idx = index.getNeighbourIndices();
+		float[] distances = index.getDistances();
+		ArrayList<MguiNumber> smoothed = new ArrayList<MguiNumber>(mesh.n);
+		for (int i = 0; i < mesh.n; i++){
+			int start = row_ptr[i];
+			int end = start + index.getCount(i, radius, Integer.MAX_VALUE);
+			double sum = 0, sum_w = 0;
+			for (int k = start; k < end; k++){
+				double w = table != null ? table.evaluate(distances[k]) 
+										 : StatFunctions.getGaussian(distances[k], 0, sigma);
+				sum += w * values[col_idx[k]];
+				sum_w += w;
 				}
-			Point3f node = mesh.getVertex(m);
-			
-			//First set sigma_t
-			double sigma_t = sigma_tangent;
-			
-			//Next get normal for this node
-			Vector3f normal = normals.get(m);
-			
-			//Next determine search bounds (thickness plus Gaussian decay)
-			normal.normalize();
-			normal.scale((float)(thickness + (sigma_normal * sigma_max_normal)));
-			Point3f p = new Point3f();
+			smoothed.add(new MguiDouble(sum_w > 0 ? sum / sum_w : values[i]));
+			}
+		
+		return smoothed;
+	}
+	
+	/**************************************************
+	 * Returns a lookup table for <code>kernel</code>, covering [0, <code>sigma * sigma_max</code>], if 
+	 * {@link #mapping_tabulated_kernels} is set and <code>sigma</code> is positive; otherwise returns 
+	 * <code>null</code>, indicating exact evaluation.
+	 * 
+	 * @param kernel
+	 * @param sigma
+	 * @param sigma_max
+	 * @return
+	 */
+	static GaussianKernelTable getKernelTable(GaussianKernelTable.Kernel kernel, double sigma, double sigma_max){
+		if (!mapping_tabulated_kernels || !(sigma > 0)) return null;
+		return new GaussianKernelTable(kernel, sigma, sigma * sigma_max, mapping_kernel_resolution);
+	}
+	
+	/**************************************************
+	 * Builds an operator which maps the voxels of <code>grid</code> to the vertices of 
+	 * <code>mesh</code>, with the weights used by {@link #mapVolumeToCortexGaussian}. Each vertex 
+	 * row is normalized to sum to one. 
+	 * 
+	 * @param mesh
+	 * @param grid
+	 * @param sigma_normal
+	 * @param sigma_tangent
+	 * @param sigma_max_normal
+	 * @param sigma_max_tangent
+	 * @param _thickness			Either a double representing universal thickness, or an <code>ArrayList</code>,
+	 * 								containing vertex-wise thickness values.
+	 * @param progress
+	 * @return the operator, or <code>null</code> if the process fails or was cancelled
+	 */
+	public static SurfaceVolumeTransferOperator getVolumeToCortexOperator(Mesh3D mesh,
+																		  Grid3D grid,
+																		  double sigma_normal,
+																		  double sigma_tangent,
+																		  double sigma_max_normal,
+																		  double sigma_max_tangent,
+																		  Object _thickness,
+																		  ProgressUpdater progress){
+		
+		double thickness = -1;
+		double[] vertex_thickness = getVertexThickness(_thickness);
+		if (vertex_thickness == null)
+			thickness = (Double)_thickness;
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(mesh.n);
+			}
+		
+		ArrayList<Vector3f> normals = mesh.getNormals();
+		int n_threads = Math.max(1, Math.min(mapping_threads, mesh.n / MAPPING_BLOCK));
+		SurfaceVolumeTransferOperator.Rows[] rows = 
+				new SurfaceVolumeTransferOperator.Rows[(mesh.n + MAPPING_BLOCK - 1) / MAPPING_BLOCK];
+		
+		AtomicInteger next_block = new AtomicInteger(0);
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		VolumeToCortexWorker[] workers = new VolumeToCortexWorker[n_threads];
+		GaussianKernelTable normal_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian2, sigma_normal, sigma_max_normal);
+		GaussianKernelTable tangent_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian2, sigma_tangent, sigma_max_tangent);
+		for (int t = 0; t < n_threads; t++){
+			VolumeToCortexWorker worker = new VolumeToCortexWorker(mesh, normals, grid, null, null);
+			worker.sigma_normal = sigma_normal;
+			worker.sigma_tangent = sigma_tangent;
+			worker.sigma_max_normal = sigma_max_normal;
+			worker.sigma_max_tangent = sigma_max_tangent;
+			worker.normal_table = normal_table;
+			worker.tangent_table = tangent_table;
+			worker.thickness = thickness;
+			worker.vertex_thickness = vertex_thickness;
+			worker.next_block = next_block;
+			worker.done = done;
+			worker.cancelled = cancelled;
+			worker.rows = rows;
+			workers[t] = worker;
+			}
+		if (n_threads == 1)
+			workers[0].progress = progress;
+		
+		if (!ParallelWorkers.run(workers, progress, done, cancelled, "NeuroMeshFunctions.getVolumeToCortexOperator"))
+			return null;
+		
+		return SurfaceVolumeTransferOperator.concatenate(SurfaceVolumeTransferOperator.Type.VolumeToCortex, 
+														 grid.getSize(), rows);
+	}
+	
+	/**************************************************
+	 * Builds an operator which maps the vertices of <code>mesh</code> to the voxels of 
+	 * <code>grid</code>, with the weights and denominators used by 
+	 * {@link #mapCortexToVolumeGaussian} (including the {@link #normal_weight} and {@link #no_weight}
+	 * settings). 
+	 * 
+	 * @param mesh
+	 * @param grid
+	 * @param sigma_normal
+	 * @param sigma_tangent
+	 * @param sigma_max_normal
+	 * @param sigma_max_tangent
+	 * @param _thickness			Either a double representing universal thickness, or an <code>ArrayList</code>,
+	 * 								containing vertex-wise thickness values.
+	 * @param progress
+	 * @return the operator, or <code>null</code> if the process fails or was cancelled
+	 */
+	public static SurfaceVolumeTransferOperator getCortexToVolumeOperator(Mesh3D mesh,
+																		  Grid3D grid,
+																		  double sigma_normal,
+																		  double sigma_tangent,
+																		  double sigma_max_normal,
+																		  double sigma_max_tangent,
+																		  Object _thickness,
+																		  ProgressUpdater progress){
+		
+		double thickness = -1;
+		double[] vertex_thickness = getVertexThickness(_thickness);
+		if (vertex_thickness == null)
+			thickness = (Double)_thickness;
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(mesh.n);
+			}
+		
+		ArrayList<Vector3f> normals = mesh.getNormals();
+		int n_threads = Math.max(1, Math.min(mapping_threads, mesh.n / MAPPING_BLOCK));
+		SurfaceVolumeTransferOperator.Rows[] rows = new SurfaceVolumeTransferOperator.Rows[n_threads];
+		
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		CortexToVolumeWorker[] workers = new CortexToVolumeWorker[n_threads];
+		GaussianKernelTable normal_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian2, sigma_normal, sigma_max_normal);
+		GaussianKernelTable tangent_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian, sigma_tangent, sigma_max_tangent);
+		for (int t = 0; t < n_threads; t++){
+			CortexToVolumeWorker worker = new CortexToVolumeWorker(mesh, normals, grid, null, null);
+			worker.start = (int)((long)mesh.n * t / n_threads);
+			worker.end = (int)((long)mesh.n * (t + 1) / n_threads);
+			worker.sigma_normal = sigma_normal;
+			worker.sigma_tangent = sigma_tangent;
+			worker.sigma_max_normal = sigma_max_normal;
+			worker.sigma_max_tangent = sigma_max_tangent;
+			worker.normal_table = normal_table;
+			worker.tangent_table = tangent_table;
+			worker.thickness = thickness;
+			worker.vertex_thickness = vertex_thickness;
+			worker.done = done;
+			worker.cancelled = cancelled;
+			worker.rows = rows[t] = new SurfaceVolumeTransferOperator.Rows(worker.start, worker.end - worker.start, true);
+			workers[t] = worker;
+			}
+		if (n_threads == 1)
+			workers[0].progress = progress;
+		
+		if (!ParallelWorkers.run(workers, progress, done, cancelled, "NeuroMeshFunctions.getCortexToVolumeOperator"))
+			return null;
+		
+		return SurfaceVolumeTransferOperator.transpose(SurfaceVolumeTransferOperator.Type.CortexToVolume, 
+													   grid.getSize(), rows);
+	}
+	
+	/*********************************** 
+	 * Maps each time point of <code>series</code> to <code>mesh</code>, with the Gaussian weights
+	 * described for {@link #mapVolumeToCortexGaussian}, writing vertex-wise values to <code>sink</code>.
+	 * The weights are computed once, as a {@link SurfaceVolumeTransferOperator}; time points are then
+	 * read and mapped one at a time (see {@link #mapTimeSeries}).
+	 * 
+	 * @param mesh
+	 * @param series
+	 * @param sigma_normal
+	 * @param sigma_tangent
+	 * @param sigma_max_normal
+	 * @param sigma_max_tangent
+	 * @param _thickness			Either a double representing universal thickness, or an <code>ArrayList</code>,
+	 * 								containing vertex-wise thickness values.
+	 * @param sink
+	 * @param progress
+	 * @return <code>true</code> if successful
+	 */
+	public static boolean mapVolumeTimeSeriesToCortexGaussian(final Mesh3D mesh,
+															  final VolumeTimeSeries series,
+															  final double sigma_normal,
+															  final double sigma_tangent,
+															  final double sigma_max_normal,
+															  final double sigma_max_tangent,
+															  final Object _thickness,
+															  final VertexTimeSeriesSink sink,
+															  final ProgressUpdater progress){
+		
+		if (progress == null || !(progress instanceof InterfaceProgressBar)) 
+			return mapVolumeTimeSeriesToCortexGaussianBlocking(mesh, series, 
+															   sigma_normal, sigma_tangent, 
+															   sigma_max_normal, sigma_max_tangent, 
+															   _thickness, sink, progress);
+		
+		return (Boolean)Worker.post(new Job(){
+				@Override
+				public Boolean run(){
+					return mapVolumeTimeSeriesToCortexGaussianBlocking(mesh, series, 
+																	   sigma_normal, sigma_tangent, 
+																	   sigma_max_normal, sigma_max_tangent, 
+																	   _thickness, sink, progress);
+				}
+			});
+		
+	}
+	
+	static boolean mapVolumeTimeSeriesToCortexGaussianBlocking(Mesh3D mesh,
+															   VolumeTimeSeries series,
+															   double sigma_normal,
+															   double sigma_tangent,
+															   double sigma_max_normal,
+															   double sigma_max_tangent,
+															   Object _thickness,
+															   VertexTimeSeriesSink sink,
+															   ProgressUpdater progress){
+		
+		SurfaceVolumeTransferOperator operator = getVolumeToCortexOperator(mesh, series.getGrid(), 
+																		   sigma_normal, sigma_tangent, 
+																		   sigma_max_normal, sigma_max_tangent, 
+																		   _thickness, progress);
+		if (operator == null) return false;
+		if (progress != null && progress.isCancelled()) return false;
+		
+		return mapTimeSeries(operator, series, sink, progress);
+	}
+	
+	/*********************************** 
+	 * Applies <code>operator</code> to each time point of <code>series</code>, writing the results to 
+	 * <code>sink</code>. Time points are read on a separate thread into a bounded set of 
+	 * {@link #time_series_buffers} buffers, so that reading overlaps with mapping and no more than 
+	 * that many volumes are held in memory at once.
+	 * 
+	 * @param operator
+	 * @param series
+	 * @param sink
+	 * @param progress
+	 * @return <code>true</code> if successful
+	 */
+	public static boolean mapTimeSeries(SurfaceVolumeTransferOperator operator,
+										final VolumeTimeSeries series,
+										VertexTimeSeriesSink sink,
+										ProgressUpdater progress){
+		
+		final int n_times = series.getTimePointCount();
+		int n_voxels = series.getGrid().getSize();
+		int n_vertices = operator.getRowCount();
+		
+		if (operator.getColumnCount() != n_voxels){
+			InterfaceSession.log("NeuroMeshFunctions.mapTimeSeries: Operator expects " + operator.getColumnCount() +
+								 " voxels, but the time series has " + n_voxels + ".", LoggingType.Errors);
+			return false;
+			}
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(n_times);
+			}
+		
+		final ArrayBlockingQueue<double[]> free = new ArrayBlockingQueue<double[]>(time_series_buffers);
+		final ArrayBlockingQueue<double[]> full = new ArrayBlockingQueue<double[]>(time_series_buffers);
+		for (int i = 0; i < time_series_buffers; i++)
+			free.add(new double[n_voxels]);
+		final AtomicReference<IOException> read_error = new AtomicReference<IOException>();
+		
+		Thread reader = new Thread(new Runnable(){
+			public void run(){
+				try{
+					for (int t = 0; t < n_times; t++){
+						double[] buffer = free.take();
+						series.read(t, buffer);
+						full.put(buffer);
+						}
+				}catch (InterruptedException ex){
+					//stopped
+				}catch (IOException ex){
+					read_error.set(ex);
+					}
+			}
+		}, "Time series reader");
+		reader.setDaemon(true);
+		reader.start();
+		
+		boolean is_open = false;
+		double[][] mapped = new double[1][n_vertices];
+		float[] values = new float[n_vertices];
+		
+		try{
+			sink.open(n_vertices, n_times);
+			is_open = true;
+			
+			for (int t = 0; t < n_times; t++){
+				double[] buffer = null;
+				while (buffer == null){
+					buffer = full.poll(100, TimeUnit.MILLISECONDS);
+					if (progress != null && progress.isCancelled())
+						return false;
+					if (buffer == null && !reader.isAlive() && full.isEmpty()){
+						IOException ex = read_error.get();
+						throw ex != null ? ex : new IOException("Reader stopped at time point " + t + ".");
+						}
+					}
+				
+				if (!operator.apply(new double[][]{buffer}, mapped))
+					return false;
+				free.put(buffer);
+				
+				for (int i = 0; i < n_vertices; i++)
+					values[i] = (float)mapped[0][i];
+				sink.write(t, values);
+				
+				if (progress != null)
+					progress.update(t + 1);
+				}
+			
+			is_open = false;
+			sink.close();
+			return true;
+			
+		}catch (IOException ex){
+			InterfaceSession.log("NeuroMeshFunctions.mapTimeSeries: I/O error mapping time series: " + 
+								 ex.getLocalizedMessage(), LoggingType.Errors);
+			return false;
+		}catch (InterruptedException ex){
+			return false;
+		}finally{
+			reader.interrupt();
+			if (is_open){
+				try{
+					sink.close();
+				}catch (IOException ex){
+					//already failed
+					}
+				}
+			}
+	}
+	
+	/**************************************************
+	 * The voxel mid-points of a {@link Grid3D}, which are affine in the voxel indices. These are 
+	 * evaluated directly, rather than through {@link Grid3D#getVoxelMidPoint(int, int, int)}, which
+	 * allocates a new point on each call. Immutable.
+	 * 
+	 */
+	static class VoxelMidPoints {
+		
+		final float x0, y0, z0;
+		final float ix, iy, iz, jx, jy, jz, kx, ky, kz;
+		
+		VoxelMidPoints(Grid3D grid){
+			Point3f p0 = new Point3f(grid.getVoxelMidPoint(0, 0, 0));
+			Vector3f di = getStep(grid, p0, grid.getSizeS() > 1 ? 1 : 0, 0, 0);
+			Vector3f dj = getStep(grid, p0, 0, grid.getSizeT() > 1 ? 1 : 0, 0);
+			Vector3f dk = getStep(grid, p0, 0, 0, grid.getSizeR() > 1 ? 1 : 0);
+			x0 = p0.x; y0 = p0.y; z0 = p0.z;
+			ix = di.x; iy = di.y; iz = di.z;
+			jx = dj.x; jy = dj.y; jz = dj.z;
+			kx = dk.x; ky = dk.y; kz = dk.z;
+		}
+		
+		static Vector3f getStep(Grid3D grid, Point3f p0, int i, int j, int k){
+			Vector3f step = new Vector3f();
+			if (i + j + k > 0)
+				step.sub(grid.getVoxelMidPoint(i, j, k), p0);
+			return step;
+		}
+		
+		/**********************************
+		 * Sets <code>p</code> to the mid-point of voxel (<code>i</code>, <code>j</code>, <code>k</code>).
+		 * 
+		 */
+		void get(int i, int j, int k, Point3f p){
+			p.x = x0 + i * ix + j * jx + k * kx;
+			p.y = y0 + i * iy + j * jy + k * ky;
+			p.z = z0 + i * iz + j * jz + k * kz;
+		}
+		
+	}
+	
+	/**************************************************
+	 * Maps volume data to a contiguous range of mesh vertices, as for 
+	 * {@link NeuroMeshFunctions#mapVolumeToCortexGaussian}. Vertices are processed in blocks of
+	 * {@link NeuroMeshFunctions#MAPPING_BLOCK}, taken from a counter shared by all workers; each worker
+	 * holds its own scratch vectors, so that nothing is allocated per voxel.
+	 * 
+	 */
+	static class VolumeToCortexWorker implements Runnable {
+		
+		final Mesh3D mesh;
+		final Grid3D grid;
+		final VoxelMidPoints mid_points;
+		final double[] data, mapped;
+		final ArrayList<Vector3f> normals;
+		
+		double sigma_normal, sigma_tangent, sigma_max_normal, sigma_max_tangent;
+		double thickness;
+		double[] vertex_thickness;
+		
+		//kernel lookup tables; null for exact evaluation
+		GaussianKernelTable normal_table, tangent_table;
+		
+		AtomicInteger next_block, done;
+		AtomicBoolean cancelled;
+		
+		//only set when run on the calling thread
+		DefaultMatrixFileWriter writer;
+		ProgressUpdater progress;
+		
+		//set when building an operator; one per block
+		SurfaceVolumeTransferOperator.Rows[] rows;
+		SurfaceVolumeTransferOperator.Rows current;
+		
+		//scratch
+		final Vector3f normal = new Vector3f();
+		final Vector3f v_mp = new Vector3f();
+		final Vector3f v_proj = new Vector3f();
+		final Point3f p = new Point3f();
+		final Point3f mp = new Point3f();
+		final Point3f ep = new Point3f();
+		final Point3f min_pt = new Point3f();
+		final Point3f max_pt = new Point3f();
+		
+		VolumeToCortexWorker(Mesh3D mesh, ArrayList<Vector3f> normals, Grid3D grid, double[] data, double[] mapped){
+			this.mesh = mesh;
+			this.normals = normals;
+			this.grid = grid;
+			this.mid_points = new VoxelMidPoints(grid);
+			this.data = data;
+			this.mapped = mapped;
+		}
+		
+		public void run(){
+			int block;
+			while (!cancelled.get() && (block = next_block.getAndIncrement()) * MAPPING_BLOCK < mesh.n){
+				int start = block * MAPPING_BLOCK;
+				int end = Math.min(start + MAPPING_BLOCK, mesh.n);
+				if (rows != null)
+					current = rows[block] = new SurfaceVolumeTransferOperator.Rows(start, end - start, false);
+				for (int m = start; m < end; m++){
+					double value = mapVertex(m);
+					if (mapped != null)
+						mapped[m] = value;
+					}
+				int d = done.addAndGet(end - start);
+				if (progress != null){
+					if (progress.isCancelled())
+						cancelled.set(true);
+					else
+						progress.update(d);
+					}
+				}
+		}
+		
+		double mapVertex(int m){
+			
+			if (vertex_thickness != null)
+				thickness = vertex_thickness[m];
+			
+			Point3f node = mesh.getVertex(m);
+			
+			//First set sigma_t
+			double sigma_t = sigma_tangent;
+			
+			//Next determine search bounds (thickness plus Gaussian decay)
+			normal.set(normals.get(m));
+			normal.normalize();
+			normal.scale((float)(thickness + (sigma_normal * sigma_max_normal)));
 			p.add(node, normal);
 			float min_x = p.x;
 			float min_y = p.y;
@@ -2881,7 +3590,6 @@ public class NeuroMeshFunctions extends Utility {
 			float max_x = p.x;
 			float max_y = p.y;
 			float max_z = p.z;
-			p = new Point3f();
 			p.sub(node, normal);
 			min_x = Math.min(min_x, p.x);
 			min_y = Math.min(min_y, p.y);
@@ -2892,92 +3600,79 @@ public class NeuroMeshFunctions extends Utility {
 			
 			//add/subtract max tangent bounds
 			float max_t = (float)(sigma_tangent * sigma_max_tangent);
-			min_x -= max_t;
-			min_y -= max_t;
-			min_z -= max_t;
-			max_x += max_t;
-			max_y += max_t;
-			max_z += max_t;
+			min_pt.set(min_x - max_t, min_y - max_t, min_z - max_t);
+			max_pt.set(max_x + max_t, max_y + max_t, max_z + max_t);
 			
 			//Next get subvolume for bounds
 			//(will be null if this bounds is outside grid bounds) 
-			int[] sub_vol = grid.getSubGrid(new Point3f(min_x, min_y, min_z), 
-							 				new Point3f(max_x, max_y, max_z));
+			int[] sub_vol = grid.getSubGrid(min_pt, max_pt);
+			if (sub_vol == null){
+				if (current != null) current.endRow(0);
+				return 0;
+				}
 			
-			//int[] node_coords = grid.getEnclosingVoxel(node);
+			normal.normalize();
+			double half_thickness = thickness / 2.0;
+			double value = 0, denom = 0;
 			
-			//Next determine weights for all voxels in subvolume
-			if (sub_vol != null){
-				double denom = 0;
-				double min_normal = Double.MAX_VALUE;
-				double min_tangent = Double.MAX_VALUE;
-				Point3f mp = new Point3f();
-				Vector3f v_mp = new Vector3f();
-				Vector3f v_proj = new Vector3f();
-				Point3f ep = new Point3f();
-				
-				//For each voxel in bounds, add weighted value
-				for (int i = sub_vol[0]; i < sub_vol[3]; i++)
-					for (int j = sub_vol[1]; j < sub_vol[4]; j++)
-						for (int k = sub_vol[2]; k < sub_vol[5]; k++){
+			//For each voxel in bounds, add weighted value
+			for (int i = sub_vol[0]; i < sub_vol[3]; i++)
+				for (int j = sub_vol[1]; j < sub_vol[4]; j++)
+					for (int k = sub_vol[2]; k < sub_vol[5]; k++){
+						
+						//normal weight
+						mid_points.get(i, j, k, mp);
+						v_mp.sub(mp, node);
+						
+						//normal distance from node to voxel, minus cortical thickness;
+						//projection onto the unit normal
+						v_proj.scale(v_mp.dot(normal), normal);
+						float d_normal = v_proj.length();
+						if ((d_normal - half_thickness) / sigma_normal < sigma_max_normal){
 							
-							//normal weight
-							mp.set(grid.getVoxelMidPoint(i, j, k));
-							normal.normalize();
-							v_mp.set(mp);
-							v_mp.sub(node);
+							double w_normal = 0;
+							if (d_normal < half_thickness)
+								w_normal = 1.0;
+							else
+								w_normal = normal_table != null ? normal_table.evaluate(d_normal - half_thickness) :
+												   StatFunctions.getGaussian2((d_normal - half_thickness), 0, sigma_normal);
 							
-							//normal distance from node to voxel, minus cortical thickness
-							v_proj.set(GeometryFunctions.getProjectedVector(v_mp, normal));
-							min_normal = Math.min(min_normal, v_proj.length());
-							if ((v_proj.length() - thickness / 2.0) / sigma_normal < sigma_max_normal){
+							//tangent weight
+							ep.add(node, v_proj);
+							
+							//tangent distance from node to voxel
+							v_mp.sub(mp, ep);
+							float d_tangent = v_mp.length();
+							if (d_tangent / sigma_t < sigma_max_tangent){
 								
-								double w_normal = 0;
-								if (v_proj.length() < (thickness / 2.0))
-									w_normal = 1.0;
-								else
-									w_normal = StatFunctions.getGaussian2((v_proj.length() - thickness / 2.0), 0, sigma_normal);
+								//you've come a long way, baby
+								double w_tangent = tangent_table != null ? tangent_table.evaluate(d_tangent) : 
+														StatFunctions.getGaussian2(d_tangent, 0, sigma_t);
 								
-								//tangent weight
-								ep.set(node);
-								ep.add(v_proj);
+								//add weighted contribution
+								int index = grid.getAbsoluteIndex(i, j, k);
+								if (data != null)
+									value += data[index] * w_normal * w_tangent;
+								denom += w_normal * w_tangent;
+								if (current != null)
+									current.add(index, w_normal * w_tangent);
 								
-								//tangent distance from node to voxel
-								v_mp.sub(mp, ep);
-								min_tangent = Math.min(min_tangent, v_mp.length());
-								if (v_mp.length() / sigma_t < sigma_max_tangent){
-									
-									//you've come a long way, baby
-									double w_tangent = StatFunctions.getGaussian2(v_mp.length(), 0, sigma_t);
-									
-									//add weighted contribution
-									values.get(m).add(volume.getDatumAtVoxel(channel, new int[]{i, j, k}).getValue() * w_normal * w_tangent);
-									denom += w_normal * w_tangent;
-									
-									//write to matrix if necessary
-									if (output_matrix){
-										writer.writeLine(grid.getAbsoluteIndex(i, j, k), 
-														 m, 
-														 w_normal * w_tangent);
-										
-										}
-									}
+								//write to matrix if necessary
+								if (writer != null)
+									writer.writeLine(index, m, w_normal * w_tangent);
 								}
 							}
-				//result is weighted average
-				values.get(m).divide(denom);
-				if (Double.isNaN(values.get(m).getValue()) || Double.isInfinite(values.get(m).getValue()))
-					values.get(m).setValue(0);
-				}
-			}
-		
-		if (output_matrix){
-			System.out.print("Writing transfer matrix to '" + matrix_file + "...");
-			writer.finalize(grid.getSizeS() * grid.getSizeT() * grid.getSizeR(), mesh.n);
-			System.out.println("done.");
-			}
-		System.out.println("\nAll done. " + null_count + " vertices not mapped");
-		return values;
+						}
+			
+			if (current != null)
+				current.endRow(denom);
+			
+			//result is weighted average
+			value /= denom;
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				return 0;
+			return value;
+		}
 		
 	}
 	
@@ -3068,6 +3763,13 @@ public class NeuroMeshFunctions extends Utility {
 												  	final boolean normalize,
 												  	final ProgressUpdater progress){
 		
+		//a debug index selects this serial implementation, which visits vertices in order
+		if (debug_index < 0)
+			return mapCortexToGrid3DGaussianParallel(mesh_int, volume, mesh_column, grid_channel, 
+													 sigma_normal, sigma_tangent, 
+													 sigma_max_normal, sigma_max_tangent, 
+													 _thickness, normalize, progress);
+		
 		Grid3D grid = volume.getGrid();
 		Mesh3D mesh = mesh_int.getMesh();
 		ArrayList<MguiNumber> values = mesh_int.getVertexData(mesh_column);
@@ -3101,20 +3803,6 @@ public class NeuroMeshFunctions extends Utility {
 		int prog_int = (int)(0.01 * mesh.n);
 		int last_prog = 0;
 		
-		int vertex_count = 0;
-		
-		//Temp debug
-		BufferedWriter writer = null;
-		if (debug_index > 0){
-			try{
-				writer = new BufferedWriter(new FileWriter(
-					"C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Mean field\\ptrsa\\" + debug_index + ".txt"));
-				writer.write("D_normal\tD_tangent\tW_normal\tWtangent\tValue\tWeight\tCumulative_value\tCumulative_denom");
-			}catch (IOException e){
-				e.printStackTrace();
-				}
-			}
-		
 		//iterate through indices
 		for (int m = 0; m < mesh.n; m++){
 			
@@ -3186,8 +3874,6 @@ public class NeuroMeshFunctions extends Utility {
 					for (int j = sub_vol[1]; j < sub_vol[4]; j++)
 						for (int k = sub_vol[2]; k < sub_vol[5]; k++){
 							
-							int index = grid.getAbsoluteIndex(i, j, k);
-							
 							//normal weight
 							mp.set(grid.getVoxelMidPoint(i, j, k));
 							normal.normalize();
@@ -3213,46 +3899,11 @@ public class NeuroMeshFunctions extends Utility {
 								ep.set(node);
 								ep.add(v_proj);
 								
-								Vector3f v_disp = new Vector3f(v_mp);
-								
 								//tangent distance from node to voxel
 								v_mp.sub(mp, ep);
 								min_tangent = Math.min(min_tangent, v_mp.length());
 								if (v_mp.length() / sigma_tangent < sigma_max_tangent){
 									
-									if (index == debug_index){
-										index += 0;	//breakpoint
-										vertex_count++;
-										try{
-											
-											BufferedWriter v_writer1 = new BufferedWriter(new FileWriter(
-													"C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Mean field\\ptrsa\\disps_" + debug_index + ".vect3d", true));
-											BufferedWriter v_writer2 = new BufferedWriter(new FileWriter(
-													"C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Mean field\\ptrsa\\normals_" + debug_index + ".vect3d", true));
-											BufferedWriter v_writer3 = new BufferedWriter(new FileWriter(
-													"C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Mean field\\ptrsa\\tangents_" + debug_index + ".vect3d", true));
-											BufferedWriter v_writer4 = new BufferedWriter(new FileWriter(
-													"C:\\Documents and Settings\\atreid\\My Documents\\Projects\\Mean field\\ptrsa\\orig_normals_" + debug_index + ".vect3d", true));
-											
-											v_writer1.write("\n" + node.x + " " + node.y + " " + node.z + " ");
-											v_writer1.write(v_disp.x + " " + v_disp.y + " " + v_disp.z + " ");
-											v_writer2.write("\n" + node.x + " " + node.y + " " + node.z + " ");
-											v_writer2.write(v_proj.x + " " + v_proj.y + " " + v_proj.z + " ");
-											v_writer3.write("\n" + node.x + " " + node.y + " " + node.z + " ");
-											v_writer3.write(v_mp.x + " " + v_mp.y + " " + v_mp.z + " ");
-											v_writer4.write("\n" + node.x + " " + node.y + " " + node.z + " ");
-											Vector3f temp = new Vector3f(normal);
-											temp.scale(5f);
-											v_writer4.write(normal.x + " " + normal.y + " " + normal.z + " ");
-											v_writer1.close();
-											v_writer2.close();
-											v_writer3.close();
-											v_writer4.close();
-										}catch (IOException ex){
-											
-											}
-										}
-									
 									//you've come a long way, baby
 									double w_tangent = StatFunctions.getGaussian(v_mp.length(), 0, sigma_tangent);
 									
@@ -3277,14 +3928,6 @@ public class NeuroMeshFunctions extends Utility {
 									
 									new_volume.setDatumAtVoxel("_denom", new int[]{i, j, k}, d_value);
 									
-									if (index == debug_index){
-										try{
-											writer.write("\n" + v_proj.length() + "\t" + v_mp.length() +
-													     "\t" + w_normal + "\t" + w_tangent + "\t" + value + "\t" +
-														 w_normal * w_tangent + "\t" + g_value + "\t" + d_value);
-										}catch (IOException e){}
-										}
-									
 									}
 								}
 							}
@@ -3295,15 +3938,6 @@ public class NeuroMeshFunctions extends Utility {
 		for (int i = 0; i < new_grid.getSize(); i++){
 			double value = new_volume.getDatumAtVertex(grid_channel, i).getValue();
 			double denom = new_volume.getDatumAtVertex("_denom", i).getValue();
-			if (i == debug_index){
-				value = value + 0;	//breakpoint
-				try{
-					writer.write("\n\nCumulative value: " + value + 
-								 "\nCumulative denom: " + denom +
-								 "\nVertex count: " + vertex_count +
-								 "\nFinal value: " + (value/denom));
-				}catch (IOException e){}
-				}
 			if (denom > 0)
 				value /= denom;
 			if (Double.isNaN(value) || Double.isInfinite(value))
@@ -3312,14 +3946,395 @@ public class NeuroMeshFunctions extends Utility {
 			new_volume.setDatumAtVertex(grid_channel, i, value);
 			}
 		
-		try{
-			writer.close();
-		}catch (IOException e){}
-		
 		InterfaceSession.log("All done. " + null_count + " voxels not mapped", LoggingType.Debug);
 		return new_volume;
 		
 	}
 	
+	/**************************************************
+	 * Parallel version of {@link #mapCortexToGrid3DGaussianBlocking}. Vertices are split into 
+	 * {@link #mapping_threads} contiguous ranges; each worker scatters its weighted values into a 
+	 * private, lazily allocated {@link TiledVoxelAccumulator}, rather than the target volume. The 
+	 * partial sums are then reduced tile by tile, always in worker order, so that results do not
+	 * depend on thread scheduling. They do depend slightly on the number of threads, since this 
+	 * determines how each voxel's sum is grouped. The difference is only floating-point rounding, 
+	 * of the order of 1e-15 relative to the summed magnitudes (1e-7 with single-precision 
+	 * accumulation). If {@link #mapping_float_accumulation} is set, worker buffers
+	 * hold single-precision sums, halving their memory; the reduction is always in double precision.
+	 * 
+	 * <p>Vertices with non-finite values are skipped.
+	 * 
+	 * @return					A new <code>Grid3D</code> containing the projected values, or 
+	 * 							<code>null</code> if the process fails or is cancelled
+	 */
+	static Volume3DInt mapCortexToGrid3DGaussianParallel(final Mesh3DInt mesh_int,
+													  final Volume3DInt volume,
+													  final String mesh_column,
+													  final String grid_channel,
+													  final double sigma_normal,
+													  final double sigma_tangent,
+													  final double sigma_max_normal,
+													  final double sigma_max_tangent,
+													  final Object _thickness,
+													  final boolean normalize,
+													  final ProgressUpdater progress){
+		
+		Grid3D grid = volume.getGrid();
+		Mesh3D mesh = mesh_int.getMesh();
+		
+		ArrayList<MguiNumber> list = mesh_int.getVertexData(mesh_column);
+		double[] values = new double[mesh.n];
+		for (int i = 0; i < mesh.n; i++)
+			values[i] = list.get(i).getValue();
+		
+		double thickness = -1;
+		double[] vertex_thickness = getVertexThickness(_thickness);
+		if (vertex_thickness == null)
+			thickness = (Double)_thickness;
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(mesh.n);
+			}
+		
+		//list of normals
+		ArrayList<Vector3f> normals = mesh.getNormals();
+		
+		int size = grid.getSize();
+		int n_threads = Math.max(1, Math.min(mapping_threads, mesh.n / MAPPING_BLOCK));
+		
+		AtomicInteger done = new AtomicInteger(0);
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		CortexToVolumeWorker[] workers = new CortexToVolumeWorker[n_threads];
+		GaussianKernelTable normal_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian2, sigma_normal, sigma_max_normal);
+		GaussianKernelTable tangent_table = getKernelTable(GaussianKernelTable.Kernel.Gaussian, sigma_tangent, sigma_max_tangent);
+		for (int t = 0; t < n_threads; t++){
+			CortexToVolumeWorker worker = new CortexToVolumeWorker(mesh, normals, grid, values, 
+										new TiledVoxelAccumulator(size, mapping_float_accumulation));
+			worker.start = (int)((long)mesh.n * t / n_threads);
+			worker.end = (int)((long)mesh.n * (t + 1) / n_threads);
+			worker.sigma_normal = sigma_normal;
+			worker.sigma_tangent = sigma_tangent;
+			worker.sigma_max_normal = sigma_max_normal;
+			worker.sigma_max_tangent = sigma_max_tangent;
+			worker.normal_table = normal_table;
+			worker.tangent_table = tangent_table;
+			worker.thickness = thickness;
+			worker.vertex_thickness = vertex_thickness;
+			worker.done = done;
+			worker.cancelled = cancelled;
+			workers[t] = worker;
+			}
+		
+		//reduced sums
+		double[] sum = new double[size];
+		double[] denom = new double[size];
+		
+		if (n_threads == 1){
+			workers[0].progress = progress;
+			workers[0].run();
+			if (cancelled.get())
+				return null;
+			workers[0].accumulator.reduce(0, size, sum, denom);
+		}else{
+			ExecutorService executor = ParallelWorkers.newPool(n_threads);
+			try{
+				ParallelWorkers.invokeAll(executor, workers, progress, done, cancelled);
+				if (cancelled.get())
+					return null;
+				
+				//reduce tile ranges in parallel; each voxel sums workers in a fixed order
+				int n_tiles = TiledVoxelAccumulator.getTileCount(size);
+				Runnable[] reducers = new Runnable[n_threads];
+				for (int t = 0; t < n_threads; t++){
+					final int first = (int)((long)n_tiles * t / n_threads) * TiledVoxelAccumulator.TILE;
+					final int last = Math.min(size, (int)((long)n_tiles * (t + 1) / n_threads) * TiledVoxelAccumulator.TILE);
+					final CortexToVolumeWorker[] _workers = workers;
+					final double[] _sum = sum, _denom = denom;
+					reducers[t] = new Runnable(){
+						public void run(){
+							for (int w = 0; w < _workers.length; w++)
+								_workers[w].accumulator.reduce(first, last, _sum, _denom);
+						}
+					};
+					}
+				ParallelWorkers.invokeAll(executor, reducers, null, null, cancelled);
+				
+			}catch (InterruptedException ex){
+				Thread.currentThread().interrupt();
+				return null;
+			}catch (ExecutionException ex){
+				InterfaceSession.log("NeuroMeshFunctions.mapCortexToVolumeGaussian: Worker failed: " + 
+									 ex.getCause(), LoggingType.Errors);
+				return null;
+			}finally{
+				executor.shutdownNow();
+				}
+			}
+		
+		//release worker buffers before allocating the new volume
+		workers = null;
+		
+		Grid3D new_grid = new Grid3D(grid);
+		Volume3DInt new_volume = new Volume3DInt(new_grid);
+		
+		new_volume.addVertexData(grid_channel, DataBuffer.TYPE_DOUBLE);
+		new_volume.addVertexData("_denom", DataBuffer.TYPE_DOUBLE);
+		
+		//result is weighted average
+		for (int i = 0; i < size; i++){
+			double value = sum[i];
+			if (denom[i] > 0)
+				value /= denom[i];
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				value = 0;
+			new_volume.setDatumAtVertex(grid_channel, i, value);
+			new_volume.setDatumAtVertex("_denom", i, denom[i]);
+			}
+		
+		return new_volume;
+	}
+	
+	/**************************************************
+	 * Sparse voxel-wise accumulator for weighted sums and their denominators, held in tiles of 
+	 * {@link #TILE} consecutive absolute voxel indices. Tiles are only allocated once a voxel in 
+	 * them is touched, so a worker mapping a patch of cortex holds memory only for the voxels 
+	 * around that patch. Not thread-safe; each worker has its own.
+	 * 
+	 */
+	static class TiledVoxelAccumulator {
+		
+		static final int TILE_BITS = 12;
+		static final int TILE = 1 << TILE_BITS;
+		
+		final boolean single;
+		final double[][] d_tiles;		//interleaved sum, denom
+		final float[][] f_tiles;
+		
+		TiledVoxelAccumulator(int size, boolean single){
+			this.single = single;
+			int n_tiles = getTileCount(size);
+			if (single){
+				f_tiles = new float[n_tiles][];
+				d_tiles = null;
+			}else{
+				d_tiles = new double[n_tiles][];
+				f_tiles = null;
+				}
+		}
+		
+		static int getTileCount(int size){
+			return (size + TILE - 1) >>> TILE_BITS;
+		}
+		
+		void add(int index, double value, double weight){
+			int tile = index >>> TILE_BITS;
+			int i = (index & (TILE - 1)) << 1;
+			if (single){
+				float[] t = f_tiles[tile];
+				if (t == null) t = f_tiles[tile] = new float[TILE << 1];
+				t[i] += value;
+				t[i + 1] += weight;
+			}else{
+				double[] t = d_tiles[tile];
+				if (t == null) t = d_tiles[tile] = new double[TILE << 1];
+				t[i] += value;
+				t[i + 1] += weight;
+				}
+		}
+		
+		/**********************************
+		 * Adds this accumulator's sums for indices <code>first</code> to <code>last</code> (exclusive)
+		 * to <code>sum</code> and <code>denom</code>. <code>first</code> must be the start of a tile.
+		 * 
+		 */
+		void reduce(int first, int last, double[] sum, double[] denom){
+			for (int start = first; start < last; start += TILE){
+				int tile = start >>> TILE_BITS;
+				int end = Math.min(last, start + TILE);
+				if (single){
+					float[] t = f_tiles[tile];
+					if (t == null) continue;
+					for (int index = start, i = 0; index < end; index++, i += 2){
+						sum[index] += t[i];
+						denom[index] += t[i + 1];
+						}
+				}else{
+					double[] t = d_tiles[tile];
+					if (t == null) continue;
+					for (int index = start, i = 0; index < end; index++, i += 2){
+						sum[index] += t[i];
+						denom[index] += t[i + 1];
+						}
+					}
+				}
+		}
+		
+	}
+	
+	/**************************************************
+	 * Scatters the values of a range of mesh vertices into a private {@link TiledVoxelAccumulator},
+	 * as for {@link NeuroMeshFunctions#mapCortexToGrid3DGaussianBlocking}.
+	 * 
+	 */
+	static class CortexToVolumeWorker implements Runnable {
+		
+		final Mesh3D mesh;
+		final Grid3D grid;
+		final VoxelMidPoints mid_points;
+		final double[] values;
+		final ArrayList<Vector3f> normals;
+		final TiledVoxelAccumulator accumulator;
+		
+		int start, end;
+		double sigma_normal, sigma_tangent, sigma_max_normal, sigma_max_tangent;
+		double thickness;
+		double[] vertex_thickness;
+		
+		//kernel lookup tables; null for exact evaluation
+		GaussianKernelTable normal_table, tangent_table;
+		
+		AtomicInteger done;
+		AtomicBoolean cancelled;
+		
+		//only set when run on the calling thread
+		ProgressUpdater progress;
+		
+		//set when building an operator
+		SurfaceVolumeTransferOperator.Rows rows;
+		
+		//scratch
+		final Vector3f normal = new Vector3f();
+		final Vector3f v_mp = new Vector3f();
+		final Vector3f v_proj = new Vector3f();
+		final Point3f p = new Point3f();
+		final Point3f mp = new Point3f();
+		final Point3f ep = new Point3f();
+		final Point3f min_pt = new Point3f();
+		final Point3f max_pt = new Point3f();
+		
+		CortexToVolumeWorker(Mesh3D mesh, ArrayList<Vector3f> normals, Grid3D grid, double[] values, 
+							 TiledVoxelAccumulator accumulator){
+			this.mesh = mesh;
+			this.normals = normals;
+			this.grid = grid;
+			this.mid_points = new VoxelMidPoints(grid);
+			this.values = values;
+			this.accumulator = accumulator;
+		}
+		
+		public void run(){
+			for (int block = start; block < end && !cancelled.get(); block += MAPPING_BLOCK){
+				int block_end = Math.min(end, block + MAPPING_BLOCK);
+				for (int m = block; m < block_end; m++){
+					mapVertex(m);
+					if (rows != null)
+						rows.endRow();
+					}
+				int d = done.addAndGet(block_end - block);
+				if (progress != null){
+					if (progress.isCancelled())
+						cancelled.set(true);
+					else
+						progress.update(d);
+					}
+				}
+		}
+		
+		void mapVertex(int m){
+			
+			//values are not needed to build an operator
+			double value = values == null ? 0 : values[m];
+			if (Double.isNaN(value) || Double.isInfinite(value)) return;
+			
+			if (vertex_thickness != null)
+				thickness = vertex_thickness[m];
+			
+			double half_thickness = thickness / 2.0;
+			
+			Point3f node = mesh.getVertex(m);
+			
+			//Next determine search bounds
+			normal.set(normals.get(m));
+			normal.normalize();
+			normal.scale((float)((thickness + sigma_normal) * sigma_max_normal));
+			p.add(node, normal);
+			float min_x = p.x;
+			float min_y = p.y;
+			float min_z = p.z;
+			float max_x = p.x;
+			float max_y = p.y;
+			float max_z = p.z;
+			p.sub(node, normal);
+			min_x = Math.min(min_x, p.x);
+			min_y = Math.min(min_y, p.y);
+			min_z = Math.min(min_z, p.z);
+			max_x = Math.max(max_x, p.x);
+			max_y = Math.max(max_y, p.y);
+			max_z = Math.max(max_z, p.z);
+			
+			//add/subtract max tangent bounds
+			float max_t = (float)(sigma_normal * sigma_max_normal);
+			min_pt.set(min_x - max_t, min_y - max_t, min_z - max_t);
+			max_pt.set(max_x + max_t, max_y + max_t, max_z + max_t);
+			
+			//Next get subvolume for bounds
+			//(will be null if this bounds is outside grid bounds) 
+			int[] sub_vol = grid.getSubGrid(min_pt, max_pt);
+			if (sub_vol == null) return;
+			
+			normal.normalize();
+			
+			//For each voxel in bounds, add weighted value
+			for (int i = sub_vol[0]; i < sub_vol[3]; i++)
+				for (int j = sub_vol[1]; j < sub_vol[4]; j++)
+					for (int k = sub_vol[2]; k < sub_vol[5]; k++){
+						
+						//normal weight
+						mid_points.get(i, j, k, mp);
+						v_mp.sub(mp, node);
+						
+						//normal distance from node to voxel; projection onto the unit normal
+						v_proj.scale(v_mp.dot(normal), normal);
+						float d_normal = v_proj.length();
+						
+						if ((d_normal - half_thickness) / sigma_normal < sigma_max_normal){
+							
+							double w_normal = 0;
+							if (d_normal < half_thickness)
+								w_normal = 1.0;
+							else
+								w_normal = normal_table != null ? normal_table.evaluate(d_normal - half_thickness) :
+												   StatFunctions.getGaussian2((d_normal - half_thickness), 0, sigma_normal);
+							
+							//tangent weight
+							ep.add(node, v_proj);
+							
+							//tangent distance from node to voxel
+							v_mp.sub(mp, ep);
+							float d_tangent = v_mp.length();
+							if (d_tangent / sigma_tangent < sigma_max_tangent){
+								
+								double w_tangent = tangent_table != null ? tangent_table.evaluate(d_tangent) : 
+														StatFunctions.getGaussian(d_tangent, 0, sigma_tangent);
+								
+								double weight = w_tangent;
+								if (no_weight)
+									weight = 0;
+								else if (normal_weight)
+									weight = w_tangent * w_normal;
+								
+								int index = grid.getAbsoluteIndex(i, j, k);
+								if (accumulator != null)
+									accumulator.add(index, value * w_normal * w_tangent, weight);
+								if (rows != null)
+									rows.add(index, w_normal * w_tangent, weight);
+								}
+							}
+						}
+		}
+		
+	}
+	
 	
 }
\ No newline at end of file
@@ -26,4 +26,8 @@ public class NeuroMeshFunctionsException extends Exception {
 		super(message);
 	}
 	
+	public NeuroMeshFunctionsException(String message, Throwable cause){
+		super(message, cause);
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,262 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+import mgui.geometry.Grid3D;
+
+/********************************************************
+ * Time series read from a 4D, single-file NIfTI-1 image (<code>.nii</code> or <code>.nii.gz</code>), 
+ * one time point at a time, without loading the whole series. Only the header and the current time 
+ * point are held in memory.
+ * 
+ * <p>The geometry of the series is given by a {@link Grid3D}, usually that of a 3D volume loaded from 
+ * the same image (e.g., its first time point); its dimensions must match those of the image. Voxel
+ * values are scaled by <code>scl_slope</code> and <code>scl_inter</code>, if these are set.
+ * 
+ * <p>Time points of uncompressed files are read directly from their offsets. Compressed files are read 
+ * sequentially; reading a time point before the previous one reopens the file. 
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class NiftiTimeSeries implements VolumeTimeSeries {
+
+	static final int HEADER_BYTES = 348;
+	
+	protected File file;
+	protected Grid3D grid;
+	protected boolean compressed;
+	protected ByteOrder byte_order;
+	protected int size_s, size_t, size_r, n_times;
+	protected int datatype, bytes_per_voxel;
+	protected long vox_offset;
+	protected double slope = 1, intercept = 0;
+	
+	protected ByteBuffer frame;
+	protected RandomAccessFile raf;
+	protected InputStream stream;
+	protected int next_time;
+	
+	/********************************
+	 * Opens the 4D image <code>file</code>, with geometry <code>grid</code>.
+	 * 
+	 * @param file
+	 * @param grid
+	 * @throws IOException if the file is not a single-file NIfTI-1 image with a supported data type, or 
+	 * 					   its dimensions do not match <code>grid</code>
+	 */
+	public NiftiTimeSeries(File file, Grid3D grid) throws IOException{
+		this.file = file;
+		this.grid = grid;
+		this.compressed = file.getName().toLowerCase().endsWith(".gz");
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		InputStream in = openStream();
+		try{
+			readFully(in, header.array(), 0, HEADER_BYTES);
+		}finally{
+			in.close();
+			}
+		readHeader(header);
+		
+		if (size_s != grid.getSizeS() || size_t != grid.getSizeT() || size_r != grid.getSizeR())
+			throw new IOException("NiftiTimeSeries: image dimensions (" + size_s + ", " + size_t + ", " + size_r + 
+								  ") do not match the grid (" + grid.getSizeS() + ", " + grid.getSizeT() + ", " + 
+								  grid.getSizeR() + ").");
+		
+		frame = ByteBuffer.allocate(size_s * size_t * size_r * bytes_per_voxel).order(byte_order);
+	}
+	
+	protected void readHeader(ByteBuffer header) throws IOException{
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		if (header.getInt(0) != HEADER_BYTES){
+			header.order(ByteOrder.BIG_ENDIAN);
+			if (header.getInt(0) != HEADER_BYTES)
+				throw new IOException("NiftiTimeSeries: '" + file.getName() + "' is not a NIfTI-1 image.");
+			}
+		byte_order = header.order();
+		
+		if (header.get(344) != 'n' || header.get(345) != '+' || header.get(346) != '1')
+			throw new IOException("NiftiTimeSeries: only single-file NIfTI-1 images (.nii, .nii.gz) are supported.");
+		
+		int n_dims = header.getShort(40);
+		if (n_dims < 3 || n_dims > 7)
+			throw new IOException("NiftiTimeSeries: unsupported number of dimensions (" + n_dims + ").");
+		size_s = header.getShort(42);
+		size_t = header.getShort(44);
+		size_r = header.getShort(46);
+		n_times = n_dims > 3 ? Math.max(1, (int)header.getShort(48)) : 1;
+		for (int d = 5; d <= n_dims; d++)
+			if (header.getShort(40 + 2 * d) > 1)
+				throw new IOException("NiftiTimeSeries: dimensions beyond time are not supported.");
+		
+		datatype = header.getShort(70);
+		switch (datatype){
+			case 2:			//uint8
+			case 256:		//int8
+				bytes_per_voxel = 1;
+				break;
+			case 4:			//int16
+			case 512:		//uint16
+				bytes_per_voxel = 2;
+				break;
+			case 8:			//int32
+			case 16:		//float32
+			case 768:		//uint32
+				bytes_per_voxel = 4;
+				break;
+			case 64:		//float64
+				bytes_per_voxel = 8;
+				break;
+			default:
+				throw new IOException("NiftiTimeSeries: unsupported data type (" + datatype + ").");
+			}
+		
+		vox_offset = (long)header.getFloat(108);
+		float scl_slope = header.getFloat(112);
+		if (scl_slope != 0 && !Float.isNaN(scl_slope)){
+			slope = scl_slope;
+			intercept = header.getFloat(116);
+			}
+	}
+	
+	public Grid3D getGrid(){
+		return grid;
+	}
+	
+	public int getTimePointCount(){
+		return n_times;
+	}
+	
+	public void read(int t, double[] data) throws IOException{
+		if (t < 0 || t >= n_times)
+			throw new IOException("NiftiTimeSeries: time point " + t + " is out of range [0, " + n_times + ").");
+		
+		long frame_bytes = frame.capacity();
+		if (compressed){
+			if (stream == null || t < next_time){
+				close();
+				stream = openStream();
+				skipFully(stream, vox_offset);
+				next_time = 0;
+				}
+			skipFully(stream, (t - next_time) * frame_bytes);
+			readFully(stream, frame.array(), 0, frame.capacity());
+			next_time = t + 1;
+		}else{
+			if (raf == null)
+				raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			frame.clear();
+			long position = vox_offset + t * frame_bytes;
+			while (frame.hasRemaining()){
+				if (channel.read(frame, position + frame.position()) < 0)
+					throw new EOFException("NiftiTimeSeries: '" + file.getName() + "' is truncated.");
+				}
+			}
+		
+		// File order has s fastest, then t, then r
+		int m = 0;
+		for (int k = 0; k < size_r; k++)
+			for (int j = 0; j < size_t; j++)
+				for (int i = 0; i < size_s; i++)
+					data[grid.getAbsoluteIndex(i, j, k)] = slope * getValue(m++) + intercept;
+	}
+	
+	protected double getValue(int m){
+		switch (datatype){
+			case 2:
+				return frame.get(m) & 0xFF;
+			case 256:
+				return frame.get(m);
+			case 4:
+				return frame.getShort(m * 2);
+			case 512:
+				return frame.getShort(m * 2) & 0xFFFF;
+			case 8:
+				return frame.getInt(m * 4);
+			case 768:
+				return frame.getInt(m * 4) & 0xFFFFFFFFL;
+			case 16:
+				return frame.getFloat(m * 4);
+			default:
+				return frame.getDouble(m * 8);
+			}
+	}
+	
+	/********************************
+	 * Releases the open file, if any. The series can still be read; the file is reopened as needed.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		if (raf != null) raf.close();
+		if (stream != null) stream.close();
+		raf = null;
+		stream = null;
+	}
+	
+	protected InputStream openStream() throws IOException{
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		if (!compressed) return in;
+		try{
+			return new GZIPInputStream(in, 1 << 16);
+		}catch (IOException ex){
+			in.close();
+			throw ex;
+			}
+	}
+	
+	static void readFully(InputStream in, byte[] b, int offset, int length) throws IOException{
+		while (length > 0){
+			int n = in.read(b, offset, length);
+			if (n < 0) throw new EOFException("NiftiTimeSeries: unexpected end of file.");
+			offset += n;
+			length -= n;
+			}
+	}
+	
+	static void skipFully(InputStream in, long n) throws IOException{
+		while (n > 0){
+			long skipped = in.skip(n);
+			if (skipped <= 0){
+				if (in.read() < 0) throw new EOFException("NiftiTimeSeries: unexpected end of file.");
+				skipped = 1;
+				}
+			n -= skipped;
+			}
+	}
+	
+}
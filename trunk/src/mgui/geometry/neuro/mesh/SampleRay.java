@@ -27,6 +27,8 @@ import mgui.neuro.stats.SignalProcessing;
 
 /**********************************************
  * Represents a ray vector and regular samples along its trajectory (at a frequency of n / length). 
+ * Samples are held in a primitive array; the <code>ArrayList</code> methods are retained for 
+ * existing callers, but box and copy the samples on each call.
  * 
  * @author Andrew Reid
  * @version 1.0
@@ -36,20 +38,31 @@ import mgui.neuro.stats.SignalProcessing;
 public class SampleRay {
 
 	protected Vector3D ray;
-	protected ArrayList<Double> samples = new ArrayList<Double>();
+	protected double[] samples = new double[0];
 	
 	public SampleRay(Vector3D ray){
 		this.ray = ray;
 	}
 	
 	public SampleRay(Vector3D ray, ArrayList<Double> samples){
+		this.ray = ray;
+		this.samples = SignalProcessing.toArray(samples);
+	}
+	
+	/**********************************************
+	 * Constructs a ray with the given samples; <code>samples</code> is not copied.
+	 * 
+	 * @param ray
+	 * @param samples
+	 */
+	public SampleRay(Vector3D ray, double[] samples){
 		this.ray = ray;
 		this.samples = samples;
 	}
 	
 	public SampleRay(SampleRay ray){
 		this.ray = ray.getRay();
-		this.samples = ray.getSamples();
+		this.samples = ray.samples.clone();
 	}
 	
 	public Vector3D getRay(){
@@ -57,52 +70,66 @@ public class SampleRay {
 	}
 	
 	public void addSampleValues(ArrayList<Double> values){
-		for (int i = 0; i < samples.size(); i++){
-			//if (Double.isNaN(samples.get(i)))
-			//	i += 0;
-			samples.set(i, samples.get(i) + values.get(i));
-			if (Double.isNaN(samples.get(i)))
-				i += 0;
-			}
+		for (int i = 0; i < samples.length; i++)
+			samples[i] += values.get(i);
+	}
+	
+	public void addSampleValues(double[] values){
+		for (int i = 0; i < samples.length; i++)
+			samples[i] += values[i];
 	}
 	
 	public ArrayList<Double> getSamples(){
-		return new ArrayList<Double>(samples);
+		return SignalProcessing.toList(samples);
+	}
+	
+	/**********************************************
+	 * Returns the samples for this ray. This is the backing array, not a copy; changes to it will
+	 * change this ray.
+	 * 
+	 * @return
+	 */
+	public double[] getSampleArray(){
+		return samples;
 	}
 	
 	public void setSamples(ArrayList<Double> samples){
-		this.samples = new ArrayList<Double>(samples);
+		this.samples = SignalProcessing.toArray(samples);
+	}
+	
+	public void setSamples(double[] samples){
+		this.samples = samples.clone();
 	}
 	
 	public Double getSample(int index){
-		if (index < 0 || index >= samples.size()) return Double.NaN;
-		return samples.get(index);
+		if (index < 0 || index >= samples.length) return Double.NaN;
+		return samples[index];
 	}
 	
 	public void setSample(int index, double value){
-		if (index < 0 || index >= samples.size()) return;
-		samples.set(index, value);
+		if (index < 0 || index >= samples.length) return;
+		samples[index] = value;
 	}
 	
 	public int getSize(){
-		return samples.size();
+		return samples.length;
 	}
 	
 	public Double getNearestSample(double position){
 		if (position < 0) position = 0;
 		if (position > 1) position = 1;
-		int index = (int)Math.round((double)samples.size() * position); 
-		return samples.get(index);
+		int index = (int)Math.round((double)samples.length * position); 
+		return samples[index];
 	}
 	
 	public Double getInterpolatedValue(double position){
 		if (position < 0) position = 0;
 		if (position > 1) position = 1;
-		double index = (double)(samples.size() - 1) * position;
+		double index = (double)(samples.length - 1) * position;
 		int before = (int)Math.floor(index);
 		double inter = index - before;
-		double sample1 = samples.get(before);
-		double sample2 = samples.get(before + 1);
+		double sample1 = samples[before];
+		double sample2 = samples[before + 1];
 		double interpolated = (((1 - inter) * sample1) + (inter * sample2)) / 2.0;
 		return interpolated;
 	}
@@ -111,4 +138,4 @@ public class SampleRay {
 		samples = SignalProcessing.getResampledCurve(samples, n, 1);
 	}
 	
-}
\ No newline at end of file
+}
@@ -0,0 +1,226 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mgui.geometry.Vector3D;
+import mgui.geometry.neuro.ParallelWorkers;
+
+/********************************************************
+ * A set of {@link SampleRay}s, with their samples held in a single contiguous 
+ * <code>n_rays x n_samples</code> float matrix (row-major). Rays shorter than the longest are padded 
+ * with <code>NaN</code>, as returned by {@link SampleRay#getSample(int)} beyond a ray's end; each ray's 
+ * own length is retained.
+ * 
+ * <p>Neighbour averaging ({@link #getNeighbourAveraged}) is a sparse adjacency-matrix product over whole 
+ * rows, run in parallel over blocks of rays.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SampleRayMatrix {
+
+	/** Minimum number of rays per thread when smoothing in parallel */
+	static final int MIN_ROWS_PER_THREAD = 64;
+	
+	protected final Vector3D[] rays;
+	protected final int[] sizes;
+	protected final int n_samples;
+	protected final float[] values;
+	
+	/*********************************
+	 * Creates a matrix from <code>rays</code>.
+	 * 
+	 * @param rays
+	 */
+	public SampleRayMatrix(ArrayList<SampleRay> rays){
+		int n = rays.size();
+		this.rays = new Vector3D[n];
+		this.sizes = new int[n];
+		int max = 0;
+		for (int i = 0; i < n; i++){
+			sizes[i] = rays.get(i).getSize();
+			max = Math.max(max, sizes[i]);
+			}
+		n_samples = max;
+		values = new float[n * n_samples];
+		for (int i = 0; i < n; i++){
+			SampleRay ray = rays.get(i);
+			this.rays[i] = ray.ray;
+			double[] samples = ray.getSampleArray();
+			int row = i * n_samples;
+			for (int k = 0; k < n_samples; k++)
+				values[row + k] = k < samples.length ? (float)samples[k] : Float.NaN;
+			}
+	}
+	
+	protected SampleRayMatrix(Vector3D[] rays, int[] sizes, int n_samples, float[] values){
+		this.rays = rays;
+		this.sizes = sizes;
+		this.n_samples = n_samples;
+		this.values = values;
+	}
+	
+	public int getRayCount(){
+		return rays.length;
+	}
+	
+	/*********************************
+	 * Returns the number of columns in this matrix; i.e., the length of the longest ray.
+	 * 
+	 * @return
+	 */
+	public int getSampleCount(){
+		return n_samples;
+	}
+	
+	public float getSample(int ray, int k){
+		return values[ray * n_samples + k];
+	}
+	
+	/*********************************
+	 * Returns the samples as a row-major matrix; this is the backing array, not a copy.
+	 * 
+	 * @return
+	 */
+	public float[] getValues(){
+		return values;
+	}
+	
+	/*********************************
+	 * Returns the rays of this matrix as a list of new {@link SampleRay}s.
+	 * 
+	 * @return
+	 */
+	public ArrayList<SampleRay> getSampleRays(){
+		ArrayList<SampleRay> list = new ArrayList<SampleRay>(rays.length);
+		for (int i = 0; i < rays.length; i++){
+			double[] samples = new double[sizes[i]];
+			int row = i * n_samples;
+			for (int k = 0; k < samples.length; k++)
+				samples[k] = values[row + k];
+			list.add(new SampleRay(rays[i], samples));
+			}
+		return list;
+	}
+	
+	/*********************************
+	 * Returns a new matrix in which each ray is the weighted average of itself and its neighbours in 
+	 * <code>adjacency</code>, applied <code>iterations</code> times:
+	 * 
+	 * <p>x'<sub>i</sub> = (x<sub>i</sub> + w * SUM[j in N(i)] x<sub>j</sub>) / (1 + |N(i)| * w)
+	 * 
+	 * <p>Sums are accumulated in double precision.
+	 * 
+	 * @param adjacency			Adjacency of the rays' nodes; must have one vertex per ray
+	 * @param neighbour_weight	Weight w of each neighbour, relative to the ray itself
+	 * @param iterations
+	 * @return the smoothed matrix
+	 */
+	public SampleRayMatrix getNeighbourAveraged(final MeshAdjacency adjacency, final double neighbour_weight, 
+												int iterations){
+		
+		final int n = rays.length;
+		if (adjacency.getVertexCount() != n)
+			throw new IllegalArgumentException("SampleRayMatrix: adjacency has " + adjacency.getVertexCount() + 
+											   " vertices; expected " + n + ".");
+		
+		float[] source = values.clone();
+		if (iterations < 1 || n == 0)
+			return new SampleRayMatrix(rays, sizes, n_samples, source);
+		float[] target = new float[values.length];
+		
+		int n_threads = Math.max(1, Math.min(NeuroMeshFunctions.mapping_threads, n / MIN_ROWS_PER_THREAD));
+		if (n_threads == 1){
+			double[] sum = new double[n_samples];
+			for (int it = 0; it < iterations; it++){
+				averageRows(adjacency, neighbour_weight, source, target, 0, n, sum);
+				float[] temp = source;
+				source = target;
+				target = temp;
+				}
+			return new SampleRayMatrix(rays, sizes, n_samples, source);
+			}
+		
+		ExecutorService executor = ParallelWorkers.newPool(n_threads);
+		try{
+			AtomicBoolean cancelled = new AtomicBoolean(false);
+			Runnable[] workers = new Runnable[n_threads];
+			for (int it = 0; it < iterations; it++){
+				for (int t = 0; t < n_threads; t++){
+					final int start = (int)((long)n * t / n_threads);
+					final int end = (int)((long)n * (t + 1) / n_threads);
+					final float[] x = source, y = target;
+					workers[t] = new Runnable(){
+						public void run(){
+							averageRows(adjacency, neighbour_weight, x, y, start, end, new double[n_samples]);
+						}
+					};
+					}
+				ParallelWorkers.invokeAll(executor, workers, null, null, cancelled);
+				float[] temp = source;
+				source = target;
+				target = temp;
+				}
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("SampleRayMatrix: averaging interrupted.", ex);
+		}catch (ExecutionException ex){
+			throw new IllegalStateException("SampleRayMatrix: averaging failed.", ex.getCause());
+		}finally{
+			executor.shutdownNow();
+			}
+		
+		return new SampleRayMatrix(rays, sizes, n_samples, source);
+	}
+	
+	/*********************************
+	 * Averages rows [<code>start</code>, <code>end</code>) of <code>x</code> with their neighbours into 
+	 * <code>y</code>, using <code>sum</code> as scratch.
+	 * 
+	 */
+	void averageRows(MeshAdjacency adjacency, double neighbour_weight, float[] x, float[] y, 
+					 int start, int end, double[] sum){
+		int[] row_ptr = adjacency.row_ptr;
+		int[] col_idx = adjacency.col_idx;
+		int m = n_samples;
+		
+		for (int i = start; i < end; i++){
+			int row = i * m;
+			for (int k = 0; k < m; k++)
+				sum[k] = 0;
+			for (int p = row_ptr[i]; p < row_ptr[i + 1]; p++){
+				int nbr = col_idx[p] * m;
+				for (int k = 0; k < m; k++)
+					sum[k] += x[nbr + k];
+				}
+			double denom = 1.0 + (double)(row_ptr[i + 1] - row_ptr[i]) * neighbour_weight;
+			for (int k = 0; k < m; k++)
+				y[row + k] = (float)((x[row + k] + sum[k] * neighbour_weight) / denom);
+			}
+	}
+	
+}
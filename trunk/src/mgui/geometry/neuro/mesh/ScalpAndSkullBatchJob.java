@@ -0,0 +1,459 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import mgui.geometry.Mesh3D;
+import mgui.interfaces.InterfaceEnvironment;
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
+import mgui.interfaces.io.InterfaceIOType;
+import mgui.interfaces.logs.LoggingType;
+import mgui.interfaces.shapes.Mesh3DInt;
+import mgui.interfaces.shapes.Volume3DInt;
+import mgui.io.domestic.shapes.Mesh3DWriter;
+import mgui.io.domestic.shapes.SurfaceFileLoader;
+import mgui.io.domestic.shapes.VolumeFileLoader;
+import mgui.io.domestic.shapes.VolumeInputOptions;
+import mgui.util.StringFunctions;
+
+/****************************************
+ * <p>Runs the skull and scalp modelling pipeline of {@link mgui.interfaces.shapes.neuro.InterfaceNeuroMeshPanel2} for a list of subjects, 
+ * without an interface: for each subject, its T1 image and brain mask hull surface are loaded, sample rays
+ * are generated ({@link NeuroMeshFunctions#getRaysBlocking}), control points are determined (or read from
+ * an average control point file), and the inner skull, outer skull and scalp meshes are constructed and 
+ * smoothed ({@link NeuroMeshFunctions#getSkullAndScalpMeshesBlocking}).</p>
+ * 
+ * <p>Input paths are given as templates, in which <code>{subject}</code> is replaced by the subject name.
+ * Each subject is loaded only when its run starts, and its data are released when it finishes. Subjects 
+ * run in parallel on a fixed pool of threads; additionally, each run reserves an estimate of the memory
+ * its T1 volume will need (its file size times {@link #setVolumeMemoryFactor(double)}) from a budget of 
+ * {@link #setMemoryFraction(double)} of the maximum heap, and waits until enough is free. A run whose 
+ * estimate exceeds the whole budget runs alone.</p>
+ * 
+ * <p>Meshes are written to the output directory as <code>[subject]_inner_skull.tri</code>, 
+ * <code>[subject]_outer_skull.tri</code> and <code>[subject]_scalp.tri</code> (and control meshes 
+ * <code>[subject]_N1.tri</code> to <code>_N4.tri</code>, if 
+ * {@link ScalpAndSkullModelOptions#generate_control_meshes} is set). A tab-delimited summary of each
+ * subject's status and stage timings is written to <code>batch_results.txt</code>.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class ScalpAndSkullBatchJob {
+
+	protected ArrayList<String> subjects = new ArrayList<String>();
+	protected String t1_template, hull_template;
+	protected String parameter_file;
+	protected File average_points_file;
+	protected File output_dir;
+	
+	protected InterfaceIOType volume_loader, mesh_loader;
+	protected VolumeInputOptions volume_options = new VolumeInputOptions();
+	
+	protected int n_threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	protected double memory_fraction = 0.6;
+	protected double volume_memory_factor = 8;
+	
+	/**************************************
+	 * Creates a new job.
+	 * 
+	 * @param t1_template		Path to each subject's T1 image
+	 * @param hull_template		Path to each subject's brain mask hull surface
+	 * @param output_dir		Directory to which results are written
+	 */
+	public ScalpAndSkullBatchJob(String t1_template, String hull_template, File output_dir){
+		this.t1_template = t1_template;
+		this.hull_template = hull_template;
+		this.output_dir = output_dir;
+	}
+	
+	public void addSubject(String subject){
+		subjects.add(subject);
+	}
+	
+	/**************************************
+	 * Adds subjects from a text file, which lists one subject name per line. Blank lines are ignored.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void addSubjects(File file) throws IOException{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			String line = reader.readLine();
+			while (line != null){
+				line = line.trim();
+				if (line.length() > 0)
+					subjects.add(line);
+				line = reader.readLine();
+				}
+		}finally{
+			reader.close();
+			}
+	}
+	
+	public ArrayList<String> getSubjects(){
+		return subjects;
+	}
+	
+	/**************************************
+	 * Sets the loaders used for T1 volumes and hull surfaces.
+	 * 
+	 * @param volume_loader
+	 * @param mesh_loader
+	 */
+	public void setLoaders(InterfaceIOType volume_loader, InterfaceIOType mesh_loader){
+		this.volume_loader = volume_loader;
+		this.mesh_loader = mesh_loader;
+	}
+	
+	public void setVolumeOptions(VolumeInputOptions options){
+		volume_options = options;
+	}
+	
+	/**************************************
+	 * Sets a parameter file (see {@link ScalpAndSkullModelOptions#setFromFile(String)}) from which each 
+	 * subject's options are set; if <code>null</code>, the defaults are used.
+	 * 
+	 * @param file
+	 */
+	public void setParameterFile(String file){
+		parameter_file = file;
+	}
+	
+	/**************************************
+	 * Sets a file of average control points (four per line, one line per ray), to use instead of 
+	 * control points determined from each subject's rays; if <code>null</code>, subject control points
+	 * are used.
+	 * 
+	 * @param file
+	 */
+	public void setAverageControlPoints(File file){
+		average_points_file = file;
+	}
+	
+	/**************************************
+	 * Sets the maximum number of subjects processed at once. Note that ray sampling is itself 
+	 * parallel (see {@link NeuroMeshFunctions#mapping_threads}).
+	 * 
+	 * @param n_threads
+	 */
+	public void setThreads(int n_threads){
+		this.n_threads = Math.max(1, n_threads);
+	}
+	
+	public int getThreads(){
+		return n_threads;
+	}
+	
+	/**************************************
+	 * Sets the fraction of the maximum heap which the T1 volumes of subjects in progress may occupy.
+	 * 
+	 * @param fraction
+	 */
+	public void setMemoryFraction(double fraction){
+		memory_fraction = fraction;
+	}
+	
+	/**************************************
+	 * Sets the ratio of the memory needed by a loaded T1 volume to the size of its file. The default (8)
+	 * allows for compressed files and for conversion to wider data types.
+	 * 
+	 * @param factor
+	 */
+	public void setVolumeMemoryFactor(double factor){
+		volume_memory_factor = factor;
+	}
+	
+	/**************************************
+	 * Returns the path for <code>subject</code> from <code>template</code>.
+	 * 
+	 * @param template
+	 * @param subject
+	 * @return
+	 */
+	public static String getSubjectPath(String template, String subject){
+		return StringFunctions.replaceAll(template, "{subject}", subject);
+	}
+	
+	/**************************************
+	 * Runs the job.
+	 * 
+	 * @param progress 		optional progress updater, updated with the number of completed subjects; 
+	 * 						may be <code>null</code>
+	 * @return the results, indexed by subject
+	 * @throws IOException if the output directory or summary file cannot be written
+	 * @throws IllegalStateException if the loaders have not been set (see {@link #setLoaders})
+	 */
+	public Result[] run(ProgressUpdater progress) throws IOException{
+		
+		if (volume_loader == null || mesh_loader == null)
+			throw new IllegalStateException("ScalpAndSkullBatchJob: volume and mesh loaders must be set " +
+											"before the job is run.");
+		
+		if (!output_dir.exists() && !output_dir.mkdirs())
+			throw new IOException("ScalpAndSkullBatchJob: cannot create output directory '" + 
+								  output_dir.getAbsolutePath() + "'.");
+		
+		if (volume_options.colour_map == null)
+			volume_options.colour_map = InterfaceEnvironment.getColourMaps().get(0);
+		
+		final int[][] average_points = average_points_file == null ? null : readControlPoints(average_points_file);
+		
+		int n_subjects = subjects.size();
+		Result[] results = new Result[n_subjects];
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(n_subjects);
+			progress.update(0);
+			}
+		
+		//memory budget, in MB
+		final int budget = Math.max(1, (int)(Runtime.getRuntime().maxMemory() * memory_fraction / 1048576.0));
+		final Semaphore memory = new Semaphore(budget, true);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(n_threads);
+		ArrayList<Future<Result>> futures = new ArrayList<Future<Result>>(n_subjects);
+		for (int s = 0; s < n_subjects; s++)
+			futures.add(executor.submit(getRun(subjects.get(s), average_points, memory, budget)));
+		
+		int completed = 0;
+		try{
+			for (int s = 0; s < n_subjects; s++){
+				try{
+					results[s] = futures.get(s).get();
+				}catch (ExecutionException ex){
+					results[s] = new Result(subjects.get(s));
+					results[s].message = String.valueOf(ex.getCause());
+					}
+				if (!results[s].success)
+					InterfaceSession.log("ScalpAndSkullBatchJob: subject '" + subjects.get(s) + "' failed: " + 
+										 results[s].message, LoggingType.Errors);
+				completed++;
+				if (progress != null){
+					if (progress.isCancelled()){
+						executor.shutdownNow();
+						break;
+						}
+					progress.update(completed);
+					}
+				}
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			InterfaceSession.log("ScalpAndSkullBatchJob: interrupted after " + completed + " subjects.", 
+								 LoggingType.Errors);
+		}finally{
+			executor.shutdownNow();
+			writeResults(results);
+			}
+		
+		return results;
+	}
+	
+	/**************************************
+	 * Returns a task which runs the pipeline for <code>subject</code>, holding an estimate of its memory 
+	 * use from <code>memory</code> while its data are loaded.
+	 * 
+	 */
+	protected Callable<Result> getRun(final String subject, final int[][] average_points, 
+									  final Semaphore memory, final int budget){
+		return new Callable<Result>(){
+			public Result call() throws Exception{
+				Result result = new Result(subject);
+				File t1_file = new File(getSubjectPath(t1_template, subject));
+				File hull_file = new File(getSubjectPath(hull_template, subject));
+				if (!t1_file.exists() || !hull_file.exists()){
+					result.message = "Input not found: '" + (t1_file.exists() ? hull_file : t1_file).getAbsolutePath() + "'";
+					return result;
+					}
+				
+				int permits = (int)Math.min(budget, Math.max(1, t1_file.length() * volume_memory_factor / 1048576.0));
+				memory.acquire(permits);
+				try{
+					runSubject(subject, t1_file, hull_file, average_points, result);
+				}finally{
+					memory.release(permits);
+					}
+				return result;
+			}
+		};
+	}
+	
+	protected void runSubject(String subject, File t1_file, File hull_file, int[][] average_points, 
+							  Result result) throws Exception{
+		
+		long start = System.currentTimeMillis();
+		
+		//load
+		ScalpAndSkullModelOptions options = new ScalpAndSkullModelOptions();
+		if (parameter_file != null)
+			options.setFromFile(parameter_file);
+		
+		VolumeFileLoader v_loader = (VolumeFileLoader)volume_loader.getIOInstance();
+		v_loader.setFile(t1_file);
+		Volume3DInt t1_volume = v_loader.loadVolume(volume_options, null);
+		if (t1_volume == null){
+			result.message = "Could not load T1 image '" + t1_file.getAbsolutePath() + "'";
+			return;
+			}
+		SurfaceFileLoader s_loader = (SurfaceFileLoader)mesh_loader.getIOInstance();
+		s_loader.setFile(hull_file);
+		Mesh3DInt hull_mesh = s_loader.loadSurface(null);
+		if (hull_mesh == null){
+			result.message = "Could not load hull surface '" + hull_file.getAbsolutePath() + "'";
+			return;
+			}
+		
+		options.t1_volume = t1_volume;
+		options.brain_surface = hull_mesh.getMesh();
+		options.center_of_mass = hull_mesh.getCenterOfGravity();
+		result.times[0] = System.currentTimeMillis() - start;
+		
+		//rays
+		start = System.currentTimeMillis();
+		ArrayList<SampleRay> rays_1 = new ArrayList<SampleRay>();
+		ArrayList<SampleRay> rays_2 = new ArrayList<SampleRay>();
+		NeuroMeshFunctions.getRaysBlocking(options, rays_1, rays_2, null);
+		result.times[1] = System.currentTimeMillis() - start;
+		
+		//control points
+		start = System.currentTimeMillis();
+		int[][] control_points = average_points;
+		if (control_points == null)
+			control_points = NeuroMeshFunctions.getRayControlPoints(rays_2);
+		else if (control_points.length < rays_2.size()){
+			result.message = "Average control points file has " + control_points.length + " rays; expected " + 
+							 rays_2.size();
+			return;
+			}
+		result.times[2] = System.currentTimeMillis() - start;
+		
+		//meshes
+		start = System.currentTimeMillis();
+		Mesh3D[] meshes = NeuroMeshFunctions.getSkullAndScalpMeshesBlocking(control_points, rays_2, rays_1, 
+																			options, null);
+		result.times[3] = System.currentTimeMillis() - start;
+		
+		//output
+		start = System.currentTimeMillis();
+		String prefix = output_dir.getAbsolutePath() + File.separator + subject;
+		String[] suffixes = new String[]{"_inner_skull.tri", "_outer_skull.tri", "_scalp.tri",
+										 "_N1.tri", "_N2.tri", "_N3.tri", "_N4.tri"};
+		int n_meshes = options.generate_control_meshes ? Math.min(meshes.length, suffixes.length) : 3;
+		boolean success = true;
+		for (int m = 0; m < n_meshes; m++){
+			Mesh3DWriter writer = new Mesh3DWriter(new File(prefix + suffixes[m]));
+			success &= writer.writeSurface(new Mesh3DInt(meshes[m]));
+			}
+		result.times[4] = System.currentTimeMillis() - start;
+		
+		result.success = success;
+		if (!success)
+			result.message = "Error writing meshes";
+	}
+	
+	/**************************************
+	 * Reads average control points, as four integers per line.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static int[][] readControlPoints(File file) throws IOException{
+		ArrayList<int[]> points = new ArrayList<int[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try{
+			String line = reader.readLine();
+			while (line != null){
+				StringTokenizer tokens = new StringTokenizer(line);
+				if (tokens.countTokens() >= 4){
+					int[] p = new int[4];
+					for (int j = 0; j < 4; j++)
+						p[j] = Integer.valueOf(tokens.nextToken());
+					points.add(p);
+					}
+				line = reader.readLine();
+				}
+		}finally{
+			reader.close();
+			}
+		return points.toArray(new int[points.size()][]);
+	}
+	
+	protected void writeResults(Result[] results) throws IOException{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(new File(output_dir, "batch_results.txt")));
+		try{
+			writer.write("Subject\tStatus\tLoad (ms)\tRays (ms)\tControl (ms)\tMeshes (ms)\tWrite (ms)\tMessage");
+			writer.newLine();
+			for (int s = 0; s < results.length; s++){
+				Result result = results[s];
+				if (result == null){
+					writer.write(subjects.get(s) + "\tNot run");
+				}else{
+					writer.write(result.subject + "\t" + (result.success ? "Success" : "Failure"));
+					for (int i = 0; i < result.times.length; i++)
+						writer.write("\t" + result.times[i]);
+					if (result.message != null)
+						writer.write("\t" + result.message);
+					}
+				writer.newLine();
+				}
+		}finally{
+			writer.close();
+			}
+	}
+	
+	/**************************************
+	 * Outcome of a single subject: whether it succeeded, an error message if not, and the times taken
+	 * by each stage (load, rays, control points, meshes, output), in milliseconds.
+	 * 
+	 */
+	public static class Result {
+		
+		public final String subject;
+		public boolean success;
+		public String message;
+		public final long[] times = new long[5];
+		
+		public Result(String subject){
+			this.subject = subject;
+		}
+		
+	}
+	
+}
@@ -77,6 +77,7 @@ public class ScalpAndSkullModelOptions extends InterfaceOptions {
 															//instead of their raw values; the weighting is determined by
 
 	public double average_neighbour_weight = 1.0;			//average_neighbour_weight
+	public int average_neighbour_iterations = 1;			//number of times neighbour averaging is applied
 	public float gradient_AP_A = 0.05f;						//anterior-posterior gradient, for y > 0
 	public float gradient_IS_S = 0.0f;						//inferior-superior gradient, for z > 0
 	
@@ -100,6 +101,22 @@ public class ScalpAndSkullModelOptions extends InterfaceOptions {
 	
 	public boolean generate_control_meshes = false;			//whether to also output control point meshes
 	
+	protected transient MeshRayIndex brain_surface_index;	//ray intersection index for brain_surface
+	
+	/**********************************
+	 * Returns a ray intersection index for <code>brain_surface</code>. The index is built on the first call, and
+	 * rebuilt if <code>brain_surface</code> is assigned a different mesh; it does not detect changes made to the
+	 * existing mesh.
+	 * 
+	 * @return the index, or <code>null</code> if <code>brain_surface</code> is not set
+	 */
+	public synchronized MeshRayIndex getBrainSurfaceIndex(){
+		if (brain_surface == null) return null;
+		if (brain_surface_index == null || brain_surface_index.getMesh() != brain_surface)
+			brain_surface_index = new MeshRayIndex(brain_surface);
+		return brain_surface_index;
+	}
+	
 	/**********************************
 	 * Sets the parameters from a parameter file, which is a text file where parameters are specified by the form:
 	 * 
@@ -0,0 +1,476 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mgui.geometry.neuro.ParallelWorkers;
+
+/********************************************************
+ * Sparse linear operator mapping values between the voxels of a grid and the vertices of a 
+ * cortical surface mesh, with the Gaussian weights of 
+ * {@link NeuroMeshFunctions#mapVolumeToCortexGaussian} or 
+ * {@link NeuroMeshFunctions#mapCortexToVolumeGaussian}. The weights depend only upon the mesh
+ * geometry, thickness and sigmas, so an operator can be built once (see
+ * {@link NeuroMeshFunctions#getVolumeToCortexOperator} and 
+ * {@link NeuroMeshFunctions#getCortexToVolumeOperator}) and applied to any number of channels or 
+ * time points.
+ * 
+ * <p>Weights are stored in compressed sparse row (CSR) form, as single-precision values already
+ * divided by their row's denominator, so that applying the operator is a single sparse matrix-vector
+ * product. For volume-to-cortex operators, rows are vertices and columns are absolute voxel indices;
+ * for cortex-to-volume operators, the reverse. Products are accumulated in double precision, and
+ * rows are computed in parallel using {@link NeuroMeshFunctions#mapping_threads} threads.
+ * 
+ * <p>Operators can be written to a little-endian binary file, consisting of the magic bytes 
+ * <code>MGXFER01</code>; the version, type, row count and column count as <code>int</code>s; the
+ * entry count as a <code>long</code>; then the row pointers and column indices as <code>int</code>s and
+ * the weights as <code>float</code>s, each section padded to a multiple of 8 bytes. Such files are
+ * memory-mapped by {@link #map(File)} rather than read onto the heap.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SurfaceVolumeTransferOperator {
+
+	public static final byte[] MAGIC = {'M', 'G', 'X', 'F', 'E', 'R', '0', '1'};
+	public static final int VERSION = 1;
+	static final int HEADER = 32;
+	
+	public enum Type {
+		VolumeToCortex,
+		CortexToVolume;
+	}
+	
+	protected Type type;
+	protected int n_rows, n_cols;
+	protected IntBuffer row_ptr, col_idx;
+	protected FloatBuffer weights;
+	
+	protected SurfaceVolumeTransferOperator(Type type, int n_rows, int n_cols, 
+											IntBuffer row_ptr, IntBuffer col_idx, FloatBuffer weights){
+		this.type = type;
+		this.n_rows = n_rows;
+		this.n_cols = n_cols;
+		this.row_ptr = row_ptr;
+		this.col_idx = col_idx;
+		this.weights = weights;
+	}
+	
+	/*****************************************
+	 * Creates an operator from CSR arrays.
+	 * 
+	 * @param type
+	 * @param n_cols
+	 * @param row_ptr		Start of each row in <code>col_idx</code> and <code>weights</code>, plus the
+	 * 						total entry count; has length <code>n_rows + 1</code> 
+	 * @param col_idx
+	 * @param weights
+	 */
+	public SurfaceVolumeTransferOperator(Type type, int n_cols, int[] row_ptr, int[] col_idx, float[] weights){
+		this(type, row_ptr.length - 1, n_cols, IntBuffer.wrap(row_ptr), IntBuffer.wrap(col_idx), FloatBuffer.wrap(weights));
+	}
+	
+	public Type getType(){
+		return type;
+	}
+	
+	/*****************************************
+	 * Returns the length of output vectors; i.e., the number of vertices for a volume-to-cortex
+	 * operator, or voxels for cortex-to-volume.
+	 * 
+	 * @return
+	 */
+	public int getRowCount(){
+		return n_rows;
+	}
+	
+	/*****************************************
+	 * Returns the length of input vectors.
+	 * 
+	 * @return
+	 */
+	public int getColumnCount(){
+		return n_cols;
+	}
+	
+	public int getEntryCount(){
+		return row_ptr.get(n_rows);
+	}
+	
+	/*****************************************
+	 * Applies this operator to <code>x</code>.
+	 * 
+	 * @param x
+	 * @return the result, or <code>null</code> if the calling thread was interrupted
+	 */
+	public double[] apply(double[] x){
+		double[] y = new double[n_rows];
+		if (!apply(new double[][]{x}, new double[][]{y}))
+			return null;
+		return y;
+	}
+	
+	/*****************************************
+	 * Applies this operator to each of <code>x</code>, setting the corresponding array in <code>y</code>;
+	 * e.g., each array can be one time point of a series. Weights are read once for all inputs. 
+	 * Non-finite results are set to zero.
+	 * 
+	 * @param x			Inputs, each of length {@link #getColumnCount()}
+	 * @param y			Outputs, each of length {@link #getRowCount()}
+	 * @return			<code>false</code> if the calling thread was interrupted, in which case 
+	 * 					<code>y</code> is incomplete and the thread's interrupt status is set
+	 */
+	public boolean apply(final double[][] x, final double[][] y){
+		if (x.length != y.length)
+			throw new IllegalArgumentException("SurfaceVolumeTransferOperator: input and output counts differ.");
+		for (int t = 0; t < x.length; t++){
+			if (x[t].length != n_cols || y[t].length != n_rows)
+				throw new IllegalArgumentException("SurfaceVolumeTransferOperator: expected inputs of length " +
+												   n_cols + " and outputs of length " + n_rows + ".");
+			}
+		
+		int n_threads = Math.max(1, Math.min(NeuroMeshFunctions.mapping_threads, 
+											 n_rows / NeuroMeshFunctions.MAPPING_BLOCK));
+		if (n_threads == 1){
+			apply(x, y, 0, n_rows);
+			return true;
+			}
+		
+		Runnable[] workers = new Runnable[n_threads];
+		for (int i = 0; i < n_threads; i++){
+			final int first = (int)((long)n_rows * i / n_threads);
+			final int last = (int)((long)n_rows * (i + 1) / n_threads);
+			workers[i] = new Runnable(){
+				public void run(){
+					apply(x, y, first, last);
+				}
+			};
+			}
+		try{
+			ParallelWorkers.invokeAll(workers, null, null, new AtomicBoolean(false));
+			return true;
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			return false;
+		}catch (ExecutionException ex){
+			throw new RuntimeException(ex.getCause());
+			}
+	}
+	
+	protected void apply(double[][] x, double[][] y, int first, int last){
+		int n = x.length;
+		double[] sum = new double[n];
+		for (int i = first; i < last; i++){
+			Arrays.fill(sum, 0);
+			int end = row_ptr.get(i + 1);
+			for (int e = row_ptr.get(i); e < end; e++){
+				int col = col_idx.get(e);
+				double w = weights.get(e);
+				for (int t = 0; t < n; t++)
+					sum[t] += w * x[t][col];
+				}
+			for (int t = 0; t < n; t++){
+				double value = sum[t];
+				if (Double.isNaN(value) || Double.isInfinite(value))
+					value = 0;
+				y[t][i] = value;
+				}
+			}
+	}
+	
+	/*****************************************
+	 * Writes this operator to <code>file</code>, in the format described above.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void writeToFile(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			int nnz = getEntryCount();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.put(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(type.ordinal());
+			buffer.putInt(n_rows);
+			buffer.putInt(n_cols);
+			buffer.putLong(nnz);
+			
+			for (int i = 0; i <= n_rows; i++){
+				if (!buffer.hasRemaining()) flush(channel, buffer);
+				buffer.putInt(row_ptr.get(i));
+				}
+			pad(buffer);
+			for (int i = 0; i < nnz; i++){
+				if (!buffer.hasRemaining()) flush(channel, buffer);
+				buffer.putInt(col_idx.get(i));
+				}
+			pad(buffer);
+			for (int i = 0; i < nnz; i++){
+				if (!buffer.hasRemaining()) flush(channel, buffer);
+				buffer.putFloat(weights.get(i));
+				}
+			pad(buffer);
+			flush(channel, buffer);
+		}finally{
+			raf.close();
+			}
+	}
+	
+	static void flush(FileChannel channel, ByteBuffer buffer) throws IOException{
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+	
+	static void pad(ByteBuffer buffer){
+		//sections are 4-byte multiples, and the buffer is only flushed when full, so its
+		//position is aligned as the file offset is
+		if ((buffer.position() & 7) != 0)
+			buffer.putInt(0);
+	}
+	
+	/*****************************************
+	 * Memory-maps an operator written by {@link #writeToFile(File)}. The mapping remains valid 
+	 * after the file is closed.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException		If the file cannot be read or is not a transfer operator file
+	 */
+	public static SurfaceVolumeTransferOperator map(File file) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					throw new IOException("SurfaceVolumeTransferOperator: '" + file.getAbsolutePath() + 
+										  "' is truncated.");
+			header.flip();
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException("SurfaceVolumeTransferOperator: '" + file.getAbsolutePath() + 
+									  "' is not a transfer operator file.");
+			int version = header.getInt();
+			if (version > VERSION)
+				throw new IOException("SurfaceVolumeTransferOperator: unsupported version " + version + ".");
+			int type_index = header.getInt();
+			if (type_index < 0 || type_index >= Type.values().length)
+				throw new IOException("SurfaceVolumeTransferOperator: '" + file.getAbsolutePath() + 
+									  "' has an invalid operator type (" + type_index + ").");
+			Type type = Type.values()[type_index];
+			int n_rows = header.getInt();
+			int n_cols = header.getInt();
+			long nnz = header.getLong();
+			if (n_rows < 0 || n_cols < 0 || nnz < 0 || nnz > Integer.MAX_VALUE)
+				throw new IOException("SurfaceVolumeTransferOperator: '" + file.getAbsolutePath() + 
+									  "' has an invalid header.");
+			
+			long offset = HEADER;
+			long length = 4L * (n_rows + 1);
+			IntBuffer row_ptr = channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+									   .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			offset += (length + 7) & ~7L;
+			length = 4L * nnz;
+			IntBuffer col_idx = channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+									   .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			offset += (length + 7) & ~7L;
+			FloatBuffer weights = channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+										 .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			return new SurfaceVolumeTransferOperator(type, n_rows, n_cols, row_ptr, col_idx, weights);
+		}finally{
+			raf.close();
+			}
+	}
+	
+	/*****************************************
+	 * Collects the entries of consecutive rows while an operator is being built; one instance is
+	 * used per block of rows, so blocks can be filled in parallel and concatenated in order.
+	 * 
+	 */
+	static class Rows {
+		
+		final int first;
+		final int[] ends;
+		int n_rows;
+		
+		int[] cols = new int[1024];
+		float[] weights = new float[1024];
+		float[] denoms;
+		int n;
+		
+		Rows(int first, int count, boolean with_denoms){
+			this.first = first;
+			this.ends = new int[count];
+			if (with_denoms)
+				denoms = new float[cols.length];
+		}
+		
+		void add(int col, double weight){
+			add(col, weight, 0);
+		}
+		
+		void add(int col, double weight, double denom){
+			if (n == cols.length){
+				int size = cols.length << 1;
+				cols = Arrays.copyOf(cols, size);
+				weights = Arrays.copyOf(weights, size);
+				if (denoms != null)
+					denoms = Arrays.copyOf(denoms, size);
+				}
+			cols[n] = col;
+			weights[n] = (float)weight;
+			if (denoms != null)
+				denoms[n] = (float)denom;
+			n++;
+		}
+		
+		/*****************************************
+		 * Ends the current row, dividing its weights by <code>denom</code>. If <code>denom</code> is
+		 * not positive and finite, the row is left empty.
+		 * 
+		 * @param denom
+		 */
+		void endRow(double denom){
+			int start = n_rows == 0 ? 0 : ends[n_rows - 1];
+			if (denom > 0 && !Double.isInfinite(denom)){
+				for (int i = start; i < n; i++)
+					weights[i] = (float)(weights[i] / denom);
+			}else{
+				n = start;
+				}
+			ends[n_rows++] = n;
+		}
+		
+		/*****************************************
+		 * Ends the current row, leaving its weights as they are.
+		 * 
+		 */
+		void endRow(){
+			ends[n_rows++] = n;
+		}
+		
+	}
+	
+	/*****************************************
+	 * Concatenates blocks of rows, in order, into an operator.
+	 * 
+	 * @param type
+	 * @param n_cols
+	 * @param blocks
+	 * @return
+	 */
+	static SurfaceVolumeTransferOperator concatenate(Type type, int n_cols, Rows[] blocks){
+		int n_rows = 0;
+		long nnz = 0;
+		for (int b = 0; b < blocks.length; b++){
+			n_rows += blocks[b].n_rows;
+			nnz += blocks[b].n;
+			}
+		if (nnz > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("SurfaceVolumeTransferOperator: too many entries (" + nnz + ").");
+		
+		int[] row_ptr = new int[n_rows + 1];
+		int[] col_idx = new int[(int)nnz];
+		float[] weights = new float[(int)nnz];
+		int row = 0, offset = 0;
+		for (int b = 0; b < blocks.length; b++){
+			Rows rows = blocks[b];
+			for (int i = 0; i < rows.n_rows; i++)
+				row_ptr[++row] = offset + rows.ends[i];
+			System.arraycopy(rows.cols, 0, col_idx, offset, rows.n);
+			System.arraycopy(rows.weights, 0, weights, offset, rows.n);
+			offset += rows.n;
+			blocks[b] = null;
+			}
+		return new SurfaceVolumeTransferOperator(type, n_cols, row_ptr, col_idx, weights);
+	}
+	
+	/*****************************************
+	 * Transposes blocks of rows, in order, into an operator with <code>n_cols</code> rows; each 
+	 * new row is then divided by the sum of its entries' denominator weights, if this is positive.
+	 * Entries in each new row keep the order of their original rows. 
+	 * 
+	 * @param type
+	 * @param n_cols
+	 * @param blocks
+	 * @return
+	 */
+	static SurfaceVolumeTransferOperator transpose(Type type, int n_cols, Rows[] blocks){
+		int n_rows = 0;
+		long nnz = 0;
+		for (int b = 0; b < blocks.length; b++){
+			n_rows += blocks[b].n_rows;
+			nnz += blocks[b].n;
+			}
+		if (nnz > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("SurfaceVolumeTransferOperator: too many entries (" + nnz + ").");
+		
+		int[] row_ptr = new int[n_cols + 1];
+		double[] denom = new double[n_cols];
+		for (int b = 0; b < blocks.length; b++){
+			Rows rows = blocks[b];
+			for (int i = 0; i < rows.n; i++){
+				row_ptr[rows.cols[i] + 1]++;
+				denom[rows.cols[i]] += rows.denoms[i];
+				}
+			}
+		for (int i = 0; i < n_cols; i++)
+			row_ptr[i + 1] += row_ptr[i];
+		
+		int[] fill = Arrays.copyOf(row_ptr, n_cols);
+		int[] col_idx = new int[(int)nnz];
+		float[] weights = new float[(int)nnz];
+		for (int b = 0; b < blocks.length; b++){
+			Rows rows = blocks[b];
+			int row = rows.first, start = 0;
+			for (int r = 0; r < rows.n_rows; r++, row++){
+				for (int i = start; i < rows.ends[r]; i++){
+					int col = rows.cols[i];
+					int e = fill[col]++;
+					col_idx[e] = row;
+					weights[e] = denom[col] > 0 ? (float)(rows.weights[i] / denom[col]) : rows.weights[i];
+					}
+				start = rows.ends[r];
+				}
+			blocks[b] = null;
+			}
+		return new SurfaceVolumeTransferOperator(type, n_rows, row_ptr, col_idx, weights);
+	}
+	
+}
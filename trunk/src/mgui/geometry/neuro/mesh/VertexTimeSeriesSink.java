@@ -0,0 +1,61 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.IOException;
+
+/********************************************************
+ * Receives vertex-wise values for successive time points, e.g., as they are mapped from a 
+ * {@link VolumeTimeSeries}. Together, these form a vertex x time matrix.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public interface VertexTimeSeriesSink {
+
+	/********************************
+	 * Prepares this sink to receive <code>n_times</code> time points of <code>n_vertices</code> values.
+	 * 
+	 * @param n_vertices
+	 * @param n_times
+	 * @throws IOException
+	 */
+	public void open(int n_vertices, int n_times) throws IOException;
+	
+	/********************************
+	 * Writes the values for time point <code>t</code>; time points are written in order. The array may
+	 * be reused by the caller once this method returns.
+	 * 
+	 * @param t
+	 * @param values
+	 * @throws IOException
+	 */
+	public void write(int t, float[] values) throws IOException;
+	
+	/********************************
+	 * Finishes writing and releases any resources.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+	
+}
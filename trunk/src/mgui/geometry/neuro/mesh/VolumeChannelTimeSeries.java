@@ -0,0 +1,77 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import mgui.geometry.Grid3D;
+import mgui.interfaces.shapes.Volume3DInt;
+import mgui.numbers.MguiNumber;
+
+/********************************************************
+ * Time series whose time points are the channels of a {@link Volume3DInt}. Only the requested
+ * channel is read for each time point, directly from its voxel data column.
+ * 
+ * <p>The volume must be held in memory. For series too large for memory, use 
+ * {@link NiftiTimeSeries}, which streams time points from a 4D image file.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class VolumeChannelTimeSeries implements VolumeTimeSeries {
+
+	protected Volume3DInt volume;
+	protected ArrayList<String> channels;
+	
+	/********************************
+	 * Creates a time series from <code>channels</code> of <code>volume</code>, in order.
+	 * 
+	 * @param volume
+	 * @param channels
+	 */
+	public VolumeChannelTimeSeries(Volume3DInt volume, ArrayList<String> channels){
+		this.volume = volume;
+		this.channels = new ArrayList<String>(channels);
+	}
+	
+	public Grid3D getGrid(){
+		return volume.getGrid();
+	}
+	
+	public int getTimePointCount(){
+		return channels.size();
+	}
+	
+	public void read(int t, double[] data) throws IOException{
+		String channel = channels.get(t);
+		ArrayList<MguiNumber> values = volume.getVertexData(channel);
+		if (values == null)
+			throw new IOException("VolumeChannelTimeSeries: volume has no channel '" + channel + "'.");
+		if (values.size() < data.length)
+			throw new IOException("VolumeChannelTimeSeries: channel '" + channel + "' has " + values.size() + 
+								  " voxels; expected " + data.length + ".");
+		for (int i = 0; i < data.length; i++)
+			data[i] = values.get(i).getValue();
+	}
+	
+}
@@ -0,0 +1,151 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package mgui.geometry.neuro.mesh;
+
+import org.jogamp.vecmath.Point3f;
+import org.jogamp.vecmath.Vector3f;
+
+import mgui.geometry.Grid3D;
+import mgui.interfaces.shapes.Volume3DInt;
+import mgui.stats.StatFunctions;
+
+/********************************************************
+ * Read-only snapshot of one channel of a {@link Volume3DInt}, held as a primitive array, for 
+ * sampling the volume from several threads at once. <code>Volume3DInt</code> makes no guarantee 
+ * that its data can be read concurrently, so parallel workers should sample through an instance of 
+ * this class rather than the volume itself. The values are copied once on construction; later 
+ * changes to the volume are not seen.
+ * 
+ * <p>Only the grid's geometry is used once the values are copied, through methods of 
+ * {@link Grid3D} which do not modify it. Instances are immutable, and can be shared between threads.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class VolumeSampler {
+
+	protected final Grid3D grid;
+	protected final float[] values;
+	
+	/*********************************
+	 * Copies the current channel of <code>volume</code>.
+	 * 
+	 * @param volume
+	 */
+	public VolumeSampler(Volume3DInt volume){
+		this(volume, volume.getCurrentColumn());
+	}
+	
+	/*********************************
+	 * Copies <code>channel</code> of <code>volume</code>.
+	 * 
+	 * @param volume
+	 * @param channel
+	 */
+	public VolumeSampler(Volume3DInt volume, String channel){
+		this.grid = volume.getGrid();
+		int size = grid.getSize();
+		values = new float[size];
+		for (int i = 0; i < size; i++)
+			values[i] = (float)volume.getDatumAtVertex(channel, i).getValue();
+	}
+	
+	public Grid3D getGrid(){
+		return grid;
+	}
+	
+	/*********************************
+	 * Returns the value of voxel (<code>i</code>, <code>j</code>, <code>k</code>).
+	 * 
+	 */
+	public double getValue(int i, int j, int k){
+		return values[grid.getAbsoluteIndex(i, j, k)];
+	}
+	
+	/*********************************
+	 * Returns the value of the voxel enclosing <code>point</code>, or <code>NaN</code> if it is outside 
+	 * the grid.
+	 * 
+	 * @param point
+	 * @return
+	 */
+	public double getValueAtPoint(Point3f point){
+		int[] voxel = grid.getEnclosingVoxel(point);
+		if (voxel == null) return Double.NaN;
+		return getValue(voxel[0], voxel[1], voxel[2]);
+	}
+	
+	/*********************************
+	 * Returns the Gaussian-weighted average of the voxels around <code>voxel</code>, with separate 
+	 * widths along <code>normal</code> and perpendicular (tangent) to it. Voxels further than 
+	 * <code>cutoff</code> sigmas in either direction, and non-finite values, are ignored.
+	 * 
+	 * @param voxel
+	 * @param normal
+	 * @param sigma_normal
+	 * @param sigma_tangent
+	 * @param cutoff			Cutoff, in sigmas
+	 * @return the weighted average, or <code>NaN</code> if no voxels have weight
+	 */
+	public double getGaussianSmoothedValue(int[] voxel, Vector3f normal, 
+										   double sigma_normal, double sigma_tangent, double cutoff){
+		
+		Point3f centre = grid.getVoxelMidPoint(voxel[0], voxel[1], voxel[2]);
+		double max_normal = cutoff * sigma_normal;
+		double max_tangent = cutoff * sigma_tangent;
+		float r = (float)Math.max(max_normal, max_tangent);
+		int[] sub_vol = grid.getSubGrid(new Point3f(centre.x - r, centre.y - r, centre.z - r), 
+										new Point3f(centre.x + r, centre.y + r, centre.z + r));
+		if (sub_vol == null) 
+			return getValue(voxel[0], voxel[1], voxel[2]);
+		
+		Vector3f n = new Vector3f(normal);
+		n.normalize();
+		Vector3f d = new Vector3f();
+		
+		double sum = 0, sum_w = 0;
+		for (int i = sub_vol[0]; i < sub_vol[3]; i++)
+			for (int j = sub_vol[1]; j < sub_vol[4]; j++)
+				for (int k = sub_vol[2]; k < sub_vol[5]; k++){
+					d.sub(grid.getVoxelMidPoint(i, j, k), centre);
+					double d_normal = Math.abs(d.dot(n));
+					if (d_normal > max_normal) continue;
+					double d_tangent = Math.sqrt(Math.max(0, d.lengthSquared() - d_normal * d_normal));
+					if (d_tangent > max_tangent) continue;
+					double value = getValue(i, j, k);
+					if (Double.isNaN(value) || Double.isInfinite(value)) continue;
+					double w = getWeight(d_normal, sigma_normal) * getWeight(d_tangent, sigma_tangent);
+					sum += w * value;
+					sum_w += w;
+					}
+		
+		if (sum_w > 0) return sum / sum_w;
+		return Double.NaN;
+	}
+	
+	static double getWeight(double x, double sigma){
+		if (!(sigma > 0)) return x == 0 ? 1 : 0;
+		return StatFunctions.getGaussian(x, 0, sigma);
+	}
+	
+}
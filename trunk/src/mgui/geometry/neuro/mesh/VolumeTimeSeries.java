@@ -0,0 +1,63 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.geometry.neuro.mesh;
+
+import java.io.IOException;
+
+import mgui.geometry.Grid3D;
+
+/********************************************************
+ * A series of volumes sharing a single {@link Grid3D}, such as a 4D functional image, which can be 
+ * read one time point at a time. See 
+ * {@link NeuroMeshFunctions#mapVolumeTimeSeriesToCortexGaussian}.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public interface VolumeTimeSeries {
+
+	/********************************
+	 * Returns the grid shared by all time points.
+	 * 
+	 * @return
+	 */
+	public Grid3D getGrid();
+	
+	/********************************
+	 * Returns the number of time points in this series.
+	 * 
+	 * @return
+	 */
+	public int getTimePointCount();
+	
+	/********************************
+	 * Reads time point <code>t</code> into <code>data</code>, indexed by absolute voxel index (see 
+	 * {@link Grid3D#getAbsoluteIndex(int, int, int)}). May be called from a thread other than the 
+	 * one that created this series, but never concurrently.
+	 * 
+	 * @param t
+	 * @param data			Array of length <code>getGrid().getSize()</code>
+	 * @throws IOException
+	 */
+	public void read(int t, double[] data) throws IOException;
+	
+}
@@ -0,0 +1,55 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package mgui.io;
+
+/****************************************
+ * Floating-point value types for binary files; e.g., network matrices and trace files.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public enum FloatDataType {
+
+	Float32 (4),
+	Float64 (8);
+	
+	/** Size of a value, in bytes */
+	public final int size;
+	
+	FloatDataType(int size){
+		this.size = size;
+	}
+	
+	/**************************************
+	 * Returns the type whose values are <code>size</code> bytes, or <code>null</code> if there is none.
+	 * 
+	 * @param size
+	 * @return
+	 */
+	public static FloatDataType forSize(int size){
+		if (size == 4) return Float32;
+		if (size == 8) return Float64;
+		return null;
+	}
+	
+}
@@ -0,0 +1,343 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.io.domestic.network;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import mgui.io.FloatDataType;
+
+/********************************
+ * <p>Compact binary format for square connectivity matrices. It can be read by 
+ * {@link CorticalNetworkMatrixLoader}, and is memory-mapped rather than parsed. The file is 
+ * little-endian, and consists of:</p>
+ * 
+ * <ul>
+ * <li>A header: the magic bytes <code>MGMATRX1</code>; the format version, matrix size N, value size
+ * in bytes (4 or 8) and a reserved value, as <code>int</code>s; and N region names, each as an
+ * <code>int</code> byte length followed by UTF-8 bytes. The header is padded to a multiple of 8 bytes.
+ * <li>N x N values in row-major order, as <code>float</code>s or <code>double</code>s; 
+ * element (i, j) is the weight for the connection from region i to region j.
+ * </ul>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CorticalNetworkMatrixBinary {
+
+	public static final byte[] MAGIC = {'M', 'G', 'M', 'A', 'T', 'R', 'X', '1'};
+	public static final int VERSION = 1;
+	
+	//maximum size of a single mapping
+	protected static final long MAX_BLOCK = 1L << 28;
+	
+	protected RandomAccessFile raf;
+	protected FileChannel channel;
+	protected int n;
+	protected FloatDataType data_type;
+	protected String[] names;
+	protected long data_start;
+	
+	/********************************
+	 * Receives the rows of a matrix as they are read.
+	 *
+	 */
+	public interface RowHandler{
+		public void row(int i, double[] values) throws IOException;
+	}
+	
+	/********************************
+	 * Opens <code>file</code> and reads its header.
+	 * 
+	 * @param file
+	 * @throws IOException if the file is not a binary matrix file
+	 */
+	public CorticalNetworkMatrixBinary(File file) throws IOException{
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try{
+			readHeader();
+		}catch (IOException ex){
+			raf.close();
+			throw ex;
+			}
+	}
+	
+	/********************************
+	 * Determines whether <code>file</code> starts with the magic bytes of this format.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	public static boolean isBinaryMatrix(File file){
+		try{
+			RandomAccessFile f = new RandomAccessFile(file, "r");
+			byte[] magic = new byte[MAGIC.length];
+			boolean is_binary = f.length() >= magic.length;
+			if (is_binary){
+				f.readFully(magic);
+				is_binary = Arrays.equals(magic, MAGIC);
+				}
+			f.close();
+			return is_binary;
+		}catch (IOException ex){
+			return false;
+			}
+	}
+	
+	protected void readHeader() throws IOException{
+		ByteBuffer header = read(0, 24);
+		byte[] magic = new byte[MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, MAGIC))
+			throw new IOException("CorticalNetworkMatrixBinary: not a binary matrix file.");
+		int version = header.getInt();
+		if (version > VERSION)
+			throw new IOException("CorticalNetworkMatrixBinary: unsupported version " + version + ".");
+		n = header.getInt();
+		data_type = FloatDataType.forSize(header.getInt());
+		if (data_type == null)
+			throw new IOException("CorticalNetworkMatrixBinary: unsupported value size.");
+		
+		long position = 24;
+		names = new String[n];
+		for (int i = 0; i < n; i++){
+			int length = read(position, 4).getInt();
+			byte[] bytes = new byte[length];
+			read(position + 4, length).get(bytes);
+			names[i] = new String(bytes, StandardCharsets.UTF_8);
+			position += 4 + length;
+			}
+		data_start = (position + 7) & ~7L;
+		
+		long expected = data_start + (long)n * n * data_type.size;
+		if (channel.size() < expected)
+			throw new IOException("CorticalNetworkMatrixBinary: file is truncated; expected " + expected + 
+								  " bytes.");
+	}
+	
+	protected ByteBuffer read(long position, int length) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("CorticalNetworkMatrixBinary: unexpected end of file.");
+		buffer.flip();
+		return buffer;
+	}
+	
+	public int getSize(){
+		return n;
+	}
+	
+	public String[] getNames(){
+		return names;
+	}
+	
+	public FloatDataType getDataType(){
+		return data_type;
+	}
+	
+	/********************************
+	 * Passes each row of the matrix, in order, to <code>handler</code>. Rows are memory-mapped in 
+	 * blocks; the array passed to the handler is reused between rows.
+	 * 
+	 * @param handler
+	 * @throws IOException
+	 */
+	public void readRows(RowHandler handler) throws IOException{
+		int size = data_type.size;
+		long row_bytes = (long)n * size;
+		int rows_per_block = (int)Math.max(1, Math.min(n, MAX_BLOCK / Math.max(1, row_bytes)));
+		double[] row = new double[n];
+		float[] row_f = data_type == FloatDataType.Float32 ? new float[n] : null;
+		
+		for (int i0 = 0; i0 < n; i0 += rows_per_block){
+			int rows = Math.min(rows_per_block, n - i0);
+			MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, 
+												 data_start + i0 * row_bytes, 
+												 rows * row_bytes);
+			block.order(ByteOrder.LITTLE_ENDIAN);
+			for (int r = 0; r < rows; r++){
+				block.position((int)(r * row_bytes));
+				if (row_f != null){
+					block.asFloatBuffer().get(row_f);
+					for (int j = 0; j < n; j++)
+						row[j] = row_f[j];
+				}else{
+					block.asDoubleBuffer().get(row);
+					}
+				handler.row(i0 + r, row);
+				}
+			}
+	}
+	
+	public void close() throws IOException{
+		raf.close();
+	}
+	
+	/********************************
+	 * Writes <code>matrix</code>, with region names <code>names</code>, to <code>file</code>.
+	 * 
+	 * @param file
+	 * @param names
+	 * @param matrix
+	 * @param data_type
+	 * @throws IOException
+	 */
+	public static void write(File file, String[] names, double[][] matrix, FloatDataType data_type) throws IOException{
+		Writer writer = new Writer(file, names, data_type);
+		try{
+			for (int i = 0; i < matrix.length; i++)
+				writer.row(i, matrix[i]);
+		}finally{
+			writer.close();
+			}
+	}
+	
+	/********************************
+	 * Converts a tab-delimited matrix file (in the format read by <code>CorticalNetworkMatrixLoader</code>) 
+	 * to this format, one row at a time. Diagonal entries, which are ignored by the loader, are not parsed
+	 * and are written as zero.
+	 * 
+	 * @param text
+	 * @param binary
+	 * @param data_type
+	 * @throws IOException
+	 */
+	public static void convert(File text, File binary, FloatDataType data_type) throws IOException{
+		BufferedReader reader = new BufferedReader(new FileReader(text));
+		Writer writer = null;
+		try{
+			DelimitedMatrixTokenizer tokens = new DelimitedMatrixTokenizer(reader);
+			ArrayList<String> names = new ArrayList<String>();
+			int code;
+			while ((code = tokens.next()) == DelimitedMatrixTokenizer.TOKEN)
+				names.add(tokens.getString());
+			if (names.size() == 0)
+				throw new IOException("CorticalNetworkMatrixBinary: '" + text.getName() + "' has no data.");
+			
+			int n = names.size();
+			writer = new Writer(binary, names.toArray(new String[n]), data_type);
+			double[] row = new double[n];
+			int i = 0, j = 0;
+			while (code != DelimitedMatrixTokenizer.END_OF_FILE && i < n){
+				code = tokens.next();
+				if (code == DelimitedMatrixTokenizer.TOKEN){
+					if (j < n && j != i) row[j] = tokens.getDouble();
+					j++;
+					continue;
+					}
+				if (code == DelimitedMatrixTokenizer.END_OF_LINE){
+					writer.row(i++, row);
+					Arrays.fill(row, 0);
+					j = 0;
+					}
+				}
+			//missing rows are zero
+			while (i < n)
+				writer.row(i++, row);
+		}finally{
+			reader.close();
+			if (writer != null) writer.close();
+			}
+	}
+	
+	/********************************
+	 * Writes a binary matrix file one row at a time.
+	 *
+	 */
+	public static class Writer implements RowHandler{
+		
+		protected RandomAccessFile raf;
+		protected FileChannel channel;
+		protected int n;
+		protected FloatDataType data_type;
+		protected long data_start;
+		protected ByteBuffer buffer;
+		
+		public Writer(File file, String[] names, FloatDataType data_type) throws IOException{
+			this.n = names.length;
+			this.data_type = data_type;
+			
+			byte[][] bytes = new byte[n][];
+			long size = 24;
+			for (int i = 0; i < n; i++){
+				bytes[i] = (names[i] == null ? "" : names[i]).getBytes(StandardCharsets.UTF_8);
+				size += 4 + bytes[i].length;
+				}
+			data_start = (size + 7) & ~7L;
+			
+			ByteBuffer header = ByteBuffer.allocate((int)data_start).order(ByteOrder.LITTLE_ENDIAN);
+			header.put(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(n);
+			header.putInt(data_type.size);
+			header.putInt(0);
+			for (int i = 0; i < n; i++){
+				header.putInt(bytes[i].length);
+				header.put(bytes[i]);
+				}
+			header.rewind();
+			
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(0);
+			channel = raf.getChannel();
+			write(header, 0);
+			buffer = ByteBuffer.allocateDirect(n * data_type.size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		public void row(int i, double[] values) throws IOException{
+			buffer.clear();
+			for (int j = 0; j < n; j++){
+				if (data_type == FloatDataType.Float32)
+					buffer.putFloat((float)values[j]);
+				else
+					buffer.putDouble(values[j]);
+				}
+			buffer.flip();
+			write(buffer, data_start + (long)i * n * data_type.size);
+		}
+		
+		protected void write(ByteBuffer b, long position) throws IOException{
+			while (b.hasRemaining())
+				position += channel.write(b, position);
+		}
+		
+		public void close() throws IOException{
+			raf.close();
+		}
+		
+	}
+	
+}
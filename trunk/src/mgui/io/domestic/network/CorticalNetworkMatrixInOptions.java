@@ -43,6 +43,7 @@ public class CorticalNetworkMatrixInOptions extends InterfaceIOOptions {
 	public enum Format {
 		Raw,
 		XML,
+		Binary,
 		Detect;
 	}
 	
@@ -57,6 +58,8 @@ public class CorticalNetworkMatrixInOptions extends InterfaceIOOptions {
 	public boolean normalizeWeights = true;
 	public boolean createGraph = true;
 	public boolean addAllConnections = false;
+	public boolean sparseCoupling = false;		//store connections in a SimpleCorticalCoupling matrix
+	public double delay = 1;					//connection delay for sparse coupling (ms)
 	
 	public CorticalNetworkMatrixInOptions(){
 		super();
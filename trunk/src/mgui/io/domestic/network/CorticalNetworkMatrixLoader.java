@@ -25,7 +25,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.StringTokenizer;
 
 import mgui.interfaces.InterfaceEnvironment;
 import mgui.interfaces.InterfaceSession;
@@ -34,6 +33,7 @@ import mgui.interfaces.logs.LoggingType;
 import mgui.io.FileLoader;
 import mgui.io.InterfaceIOOptions;
 import mgui.io.domestic.network.CorticalNetworkMatrixInOptions.Format;
+import mgui.neuro.components.cortical.simple.SimpleCorticalCoupling;
 import mgui.neuro.components.cortical.simple.SimpleCorticalRegion;
 import mgui.neuro.networks.CorticalNetwork;
 import mgui.util.MathFunctions;
@@ -59,6 +59,10 @@ import org.xml.sax.helpers.XMLReaderFactory;
  * <p>Note this type of file does not contain any information about the regions themselves, only their
  * connectivity. TODO: implement or find more detailed file format for this (preferable XML)...</p>
  * 
+ * <p>Large matrices can also be read from the binary format written by {@link CorticalNetworkMatrixBinary},
+ * which is memory-mapped row by row rather than parsed. With {@link Format#Detect}, the format is
+ * determined from the first bytes of the file.</p>
+ * 
  * @author Andrew Reid
  *
  */
@@ -113,27 +117,46 @@ public class CorticalNetworkMatrixLoader extends FileLoader {
 	public CorticalNetwork getCorticalNetwork(){
 		
 		boolean is_xml = (options.format == Format.XML);
-		if (options.format == Format.Detect){
-			//Try detecting file type
+		boolean is_binary = (options.format == Format.Binary);
+		if (options.format == Format.Detect)
+			is_binary = CorticalNetworkMatrixBinary.isBinaryMatrix(dataFile);
+		
+		if (is_binary){
 			try{
-				BufferedReader reader = new BufferedReader(new FileReader(dataFile));
-				String line = reader.readLine();
-				is_xml = line.startsWith("<?xml");
-				reader.close();
-			}catch (IOException ex){
-				InterfaceSession.log("CorticalNetworkMatrixLoader: could not open source file '" +
-									 dataFile.getAbsolutePath() + "'.", LoggingType.Errors);
+				return readBinary();
+			}catch (Exception ex){
+				InterfaceSession.log("CorticalNetworkMatrixLoader: error reading binary matrix '" + 
+									 dataFile.getAbsolutePath() + "': " + ex.getLocalizedMessage(), 
+									 LoggingType.Errors);
 				return null;
 				}
 			}
 		
+		BufferedReader reader = null;
+		try{
+			reader = new BufferedReader(new FileReader(dataFile), 1 << 16);
+			if (options.format == Format.Detect){
+				//Try detecting file type from the first characters
+				char[] start = new char[5];
+				reader.mark(start.length);
+				int n = reader.read(start);
+				reader.reset();
+				is_xml = n == start.length && new String(start).equals("<?xml");
+				}
+		}catch (IOException ex){
+			InterfaceSession.log("CorticalNetworkMatrixLoader: could not open source file '" +
+								 dataFile.getAbsolutePath() + "'.", LoggingType.Errors);
+			return null;
+			}
+		
 		if (is_xml){
 			try{
-				XMLReader reader = XMLReaderFactory.createXMLReader();
+				XMLReader xml_reader = XMLReaderFactory.createXMLReader();
 				CorticalNetworkXMLHandler handler = new CorticalNetworkXMLHandler(options);
-				reader.setContentHandler(handler);
-				reader.setErrorHandler(handler);
-				reader.parse(new InputSource(new FileReader(dataFile)));
+				xml_reader.setContentHandler(handler);
+				xml_reader.setErrorHandler(handler);
+				xml_reader.parse(new InputSource(reader));
+				reader.close();
 				return handler.getCorticalNetwork();
 			}catch (SAXException ex){
 				InterfaceSession.log(ex.getLocalizedMessage(), LoggingType.Errors);
@@ -145,63 +168,121 @@ public class CorticalNetworkMatrixLoader extends FileLoader {
 			}
 		
 		try{
-			CorticalNetwork network = new CorticalNetwork();
-			BufferedReader reader = new BufferedReader(new FileReader(dataFile));
-			//load and create cortical regions
-			String line = reader.readLine();
-			
-			if (line == null){
-				reader.close();
-				System.out.println("File '" + dataFile.getAbsolutePath() + "' has no data...");
-				return null;
+			CorticalNetwork network = readText(reader);
+			reader.close();
+			return network;
+		}catch (Exception e){
+			e.printStackTrace();
+			return null;
+			}
+		
+	}
+	
+	/***************************************
+	 * Reads a tab-delimited matrix in a single pass.
+	 * 
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	protected CorticalNetwork readText(BufferedReader reader) throws IOException{
+		CorticalNetwork network = new CorticalNetwork();
+		DelimitedMatrixTokenizer tokens = new DelimitedMatrixTokenizer(reader);
+		
+		//load and create cortical regions
+		ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+		int code;
+		while ((code = tokens.next()) == DelimitedMatrixTokenizer.TOKEN){
+			//SimpleCorticalRegion region = new SimpleCorticalRegion(name);
+			SimpleCorticalRegion region = options.getRegion(tokens.getString());
+			network.addRegion(region, false);
+			regions.add(region);
+			}
+		
+		if (code == DelimitedMatrixTokenizer.END_OF_FILE){
+			System.out.println("File '" + dataFile.getAbsolutePath() + "' has no data...");
+			return null;
+			}
+		
+		SimpleCorticalCoupling coupling = null;
+		if (options.sparseCoupling)
+			coupling = new SimpleCorticalCoupling(regions);
+		
+		//for each line of input, add connections to region
+		int i = 0, j = 0;
+		while ((code = tokens.next()) != DelimitedMatrixTokenizer.END_OF_FILE){
+			if (code == DelimitedMatrixTokenizer.END_OF_LINE){
+				i++;
+				j = 0;
+				continue;
 				}
-			
-			ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
-			StringTokenizer tokens = new StringTokenizer(line, "\t");
+			//the diagonal is ignored, and need not be numeric
+			if (i != j)
+				addConnection(regions, coupling, i, j, tokens.getDouble());
+			j++;
+			}
 		
-			while (tokens.hasMoreElements()){
-				String name = tokens.nextToken();
-				//SimpleCorticalRegion region = new SimpleCorticalRegion(name);
-				SimpleCorticalRegion region = options.getRegion(name);
+		if (coupling != null)
+			network.setCoupling(coupling);
+		return network;
+	}
+	
+	/***************************************
+	 * Reads a binary matrix; see {@link CorticalNetworkMatrixBinary}.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	protected CorticalNetwork readBinary() throws IOException{
+		final CorticalNetworkMatrixBinary matrix = new CorticalNetworkMatrixBinary(dataFile);
+		try{
+			CorticalNetwork network = new CorticalNetwork();
+			final ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+			String[] names = matrix.getNames();
+			for (int i = 0; i < names.length; i++){
+				SimpleCorticalRegion region = options.getRegion(names[i]);
 				network.addRegion(region, false);
 				regions.add(region);
 				}
 			
-			//for each line of input, add connections to region
-			line = reader.readLine();
-			
-			int i = 0, j;
-			String element;
-			while (line != null){
-				j = 0;
-				tokens = new StringTokenizer(line, "\t");
-				
-				while (tokens.hasMoreElements()){
-					element = tokens.nextToken();
-					if (i != j){
-						double weight = 0;
-						if (options.setWeights)
-							if (options.normalizeWeights)
-								weight = MathFunctions.normalize(options.min, options.max, Double.valueOf(element).doubleValue());
-							else
-								weight = Double.valueOf(element).doubleValue();
-						else
-							if (Double.valueOf(element).doubleValue() > 0) weight = 1;
-						if (weight > 0 || options.addAllConnections)
-							regions.get(i).connectTo(regions.get(j), weight);
-						}
-					j++;
-					}
-				i++;
-				line = reader.readLine();
+			final SimpleCorticalCoupling coupling = options.sparseCoupling ? new SimpleCorticalCoupling(regions) : null;
+			matrix.readRows(new CorticalNetworkMatrixBinary.RowHandler(){
+				public void row(int i, double[] values){
+					for (int j = 0; j < values.length; j++)
+						if (i != j)
+							addConnection(regions, coupling, i, j, values[j]);
 				}
-			reader.close();
+			});
+			
+			if (coupling != null)
+				network.setCoupling(coupling);
 			return network;
-		}catch (Exception e){
-			e.printStackTrace();
-			return null;
+		}finally{
+			matrix.close();
+			}
+	}
+	
+	/***************************************
+	 * Adds a connection from region <code>i</code> to region <code>j</code>, for matrix element
+	 * <code>value</code>, as specified by the current options.
+	 * 
+	 */
+	protected void addConnection(ArrayList<SimpleCorticalRegion> regions, SimpleCorticalCoupling coupling, 
+								 int i, int j, double value){
+		double weight = 0;
+		if (options.setWeights)
+			if (options.normalizeWeights)
+				weight = MathFunctions.normalize(options.min, options.max, value);
+			else
+				weight = value;
+		else
+			if (value > 0) weight = 1;
+		if (weight > 0 || options.addAllConnections){
+			if (coupling != null)
+				coupling.add(i, j, weight, options.delay);
+			else
+				regions.get(i).connectTo(regions.get(j), weight);
 			}
-		
 	}
 	
 
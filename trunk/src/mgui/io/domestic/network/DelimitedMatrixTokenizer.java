@@ -0,0 +1,211 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.io.domestic.network;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/********************************
+ * Single-pass tokenizer for delimited numeric matrices, which reads characters into a reused buffer and
+ * parses numbers without creating intermediate strings. Tokens are separated by a delimiter character 
+ * (tab by default); as for <code>StringTokenizer</code>, empty tokens are skipped. Lines are terminated by
+ * <code>\n</code>, <code>\r</code> or <code>\r\n</code>, as for <code>BufferedReader.readLine()</code>.
+ * 
+ * <p>Numbers are parsed exactly as <code>Double.valueOf</code> would parse them; decimal numbers with 
+ * few enough digits are converted directly, and anything else falls back to 
+ * <code>Double.parseDouble</code>.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class DelimitedMatrixTokenizer {
+
+	public static final int TOKEN = 0;
+	public static final int END_OF_LINE = 1;
+	public static final int END_OF_FILE = 2;
+	
+	//exactly representable powers of ten
+	protected static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+											 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	protected Reader reader;
+	protected char delimiter = '\t';
+	
+	protected char[] buffer = new char[1 << 16];
+	protected int position, limit;
+	protected boolean in_line;
+	
+	protected char[] token = new char[64];
+	protected int token_length;
+	
+	public DelimitedMatrixTokenizer(Reader reader){
+		this.reader = reader;
+	}
+	
+	public DelimitedMatrixTokenizer(Reader reader, char delimiter){
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+	
+	protected boolean fill() throws IOException{
+		limit = reader.read(buffer, 0, buffer.length);
+		position = 0;
+		if (limit < 0){
+			limit = 0;
+			return false;
+			}
+		return true;
+	}
+	
+	/********************************
+	 * Advances to the next token, and returns <code>TOKEN</code> if a token was read, 
+	 * <code>END_OF_LINE</code> if the end of a line was reached, or <code>END_OF_FILE</code> if there is 
+	 * no more input. A final line without a terminator is still ended by <code>END_OF_LINE</code>.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	public int next() throws IOException{
+		token_length = 0;
+		while (true){
+			if (position == limit && !fill()){
+				if (token_length > 0) return TOKEN;
+				if (in_line){
+					in_line = false;
+					return END_OF_LINE;
+					}
+				return END_OF_FILE;
+				}
+			
+			char c = buffer[position];
+			if (c == '\n' || c == '\r'){
+				if (token_length > 0) return TOKEN;		//terminator is handled on the next call
+				position++;
+				if (c == '\r'){
+					if (position == limit) fill();
+					if (position < limit && buffer[position] == '\n') position++;
+					}
+				in_line = false;
+				return END_OF_LINE;
+				}
+			
+			position++;
+			in_line = true;
+			if (c == delimiter){
+				if (token_length > 0) return TOKEN;
+				continue;
+				}
+			
+			if (token_length == token.length){
+				char[] t = new char[token_length * 2];
+				System.arraycopy(token, 0, t, 0, token_length);
+				token = t;
+				}
+			token[token_length++] = c;
+			}
+	}
+	
+	/********************************
+	 * Returns the current token as a string.
+	 * 
+	 * @return
+	 */
+	public String getString(){
+		return new String(token, 0, token_length);
+	}
+	
+	/********************************
+	 * Parses the current token as a double, as <code>Double.valueOf</code> would.
+	 * 
+	 * @return
+	 * @throws NumberFormatException if the token is not a number
+	 */
+	public double getDouble(){
+		int start = 0, end = token_length;
+		while (start < end && token[start] <= ' ') start++;
+		while (end > start && token[end - 1] <= ' ') end--;
+		
+		int i = start;
+		boolean negative = false;
+		if (i < end && (token[i] == '-' || token[i] == '+')){
+			negative = token[i] == '-';
+			i++;
+			}
+		
+		long mantissa = 0;
+		int digits = 0, scale = 0;
+		boolean any = false, point = false;
+		for (; i < end; i++){
+			char c = token[i];
+			if (c >= '0' && c <= '9'){
+				any = true;
+				if (mantissa == 0 && c == '0'){
+					if (point) scale--;
+					continue;
+					}
+				if (++digits > 18) return parse(start, end);
+				mantissa = mantissa * 10 + (c - '0');
+				if (point) scale--;
+			}else if (c == '.' && !point){
+				point = true;
+			}else{
+				break;
+				}
+			}
+		if (!any) return parse(start, end);
+		
+		if (i < end){
+			if (token[i] != 'e' && token[i] != 'E') return parse(start, end);
+			i++;
+			boolean exp_negative = false;
+			if (i < end && (token[i] == '-' || token[i] == '+')){
+				exp_negative = token[i] == '-';
+				i++;
+				}
+			if (i == end) return parse(start, end);
+			int exp = 0;
+			for (; i < end; i++){
+				char c = token[i];
+				if (c < '0' || c > '9' || exp > 1000) return parse(start, end);
+				exp = exp * 10 + (c - '0');
+				}
+			scale += exp_negative ? -exp : exp;
+			}
+		
+		double value;
+		if (mantissa == 0){
+			value = 0;
+		}else{
+			//exact when both the mantissa and the power of ten are exactly representable
+			if (mantissa > (1L << 53) || scale < -22 || scale > 22) return parse(start, end);
+			value = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+			}
+		return negative ? -value : value;
+	}
+	
+	protected double parse(int start, int end){
+		return Double.parseDouble(new String(token, start, end - start));
+	}
+	
+}
@@ -0,0 +1,303 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.io.domestic.network;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import mgui.io.FloatDataType;
+
+
+/********************************
+ * Provides random access to a trace file written by {@link TraceFileWriter}. Data chunks are 
+ * memory-mapped as they are needed, so that any region and time window can be read without loading
+ * the file. This class is not thread-safe.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class TraceFileReader {
+
+	protected File file;
+	protected RandomAccessFile raf;
+	protected FileChannel channel;
+	
+	protected FloatDataType data_type;
+	protected int n_regions, n_channels, chunk_length;
+	protected double start, step;
+	protected long n_timepoints;
+	protected String[] regions, channels;
+	protected long data_start;
+	protected long chunk_bytes;
+	
+	protected MappedByteBuffer mapped;
+	protected long mapped_chunk = -1;
+	
+	public TraceFileReader(File file) throws IOException{
+		this.file = file;
+		raf = new RandomAccessFile(file, "r");
+		channel = raf.getChannel();
+		try{
+			readHeader();
+		}catch (IOException ex){
+			raf.close();
+			throw ex;
+			}
+	}
+	
+	protected void readHeader() throws IOException{
+		ByteBuffer header = read(0, TraceFileWriter.FIXED_HEADER);
+		byte[] magic = new byte[TraceFileWriter.MAGIC.length];
+		header.get(magic);
+		if (!Arrays.equals(magic, TraceFileWriter.MAGIC))
+			throw new IOException("TraceFileReader: '" + file.getName() + "' is not a trace file.");
+		int version = header.getInt();
+		if (version > TraceFileWriter.VERSION)
+			throw new IOException("TraceFileReader: unsupported version " + version + ".");
+		data_type = FloatDataType.forSize(header.getInt());
+		if (data_type == null)
+			throw new IOException("TraceFileReader: unsupported value size.");
+		n_regions = header.getInt();
+		n_channels = header.getInt();
+		chunk_length = header.getInt();
+		header.getInt();
+		start = header.getDouble();
+		step = header.getDouble();
+		n_timepoints = header.getLong();
+		
+		long position = TraceFileWriter.FIXED_HEADER;
+		channels = new String[n_channels];
+		regions = new String[n_regions];
+		for (int i = 0; i < n_channels + n_regions; i++){
+			int length = read(position, 4).getInt();
+			byte[] bytes = new byte[length];
+			read(position + 4, length).get(bytes);
+			position += 4 + length;
+			String name = new String(bytes, TraceFileWriter.CHARSET);
+			if (i < n_channels)
+				channels[i] = name;
+			else
+				regions[i - n_channels] = name;
+			}
+		
+		data_start = (position + 7) & ~7L;
+		chunk_bytes = (long)n_channels * n_regions * chunk_length * data_type.size;
+	}
+	
+	protected ByteBuffer read(long position, int length) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()){
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0) throw new EOFException("TraceFileReader: unexpected end of file.");
+			}
+		buffer.flip();
+		return buffer;
+	}
+	
+	/********************************
+	 * Re-reads the number of time steps from the header, for a file which is still being written.
+	 * 
+	 * @return the number of time steps available
+	 * @throws IOException
+	 */
+	public long refresh() throws IOException{
+		n_timepoints = read(TraceFileWriter.COUNT_OFFSET, 8).getLong();
+		return n_timepoints;
+	}
+	
+	public long getTimepointCount(){
+		return n_timepoints;
+	}
+	
+	public int getRegionCount(){
+		return n_regions;
+	}
+	
+	public int getChannelCount(){
+		return n_channels;
+	}
+	
+	public String[] getRegionNames(){
+		return regions;
+	}
+	
+	public String[] getChannelNames(){
+		return channels;
+	}
+	
+	public double getStart(){
+		return start;
+	}
+	
+	public double getStep(){
+		return step;
+	}
+	
+	public FloatDataType getDataType(){
+		return data_type;
+	}
+	
+	/********************************
+	 * Returns the time of step <code>t</code>.
+	 * 
+	 * @param t
+	 * @return
+	 */
+	public double getTime(long t){
+		return start + t * step;
+	}
+	
+	/********************************
+	 * Returns the index of the region named <code>name</code>, or -1 if there is no such region.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public int getRegionIndex(String name){
+		for (int i = 0; i < n_regions; i++)
+			if (regions[i].equals(name)) return i;
+		return -1;
+	}
+	
+	/********************************
+	 * Returns the index of the channel named <code>name</code>, or -1 if there is no such channel.
+	 * 
+	 * @param name
+	 * @return
+	 */
+	public int getChannelIndex(String name){
+		for (int i = 0; i < n_channels; i++)
+			if (channels[i].equals(name)) return i;
+		return -1;
+	}
+	
+	/********************************
+	 * Reads <code>length</code> time steps of channel <code>channel</code> for region <code>region</code>, 
+	 * starting at step <code>from</code>.
+	 * 
+	 * @param channel
+	 * @param region
+	 * @param from
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	public double[] read(int channel, int region, long from, int length) throws IOException{
+		return read(channel, region, from, length, new double[length]);
+	}
+	
+	/********************************
+	 * Reads <code>length</code> time steps of channel <code>channel</code> for region <code>region</code>, 
+	 * starting at step <code>from</code>, into <code>values</code>.
+	 * 
+	 * @param channel
+	 * @param region
+	 * @param from
+	 * @param length
+	 * @param values
+	 * @return <code>values</code>
+	 * @throws IOException
+	 */
+	public double[] read(int channel, int region, long from, int length, double[] values) throws IOException{
+		if (channel < 0 || channel >= n_channels || region < 0 || region >= n_regions)
+			throw new IndexOutOfBoundsException("TraceFileReader: no channel " + channel + ", region " + region);
+		if (from < 0 || from + length > n_timepoints)
+			throw new IndexOutOfBoundsException("TraceFileReader: steps " + from + " to " + (from + length) + 
+												" out of range [0, " + n_timepoints + ")");
+		
+		int size = data_type.size;
+		int column = (channel * n_regions + region) * chunk_length;
+		int i = 0;
+		while (i < length){
+			long t = from + i;
+			long chunk = t / chunk_length;
+			int offset = (int)(t % chunk_length);
+			int n = Math.min(length - i, chunk_length - offset);
+			
+			MappedByteBuffer buffer = map(chunk);
+			int position = (column + offset) * size;
+			if (data_type == FloatDataType.Float32){
+				for (int k = 0; k < n; k++)
+					values[i + k] = buffer.getFloat(position + k * 4);
+			}else{
+				for (int k = 0; k < n; k++)
+					values[i + k] = buffer.getDouble(position + k * 8);
+				}
+			i += n;
+			}
+		
+		return values;
+	}
+	
+	/********************************
+	 * Reads channel <code>channel</code> for all regions at step <code>t</code>.
+	 * 
+	 * @param channel
+	 * @param t
+	 * @return
+	 * @throws IOException
+	 */
+	public double[] readStep(int channel, long t) throws IOException{
+		if (channel < 0 || channel >= n_channels)
+			throw new IndexOutOfBoundsException("TraceFileReader: no channel " + channel);
+		if (t < 0 || t >= n_timepoints)
+			throw new IndexOutOfBoundsException("TraceFileReader: step " + t + " out of range [0, " + n_timepoints + ")");
+		
+		double[] values = new double[n_regions];
+		MappedByteBuffer buffer = map(t / chunk_length);
+		int offset = (int)(t % chunk_length);
+		int size = data_type.size;
+		for (int i = 0; i < n_regions; i++){
+			int position = ((channel * n_regions + i) * chunk_length + offset) * size;
+			if (data_type == FloatDataType.Float32)
+				values[i] = buffer.getFloat(position);
+			else
+				values[i] = buffer.getDouble(position);
+			}
+		return values;
+	}
+	
+	protected MappedByteBuffer map(long chunk) throws IOException{
+		if (chunk != mapped_chunk){
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, data_start + chunk * chunk_bytes, chunk_bytes);
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			mapped_chunk = chunk;
+			}
+		return mapped;
+	}
+	
+	public void close() throws IOException{
+		mapped = null;
+		mapped_chunk = -1;
+		raf.close();
+	}
+	
+}
@@ -0,0 +1,317 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.io.domestic.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import mgui.io.FloatDataType;
+import mgui.neuro.networks.NetworkOutputSink;
+
+/********************************
+ * <p>Streams network output to a binary columnar trace file, which can be read back, for any region
+ * and time window, with {@link TraceFileReader}. The file is little-endian, and consists of:</p>
+ * 
+ * <ul>
+ * <li>A header: the magic bytes <code>MGTRACE1</code>; the format version, value size in bytes (4 or 8), 
+ * region count, channel count and chunk length (in time steps) as <code>int</code>s; a reserved 
+ * <code>int</code>; the start time and time step as <code>double</code>s; the number of time steps 
+ * written as a <code>long</code>; and the channel, then region, names, each as an <code>int</code> byte 
+ * length followed by UTF-8 bytes. The header is padded to a multiple of 8 bytes.
+ * <li>A sequence of chunks of <code>chunk_length</code> time steps. Each chunk is columnar: for each 
+ * channel, for each region, the values of its <code>chunk_length</code> time steps are contiguous. The
+ * last chunk is padded with zeros.
+ * </ul>
+ * 
+ * <p>Values are buffered by the calling (simulation) thread into chunk buffers, which are written to
+ * disk by a separate writer thread. The number of chunk buffers is bounded; the calling thread waits only
+ * if all of them are pending, i.e., if the disk cannot sustain the rate of simulation. The time step
+ * count in the header is updated as each chunk is written, so a partially written file remains 
+ * readable.</p>
+ * 
+ * <p>Output is currently only streamed from a <code>CompiledCorticalNetwork</code>, which writes region
+ * firing rates, outputs and ODE state variables; see 
+ * {@link mgui.neuro.networks.compiled.CompiledCorticalNetwork#setOutputSink(NetworkOutputSink)}. A 
+ * <code>CorticalNetwork</code> run by the model engine is not streamed, and its outputs are held by its 
+ * environment; since compiled traces are identical to those of the event path, networks whose traces 
+ * are too large to hold in memory should be compiled.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class TraceFileWriter implements NetworkOutputSink {
+
+	public static final byte[] MAGIC = {'M', 'G', 'T', 'R', 'A', 'C', 'E', '1'};
+	public static final int VERSION = 1;
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+	protected static final int COUNT_OFFSET = 48;
+	protected static final int FIXED_HEADER = 56;
+	
+	protected File file;
+	protected FloatDataType data_type = FloatDataType.Float32;
+	protected int chunk_length = 1024;
+	protected int n_buffers = 4;
+	
+	protected RandomAccessFile raf;
+	protected FileChannel channel;
+	protected int n_regions, n_channels;
+	protected long data_start;
+	protected int chunk_bytes;
+	protected long n_timepoints;
+	
+	protected Chunk current;
+	protected ArrayBlockingQueue<Chunk> free, filled;
+	protected Thread writer;
+	protected volatile IOException error;
+	
+	protected static class Chunk{
+		double[] values;
+		long index;
+		int length;
+		
+		Chunk(int size){
+			if (size > 0) values = new double[size];
+		}
+	}
+	
+	protected static final Chunk END = new Chunk(0);
+	
+	public TraceFileWriter(File file){
+		this.file = file;
+	}
+	
+	/********************************
+	 * Creates a new writer.
+	 * 
+	 * @param file
+	 * @param data_type 		precision of values written
+	 * @param chunk_length		number of time steps per chunk
+	 * @param n_buffers			number of chunks which can be pending before the calling thread waits
+	 */
+	public TraceFileWriter(File file, FloatDataType data_type, int chunk_length, int n_buffers){
+		this.file = file;
+		this.data_type = data_type;
+		this.chunk_length = Math.max(1, chunk_length);
+		this.n_buffers = Math.max(1, n_buffers);
+	}
+	
+	public File getFile(){
+		return file;
+	}
+	
+	public FloatDataType getDataType(){
+		return data_type;
+	}
+	
+	public int getChunkLength(){
+		return chunk_length;
+	}
+	
+	/********************************
+	 * Returns the number of time steps passed to this writer so far.
+	 * 
+	 * @return
+	 */
+	public long getTimepointCount(){
+		return n_timepoints;
+	}
+	
+	public void open(String[] regions, String[] channels, double start, double step) throws IOException{
+		if (raf != null) throw new IOException("TraceFileWriter: already open.");
+		
+		n_regions = regions.length;
+		n_channels = channels.length;
+		long bytes = (long)n_channels * n_regions * chunk_length * data_type.size;
+		if (bytes > Integer.MAX_VALUE)
+			throw new IOException("TraceFileWriter: chunk size " + bytes + " bytes is too large; " +
+								  "reduce the chunk length.");
+		chunk_bytes = (int)bytes;
+		n_timepoints = 0;
+		error = null;
+		
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		
+		//header
+		byte[][] names = new byte[n_channels + n_regions][];
+		int size = FIXED_HEADER;
+		for (int i = 0; i < names.length; i++){
+			String name = i < n_channels ? channels[i] : regions[i - n_channels];
+			if (name == null) name = "";
+			names[i] = name.getBytes(CHARSET);
+			size += 4 + names[i].length;
+			}
+		data_start = (size + 7) & ~7L;
+		
+		ByteBuffer header = ByteBuffer.allocate((int)data_start).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(data_type.size);
+		header.putInt(n_regions);
+		header.putInt(n_channels);
+		header.putInt(chunk_length);
+		header.putInt(0);
+		header.putDouble(start);
+		header.putDouble(step);
+		header.putLong(0);
+		for (int i = 0; i < names.length; i++){
+			header.putInt(names[i].length);
+			header.put(names[i]);
+			}
+		header.rewind();
+		writeFully(header, 0);
+		
+		//buffers and writer thread
+		free = new ArrayBlockingQueue<Chunk>(n_buffers);
+		filled = new ArrayBlockingQueue<Chunk>(n_buffers + 1);
+		for (int i = 0; i < n_buffers; i++)
+			free.add(new Chunk(n_channels * n_regions * chunk_length));
+		current = null;
+		
+		writer = new Thread(new Runnable(){
+			public void run(){
+				writeChunks();
+			}
+		}, "TraceFileWriter: " + file.getName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	public void write(double[][] values) throws IOException{
+		if (error != null) throw error;
+		if (raf == null) throw new IOException("TraceFileWriter: not open.");
+		
+		int t = (int)(n_timepoints % chunk_length);
+		if (current == null){
+			try{
+				current = free.take();
+			}catch (InterruptedException ex){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("TraceFileWriter: interrupted waiting for buffer.");
+				}
+			current.index = n_timepoints / chunk_length;
+			}
+		
+		double[] buffer = current.values;
+		for (int c = 0; c < n_channels; c++){
+			double[] v = values[c];
+			int offset = c * n_regions * chunk_length + t;
+			for (int i = 0; i < n_regions; i++)
+				buffer[offset + i * chunk_length] = v[i];
+			}
+		current.length = t + 1;
+		n_timepoints++;
+		
+		if (current.length == chunk_length){
+			filled.add(current);		//never full; at most n_buffers chunks exist
+			current = null;
+			}
+	}
+	
+	public void close() throws IOException{
+		if (raf == null) return;
+		
+		if (current != null)
+			filled.add(current);
+		current = null;
+		filled.add(END);
+		
+		try{
+			writer.join();
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			}
+		
+		raf.close();
+		raf = null;
+		channel = null;
+		writer = null;
+		free = null;
+		filled = null;
+		
+		if (error != null) throw error;
+	}
+	
+	/********************************
+	 * Writer thread loop; writes filled chunks and returns them to the free queue. After an error, chunks
+	 * are discarded so that the calling thread does not wait; the error is thrown on its next call.
+	 * 
+	 */
+	protected void writeChunks(){
+		ByteBuffer buffer = ByteBuffer.allocateDirect(chunk_bytes).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		
+		while (true){
+			Chunk chunk;
+			try{
+				chunk = filled.take();
+			}catch (InterruptedException ex){
+				error = new InterruptedIOException("TraceFileWriter: writer thread interrupted.");
+				return;
+				}
+			if (chunk == END) return;
+			
+			if (error == null){
+				try{
+					buffer.clear();
+					double[] values = chunk.values;
+					for (int col = 0; col < values.length; col += chunk_length){
+						for (int t = 0; t < chunk_length; t++){
+							double v = t < chunk.length ? values[col + t] : 0;
+							if (data_type == FloatDataType.Float32)
+								buffer.putFloat((float)v);
+							else
+								buffer.putDouble(v);
+							}
+						}
+					buffer.flip();
+					writeFully(buffer, data_start + chunk.index * chunk_bytes);
+					
+					count.clear();
+					count.putLong(chunk.index * chunk_length + chunk.length);
+					count.flip();
+					writeFully(count, COUNT_OFFSET);
+				}catch (IOException ex){
+					error = ex;
+					}
+				}
+			
+			free.add(chunk);
+			}
+	}
+	
+	protected void writeFully(ByteBuffer buffer, long position) throws IOException{
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+	
+}
@@ -64,6 +64,8 @@ import mgui.io.standard.gifti.xml.GiftiXMLHandler;
 
 public class GiftiSurfaceLoader extends SurfaceFileLoader {
 
+	protected ArrayList<float[]> time_series;
+	
 	public GiftiSurfaceLoader(){
 		
 	}
@@ -153,6 +155,10 @@ public class GiftiSurfaceLoader extends SurfaceFileLoader {
 			reader.parse(new InputSource(new FileReader(dataFile)));
 			Mesh3DInt mesh_int = handler.getMesh();
 			mesh_int.setName(getObjectName());
+			time_series = handler.getTimeSeries();
+			if (time_series.size() > 0)
+				InterfaceSession.log("GiftiSurfaceLoader: Loaded " + time_series.size() + " time points.", 
+									 LoggingType.Debug);
 			ArrayList<Matrix> transforms = handler.getTransforms();
 			if (_options.apply_transforms && transforms.size() > 0){
 				Mesh3D mesh = mesh_int.getMesh();
@@ -215,6 +221,16 @@ public class GiftiSurfaceLoader extends SurfaceFileLoader {
 		   }
 	}
 	
+	/***************************************
+	 * Returns the time series loaded from the last file, as one array of vertex-wise values per time
+	 * point; this is empty if the file had no <code>NIFTI_INTENT_TIME_SERIES</code> arrays.
+	 * 
+	 * @return
+	 */
+	public ArrayList<float[]> getTimeSeries(){
+		return time_series;
+	}
+	
 	@Override
 	public InterfaceIOType getWriterComplement(){
 		return (new GiftiSurfaceWriter()).getIOType();
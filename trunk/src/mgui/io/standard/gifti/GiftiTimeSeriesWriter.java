@@ -0,0 +1,190 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package mgui.io.standard.gifti;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import mgui.geometry.neuro.mesh.VertexTimeSeriesSink;
+import mgui.interfaces.xml.XMLFunctions;
+import mgui.io.standard.gifti.GiftiOutputOptions.ByteOrder;
+import mgui.io.standard.gifti.GiftiOutputOptions.GiftiEncoding;
+import mgui.io.standard.gifti.GiftiOutputOptions.NiftiIntent;
+import mgui.io.util.IoFunctions;
+
+/***********************************************************
+ * Writes a vertex x time matrix to a functional GIFTI file, as one <code>NIFTI_INTENT_TIME_SERIES</code>
+ * data array of <code>NIFTI_TYPE_FLOAT32</code> values per time point. Time points are written as they
+ * are received, so the full matrix is never held in memory. See 
+ * <a href="http://www.nitrc.org/projects/gifti/">http://www.nitrc.org/projects/gifti/</a> for details 
+ * and specification. 
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class GiftiTimeSeriesWriter implements VertexTimeSeriesSink {
+
+	protected File file;
+	protected GiftiEncoding encoding = GiftiEncoding.GZipBase64Binary;
+	protected ByteOrder byte_order = ByteOrder.LittleEndian;
+	protected String name = "time";
+	protected double time_step = 1;
+	
+	protected BufferedWriter writer;
+	protected ByteBuffer data_out;
+	protected int n_vertices, n_times, n_written;
+	
+	static final String tab1 = "\t";
+	static final String tab2 = "\t\t";
+	
+	public GiftiTimeSeriesWriter(File file){
+		this.file = file;
+	}
+	
+	/********************************
+	 * Creates a new writer.
+	 * 
+	 * @param file
+	 * @param encoding		Must be ASCII, Base64 or GZip Base64
+	 * @param byte_order
+	 */
+	public GiftiTimeSeriesWriter(File file, GiftiEncoding encoding, ByteOrder byte_order){
+		this.file = file;
+		this.encoding = encoding;
+		this.byte_order = byte_order;
+	}
+	
+	/********************************
+	 * Sets the name prefix for each data array; the time point index is appended.
+	 * 
+	 * @param name
+	 */
+	public void setName(String name){
+		this.name = name;
+	}
+	
+	/********************************
+	 * Sets the time step, written as "TimeStep" metadata for each data array.
+	 * 
+	 * @param time_step
+	 */
+	public void setTimeStep(double time_step){
+		this.time_step = time_step;
+	}
+	
+	public void open(int n_vertices, int n_times) throws IOException{
+		if (encoding == GiftiEncoding.ExternalFileBinary)
+			throw new IOException("GiftiTimeSeriesWriter: Type 'ExternalFileBinary' not implemented.");
+		
+		this.n_vertices = n_vertices;
+		this.n_times = n_times;
+		n_written = 0;
+		data_out = ByteBuffer.allocate(n_vertices * 4);
+		data_out.order(byte_order == ByteOrder.LittleEndian ? java.nio.ByteOrder.LITTLE_ENDIAN : 
+															 java.nio.ByteOrder.BIG_ENDIAN);
+		
+		writer = new BufferedWriter(new FileWriter(file), 1 << 16);
+		writer.write(XMLFunctions.getXMLHeader());
+		writer.write("\n<!DOCTYPE GIFTI SYSTEM 'http://www.nitrc.org/frs/download.php/115/gifti.dtd'>" +
+			        "\n<GIFTI Version='1.0'  NumberOfDataArrays='" + n_times + "'>");
+		writer.write("\n" + tab1 + "<MetaData/>");
+	}
+	
+	public void write(int t, float[] values) throws IOException{
+		if (writer == null)
+			throw new IOException("GiftiTimeSeriesWriter: Writer is not open.");
+		if (values.length != n_vertices)
+			throw new IOException("GiftiTimeSeriesWriter: Expected " + n_vertices + " values, got " + values.length + ".");
+		
+		String s_encoding = null;
+		switch (encoding){
+			case Ascii:
+				s_encoding = "ASCII";
+				break;
+			case Base64Binary:
+				s_encoding = "Base64Binary";
+				break;
+			default:
+				s_encoding = "GZipBase64Binary";
+				break;
+			}
+		
+		writer.write("\n" + tab1 + "<DataArray Intent='" + NiftiIntent.NIFTI_INTENT_TIME_SERIES + "'" +
+				"\n" + tab2 + "DataType='NIFTI_TYPE_FLOAT32'" +
+				"\n" + tab2 + "ArrayIndexingOrder='RowMajorOrder'" +
+				"\n" + tab2 + "Dimensionality='1'" + 
+				"\n" + tab2 + "Dim0='" + n_vertices + "'" +
+				"\n" + tab2 + "Encoding='" + s_encoding + "'" +
+				"\n" + tab2 + "Endian='" + byte_order + "'" +
+				"\n" + tab2 + "ExternalFileName=''" +
+				"\n" + tab2 + "ExternalFileOffset='' >");
+		
+		writer.write("\n" + tab2 + "<MetaData>");
+		writeMetadataItem("Name", name + "_" + t);
+		writeMetadataItem("TimeStep", "" + time_step);
+		writer.write("\n" + tab2 + "</MetaData>");
+		writer.write("\n" + tab2 + "<CoordinateSystemTransformMatrix/>");
+		writer.write("\n" + tab2 + "<Data>");
+		
+		if (encoding == GiftiEncoding.Ascii){
+			for (int i = 0; i < values.length; i++){
+				if (i > 0) writer.write(" ");
+				writer.write(Float.toString(values[i]));
+				}
+		}else{
+			data_out.clear();
+			for (int i = 0; i < values.length; i++)
+				data_out.putFloat(values[i]);
+			byte[] b = data_out.array();
+			if (encoding == GiftiEncoding.GZipBase64Binary)
+				b = IoFunctions.compressZipped(b);
+			writer.write(Base64.getEncoder().encodeToString(b));
+			}
+		
+		writer.write("</Data>");
+		writer.write("\n" + tab1 + "</DataArray>");
+		n_written++;
+	}
+	
+	protected void writeMetadataItem(String name, String value) throws IOException {
+		writer.write("\n" + tab2 + "\t<MD>" +
+					 "\n" + tab2 + "\t\t<Name>" + name + "</Name>" +
+					 "\n" + tab2 + "\t\t<Value>" + value + "</Value>" +
+					 "\n" + tab2 + "\t</MD>");
+	}
+	
+	public void close() throws IOException{
+		if (writer == null) return;
+		writer.write("\n</GIFTI>");
+		writer.close();
+		writer = null;
+		data_out = null;
+		if (n_written != n_times)
+			throw new IOException("GiftiTimeSeriesWriter: Expected " + n_times + " time points, but " +
+								  n_written + " were written.");
+	}
+	
+}
@@ -23,6 +23,7 @@ package mgui.io.standard.gifti.xml;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -85,6 +86,9 @@ public class GiftiXMLHandler extends DefaultHandler {
 	
 	public HashMap<String,NiftiIntent> nifti_intents = new HashMap<String,NiftiIntent>();
 	
+	// Time series; one array of vertex values per time point
+	protected ArrayList<float[]> time_series = new ArrayList<float[]>();
+	
 	// DataArray fields
 	String da_intent;
 	String da_type;
@@ -152,6 +156,16 @@ public class GiftiXMLHandler extends DefaultHandler {
 		return this.transforms;
 	}
 	
+	/***************************************
+	 * Returns the time series data, if any was loaded, as one array of vertex-wise values per time
+	 * point, in the order they were encountered.
+	 * 
+	 * @return
+	 */
+	public ArrayList<float[]> getTimeSeries(){
+		return this.time_series;
+	}
+	
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
 		
@@ -421,9 +435,10 @@ public class GiftiXMLHandler extends DefaultHandler {
 								nifti_intents.put(name, NiftiIntent.valueOf(da_intent));
 								break;
 								
+							case "NIFTI_INTENT_TIME_SERIES":
 							case "NIFTI_INTENT_TIMESERIES":
-								InterfaceSession.log("GiftiXMLHandler: Column '" + name + "': Handling of time series data not yet implemented.", 
-													 LoggingType.Errors);
+								addTimeSeries(b_data);
+								nifti_intents.put(name, NiftiIntent.NIFTI_INTENT_TIME_SERIES);
 								break;
 							}
 						
@@ -451,9 +466,10 @@ public class GiftiXMLHandler extends DefaultHandler {
 								addVertexData(name, data_buffer.toString());
 								break;
 								
+							case "NIFTI_INTENT_TIME_SERIES":
 							case "NIFTI_INTENT_TIMESERIES":
-								InterfaceSession.log("GiftiXMLHandler: Column '" + name + "': Handling of time series data not yet implemented.", 
-													 LoggingType.Errors);
+								addTimeSeries(parseAsciiFloat(data_buffer.toString()));
+								nifti_intents.put(name, NiftiIntent.NIFTI_INTENT_TIME_SERIES);
 								break;
 							}
 						
@@ -769,6 +785,84 @@ public class GiftiXMLHandler extends DefaultHandler {
 		
 	}
 	
+	/*************************************************************
+	 * Adds time series data from {@code b_data}, with the given "da" parameters. 
+	 * 
+	 * @param b_data
+	 * @throws SAXException
+	 */
+	protected void addTimeSeries(byte[] b_data) throws SAXException{
+		
+		int size = 1;
+		for (int i = 0; i < da_dims.length; i++)
+			size *= da_dims[i];
+		
+		ByteOrder order = ByteOrder.BIG_ENDIAN;
+		if (da_endian.equals("LittleEndian"))
+			order = ByteOrder.LITTLE_ENDIAN;
+		
+		float[] values = new float[size];
+		ByteBuffer bb = ByteBuffer.wrap(b_data).order(order);
+		int width = da_type.equals("NIFTI_TYPE_UINT8") ? 1 : 4;
+		if (b_data.length < size * width)
+			throw new SAXException ("GiftiXMLHandler: Too little data for time series (" + b_data.length + 
+									" bytes for " + size + " values).");
+		
+		switch (da_type){
+			case "NIFTI_TYPE_UINT8":
+				for (int i = 0; i < size; i++)
+					values[i] = uint2short(b_data[i]);
+				break;
+			case "NIFTI_TYPE_INT32":
+				IntBuffer ib = bb.asIntBuffer();
+				for (int i = 0; i < size; i++)
+					values[i] = ib.get(i);
+				break;
+			case "NIFTI_TYPE_FLOAT32":
+			default:
+				bb.asFloatBuffer().get(values);
+				break;
+			}
+		
+		addTimeSeries(values);
+	}
+	
+	/*************************************************************
+	 * Adds time series data from {@code values}. One-dimensional arrays are a single time point;
+	 * two-dimensional arrays are vertices x time points.
+	 * 
+	 * @param values
+	 * @throws SAXException
+	 */
+	protected void addTimeSeries(float[] values) throws SAXException{
+		
+		int n = da_dims[0];
+		if (mesh_int != null && mesh_int.getVertexCount() > 0 && n != mesh_int.getVertexCount())
+			throw new SAXException ("GiftiXMLHandler: Unexpected data size when adding time series (" + n + "!= " + mesh_int.getVertexCount() +  ".");
+		
+		if (da_dimensions == 1){
+			if (values.length < n)
+				throw new SAXException ("GiftiXMLHandler: Too little data for time series (" + values.length + " < " + n + ").");
+			time_series.add(values.length == n ? values : Arrays.copyOf(values, n));
+			return;
+			}
+		
+		if (da_dimensions != 2)
+			throw new SAXException ("GiftiXMLHandler: Unexpected dimensions for time series (" + da_dimensions + " > 2)..");
+		
+		int n_times = da_dims[1];
+		if (values.length < n * n_times)
+			throw new SAXException ("GiftiXMLHandler: Too little data for time series (" + values.length + " < " + (n * n_times) + ").");
+		
+		boolean row_major = da_index_order.equals("RowMajorOrder");
+		for (int t = 0; t < n_times; t++){
+			float[] v = new float[n];
+			for (int i = 0; i < n; i++)
+				v[i] = row_major ? values[i * n_times + t] : values[t * n + i];
+			time_series.add(v);
+			}
+	}
+	
 	protected void addVertexData(String column_name, String ascii_data) throws SAXException{
 		
 		
@@ -20,6 +20,7 @@
 
 package mgui.neuro.components;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 
 import mgui.interfaces.attributes.Attribute;
@@ -51,6 +52,17 @@ import org.opensourcephysics.numerics.ODESolver;
  * 
  * <P>Variables (e.g., clock) should be declared as individual class members.</P> 
  * 
+ * <P>Parameters used on the simulation hot path should also be held as primitive copies, which are
+ * refreshed by <code>updateParameters()</code> when an attribute has changed (signalled by 
+ * <code>attributeUpdated</code>), so that they are not looked up in the attribute list on each access.
+ * Subclasses holding such copies should override <code>updateParameters()</code>, calling the super
+ * method, and check <code>parameters_changed</code> before reading them.</P>
+ * 
+ * <P>Delayed events are held in the component's own event list unless an {@link EventScheduler} is
+ * set, in which case they are held in the (typically network-wide) scheduler and passed back to the
+ * component only on the time step at which they are due. Events implementing {@link RecyclableEvent}
+ * are recycled once they have been executed.</P>
+ * 
  * @author Andrew Reid
  * @version 1.0
  *
@@ -67,6 +79,12 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 	
 	protected ArrayList<DynamicModelEvent> events = new ArrayList<DynamicModelEvent>();
 	protected ArrayList<DynamicModelComponent> connections = new ArrayList<DynamicModelComponent>();
+	
+	//*****SCHEDULING*****
+	protected EventScheduler scheduler;
+	protected long event_tick;
+	protected int event_epoch;
+	protected ArrayDeque<DynamicModelEvent> due_events = new ArrayDeque<DynamicModelEvent>();
 	/*
 	public static Comparator idComparator = new Comparator<AbstractNeuroComponent>(){
 		public int compare(AbstractNeuroComponent c1, AbstractNeuroComponent c2){
@@ -83,6 +101,11 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 	
 	protected AttributeList attributes = new AttributeList();
 	protected long id;
+	
+	//*****PARAMETER COPIES*****
+	protected boolean parameters_changed = true;
+	protected double delay;
+	
 	public boolean hasSubComponents;
 	public boolean updated;
 	
@@ -134,7 +157,18 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 	}
 	
 	public double getDelay(){
-		return ((MguiDouble)attributes.getValue("Delay")).getValue();
+		if (parameters_changed) updateParameters();
+		return delay;
+	}
+	
+	/******************************
+	 * Refreshes the primitive copies of this component's parameters from its attributes. Subclasses
+	 * should override this to refresh their own copies, calling this method.
+	 * 
+	 */
+	protected void updateParameters(){
+		delay = ((MguiDouble)attributes.getValue("Delay")).getValue();
+		parameters_changed = false;
 	}
 	
 	public void setID(long id){
@@ -173,7 +207,38 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 	}
 	
 	public void addEvent(DynamicModelEvent e) {
-		events.add(e);
+		if (scheduler != null)
+			scheduler.schedule(this, e);
+		else
+			events.add(e);
+	}
+	
+	/******************************
+	 * Sets the scheduler for this component's delayed events; if <code>null</code>, events are held
+	 * in this component's own event list. Events pending in this component's list are moved to the new
+	 * scheduler (or list), with their remaining delays; events still held by a previous scheduler are
+	 * discarded.
+	 * 
+	 * @param scheduler
+	 */
+	public void setEventScheduler(EventScheduler scheduler){
+		if (scheduler == this.scheduler) return;
+		
+		ArrayList<DynamicModelEvent> pending = new ArrayList<DynamicModelEvent>(events);
+		pending.addAll(due_events);
+		events.clear();
+		due_events.clear();
+		event_epoch++;		//invalidates events held by the previous scheduler
+		
+		this.scheduler = scheduler;
+		if (scheduler != null)
+			event_tick = scheduler.getTick();
+		for (int i = 0; i < pending.size(); i++)
+			addEvent(pending.get(i));
+	}
+	
+	public EventScheduler getEventScheduler(){
+		return scheduler;
 	}
 	
 	public void addConnection(DynamicModelComponent c){
@@ -186,11 +251,18 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 	
 	public void reset(){
 		events.clear();
+		due_events.clear();
+		event_epoch++;
+		if (scheduler != null)
+			event_tick = scheduler.getTick();
 		if (solver != null)
 			solver.initialize(solver.getStepSize());
 	}
 	
 	public boolean executeEvents(double step) {
+		if (scheduler != null) 
+			return executeScheduledEvents();
+		
 		boolean executed = false;
 		try{
 			//while (events.size() > 0){
@@ -206,9 +278,9 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 										   ") " + events.get(j).getClass().getSimpleName());
 						}
 					executed |= updated;
-					events.remove(j);
-					int x = events.size();
-					x += 0;
+					DynamicModelEvent e = events.remove(j);
+					if (e instanceof RecyclableEvent)
+						((RecyclableEvent)e).recycle();
 				}else{
 					//if (step > 0)
 					//	events.get(j).timeElapsed(step);
@@ -221,6 +293,38 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 			}
 		return executed;
 	}
+	
+	/******************************
+	 * Advances this component by one time step with respect to its scheduler, and executes
+	 * events which are now due, in the order they were added.
+	 * 
+	 * @return
+	 */
+	protected boolean executeScheduledEvents(){
+		event_tick++;
+		if (event_tick > scheduler.getTick())
+			scheduler.advance(event_tick);
+		
+		boolean executed = false;
+		try{
+			while (!due_events.isEmpty()){
+				DynamicModelEvent e = due_events.poll();
+				updated = executeEvent(e);
+				if (verbose == 1 && updated){
+					System.out.println("Model Event: (" + 
+									   toString() +
+									   ") " + e.getClass().getSimpleName());
+					}
+				executed |= updated;
+				if (e instanceof RecyclableEvent)
+					((RecyclableEvent)e).recycle();
+				}
+		}catch (NeuroException e){
+			e.printStackTrace();
+			return false;
+			}
+		return executed;
+	}
 
 	//update clock and call updateFromClock
 	public void timeElapsed(double time) {
@@ -309,9 +413,12 @@ public abstract class AbstractNeuroComponent extends AbstractNetworkComponent{
 
 	public void setAttributes(AttributeList thisList) {
 		attributes = thisList;
+		attributes.addAttributeListener(this);
+		parameters_changed = true;
 	}
 	
 	public void attributeUpdated(AttributeEvent e){
+		parameters_changed = true;
 		//TODO implement component listeners..
 		fireListeners();
 	}
@@ -0,0 +1,236 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components;
+
+import mgui.models.dynamic.DynamicModelEvent;
+
+/****************************************
+ * <p>Schedules delayed events for a set of {@link AbstractNeuroComponent}s, typically all components of a
+ * network. Events are keyed on the absolute time step at which they are due, in a binary heap held in 
+ * parallel arrays, which are reused as events come and go; thus scheduling does not allocate once the 
+ * heap has grown to its working size. On each time step, only the events which are due are touched.</p>
+ * 
+ * <p>The time step at which an event is due is computed from its delay by replicating the decrements of
+ * <code>DynamicModelEvent.timeElapsed</code> and the test in 
+ * <code>AbstractNeuroComponent.executeEvents</code>, so events are executed on the same steps, and in the
+ * same order, as they would be from a component's own event list. This requires that components are 
+ * executed with the constant time step given to this scheduler, and that every component's 
+ * <code>executeEvents</code> is called once per time step.</p>
+ * 
+ * <p>This class is not thread-safe.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class EventScheduler {
+
+	protected double step;
+	protected long tick;
+	protected long sequence;
+	
+	//heap, ordered by (due, seq)
+	protected int size;
+	protected long[] due = new long[64];
+	protected long[] seq = new long[64];
+	protected int[] epoch = new int[64];
+	protected AbstractNeuroComponent[] targets = new AbstractNeuroComponent[64];
+	protected DynamicModelEvent[] events = new DynamicModelEvent[64];
+	
+	/**************************************
+	 * Creates a new scheduler for components executed with the time step <code>step</code>.
+	 * 
+	 * @param step
+	 */
+	public EventScheduler(double step){
+		this.step = step;
+	}
+	
+	public double getStep(){
+		return step;
+	}
+	
+	/**************************************
+	 * Returns the latest time step reached by any component using this scheduler.
+	 * 
+	 * @return
+	 */
+	public long getTick(){
+		return tick;
+	}
+	
+	/**************************************
+	 * Returns the number of events pending in this scheduler's heap (excluding those already passed 
+	 * to their components).
+	 * 
+	 * @return
+	 */
+	public int getPendingCount(){
+		return size;
+	}
+	
+	/**************************************
+	 * Returns the number of time steps an event with delay <code>delay</code> waits before it is 
+	 * executed, for time step <code>step</code>. Replicates the decrements of 
+	 * <code>SimpleEvent.timeElapsed</code> followed by the test in 
+	 * <code>AbstractNeuroComponent.executeEvents</code>, so that rounding is identical.
+	 * 
+	 * @param delay
+	 * @param step
+	 * @return
+	 */
+	public static int getLag(double delay, double step){
+		int lag = 0;
+		do{
+			delay -= step;
+			lag++;
+		}while (delay > 0);
+		return lag;
+	}
+	
+	/**************************************
+	 * Schedules <code>event</code> for <code>target</code>, due after its current delay.
+	 * 
+	 * @param target
+	 * @param event
+	 */
+	public void schedule(AbstractNeuroComponent target, DynamicModelEvent event){
+		long when = target.event_tick + getLag(event.getDelay(), step);
+		
+		if (when <= tick){
+			//already due; the scheduler has passed this step
+			target.due_events.add(event);
+			return;
+			}
+		
+		if (size == due.length) grow();
+		int i = size++;
+		due[i] = when;
+		seq[i] = sequence++;
+		epoch[i] = target.event_epoch;
+		targets[i] = target;
+		events[i] = event;
+		siftUp(i);
+	}
+	
+	/**************************************
+	 * Advances this scheduler to step <code>to_tick</code>, passing all events due at or before this step
+	 * to their targets. Events scheduled before their target was last reset are discarded.
+	 * 
+	 * @param to_tick
+	 */
+	public void advance(long to_tick){
+		while (size > 0 && due[0] <= to_tick){
+			AbstractNeuroComponent target = targets[0];
+			if (epoch[0] == target.event_epoch)
+				target.due_events.add(events[0]);
+			removeTop();
+			}
+		if (to_tick > tick) tick = to_tick;
+	}
+	
+	/**************************************
+	 * Discards all pending events and resets the time step to zero. Components using this scheduler 
+	 * should also be reset.
+	 * 
+	 */
+	public void clear(){
+		for (int i = 0; i < size; i++){
+			targets[i] = null;
+			events[i] = null;
+			}
+		size = 0;
+		tick = 0;
+		sequence = 0;
+	}
+	
+	protected void removeTop(){
+		size--;
+		move(size, 0);
+		targets[size] = null;
+		events[size] = null;
+		if (size > 0) siftDown(0);
+	}
+	
+	protected boolean less(int a, int b){
+		if (due[a] != due[b]) return due[a] < due[b];
+		return seq[a] < seq[b];
+	}
+	
+	protected void siftUp(int i){
+		while (i > 0){
+			int parent = (i - 1) >>> 1;
+			if (!less(i, parent)) return;
+			swap(i, parent);
+			i = parent;
+			}
+	}
+	
+	protected void siftDown(int i){
+		while (true){
+			int left = 2 * i + 1;
+			if (left >= size) return;
+			int child = left;
+			if (left + 1 < size && less(left + 1, left)) child = left + 1;
+			if (!less(child, i)) return;
+			swap(i, child);
+			i = child;
+			}
+	}
+	
+	protected void move(int from, int to){
+		due[to] = due[from];
+		seq[to] = seq[from];
+		epoch[to] = epoch[from];
+		targets[to] = targets[from];
+		events[to] = events[from];
+	}
+	
+	protected void swap(int a, int b){
+		long l = due[a]; due[a] = due[b]; due[b] = l;
+		l = seq[a]; seq[a] = seq[b]; seq[b] = l;
+		int e = epoch[a]; epoch[a] = epoch[b]; epoch[b] = e;
+		AbstractNeuroComponent c = targets[a]; targets[a] = targets[b]; targets[b] = c;
+		DynamicModelEvent ev = events[a]; events[a] = events[b]; events[b] = ev;
+	}
+	
+	protected void grow(){
+		int length = due.length * 2;
+		long[] new_due = new long[length];
+		long[] new_seq = new long[length];
+		int[] new_epoch = new int[length];
+		AbstractNeuroComponent[] new_targets = new AbstractNeuroComponent[length];
+		DynamicModelEvent[] new_events = new DynamicModelEvent[length];
+		System.arraycopy(due, 0, new_due, 0, size);
+		System.arraycopy(seq, 0, new_seq, 0, size);
+		System.arraycopy(epoch, 0, new_epoch, 0, size);
+		System.arraycopy(targets, 0, new_targets, 0, size);
+		System.arraycopy(events, 0, new_events, 0, size);
+		due = new_due;
+		seq = new_seq;
+		epoch = new_epoch;
+		targets = new_targets;
+		events = new_events;
+	}
+	
+}
@@ -0,0 +1,44 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components;
+
+import mgui.models.dynamic.DynamicModelEvent;
+
+/****************************************
+ * An event which can be returned to a pool once it has been executed. {@link AbstractNeuroComponent}
+ * calls <code>recycle()</code> on such events after executing them; implementations must not be 
+ * referenced by their target after this call.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public interface RecyclableEvent extends DynamicModelEvent {
+
+	/**************************************
+	 * Releases this event to its pool, if it has one.
+	 * 
+	 */
+	public void recycle();
+	
+}
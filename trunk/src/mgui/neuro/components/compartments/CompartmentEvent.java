@@ -44,4 +44,9 @@ public class CompartmentEvent extends SimpleEvent {
 		return compartment;
 	}
 	
+	protected void clear(){
+		super.clear();
+		compartment = null;
+	}
+	
 }
\ No newline at end of file
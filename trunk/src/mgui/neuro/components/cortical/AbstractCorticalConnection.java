@@ -36,13 +36,21 @@ import mgui.numbers.MguiDouble;
  */
 public abstract class AbstractCorticalConnection extends AbstractNeuroComponent {
 
+	protected double weight;
+
 	public void init(){
 		super.init();
 		attributes.add(new Attribute<MguiDouble>("Weight", new MguiDouble(0)));
 	}
 	
 	public double getWeight(){
-		return (((MguiDouble)attributes.getValue("Weight"))).getValue();
+		if (parameters_changed) updateParameters();
+		return weight;
+	}
+	
+	protected void updateParameters(){
+		super.updateParameters();
+		weight = ((MguiDouble)attributes.getValue("Weight")).getValue();
 	}
 	
 	public void setWeight(double weight){
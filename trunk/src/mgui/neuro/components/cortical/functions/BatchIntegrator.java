@@ -0,0 +1,243 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.cortical.functions;
+
+/********************************
+ * <p>Integrates all functions of a {@link CorticalFunctionBatch} in a single pass over its contiguous 
+ * arrays, using preallocated stage buffers, so that no objects are allocated per step. Two methods are
+ * available:</p>
+ * 
+ * <ul>
+ * <li>RK4: classical fourth-order Runge-Kutta, performing the same arithmetic as 
+ * <code>org.opensourcephysics.numerics.RK4</code>; results are identical to stepping each function 
+ * with its own RK4 solver
+ * <li>RK45: adaptive Cash-Karp Runge-Kutta, which sub-steps each time step to keep the maximum 
+ * absolute local error of each function below a tolerance. Inputs are applied once per time step, rather
+ * than once per evaluation, so results differ from those of the per-region solvers
+ * </ul>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class BatchIntegrator {
+
+	public enum Method{
+		RK4,
+		RK45;
+	}
+	
+	//Cash-Karp coefficients
+	static final double A21 = 1.0 / 5.0;
+	static final double A31 = 3.0 / 40.0, A32 = 9.0 / 40.0;
+	static final double A41 = 3.0 / 10.0, A42 = -9.0 / 10.0, A43 = 6.0 / 5.0;
+	static final double A51 = -11.0 / 54.0, A52 = 5.0 / 2.0, A53 = -70.0 / 27.0, A54 = 35.0 / 27.0;
+	static final double A61 = 1631.0 / 55296.0, A62 = 175.0 / 512.0, A63 = 575.0 / 13824.0, 
+						A64 = 44275.0 / 110592.0, A65 = 253.0 / 4096.0;
+	static final double B1 = 37.0 / 378.0, B3 = 250.0 / 621.0, B4 = 125.0 / 594.0, B6 = 512.0 / 1771.0;
+	static final double E1 = B1 - 2825.0 / 27648.0, E3 = B3 - 18575.0 / 48384.0, 
+						E4 = B4 - 13525.0 / 55296.0, E5 = -277.0 / 14336.0, E6 = B6 - 0.25;
+	
+	protected CorticalFunctionBatch batch;
+	protected Method method;
+	protected double tolerance = 1e-6;
+	protected double[] trial_steps;
+	
+	protected int length;
+	protected double[] k1, k2, k3, k4, k5, k6, y_est;
+	
+	public BatchIntegrator(CorticalFunctionBatch batch){
+		this(batch, Method.RK4);
+	}
+	
+	public BatchIntegrator(CorticalFunctionBatch batch, Method method){
+		this.batch = batch;
+		length = batch.getSize() * batch.getDimension();
+		setMethod(method);
+	}
+	
+	public void setMethod(Method method){
+		this.method = method;
+		k1 = new double[length];
+		k2 = new double[length];
+		k3 = new double[length];
+		k4 = new double[length];
+		y_est = new double[length];
+		if (method == Method.RK45){
+			k5 = new double[length];
+			k6 = new double[length];
+			trial_steps = new double[batch.getSize()];
+			reset();
+		}else{
+			k5 = null;
+			k6 = null;
+			trial_steps = null;
+			}
+	}
+	
+	/*************************
+	 * Resets the adaptive step size.
+	 * 
+	 */
+	public void reset(){
+		if (trial_steps == null) return;
+		for (int i = 0; i < trial_steps.length; i++)
+			trial_steps[i] = -1;
+	}
+	
+	public Method getMethod(){
+		return method;
+	}
+	
+	public CorticalFunctionBatch getBatch(){
+		return batch;
+	}
+	
+	/*************************
+	 * Sets the maximum absolute local error per sub-step, for the RK45 method.
+	 * 
+	 * @param tolerance
+	 */
+	public void setTolerance(double tolerance){
+		this.tolerance = tolerance;
+	}
+	
+	public double getTolerance(){
+		return tolerance;
+	}
+	
+	/*************************
+	 * Advances all functions in the batch by <code>step</code>, using the batch's current inputs.
+	 * 
+	 * @param step
+	 */
+	public void step(double step){
+		step(step, 0, batch.getSize());
+	}
+	
+	/*************************
+	 * Advances functions <code>from</code> (inclusive) to <code>to</code> (exclusive) by <code>step</code>, 
+	 * using the batch's current inputs. Distinct ranges may be stepped concurrently; results do not depend
+	 * on how the batch is divided into ranges.
+	 * 
+	 * @param step
+	 * @param from
+	 * @param to
+	 */
+	public void step(double step, int from, int to){
+		switch (method){
+			case RK4:
+				stepRK4(step, from, to);
+				return;
+			case RK45:
+				for (int i = from; i < to; i++)
+					stepRK45(step, i);
+				batch.setOutput(from, to);
+				return;
+			}
+	}
+	
+	protected void stepRK4(double h, int from, int to){
+		final double[] y = batch.state;
+		final int n = batch.getSize(), dim = batch.getDimension();
+		
+		batch.evaluate(y, k1, from, to);
+		for (int v = 0; v < dim; v++)
+			for (int i = v * n + from; i < v * n + to; i++)
+				y_est[i] = y[i] + h * k1[i] / 2;
+		batch.evaluate(y_est, k2, from, to);
+		for (int v = 0; v < dim; v++)
+			for (int i = v * n + from; i < v * n + to; i++)
+				y_est[i] = y[i] + h * k2[i] / 2;
+		batch.evaluate(y_est, k3, from, to);
+		for (int v = 0; v < dim; v++)
+			for (int i = v * n + from; i < v * n + to; i++)
+				y_est[i] = y[i] + h * k3[i];
+		batch.evaluate(y_est, k4, from, to);
+		for (int v = 0; v < dim; v++)
+			for (int i = v * n + from; i < v * n + to; i++)
+				y[i] = y[i] + h * (k1[i] + 2 * k2[i] + 2 * k3[i] + k4[i]) / 6.0;
+	}
+	
+	/*************************
+	 * Adaptive step for function <code>f</code>; step size is controlled separately for each function.
+	 * 
+	 * @param step
+	 * @param f
+	 */
+	protected void stepRK45(double step, int f){
+		final double[] y = batch.state;
+		final int n = batch.getSize(), dim = batch.getDimension(), end = dim * n;
+		
+		batch.applyInput(y, f, f + 1);
+		
+		double remaining = step;
+		double h = trial_steps[f] > 0 ? Math.min(trial_steps[f], step) : step;
+		double min_step = step * 1e-9;
+		
+		while (remaining > 0){
+			if (h > remaining) h = remaining;
+			
+			batch.getRates(y, k1, f, f + 1);
+			for (int i = f; i < end; i += n)
+				y_est[i] = y[i] + h * A21 * k1[i];
+			batch.getRates(y_est, k2, f, f + 1);
+			for (int i = f; i < end; i += n)
+				y_est[i] = y[i] + h * (A31 * k1[i] + A32 * k2[i]);
+			batch.getRates(y_est, k3, f, f + 1);
+			for (int i = f; i < end; i += n)
+				y_est[i] = y[i] + h * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+			batch.getRates(y_est, k4, f, f + 1);
+			for (int i = f; i < end; i += n)
+				y_est[i] = y[i] + h * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+			batch.getRates(y_est, k5, f, f + 1);
+			for (int i = f; i < end; i += n)
+				y_est[i] = y[i] + h * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+			batch.getRates(y_est, k6, f, f + 1);
+			
+			double error = 0;
+			for (int i = f; i < end; i += n)
+				error = Math.max(error, Math.abs(h * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i])));
+			error /= tolerance;
+			
+			if (error > 1 && h > min_step){
+				//reject; shrink step and retry
+				h = Math.max(0.1 * h, 0.9 * h * Math.pow(error, -0.25));
+				continue;
+				}
+			
+			for (int i = f; i < end; i += n)
+				y[i] = y[i] + h * (B1 * k1[i] + B3 * k3[i] + B4 * k4[i] + B6 * k6[i]);
+			remaining -= h;
+			if (remaining < min_step) remaining = 0;
+			
+			//grow step for next sub-step
+			if (error > 0)
+				h = Math.min(5 * h, 0.9 * h * Math.pow(error, -0.2));
+			else
+				h = 5 * h;
+			trial_steps[f] = h;
+			}
+	}
+	
+}
@@ -0,0 +1,93 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.cortical.functions;
+
+import java.util.ArrayList;
+
+import mgui.models.dynamic.functions.SigmoidFunction;
+
+/********************************
+ * Batch implementation of {@link BiexponentialFunction}.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class BiexponentialBatch extends CorticalFunctionBatch {
+
+	protected double[] tau, tau_s, a_base;
+	protected boolean[] apply_sigmoid;
+	protected SigmoidFunction[] sigmoid;
+	
+	public BiexponentialBatch(ArrayList<BiexponentialFunction> functions){
+		super(functions, 3);
+	}
+	
+	public void setParameters(){
+		if (tau == null){
+			tau = new double[n];
+			tau_s = new double[n];
+			a_base = new double[n];
+			apply_sigmoid = new boolean[n];
+			sigmoid = new SigmoidFunction[n];
+			}
+		for (int i = 0; i < n; i++){
+			BiexponentialFunction function = (BiexponentialFunction)functions.get(i);
+			tau[i] = function.getTau();
+			tau_s[i] = function.getTauS();
+			a_base[i] = function.getA_Base();
+			apply_sigmoid[i] = function.getApplySigmoid();
+			sigmoid[i] = function.getSigmoid();
+			}
+	}
+	
+	public void getRates(double[] y, double[] rate, int from, int to){
+		final int n = this.n, n2 = 2 * n;
+		for (int i = from; i < to; i++){
+			rate[i] = (a_base[i] - y[i] + y[n + i]) / tau[i];
+			rate[n + i] = -y[n + i] / tau_s[i];
+			rate[n2 + i] = 1;
+			}
+	}
+	
+	public void applyInput(double[] y, int from, int to){
+		final int n = this.n;
+		for (int i = from; i < to; i++){
+			if (apply_sigmoid[i])
+				input[i] = sigmoid[i].evaluate(input[i]);
+			y[n + i] += input[i];
+			}
+	}
+	
+	public void evaluate(double[] y, double[] rate, int from, int to){
+		getRates(y, rate, from, to);
+		applyInput(y, from, to);
+		for (int i = from; i < to; i++)
+			output[i] = y[i];
+	}
+	
+	protected void setOutput(CorticalFunction function, double output){
+		((BiexponentialFunction)function).output = output;
+	}
+	
+}
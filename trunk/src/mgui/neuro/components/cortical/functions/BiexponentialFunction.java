@@ -20,6 +20,8 @@
 
 package mgui.neuro.components.cortical.functions;
 
+import java.util.ArrayList;
+
 import mgui.interfaces.attributes.Attribute;
 import mgui.models.dynamic.functions.Function;
 import mgui.models.dynamic.functions.SigmoidFunction;
@@ -57,6 +59,11 @@ public class BiexponentialFunction extends CorticalFunction {
 	
 	double output;
 	
+	//parameter copies
+	protected double a_base, a_max, tau, tau_s;
+	protected boolean apply_sigmoid;
+	protected SigmoidFunction sigmoid;
+	
 	public BiexponentialFunction(double a_base, double a_max, double tau, double tau_s){
 		init();
 		setA_Base(a_base);
@@ -81,8 +88,19 @@ public class BiexponentialFunction extends CorticalFunction {
 		state = new double[3];
 	}
 	
+	protected void updateParameters(){
+		super.updateParameters();
+		a_base = ((MguiDouble)attributes.getValue("A_base")).getValue();
+		a_max = ((MguiDouble)attributes.getValue("A_max")).getValue();
+		tau = ((MguiDouble)attributes.getValue("Tau")).getValue();
+		tau_s = ((MguiDouble)attributes.getValue("TauS")).getValue();
+		apply_sigmoid = ((MguiBoolean)attributes.getValue("ApplySigmoid")).getTrue();
+		sigmoid = (SigmoidFunction)attributes.getValue("Sigmoid");
+	}
+	
 	public boolean getApplySigmoid(){
-		return ((MguiBoolean)attributes.getValue("ApplySigmoid")).getTrue();
+		if (parameters_changed) updateParameters();
+		return apply_sigmoid;
 	}
 	
 	public void setApplySigmoid(boolean b){
@@ -94,7 +112,8 @@ public class BiexponentialFunction extends CorticalFunction {
 	}
 	
 	public SigmoidFunction getSigmoid(){
-		return (SigmoidFunction)attributes.getValue("Sigmoid");
+		if (parameters_changed) updateParameters();
+		return sigmoid;
 	}
 	
 	public void setA_Base(double v){
@@ -114,19 +133,23 @@ public class BiexponentialFunction extends CorticalFunction {
 	}
 	
 	public double getA_Base(){
-		return ((MguiDouble)attributes.getValue("A_base")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_base;
 	}
 	
 	public double getA_Max(){
-		return ((MguiDouble)attributes.getValue("A_max")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_max;
 	}
 	
 	public double getTau(){
-		return ((MguiDouble)attributes.getValue("Tau")).getValue();
+		if (parameters_changed) updateParameters();
+		return tau;
 	}
 	
 	public double getTauS(){
-		return ((MguiDouble)attributes.getValue("TauS")).getValue();
+		if (parameters_changed) updateParameters();
+		return tau_s;
 	}
 	
 	public double evaluate(double d) {
@@ -148,10 +171,7 @@ public class BiexponentialFunction extends CorticalFunction {
 		//a_base - baseline activity
 		//a_max - maximum activity
 		
-		double tau = getTau();
-		double tau_s = getTauS();
-		double a_base = getA_Base();
-		double a_max = getA_Max();
+		if (parameters_changed) updateParameters();
 		
 		double[] rates = new double[3];
 		
@@ -161,8 +181,8 @@ public class BiexponentialFunction extends CorticalFunction {
 		rates[2] = 1;
 		
 		//update J with current input
-		if (getApplySigmoid())
-			input = getSigmoid().evaluate(input);
+		if (apply_sigmoid)
+			input = sigmoid.evaluate(input);
 		d[1] += input; // * (tau - tau_s) / tau;
 		//d[0] = a_max * d[2];
 		
@@ -173,12 +193,29 @@ public class BiexponentialFunction extends CorticalFunction {
 		return rates;
 	}
 	
+	public CorticalFunctionBatch getBatch(ArrayList<CorticalFunction> functions){
+		ArrayList<BiexponentialFunction> list = new ArrayList<BiexponentialFunction>(functions.size());
+		for (int i = 0; i < functions.size(); i++)
+			list.add((BiexponentialFunction)functions.get(i));
+		return new BiexponentialBatch(list);
+	}
+	
 	public double getOutput(){
 		//output is biexponential modified with sigmoid
 		//return state[0];
 		return output;
 	}
 	
+	public Object clone(){
+		BiexponentialFunction function = new BiexponentialFunction(getA_Base(), getA_Max(), getTau(), getTauS());
+		function.setApplySigmoid(getApplySigmoid());
+		if (getSigmoid() != null)
+			function.setSigmoid((SigmoidFunction)getSigmoid().clone());
+		function.copyState(this);
+		function.output = output;
+		return function;
+	}
+	
 	public String toString(){
 		return "Biexponential";
 	}
@@ -20,20 +20,97 @@
 
 package mgui.neuro.components.cortical.functions;
 
+import java.util.ArrayList;
+
+import mgui.interfaces.attributes.AttributeEvent;
+import mgui.interfaces.attributes.AttributeList;
+import mgui.interfaces.attributes.AttributeListener;
 import mgui.models.dynamic.functions.ODEFunction;
+import mgui.numbers.MguiDouble;
 
-public abstract class CorticalFunction extends ODEFunction {
+/********************************
+ * Base class for ODE functions describing the dynamics of a cortical region. Parameters used by
+ * <code>evaluate</code> should be held as primitive copies, refreshed by <code>updateParameters()</code> 
+ * when <code>parameters_changed</code> has been set by an attribute update; they are then not looked up
+ * in the attribute list on each evaluation.
+ * 
+ * @author Andrew Reid
+ *
+ */
+public abstract class CorticalFunction extends ODEFunction implements AttributeListener {
 
 	double input; //, output;
+	protected boolean parameters_changed = true;
+	
+	protected void init(){
+		super.init();
+		attributes.addAttributeListener(this);
+	}
+	
+	public void setAttributes(AttributeList thisList){
+		attributes = thisList;
+		attributes.addAttributeListener(this);
+		parameters_changed = true;
+	}
+	
+	public void attributeUpdated(AttributeEvent e){
+		parameters_changed = true;
+	}
+	
+	/**********************
+	 * Refreshes the primitive copies of this function's parameters from its attributes. Subclasses
+	 * should override this to refresh their copies, calling this method.
+	 * 
+	 */
+	protected void updateParameters(){
+		parameters_changed = false;
+	}
 	
 	public void setInput(double input){
 		this.input = input;
 	}
 	
+	/**********************
+	 * Sets the numeric parameter <code>name</code> to <code>value</code>.
+	 * 
+	 * @param name
+	 * @param value
+	 * @return <code>false</code> if this function has no such parameter
+	 */
+	public boolean setParameter(String name, double value){
+		if (attributes.getAttribute(name) == null) return false;
+		attributes.setValue(name, new MguiDouble(value));
+		return true;
+	}
+	
+	/**********************
+	 * Copies the state variables and input of <code>function</code> to this function; used by 
+	 * <code>clone()</code>.
+	 * 
+	 * @param function
+	 */
+	protected void copyState(CorticalFunction function){
+		if (function.state != null)
+			state = function.state.clone();
+		input = function.input;
+	}
+	
 	//public abstract void setOutputState();
 	
 	public abstract double getOutput();
 
+	/**********************
+	 * Returns a batch which integrates <code>functions</code>, which must all be instances of this 
+	 * function's class, over contiguous arrays; or <code>null</code> if this function type does not
+	 * support batch integration. See {@link BatchIntegrator}.
+	 * 
+	 * @param functions
+	 * @return
+	 */
+	public CorticalFunctionBatch getBatch(ArrayList<CorticalFunction> functions){
+		return null;
+	}
+	
 	public void getRate(double[] state, double[] rate){
 		double[] rates = evaluate(state);
 		for (int i = 0; i < Math.max(rate.length, rates.length); i++)
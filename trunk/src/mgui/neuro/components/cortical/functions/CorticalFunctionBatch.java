@@ -0,0 +1,168 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.cortical.functions;
+
+import java.util.ArrayList;
+
+/********************************
+ * <p>Holds the states, parameters, inputs and outputs of a set of cortical functions of the same type in 
+ * contiguous arrays, so that they can be integrated together by a {@link BatchIntegrator}. Arrays are laid 
+ * out by variable; i.e., state variable <code>v</code> of function <code>i</code> is at 
+ * <code>state[v * n + i]</code>.</p>
+ * 
+ * <p>Subclasses implement the rate equations of a specific function type, and must reproduce the 
+ * arithmetic of its <code>evaluate(double[])</code> method exactly, including its side effects, so that 
+ * RK4 integration of a batch is identical to integrating each function with its own solver.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public abstract class CorticalFunctionBatch {
+
+	protected int n, dim;
+	protected ArrayList<? extends CorticalFunction> functions;
+	
+	public double[] state;
+	public double[] input;
+	public double[] output;
+	
+	protected CorticalFunctionBatch(ArrayList<? extends CorticalFunction> functions, int dim){
+		this.functions = functions;
+		this.n = functions.size();
+		this.dim = dim;
+		state = new double[n * dim];
+		input = new double[n];
+		output = new double[n];
+		setParameters();
+		gather();
+	}
+	
+	/***********************
+	 * Returns the number of functions in this batch.
+	 * 
+	 * @return
+	 */
+	public int getSize(){
+		return n;
+	}
+	
+	/***********************
+	 * Returns the number of state variables per function.
+	 * 
+	 * @return
+	 */
+	public int getDimension(){
+		return dim;
+	}
+	
+	public ArrayList<? extends CorticalFunction> getFunctions(){
+		return functions;
+	}
+	
+	/***********************
+	 * Copies the parameters of the functions into this batch. Must be called if any parameter 
+	 * has changed since this batch was created.
+	 * 
+	 */
+	public abstract void setParameters();
+	
+	/***********************
+	 * Computes the rates for functions <code>from</code> (inclusive) to <code>to</code> (exclusive),
+	 * at state <code>y</code>, without side effects.
+	 * 
+	 * @param y
+	 * @param rate
+	 * @param from
+	 * @param to
+	 */
+	public abstract void getRates(double[] y, double[] rate, int from, int to);
+	
+	/***********************
+	 * Applies the current inputs to state <code>y</code>, for functions whose input acts as an 
+	 * impulse on their state rather than through their rates. Does nothing by default.
+	 * 
+	 * @param y
+	 * @param from
+	 * @param to
+	 */
+	public void applyInput(double[] y, int from, int to){
+		
+	}
+	
+	/***********************
+	 * Sets the outputs of functions <code>from</code> to <code>to</code> from the current state.
+	 * 
+	 * @param from
+	 * @param to
+	 */
+	public void setOutput(int from, int to){
+		for (int i = from; i < to; i++)
+			output[i] = state[i];
+	}
+	
+	/***********************
+	 * Equivalent of <code>CorticalFunction.evaluate(double[])</code> for functions <code>from</code> 
+	 * to <code>to</code>: computes rates at <code>y</code>, then applies any side effects of evaluation
+	 * to <code>y</code>, the inputs and the outputs.
+	 * 
+	 * @param y
+	 * @param rate
+	 * @param from
+	 * @param to
+	 */
+	public abstract void evaluate(double[] y, double[] rate, int from, int to);
+	
+	/***********************
+	 * Copies the states of the functions into this batch.
+	 * 
+	 */
+	public void gather(){
+		for (int i = 0; i < n; i++){
+			CorticalFunction function = functions.get(i);
+			double[] s = function.getState();
+			for (int v = 0; v < dim; v++)
+				state[v * n + i] = s[v];
+			input[i] = function.input;
+			output[i] = function.getOutput();
+			}
+	}
+	
+	/***********************
+	 * Copies the states, inputs and outputs of this batch back to the functions.
+	 * 
+	 */
+	public void scatter(){
+		for (int i = 0; i < n; i++){
+			CorticalFunction function = functions.get(i);
+			double[] s = function.getState();
+			for (int v = 0; v < dim; v++)
+				s[v] = state[v * n + i];
+			function.input = input[i];
+			setOutput(function, output[i]);
+			}
+	}
+	
+	protected abstract void setOutput(CorticalFunction function, double output);
+	
+}
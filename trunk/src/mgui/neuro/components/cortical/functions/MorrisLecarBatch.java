@@ -0,0 +1,133 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.cortical.functions;
+
+import java.util.ArrayList;
+
+/********************************
+ * Batch implementation of {@link MorrisLecarFunction}. State variables are V, Z and W, as for the
+ * single function.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class MorrisLecarBatch extends CorticalFunctionBatch {
+
+	protected double[] g_Ca, g_Na, g_K, g_L, r_NMDA, V_Ca, V_Na, V_K, V_L; 
+	protected double[] Q_V_max, Q_Z_max, var_Ca, var_Na, var_K, var_V, var_Z;
+	protected double[] a_ee, a_ei, a_ie, a_ne, a_ni, I_delta, phi, tau;
+	
+	public MorrisLecarBatch(ArrayList<MorrisLecarFunction> functions){
+		super(functions, 3);
+	}
+	
+	public void setParameters(){
+		if (g_Ca == null){
+			g_Ca = new double[n]; g_Na = new double[n]; g_K = new double[n]; g_L = new double[n];
+			r_NMDA = new double[n]; 
+			V_Ca = new double[n]; V_Na = new double[n]; V_K = new double[n]; V_L = new double[n];
+			Q_V_max = new double[n]; Q_Z_max = new double[n];
+			var_Ca = new double[n]; var_Na = new double[n]; var_K = new double[n]; 
+			var_V = new double[n]; var_Z = new double[n];
+			a_ee = new double[n]; a_ei = new double[n]; a_ie = new double[n]; a_ne = new double[n]; 
+			a_ni = new double[n];
+			I_delta = new double[n]; phi = new double[n]; tau = new double[n];
+			}
+		for (int i = 0; i < n; i++){
+			MorrisLecarFunction f = (MorrisLecarFunction)functions.get(i);
+			g_Ca[i] = f.getG_Ca();
+			g_Na[i] = f.getG_Na();
+			g_K[i] = f.getG_K();
+			g_L[i] = f.getG_L();
+			r_NMDA[i] = f.getR_NMDA();
+			V_Ca[i] = f.getV_Ca();
+			V_Na[i] = f.getV_Na();
+			V_K[i] = f.getV_K();
+			V_L[i] = f.getV_L();
+			Q_V_max[i] = f.getQ_V_max();
+			Q_Z_max[i] = f.getQ_Z_max();
+			var_Ca[i] = f.getVar_Ca();
+			var_Na[i] = f.getVar_Na();
+			var_K[i] = f.getVar_K();
+			var_V[i] = f.getVar_V();
+			var_Z[i] = f.getVar_Z();
+			a_ee[i] = f.getA_ee();
+			a_ei[i] = f.getA_ei();
+			a_ie[i] = f.getA_ie();
+			a_ne[i] = f.getA_ne();
+			a_ni[i] = f.getA_ni();
+			I_delta[i] = f.getI_delta();
+			phi[i] = f.getPhi();
+			tau[i] = f.getTau();
+			}
+	}
+	
+	/****************************
+	 * Evaluates the ODEs of <code>MorrisLecarFunction.evaluate(double[])</code>; the arithmetic
+	 * here must be kept identical to that method.
+	 */
+	public void getRates(double[] y, double[] rate, int from, int to){
+		final int n = this.n, n2 = 2 * n;
+		final double V_T = 0, Z_T = 0, b = 0.1;
+		
+		for (int i = from; i < to; i++){
+			double V = y[i];
+			double Z = y[n + i];
+			double W = y[n2 + i];
+			
+			double Q_v = 0.5 * Q_V_max[i] * (1 + Math.tanh((V - V_T) / var_V[i]));
+			double Q_z = 0.5 * Q_Z_max[i] * (1 + Math.tanh((Z - Z_T) / var_Z[i]));
+			
+			double Q_v_in = Math.min(Q_V_max[i], input[i]);
+			double c = Q_v_in / Q_V_max[i];
+			double Q_v_sum = (1 - c) * Q_v +  c * Q_v_in;
+			
+			double m_Ca = 0.5 * (1 + Math.tanh(V - V_T / var_Ca[i]));
+			double m_Na = 0.5 * (1 + Math.tanh(V - V_T / var_Na[i]));
+			double m_K = 0.5 * (1 + Math.tanh(V - V_T / var_K[i]));
+			
+			rate[i] = -(g_Ca[i] + r_NMDA[i] * a_ee[i] * Q_v_sum) * m_Ca * (V - V_Ca[i]) -
+					   (g_Na[i] * m_Na + a_ee[i] * Q_v_sum) * (V - V_Na[i]) -
+					   g_K[i] * W * (V - V_K[i]) -
+					   g_L[i] * (V - V_L[i]) +
+					   a_ie[i] * Z * Q_z +
+					   a_ne[i] * I_delta[i];
+			
+			rate[n + i] = b * (a_ni[i] * I_delta[i] + a_ei[i] * V * Q_v);
+			
+			rate[n2 + i] = phi[i] * (m_K - W) / tau[i];
+			}
+	}
+	
+	public void evaluate(double[] y, double[] rate, int from, int to){
+		getRates(y, rate, from, to);
+		//output is the V component of the state being integrated, not of y
+		setOutput(from, to);
+	}
+	
+	protected void setOutput(CorticalFunction function, double output){
+		((MorrisLecarFunction)function).output = output;
+	}
+	
+}
@@ -20,6 +20,8 @@
 
 package mgui.neuro.components.cortical.functions;
 
+import java.util.ArrayList;
+
 import mgui.interfaces.attributes.Attribute;
 import mgui.interfaces.attributes.AttributeList;
 import mgui.numbers.MguiDouble;
@@ -40,6 +42,12 @@ public class MorrisLecarFunction extends CorticalFunction {
 	
 	double output;
 	
+	//parameter copies
+	protected double g_Ca, g_Na, g_K, g_L, r_NMDA, V_Ca, V_Na, V_K, V_L;
+	protected double V_T_V, V_T_Z, V_T_Ca, V_T_Na, V_T_K;
+	protected double Q_V_max, Q_Z_max, var_Ca, var_Na, var_K, var_V, var_Z;
+	protected double a_ee, a_ei, a_ie, a_ne, a_ni, I_delta, phi, tau;
+	
 	public MorrisLecarFunction(){
 		init();
 	}
@@ -85,10 +93,44 @@ public class MorrisLecarFunction extends CorticalFunction {
 		state = new double[3];
 	}
 	
+	protected void updateParameters(){
+		super.updateParameters();
+		g_Ca = ((MguiDouble)attributes.getValue("g_Ca[S/cm2?]")).getValue();
+		g_Na = ((MguiDouble)attributes.getValue("g_Na[S/cm2?]")).getValue();
+		g_K = ((MguiDouble)attributes.getValue("g_K[S/cm2?]")).getValue();
+		g_L = ((MguiDouble)attributes.getValue("g_L[S/cm2?]")).getValue();
+		r_NMDA = ((MguiDouble)attributes.getValue("r_NMDA")).getValue();
+		V_Ca = ((MguiDouble)attributes.getValue("V_Ca[mV]")).getValue();
+		V_Na = ((MguiDouble)attributes.getValue("V_Na[mV]")).getValue();
+		V_K = ((MguiDouble)attributes.getValue("V_K[mV]")).getValue();
+		V_L = ((MguiDouble)attributes.getValue("V_L[mV]")).getValue();
+		V_T_V = ((MguiDouble)attributes.getValue("V_T_V[mV]")).getValue();
+		V_T_Z = ((MguiDouble)attributes.getValue("V_T_Z[mV]")).getValue();
+		V_T_Ca = ((MguiDouble)attributes.getValue("V_T_Ca[mV]")).getValue();
+		V_T_Na = ((MguiDouble)attributes.getValue("V_T_Na[mV]")).getValue();
+		V_T_K = ((MguiDouble)attributes.getValue("V_T_K[mV]")).getValue();
+		Q_V_max = ((MguiDouble)attributes.getValue("Q_V_max[hz]")).getValue();
+		Q_Z_max = ((MguiDouble)attributes.getValue("Q_Z_max[hz]")).getValue();
+		var_Ca = ((MguiDouble)attributes.getValue("var_Ca[%]")).getValue();
+		var_Na = ((MguiDouble)attributes.getValue("var_Na[%]")).getValue();
+		var_K = ((MguiDouble)attributes.getValue("var_K[%]")).getValue();
+		var_V = ((MguiDouble)attributes.getValue("var_V[mV]")).getValue();
+		var_Z = ((MguiDouble)attributes.getValue("var_Z[mV]")).getValue();
+		a_ee = ((MguiDouble)attributes.getValue("a_ee[?]")).getValue();
+		a_ei = ((MguiDouble)attributes.getValue("a_ei[?]")).getValue();
+		a_ie = ((MguiDouble)attributes.getValue("a_ie[?]")).getValue();
+		a_ne = ((MguiDouble)attributes.getValue("a_ne[?]")).getValue();
+		a_ni = ((MguiDouble)attributes.getValue("a_ni[?]")).getValue();
+		I_delta = ((MguiDouble)attributes.getValue("I_delta[?]")).getValue();
+		phi = ((MguiDouble)attributes.getValue("phi[?]")).getValue();
+		tau = ((MguiDouble)attributes.getValue("tau[?]")).getValue();
+	}
+	
 	//getters & setters
 	
 	public double getG_Ca(){
-		return ((MguiDouble)attributes.getValue("g_Ca[S/cm2?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return g_Ca;
 	}
 
 	public void setG_Ca(double v){
@@ -96,7 +138,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getG_Na(){
-		return ((MguiDouble)attributes.getValue("g_Na[S/cm2?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return g_Na;
 	}
 
 	public void setG_Na(double v){
@@ -104,7 +147,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getG_K(){
-		return ((MguiDouble)attributes.getValue("g_K[S/cm2?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return g_K;
 	}
 
 	public void setG_K(double v){
@@ -112,7 +156,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getG_L(){
-		return ((MguiDouble)attributes.getValue("g_L[S/cm2?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return g_L;
 	}
 
 	public void setG_L(double v){
@@ -120,7 +165,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getR_NMDA(){
-		return ((MguiDouble)attributes.getValue("r_NMDA")).getValue();
+		if (parameters_changed) updateParameters();
+		return r_NMDA;
 	}
 
 	public void setR_NMDA(double v){
@@ -128,7 +174,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_Ca(){
-		return ((MguiDouble)attributes.getValue("V_Ca[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_Ca;
 	}
 
 	public void setV_Ca(double v){
@@ -136,7 +183,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_Na(){
-		return ((MguiDouble)attributes.getValue("V_Na[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_Na;
 	}
 
 	public void setV_Na(double v){
@@ -144,7 +192,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_T(){
-		return ((MguiDouble)attributes.getValue("V_Na[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_Na;
 	}
 
 	public void setV_T(double v){
@@ -152,7 +201,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_K(){
-		return ((MguiDouble)attributes.getValue("V_K[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_K;
 	}
 
 	public void setV_K(double v){
@@ -160,7 +210,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_L(){
-		return ((MguiDouble)attributes.getValue("V_L[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_L;
 	}
 
 	public void setV_L(double v){
@@ -168,7 +219,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_T_V(){
-		return ((MguiDouble)attributes.getValue("V_T_V[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_T_V;
 	}
 
 	public void setV_T_V(double v){
@@ -176,7 +228,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_T_Z(){
-		return ((MguiDouble)attributes.getValue("V_T_Z[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_T_Z;
 	}
 
 	public void setV_T_Z(double v){
@@ -184,7 +237,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_T_Ca(){
-		return ((MguiDouble)attributes.getValue("V_T_Ca[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_T_Ca;
 	}
 
 	public void setV_T_Ca(double v){
@@ -192,7 +246,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_T_Na(){
-		return ((MguiDouble)attributes.getValue("V_T_Na[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_T_Na;
 	}
 
 	public void setV_T_Na(double v){
@@ -200,7 +255,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getV_T_K(){
-		return ((MguiDouble)attributes.getValue("V_T_K[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return V_T_K;
 	}
 
 	public void setV_T_K(double v){
@@ -208,7 +264,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getQ_V_max(){
-		return ((MguiDouble)attributes.getValue("Q_V_max[hz]")).getValue();
+		if (parameters_changed) updateParameters();
+		return Q_V_max;
 	}
 
 	public void setQ_V_max(double v){
@@ -216,7 +273,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getQ_Z_max(){
-		return ((MguiDouble)attributes.getValue("Q_Z_max[hz]")).getValue();
+		if (parameters_changed) updateParameters();
+		return Q_Z_max;
 	}
 
 	public void setQ_Z_max(double v){
@@ -224,7 +282,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getVar_Ca(){
-		return ((MguiDouble)attributes.getValue("var_Ca[%]")).getValue();
+		if (parameters_changed) updateParameters();
+		return var_Ca;
 	}
 
 	public void setVar_Ca(double v){
@@ -232,7 +291,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getVar_Na(){
-		return ((MguiDouble)attributes.getValue("var_Na[%]")).getValue();
+		if (parameters_changed) updateParameters();
+		return var_Na;
 	}
 
 	public void setVar_Na(double v){
@@ -240,7 +300,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getVar_K(){
-		return ((MguiDouble)attributes.getValue("var_K[%]")).getValue();
+		if (parameters_changed) updateParameters();
+		return var_K;
 	}
 
 	public void setVar_K(double v){
@@ -248,7 +309,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getVar_V(){
-		return ((MguiDouble)attributes.getValue("var_V[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return var_V;
 	}
 
 	public void setVar_V(double v){
@@ -256,7 +318,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getVar_Z(){
-		return ((MguiDouble)attributes.getValue("var_Z[mV]")).getValue();
+		if (parameters_changed) updateParameters();
+		return var_Z;
 	}
 
 	public void setVar_Z(double v){
@@ -264,7 +327,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getA_ee(){
-		return ((MguiDouble)attributes.getValue("a_ee[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_ee;
 	}
 
 	public void setA_ee(double v){
@@ -272,7 +336,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getA_ei(){
-		return ((MguiDouble)attributes.getValue("a_ei[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_ei;
 	}
 
 	public void setA_ei(double v){
@@ -280,7 +345,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getA_ie(){
-		return ((MguiDouble)attributes.getValue("a_ie[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_ie;
 	}
 
 	public void setA_ie(double v){
@@ -288,7 +354,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getA_ne(){
-		return ((MguiDouble)attributes.getValue("a_ne[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_ne;
 	}
 
 	public void setA_ne(double v){
@@ -296,7 +363,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getA_ni(){
-		return ((MguiDouble)attributes.getValue("a_ni[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return a_ni;
 	}
 
 	public void setA_ni(double v){
@@ -304,7 +372,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getI_delta(){
-		return ((MguiDouble)attributes.getValue("I_delta[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return I_delta;
 	}
 
 	public void setI_delta(double v){
@@ -312,7 +381,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getPhi(){
-		return ((MguiDouble)attributes.getValue("phi[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return phi;
 	}
 
 	public void setPhi(double v){
@@ -320,7 +390,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	}
 	
 	public double getTau(){
-		return ((MguiDouble)attributes.getValue("tau[?]")).getValue();
+		if (parameters_changed) updateParameters();
+		return tau;
 	}
 
 	public void setTau(double v){
@@ -345,6 +416,8 @@ public class MorrisLecarFunction extends CorticalFunction {
 	 */
 	public double[] evaluate(double[] d) {
 		
+		if (parameters_changed) updateParameters();
+		
 		double V = d[0];
 		double Z = d[1];
 		double W = d[2];
@@ -364,12 +437,12 @@ public class MorrisLecarFunction extends CorticalFunction {
 		double b = 0.1;
 		
 		//Qv
-		double Q_v = 0.5 * getQ_V_max() * (1 + Math.tanh((V - V_T) / getVar_V()));
-		double Q_z = 0.5 * getQ_Z_max() * (1 + Math.tanh((Z - Z_T) / getVar_Z()));
+		double Q_v = 0.5 * Q_V_max * (1 + Math.tanh((V - V_T) / var_V));
+		double Q_z = 0.5 * Q_Z_max * (1 + Math.tanh((Z - Z_T) / var_Z));
 		
 		//input and intrinsic excitation act as competitive agonists
-		Q_v_in = Math.min(getQ_V_max(), Q_v_in);
-		double c = Q_v_in / getQ_V_max();
+		Q_v_in = Math.min(Q_V_max, Q_v_in);
+		double c = Q_v_in / Q_V_max;
 		
 		Q_v_sum = (1 - c) * Q_v +  c * Q_v_in;
 		
@@ -384,23 +457,23 @@ public class MorrisLecarFunction extends CorticalFunction {
 		
 		//m_ion
 		//double num = 1 + Math.tanh(V - V_T / getVar_Ca());
-		double m_Ca = 0.5 * (1 + Math.tanh(V - V_T / getVar_Ca()));
-		double m_Na = 0.5 * (1 + Math.tanh(V - V_T / getVar_Na()));
-		double m_K = 0.5 * (1 + Math.tanh(V - V_T / getVar_K()));
+		double m_Ca = 0.5 * (1 + Math.tanh(V - V_T / var_Ca));
+		double m_Na = 0.5 * (1 + Math.tanh(V - V_T / var_Na));
+		double m_K = 0.5 * (1 + Math.tanh(V - V_T / var_K));
 		
 		//V'
-		rates[0] = -(getG_Ca() + getR_NMDA() * getA_ee() * Q_v_sum) * m_Ca * (V - getV_Ca()) -	//Ca current 
-				    (getG_Na() * m_Na + getA_ee() * Q_v_sum) * (V - getV_Na()) -				//Na current
-				    getG_K() * W * (V - getV_K()) -												//K current
-				    getG_L() * (V - getV_L()) +
-				    getA_ie() * Z * Q_z +
-				    getA_ne() * getI_delta();
+		rates[0] = -(g_Ca + r_NMDA * a_ee * Q_v_sum) * m_Ca * (V - V_Ca) -	//Ca current 
+				    (g_Na * m_Na + a_ee * Q_v_sum) * (V - V_Na) -				//Na current
+				    g_K * W * (V - V_K) -												//K current
+				    g_L * (V - V_L) +
+				    a_ie * Z * Q_z +
+				    a_ne * I_delta;
 		
 		//Z'
-		rates[1] = b * (getA_ni() * getI_delta() + getA_ei() * V * Q_v);
+		rates[1] = b * (a_ni * I_delta + a_ei * V * Q_v);
 				    
 		//W'
-		rates[2] = getPhi() * (m_K - W) / getTau();
+		rates[2] = phi * (m_K - W) / tau;
 		
 		//output is new firing rate
 		//output = 0.5 * getQ_V_max() * (1 + Math.tanh((rates[0] + V - V_T) / getVar_V()));
@@ -413,6 +486,13 @@ public class MorrisLecarFunction extends CorticalFunction {
 		return rates;
 	}
 	
+	public CorticalFunctionBatch getBatch(ArrayList<CorticalFunction> functions){
+		ArrayList<MorrisLecarFunction> list = new ArrayList<MorrisLecarFunction>(functions.size());
+		for (int i = 0; i < functions.size(); i++)
+			list.add((MorrisLecarFunction)functions.get(i));
+		return new MorrisLecarBatch(list);
+	}
+	
 	public double getOutput(){
 		return output;
 	}
@@ -431,7 +511,9 @@ public class MorrisLecarFunction extends CorticalFunction {
 
 	public Object clone(){
 		MorrisLecarFunction function = new MorrisLecarFunction();
-		function.attributes = (AttributeList)this.attributes.clone();
+		function.setAttributes((AttributeList)this.attributes.clone());
+		function.copyState(this);
+		function.output = output;
 		return function;
 	}
 	
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 
+import mgui.interfaces.attributes.AttributeList;
 import mgui.interfaces.trees.InterfaceTreeNode;
 import mgui.models.dynamic.DynamicModelEvent;
 import mgui.neuro.components.cortical.AbstractCorticalConnection;
@@ -90,6 +91,17 @@ public class SimpleCorticalConnection extends AbstractCorticalConnection {
 		firingRate = 0;
 	}
 	
+	/**********************
+	 * Returns a copy of this connection, without its target.
+	 * 
+	 */
+	public Object clone(){
+		SimpleCorticalConnection connection = new SimpleCorticalConnection();
+		connection.setAttributes((AttributeList)attributes.clone());
+		connection.firingRate = firingRate;
+		return connection;
+	}
+	
 	public String toString(){
 		return "Cortical Connection [" + id + "]";
 	}
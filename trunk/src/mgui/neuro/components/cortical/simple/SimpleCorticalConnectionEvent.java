@@ -35,4 +35,9 @@ public class SimpleCorticalConnectionEvent extends SimpleEvent {
 		return output;
 	}
 	
+	protected void clear(){
+		super.clear();
+		output = 0;
+	}
+	
 }
\ No newline at end of file
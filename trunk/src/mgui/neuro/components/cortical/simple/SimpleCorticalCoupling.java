@@ -0,0 +1,422 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.cortical.simple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mgui.neuro.components.AbstractNeuroComponent;
+import mgui.neuro.components.cortical.AbstractCorticalRegion;
+import mgui.neuro.components.simple.SimpleEventPool;
+import mgui.neuro.networks.compiled.CompiledCorticalNetwork;
+
+/****************************************
+ * <p>Sparse representation of the connections between a set of {@link SimpleCorticalRegion}s, as an 
+ * alternative to one {@link SimpleCorticalConnection} object per connected pair. Connections are held 
+ * as a CSR matrix, with rows corresponding to source regions, and a weight and delay (ms) for each 
+ * non-zero entry. Regions are indexed in the order given at construction, independently of the order of
+ * a network's regions.</p>
+ * 
+ * <p>As a network component, this computes the inputs to all regions on each time step as a single 
+ * sparse matrix-vector product over the regions' past firing rates, and passes each region its summed 
+ * input as one event. It must therefore be updated after its regions, which is the case when it is the 
+ * last of a network's components. Delays behave as for <code>SimpleCorticalConnection</code> (see 
+ * {@link CompiledCorticalNetwork}), although coupled inputs are summed in a different order.</p>
+ * 
+ * <p><code>SimpleCorticalConnection</code> objects for individual entries are only created on demand 
+ * (see {@link #getConnections(int)}), for display; changes to their weight or delay are written through 
+ * to this matrix.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SimpleCorticalCoupling extends AbstractNeuroComponent {
+
+	protected SimpleCorticalRegion[] regions;
+	protected int n_regions;
+	protected IdentityHashMap<AbstractCorticalRegion, Integer> index;
+	
+	//entries as added, in insertion order
+	protected int n_entries;
+	protected int[] entry_rows = new int[64];
+	protected int[] entry_cols = new int[64];
+	protected double[] entry_weights = new double[64];
+	protected double[] entry_delays = new double[64];
+	protected boolean compressed;
+	
+	//CSR matrix; row i holds the outgoing entries of region i
+	protected int[] row_ptr;
+	protected int[] col_idx;
+	protected double[] weights;
+	protected double[] delays;
+	
+	//transpose; in_entry[e] is the CSR index of the e'th incoming entry of region j, for 
+	//e in [in_ptr[j], in_ptr[j + 1])
+	protected int[] in_ptr;
+	protected int[] in_entry;
+	
+	//event path state; history holds the firing rates of the last ring_size steps
+	protected SimpleCorticalCouplingConnection[] views;
+	
+	protected double step = -1;
+	protected int[] lags;
+	protected int ring_size;
+	protected double[] history;
+	protected long tick;
+	
+	protected SimpleEventPool<SimpleCorticalInputEvent> event_pool = new SimpleEventPool<SimpleCorticalInputEvent>(){
+		protected SimpleCorticalInputEvent create(){
+			return new SimpleCorticalInputEvent();
+		}
+	};
+	
+	public SimpleCorticalCoupling(List<? extends SimpleCorticalRegion> regions){
+		init();
+		this.regions = regions.toArray(new SimpleCorticalRegion[regions.size()]);
+		n_regions = this.regions.length;
+		index = new IdentityHashMap<AbstractCorticalRegion, Integer>(n_regions * 2);
+		for (int i = 0; i < n_regions; i++)
+			index.put(this.regions[i], i);
+		setName("Coupling");
+	}
+	
+	/**************************************
+	 * Adds a connection from region <code>source</code> to region <code>target</code>.
+	 * 
+	 * @param source
+	 * @param target
+	 * @param weight
+	 * @param delay 		(ms)
+	 */
+	public void add(int source, int target, double weight, double delay){
+		if (source < 0 || source >= n_regions || target < 0 || target >= n_regions)
+			throw new IndexOutOfBoundsException("SimpleCorticalCoupling: no entry (" + source + ", " + target + ")");
+		if (compressed) decompress();
+		if (n_entries == entry_rows.length){
+			int length = n_entries * 2;
+			entry_rows = Arrays.copyOf(entry_rows, length);
+			entry_cols = Arrays.copyOf(entry_cols, length);
+			entry_weights = Arrays.copyOf(entry_weights, length);
+			entry_delays = Arrays.copyOf(entry_delays, length);
+			}
+		entry_rows[n_entries] = source;
+		entry_cols[n_entries] = target;
+		entry_weights[n_entries] = weight;
+		entry_delays[n_entries] = delay;
+		n_entries++;
+		step = -1;
+	}
+	
+	/**************************************
+	 * Builds the CSR matrix and its transpose from the added entries; entries within a row retain the 
+	 * order in which they were added. Called as needed.
+	 * 
+	 */
+	public void compress(){
+		if (compressed) return;
+		
+		//existing views are indexed by the previous CSR order, in which the entry arrays are held; 
+		//they are moved to their entries' new positions below
+		SimpleCorticalCouplingConnection[] old_views = views;
+		views = null;
+		row_ptr = new int[n_regions + 1];
+		for (int k = 0; k < n_entries; k++)
+			row_ptr[entry_rows[k] + 1]++;
+		for (int i = 0; i < n_regions; i++)
+			row_ptr[i + 1] += row_ptr[i];
+		
+		col_idx = new int[n_entries];
+		weights = new double[n_entries];
+		delays = new double[n_entries];
+		int[] pos = new int[n_regions];
+		for (int k = 0; k < n_entries; k++){
+			int i = entry_rows[k];
+			int e = row_ptr[i] + pos[i]++;
+			col_idx[e] = entry_cols[k];
+			weights[e] = entry_weights[k];
+			delays[e] = entry_delays[k];
+			if (old_views != null && k < old_views.length && old_views[k] != null){
+				if (views == null)
+					views = new SimpleCorticalCouplingConnection[n_entries];
+				views[e] = old_views[k];
+				views[e].entry = e;
+				}
+			}
+		
+		in_ptr = new int[n_regions + 1];
+		for (int e = 0; e < n_entries; e++)
+			in_ptr[col_idx[e] + 1]++;
+		for (int j = 0; j < n_regions; j++)
+			in_ptr[j + 1] += in_ptr[j];
+		in_entry = new int[n_entries];
+		Arrays.fill(pos, 0);
+		for (int i = 0; i < n_regions; i++)
+			for (int e = row_ptr[i]; e < row_ptr[i + 1]; e++){
+				int j = col_idx[e];
+				in_entry[in_ptr[j] + pos[j]++] = e;
+				}
+		
+		//entry arrays are now held in CSR order
+		entry_rows = new int[Math.max(16, n_entries)];
+		for (int i = 0; i < n_regions; i++)
+			for (int e = row_ptr[i]; e < row_ptr[i + 1]; e++)
+				entry_rows[e] = i;
+		entry_cols = null;
+		entry_weights = null;
+		entry_delays = null;
+		compressed = true;
+	}
+	
+	protected void decompress(){
+		int length = Math.max(16, n_entries * 2);
+		entry_rows = Arrays.copyOf(entry_rows, length);
+		entry_cols = Arrays.copyOf(col_idx, length);
+		entry_weights = Arrays.copyOf(weights, length);
+		entry_delays = Arrays.copyOf(delays, length);
+		compressed = false;
+	}
+	
+	public int getRegionCount(){
+		return n_regions;
+	}
+	
+	public SimpleCorticalRegion getRegion(int i){
+		return regions[i];
+	}
+	
+	/**************************************
+	 * Returns the index of <code>region</code> in this coupling, or -1 if it is not coupled.
+	 * 
+	 * @param region
+	 * @return
+	 */
+	public int indexOf(AbstractCorticalRegion region){
+		Integer i = index.get(region);
+		if (i == null) return -1;
+		return i;
+	}
+	
+	public int getEntryCount(){
+		return n_entries;
+	}
+	
+	/**************************************
+	 * Returns the CSR row pointers; entries of row <code>i</code> lie in 
+	 * [<code>row_ptr[i]</code>, <code>row_ptr[i + 1]</code>).
+	 * 
+	 * @return
+	 */
+	public int[] getRowPointers(){
+		compress();
+		return row_ptr;
+	}
+	
+	public int[] getColumns(){
+		compress();
+		return col_idx;
+	}
+	
+	public double[] getWeights(){
+		compress();
+		return weights;
+	}
+	
+	public double[] getDelays(){
+		compress();
+		return delays;
+	}
+	
+	/**************************************
+	 * Sets the weight of CSR entry <code>e</code>.
+	 * 
+	 * @param e
+	 * @param weight
+	 */
+	public void setWeight(int e, double weight){
+		compress();
+		weights[e] = weight;
+	}
+	
+	/**************************************
+	 * Sets the delay of CSR entry <code>e</code>.
+	 * 
+	 * @param e
+	 * @param delay
+	 */
+	public void setDelay(int e, double delay){
+		compress();
+		delays[e] = delay;
+		step = -1;
+	}
+	
+	/**************************************
+	 * Scales all weights by <code>scale</code>.
+	 * 
+	 * @param scale
+	 */
+	public void scaleWeights(double scale){
+		compress();
+		for (int e = 0; e < n_entries; e++)
+			weights[e] *= scale;
+	}
+	
+	/**************************************
+	 * Returns connection objects representing the outgoing entries of region <code>i</code>. These are not
+	 * part of the network, and are intended for display; changes to their weights and delays are written
+	 * through to this matrix. See {@link #getConnection(int)}.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public ArrayList<SimpleCorticalConnection> getConnections(int i){
+		compress();
+		ArrayList<SimpleCorticalConnection> connections = 
+				new ArrayList<SimpleCorticalConnection>(row_ptr[i + 1] - row_ptr[i]);
+		for (int e = row_ptr[i]; e < row_ptr[i + 1]; e++)
+			connections.add(getConnection(e));
+		return connections;
+	}
+	
+	/**************************************
+	 * Returns the connection object representing CSR entry <code>e</code>. This is created on first request
+	 * and the same object is returned for that entry thereafter, with its weight and delay updated from 
+	 * this matrix. If further entries are added, an entry's CSR index may change; its object is kept, and 
+	 * its {@link SimpleCorticalCouplingConnection#getEntry()} updated.
+	 * 
+	 * @param e
+	 * @return
+	 */
+	public SimpleCorticalCouplingConnection getConnection(int e){
+		compress();
+		if (views == null)
+			views = new SimpleCorticalCouplingConnection[n_entries];
+		SimpleCorticalCouplingConnection view = views[e];
+		if (view == null){
+			view = new SimpleCorticalCouplingConnection(this, e);
+			views[e] = view;
+		}else{
+			view.synchronize();
+			}
+		return view;
+	}
+	
+	/**************************************
+	 * Returns a copy of this coupling, for the regions to which <code>map</code> maps this coupling's 
+	 * regions.
+	 * 
+	 * @param map
+	 * @return
+	 */
+	public SimpleCorticalCoupling copy(Map<? extends AbstractCorticalRegion, ? extends AbstractCorticalRegion> map){
+		ArrayList<SimpleCorticalRegion> list = new ArrayList<SimpleCorticalRegion>(n_regions);
+		for (int i = 0; i < n_regions; i++){
+			AbstractCorticalRegion region = map.get(regions[i]);
+			list.add(region == null ? regions[i] : (SimpleCorticalRegion)region);
+			}
+		SimpleCorticalCoupling coupling = new SimpleCorticalCoupling(list);
+		coupling.setName(getName());
+		compress();
+		for (int i = 0; i < n_regions; i++)
+			for (int e = row_ptr[i]; e < row_ptr[i + 1]; e++)
+				coupling.add(i, col_idx[e], weights[e], delays[e]);
+		return coupling;
+	}
+	
+	public Object clone(){
+		ArrayList<SimpleCorticalRegion> list = new ArrayList<SimpleCorticalRegion>(Arrays.asList(regions));
+		SimpleCorticalCoupling coupling = new SimpleCorticalCoupling(list);
+		coupling.setName(getName());
+		compress();
+		for (int i = 0; i < n_regions; i++)
+			for (int e = row_ptr[i]; e < row_ptr[i + 1]; e++)
+				coupling.add(i, col_idx[e], weights[e], delays[e]);
+		return coupling;
+	}
+	
+	//*****EVENT PATH*****
+	
+	public void reset(){
+		super.reset();
+		tick = 0;
+		if (history != null)
+			Arrays.fill(history, 0);
+	}
+	
+	public void timeElapsed(double time){
+		if (time != step) setStep(time);
+		super.timeElapsed(time);
+	}
+	
+	protected void setStep(double step){
+		compress();
+		this.step = step;
+		lags = new int[n_entries];
+		int max_lag = 1;
+		for (int e = 0; e < n_entries; e++){
+			lags[e] = CompiledCorticalNetwork.getLag(delays[e], step);
+			max_lag = Math.max(max_lag, lags[e]);
+			}
+		if (history == null || ring_size != max_lag + 1){
+			ring_size = max_lag + 1;
+			history = new double[ring_size * n_regions];
+			tick = 0;
+			}
+	}
+	
+	/**************************************
+	 * Records the firing rates of this step, and passes each region its coupled input for the next step;
+	 * i.e., for each entry, its weight times the rate its source region had <code>lag</code> steps ago.
+	 * 
+	 */
+	protected boolean updateComponent(){
+		int slot = (int)(tick % ring_size) * n_regions;
+		for (int i = 0; i < n_regions; i++)
+			history[slot + i] = regions[i].getFiringRate();
+		
+		for (int j = 0; j < n_regions; j++){
+			if (in_ptr[j] == in_ptr[j + 1]) continue;
+			double sum = 0;
+			for (int k = in_ptr[j]; k < in_ptr[j + 1]; k++){
+				int e = in_entry[k];
+				long t = tick - lags[e];
+				if (t < 0) continue;
+				sum += history[(int)(t % ring_size) * n_regions + entry_rows[e]] * weights[e];
+				}
+			SimpleCorticalInputEvent event = event_pool.acquire();
+			event.setInput(sum);
+			regions[j].addEvent(event);
+			}
+		
+		tick++;
+		return true;
+	}
+	
+	public String toString(){
+		return "Cortical Coupling [" + getName() + "]";
+	}
+	
+}
@@ -0,0 +1,78 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.cortical.simple;
+
+import mgui.interfaces.attributes.AttributeEvent;
+
+/****************************************
+ * A connection representing one entry of a {@link SimpleCorticalCoupling}, created for display. Changes
+ * to its weight or delay are written through to the coupling matrix. It does not take part in the 
+ * simulation itself.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SimpleCorticalCouplingConnection extends SimpleCorticalConnection {
+
+	protected SimpleCorticalCoupling coupling;
+	protected int entry;
+	
+	public SimpleCorticalCouplingConnection(SimpleCorticalCoupling coupling, int entry){
+		super();
+		setWeight(coupling.getWeights()[entry]);
+		setDelay(coupling.getDelays()[entry]);
+		addConnection(coupling.getRegion(coupling.getColumns()[entry]));
+		this.coupling = coupling;
+		this.entry = entry;
+	}
+	
+	public SimpleCorticalCoupling getCoupling(){
+		return coupling;
+	}
+	
+	public int getEntry(){
+		return entry;
+	}
+	
+	/**************************************
+	 * Updates this connection's weight and delay from the coupling matrix.
+	 * 
+	 */
+	void synchronize(){
+		double weight = coupling.getWeights()[entry];
+		if (weight != getWeight()) setWeight(weight);
+		double delay = coupling.getDelays()[entry];
+		if (delay != getDelay()) setDelay(delay);
+	}
+	
+	public void attributeUpdated(AttributeEvent e){
+		super.attributeUpdated(e);
+		if (coupling == null) return;
+		if (coupling.getWeights()[entry] != getWeight())
+			coupling.setWeight(entry, getWeight());
+		if (coupling.getDelays()[entry] != getDelay())
+			coupling.setDelay(entry, getDelay());
+	}
+	
+}
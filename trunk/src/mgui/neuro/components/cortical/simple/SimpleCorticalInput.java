@@ -20,6 +20,7 @@
 
 package mgui.neuro.components.cortical.simple;
 
+import mgui.interfaces.attributes.AttributeList;
 import mgui.models.dynamic.DynamicModelEnvironmentEvent;
 import mgui.models.dynamic.DynamicModelEvent;
 import mgui.neuro.components.cortical.AbstractCorticalInput;
@@ -43,5 +44,17 @@ public class SimpleCorticalInput extends AbstractCorticalInput {
 			connections.get(i).addEvent(ev);
 		return true;
 	}
+	
+	/**********************
+	 * Returns a copy of this input, without its target.
+	 * 
+	 */
+	public Object clone(){
+		SimpleCorticalInput i = new SimpleCorticalInput();
+		i.setAttributes((AttributeList)attributes.clone());
+		i.index = index;
+		i.input = input;
+		return i;
+	}
 
 }
\ No newline at end of file
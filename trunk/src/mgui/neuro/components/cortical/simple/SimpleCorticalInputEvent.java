@@ -26,6 +26,10 @@ public class SimpleCorticalInputEvent extends SimpleEvent {
 
 	public double input;
 	
+	public SimpleCorticalInputEvent(){
+		
+	}
+	
 	public SimpleCorticalInputEvent(SimpleCorticalInput i){
 		setInput(i.getInput());
 	}
@@ -38,4 +42,9 @@ public class SimpleCorticalInputEvent extends SimpleEvent {
 		return input;
 	}
 	
+	protected void clear(){
+		super.clear();
+		input = 0;
+	}
+	
 }
\ No newline at end of file
@@ -21,6 +21,7 @@
 package mgui.neuro.components.cortical.simple;
 
 import mgui.interfaces.attributes.Attribute;
+import mgui.interfaces.attributes.AttributeList;
 import mgui.models.dynamic.DynamicModelEnvironment;
 import mgui.models.dynamic.DynamicModelEvent;
 import mgui.models.dynamic.DynamicModelOutputEvent;
@@ -121,6 +122,17 @@ public class SimpleCorticalOutput extends AbstractCorticalOutput {
 		environment.handleOutputEvent(e);
 	}
 
+	/**********************
+	 * Returns a copy of this output, without its environment.
+	 * 
+	 */
+	public Object clone(){
+		SimpleCorticalOutput o = new SimpleCorticalOutput();
+		o.setAttributes((AttributeList)attributes.clone());
+		o.output = output;
+		return o;
+	}
+	
 	public String toString(){
 		return "Cortical Output [" + getID() + "]";
 	}
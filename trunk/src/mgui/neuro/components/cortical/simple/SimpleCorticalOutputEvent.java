@@ -49,5 +49,11 @@ public class SimpleCorticalOutputEvent extends SimpleEvent
 	public void setOutput(double output) {
 		this.output = output;
 	}
-
+	
+	protected void clear(){
+		super.clear();
+		index = 0;
+		output = 0;
+	}
+	
 }
\ No newline at end of file
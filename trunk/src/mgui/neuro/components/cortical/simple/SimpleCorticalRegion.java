@@ -37,6 +37,7 @@ import mgui.neuro.components.cortical.functions.CorticalFunction;
 import mgui.neuro.exceptions.NeuroException;
 import mgui.numbers.MguiDouble;
 
+import org.opensourcephysics.numerics.ODEAdaptiveSolver;
 import org.opensourcephysics.numerics.ODESolver;
 import org.opensourcephysics.numerics.RK4;
 
@@ -245,16 +246,47 @@ public class SimpleCorticalRegion extends AbstractCorticalRegion {
 		return "Cortical Region [" + id + "]";
 	}
 	
+	/**********************
+	 * Returns a copy of this region, with copies of its transfer function (including its state), solver settings
+	 * and output. NOTE: the clone has no connections, since their targets lie outside this region; 
+	 * <code>CorticalNetwork.clone()</code> reconnects cloned regions. Pending events are not copied.
+	 * 
+	 */
 	@Override
 	public Object clone() {
-		//NOTE: clone has no connections
-		
 		SimpleCorticalRegion region = new SimpleCorticalRegion();
 		region.setAttributes((AttributeList)attributes.clone());
 		
+		CorticalFunction function = getTransferFunction();
+		if (function != null)
+			region.setTransferFunction((CorticalFunction)function.clone());
+		copySolver(region);
+		
+		region.setOutput((SimpleCorticalOutput)output.clone());
+		region.location.set(location);
+		region.input = input;
+		region.firingRate = firingRate;
+		
 		return region;
 	}
 	
+	/**********************
+	 * Sets the solver of <code>region</code>, which must be of the same class as this region's, to the 
+	 * current step size and tolerance of this one. Its state is that of the region's transfer function.
+	 * 
+	 * @param region
+	 */
+	protected void copySolver(SimpleCorticalRegion region){
+		if (solver == null || region.solver == null) return;
+		if (region.solver.getClass() != solver.getClass()) return;
+		
+		//allocates the solver's arrays for the cloned function's state
+		region.solver.initialize(solver.getStepSize());
+		region.solver.setStepSize(solver.getStepSize());
+		if (solver instanceof ODEAdaptiveSolver)
+			((ODEAdaptiveSolver)region.solver).setTolerance(((ODEAdaptiveSolver)solver).getTolerance());
+	}
+	
 	public void setTreeNode(InterfaceTreeNode treeNode){
 		super.setTreeNode(treeNode);
 		
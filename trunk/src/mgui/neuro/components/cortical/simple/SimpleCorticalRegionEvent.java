@@ -34,4 +34,9 @@ public class SimpleCorticalRegionEvent extends SimpleEvent {
 		return firingRate;
 	}
 	
+	protected void clear(){
+		super.clear();
+		firingRate = 0;
+	}
+	
 }
\ No newline at end of file
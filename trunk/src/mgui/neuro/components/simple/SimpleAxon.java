@@ -30,6 +30,12 @@ import mgui.numbers.MguiDouble;
 
 public class SimpleAxon extends AbstractAxon {
 
+	protected SimpleEventPool<SimpleAxonEvent> event_pool = new SimpleEventPool<SimpleAxonEvent>(){
+		protected SimpleAxonEvent create(){
+			return new SimpleAxonEvent();
+		}
+	};
+
 	//*****PARAMETERS*****
 	
 	
@@ -79,7 +85,7 @@ public class SimpleAxon extends AbstractAxon {
 		//stimulate synapses
 		//this.addEvent(new SimpleNeuroModelEvent(this, SimpleNeuroModelEvent.S_AXN_OUTPUT));
 		for (int i = 0; i < connections.size(); i++)
-			connections.get(i).addEvent(new SimpleAxonEvent(this));
+			connections.get(i).addEvent(event_pool.acquire().set(this));
 		
 		return true;
 		
@@ -24,9 +24,23 @@ public class SimpleAxonEvent extends SimpleEvent {
 
 	public double output;
 	
+	public SimpleAxonEvent(){
+		
+	}
+	
 	public SimpleAxonEvent(SimpleAxon axon){
+		set(axon);
+	}
+	
+	public SimpleAxonEvent set(SimpleAxon axon){
 		output = axon.getOutput();
 		delay = axon.getDelay();
+		return this;
+	}
+	
+	protected void clear(){
+		super.clear();
+		output = 0;
 	}
 	
 }
\ No newline at end of file
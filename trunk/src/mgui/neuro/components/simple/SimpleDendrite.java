@@ -36,12 +36,21 @@ import mgui.numbers.MguiDouble;
 
 public class SimpleDendrite extends AbstractDendrite {
 
+	protected SimpleEventPool<SimpleDendriteEvent> event_pool = new SimpleEventPool<SimpleDendriteEvent>(){
+		protected SimpleDendriteEvent create(){
+			return new SimpleDendriteEvent();
+		}
+	};
+
 	//*****PARAMETERS*****
 	//double restingV;
 	
 	//*****VARIABLES*****
 	double potential;
 	
+	//parameter copies
+	protected double restingV;
+	
 	public SimpleDendrite(double restingV){
 		init();
 		setRestingV(restingV);
@@ -61,7 +70,13 @@ public class SimpleDendrite extends AbstractDendrite {
 	}
 	
 	public double getRestingV(){
-		return ((MguiDouble)attributes.getValue("RestingV")).getValue();
+		if (parameters_changed) updateParameters();
+		return restingV;
+	}
+	
+	protected void updateParameters(){
+		super.updateParameters();
+		restingV = ((MguiDouble)attributes.getValue("RestingV")).getValue();
 	}
 	
 	
@@ -133,7 +148,7 @@ public class SimpleDendrite extends AbstractDendrite {
 		//if (!updated) return false;
 		//send potential to all connected components (dendrites and somata)
 		for (int i = 0; i < connections.size(); i++)
-			connections.get(i).addEvent(new SimpleDendriteEvent(this));
+			connections.get(i).addEvent(event_pool.acquire().set(this));
 		
 		//reset potential
 		potential = getRestingV();
@@ -29,9 +29,23 @@ public class SimpleDendriteEvent extends SimpleEvent {
 		this.delay = delay;
 	}
 	
+	public SimpleDendriteEvent(){
+		
+	}
+	
 	public SimpleDendriteEvent(SimpleDendrite dendrite){
+		set(dendrite);
+	}
+	
+	public SimpleDendriteEvent set(SimpleDendrite dendrite){
 		potential = dendrite.potential;
 		delay = dendrite.getDelay();
+		return this;
+	}
+	
+	protected void clear(){
+		super.clear();
+		potential = 0;
 	}
 	
 }
\ No newline at end of file
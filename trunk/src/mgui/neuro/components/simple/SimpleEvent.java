@@ -20,13 +20,16 @@
 
 package mgui.neuro.components.simple;
 
-import mgui.models.dynamic.DynamicModelEvent;
+import mgui.neuro.components.RecyclableEvent;
 
-public class SimpleEvent implements DynamicModelEvent {
+public class SimpleEvent implements RecyclableEvent {
 
 	protected double delay;
 	protected int code;
 	
+	protected SimpleEventPool<?> pool;
+	protected boolean released;
+	
 	public int getCode() {
 		return code;
 	}
@@ -38,5 +41,20 @@ public class SimpleEvent implements DynamicModelEvent {
 	public void timeElapsed(double time) {
 		delay -= time;
 	}
+	
+	public void recycle(){
+		if (pool == null || released) return;
+		clear();
+		pool.release(this);
+	}
+	
+	/**************************************
+	 * Resets the state of this event before it is returned to its pool, so that a reused event does not
+	 * carry values from its previous use. Subclasses with further state should extend this.
+	 * 
+	 */
+	protected void clear(){
+		delay = 0;
+	}
 
 }
\ No newline at end of file
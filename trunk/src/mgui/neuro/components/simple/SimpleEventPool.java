@@ -0,0 +1,92 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.components.simple;
+
+/****************************************
+ * Pool of recyclable {@link SimpleEvent}s of a single type. Each emitting component holds its own pool, 
+ * so that pools are confined to the thread stepping the component's network; events are acquired when
+ * emitted and returned by their target once executed, so a network in steady state does not allocate 
+ * events. Subclasses specify how a new event is created when the pool is empty.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ * @param <T>
+ */
+public abstract class SimpleEventPool<T extends SimpleEvent> {
+
+	protected SimpleEvent[] free = new SimpleEvent[16];
+	protected int size;
+	
+	/**************************************
+	 * Returns an event from this pool, or a new event if the pool is empty. 
+	 * 
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public T acquire(){
+		T event;
+		if (size > 0){
+			event = (T)free[--size];
+			free[size] = null;
+		}else{
+			event = create();
+			}
+		event.pool = this;
+		event.released = false;
+		return event;
+	}
+	
+	/**************************************
+	 * Returns <code>event</code> to this pool.
+	 * 
+	 * @param event
+	 */
+	protected void release(SimpleEvent event){
+		if (event.released) return;
+		event.released = true;
+		if (size == free.length){
+			SimpleEvent[] new_free = new SimpleEvent[size * 2];
+			System.arraycopy(free, 0, new_free, 0, size);
+			free = new_free;
+			}
+		free[size++] = event;
+	}
+	
+	/**************************************
+	 * Returns the number of events currently available in this pool.
+	 * 
+	 * @return
+	 */
+	public int getSize(){
+		return size;
+	}
+	
+	/**************************************
+	 * Creates a new event for this pool.
+	 * 
+	 * @return
+	 */
+	protected abstract T create();
+	
+}
@@ -54,5 +54,11 @@ public class SimpleMotorNeuronEvent extends SimpleEvent implements DynamicModelO
 	public void setIndex(int index) {
 		this.index = index;
 	}
-
+	
+	protected void clear(){
+		super.clear();
+		output = 0;
+		index = 0;
+	}
+	
 }
\ No newline at end of file
@@ -41,11 +41,20 @@ import mgui.numbers.MguiDouble;
 
 public class SimpleSoma extends AbstractSoma {
 
+	protected SimpleEventPool<SimpleSomaEvent> event_pool = new SimpleEventPool<SimpleSomaEvent>(){
+		protected SimpleSomaEvent create(){
+			return new SimpleSomaEvent();
+		}
+	};
+
 	public Function transferFunction = new HardLimitFunction(-1, 0, 1);
 	
 	//*****VARIABLES*****
 	public double potential;
 	
+	//parameter copies
+	protected double threshold, output, restingV;
+	
 	public SimpleSoma(double threshold, double output, double restingV){
 		init();
 		setThreshold(threshold);
@@ -66,7 +75,8 @@ public class SimpleSoma extends AbstractSoma {
 	}
 	
 	public double getThreshold(){
-		return ((MguiDouble)attributes.getValue("Threshold")).getValue();
+		if (parameters_changed) updateParameters();
+		return threshold;
 	}
 	
 	public void setOutput(double o){
@@ -74,7 +84,8 @@ public class SimpleSoma extends AbstractSoma {
 	}
 	
 	public double getOutput(){
-		return ((MguiDouble)attributes.getValue("Output")).getValue();
+		if (parameters_changed) updateParameters();
+		return output;
 	}
 	
 	public void setRestingV(double r){
@@ -82,7 +93,15 @@ public class SimpleSoma extends AbstractSoma {
 	}
 	
 	public double getRestingV(){
-		return ((MguiDouble)attributes.getValue("RestingV")).getValue();
+		if (parameters_changed) updateParameters();
+		return restingV;
+	}
+	
+	protected void updateParameters(){
+		super.updateParameters();
+		threshold = ((MguiDouble)attributes.getValue("Threshold")).getValue();
+		output = ((MguiDouble)attributes.getValue("Output")).getValue();
+		restingV = ((MguiDouble)attributes.getValue("RestingV")).getValue();
 	}
 	
 	
@@ -114,7 +133,7 @@ public class SimpleSoma extends AbstractSoma {
 		
 		//fire action potential
 		for (int i = 0; i < connections.size(); i++)
-			connections.get(i).addEvent(new SimpleSomaEvent(this));
+			connections.get(i).addEvent(event_pool.acquire().set(this));
 		
 		//reset potential
 		//TODO use decay function
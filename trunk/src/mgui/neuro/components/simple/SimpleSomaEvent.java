@@ -29,9 +29,23 @@ public class SimpleSomaEvent extends SimpleEvent {
 		this.delay = delay;
 	}
 	
+	public SimpleSomaEvent(){
+		
+	}
+	
 	public SimpleSomaEvent(SimpleSoma soma){
+		set(soma);
+	}
+	
+	public SimpleSomaEvent set(SimpleSoma soma){
 		output = soma.getOutput();
 		delay = soma.getDelay();
+		return this;
+	}
+	
+	protected void clear(){
+		super.clear();
+		output = 0;
 	}
 	
 }
\ No newline at end of file
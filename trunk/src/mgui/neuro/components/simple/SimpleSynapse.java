@@ -37,6 +37,12 @@ import mgui.numbers.MguiDouble;
  */
 
 public class SimpleSynapse extends AbstractSynapse implements WeightedSynapse {
+
+	protected SimpleEventPool<SimpleSynapseEvent> event_pool = new SimpleEventPool<SimpleSynapseEvent>(){
+		protected SimpleSynapseEvent create(){
+			return new SimpleSynapseEvent();
+		}
+	};
 	
 	//*****PARAMETERS***** (set as Attributes)
 	//double weight;
@@ -45,6 +51,9 @@ public class SimpleSynapse extends AbstractSynapse implements WeightedSynapse {
 	//*****VARIABLES*****
 	protected double potential;
 	
+	//parameter copies
+	protected double weight, restingV;
+	
 	public SimpleSynapse(double weight, double restingV){
 		init();
 		//this.weight = weight;
@@ -60,7 +69,8 @@ public class SimpleSynapse extends AbstractSynapse implements WeightedSynapse {
 	}
 	
 	public double getWeight(){
-		return ((MguiDouble)attributes.getValue("Weight")).getValue();
+		if (parameters_changed) updateParameters();
+		return weight;
 	}
 	
 	public void setWeight(double weight){
@@ -74,7 +84,14 @@ public class SimpleSynapse extends AbstractSynapse implements WeightedSynapse {
 	}
 	
 	public double getRestingV(){
-		return ((MguiDouble)attributes.getValue("RestingV")).getValue();
+		if (parameters_changed) updateParameters();
+		return restingV;
+	}
+	
+	protected void updateParameters(){
+		super.updateParameters();
+		weight = ((MguiDouble)attributes.getValue("Weight")).getValue();
+		restingV = ((MguiDouble)attributes.getValue("RestingV")).getValue();
 	}
 	
 	protected boolean executeEvent(DynamicModelEvent e) throws NeuroException{
@@ -107,7 +124,7 @@ public class SimpleSynapse extends AbstractSynapse implements WeightedSynapse {
 		//send potential to all connected components (dendrite)
 		//this.addEvent(new SimpleNeuroModelEvent(this, SimpleNeuroModelEvent.S_SYN_POTENTIAL));
 		for (int i = 0; i < connections.size(); i++)
-			connections.get(i).addEvent(new SimpleSynapseEvent(this));
+			connections.get(i).addEvent(event_pool.acquire().set(this));
 		
 		//reset potential
 		//TODO implement decay function
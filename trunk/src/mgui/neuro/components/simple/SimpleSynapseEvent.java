@@ -24,9 +24,23 @@ public class SimpleSynapseEvent extends SimpleEvent {
 
 	public double potential;
 	
+	public SimpleSynapseEvent(){
+		
+	}
+	
 	public SimpleSynapseEvent(SimpleSynapse synapse){
+		set(synapse);
+	}
+	
+	public SimpleSynapseEvent set(SimpleSynapse synapse){
 		potential = synapse.potential;
 		delay = synapse.getDelay();
+		return this;
+	}
+	
+	protected void clear(){
+		super.clear();
+		potential = 0;
 	}
 	
 }
\ No newline at end of file
@@ -21,11 +21,10 @@
 package mgui.neuro.graphs;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 
 import mgui.graphs.networks.AbstractNetworkGraph;
-import mgui.interfaces.graphs.AbstractGraphNode;
 import mgui.models.dynamic.DynamicModelComponent;
 import mgui.models.networks.AbstractNetwork;
 import mgui.models.networks.NetworkEvent;
@@ -33,14 +32,31 @@ import mgui.models.networks.NetworkException;
 import mgui.neuro.components.cortical.AbstractCorticalConnection;
 import mgui.neuro.components.cortical.AbstractCorticalRegion;
 import mgui.neuro.components.cortical.simple.SimpleCorticalConnection;
+import mgui.neuro.components.cortical.simple.SimpleCorticalCoupling;
 import mgui.neuro.exceptions.NeuroNetException;
 import mgui.neuro.networks.CorticalNetwork;
 
 
+/************************************
+ * Graph representation of a {@link CorticalNetwork}, with a node for each region and an edge for each 
+ * connection target. Nodes are indexed by region, and edges by connection, so that when the network is 
+ * updated, only nodes and edges which have changed are added or removed.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
 public class CorticalNetworkGraph extends AbstractNetworkGraph {
 
 	public CorticalNetwork network;
 	
+	//index of nodes by region, and of edges by connection (one per target)
+	protected IdentityHashMap<AbstractCorticalRegion, CorticalNetworkGraphNode> region_nodes = 
+						new IdentityHashMap<AbstractCorticalRegion, CorticalNetworkGraphNode>();
+	protected IdentityHashMap<AbstractCorticalConnection, ArrayList<CorticalNetworkGraphConnection>> connection_edges = 
+						new IdentityHashMap<AbstractCorticalConnection, ArrayList<CorticalNetworkGraphConnection>>();
+	
 	public CorticalNetworkGraph(){
 		init();
 	}
@@ -66,61 +82,161 @@ public class CorticalNetworkGraph extends AbstractNetworkGraph {
 		" instance of CorticalNetwork.");
 
 		//TODO if network exists, remove listener
-		network = (CorticalNetwork)net;
+		if (net != network){
+			clearGraph();
+			network = (CorticalNetwork)net;
+			}
 		
 		if (network.regions == null) return false;
 		
+		updateFromNetwork();
+		return true;
+	}
+	
+	/************************************
+	 * Removes all nodes and edges, and clears the indices.
+	 * 
+	 */
+	protected void clearGraph(){
+		for (CorticalNetworkGraphNode node : region_nodes.values())
+			node.detach();
+		for (ArrayList<CorticalNetworkGraphConnection> edges : connection_edges.values())
+			for (int i = 0; i < edges.size(); i++)
+				edges.get(i).detach();
+		region_nodes.clear();
+		connection_edges.clear();
 		this.removeAllEdges();
 		this.removeAllNodes();
+	}
+	
+	/************************************
+	 * Brings this graph up to date with its network: adds nodes for new regions and removes those of 
+	 * regions no longer in the network; then adds edges for new connection targets and removes those
+	 * which no longer exist. Existing nodes and edges are kept.
+	 * 
+	 */
+	protected void updateFromNetwork(){
+		
+		if (network.regions == null){
+			clearGraph();
+			return;
+			}
 		
-		//create a node for each unit in this network and add to graph
-		for (int i = 0; i < network.regions.size(); i++)
-			addVertex(new CorticalNetworkGraphNode(network.regions.get(i)));
+		//nodes
+		IdentityHashMap<AbstractCorticalRegion, CorticalNetworkGraphNode> current = 
+							new IdentityHashMap<AbstractCorticalRegion, CorticalNetworkGraphNode>();
+		for (int i = 0; i < network.regions.size(); i++){
+			AbstractCorticalRegion region = network.regions.get(i);
+			CorticalNetworkGraphNode node = region_nodes.get(region);
+			if (node == null){
+				node = new CorticalNetworkGraphNode(region);
+				addVertex(node);
+				}
+			current.put(region, node);
+			}
+		for (CorticalNetworkGraphNode node : region_nodes.values()){
+			if (current.get(node.getRegion()) != node){
+				removeVertex(node);
+				node.detach();
+				}
+			}
+		region_nodes = current;
 		
-		TreeSet<AbstractGraphNode> nodes = new TreeSet<AbstractGraphNode>(getNodes());
+		//edges
+		IdentityHashMap<AbstractCorticalConnection, ArrayList<CorticalNetworkGraphConnection>> previous = connection_edges;
+		connection_edges = new IdentityHashMap<AbstractCorticalConnection, ArrayList<CorticalNetworkGraphConnection>>();
 		
-		//create edges
-		Iterator<AbstractGraphNode> itr = nodes.iterator();
-		while (itr.hasNext()){
-			CorticalNetworkGraphNode node = (CorticalNetworkGraphNode)itr.next();
-			ArrayList<DynamicModelComponent> conns = node.getRegion().getConnections();
-			for (int i = 0; i < conns.size(); i++){
-				ArrayList<AbstractCorticalRegion> targets = 
-								((AbstractCorticalConnection)conns.get(i)).getTargets();
-				for (int j = 0; j < targets.size(); j++)
-					addGraphEdge(new CorticalNetworkGraphConnection((SimpleCorticalConnection)conns.get(i),
-															   node, 
-															   getNode(targets.get(j))));
-						   // node,
-						   // getNode(targets.get(j)));
+		for (int i = 0; i < network.regions.size(); i++){
+			AbstractCorticalRegion region = network.regions.get(i);
+			CorticalNetworkGraphNode node = region_nodes.get(region);
+			ArrayList<DynamicModelComponent> conns = region.getConnections();
+			for (int j = 0; j < conns.size(); j++){
+				AbstractCorticalConnection conn = (AbstractCorticalConnection)conns.get(j);
+				updateEdges(conn, node, conn.getTargets(), previous);
 				}
 			}
-				
-		return true;
+		
+		//edges for sparse coupling, as connection views; the coupling returns the same view for an entry
+		//until entries are added, so these are keyed as other connections
+		SimpleCorticalCoupling coupling = network.getCoupling();
+		if (coupling != null){
+			for (int i = 0; i < coupling.getRegionCount(); i++){
+				CorticalNetworkGraphNode node = region_nodes.get(coupling.getRegion(i));
+				if (node == null) continue;
+				ArrayList<SimpleCorticalConnection> conns = coupling.getConnections(i);
+				for (int k = 0; k < conns.size(); k++){
+					SimpleCorticalConnection conn = conns.get(k);
+					if (conn.getTargets().isEmpty()) continue;
+					updateEdges(conn, node, conn.getTargets().subList(0, 1), previous);
+					}
+				}
+			}
+		
+		//connections which no longer exist
+		for (ArrayList<CorticalNetworkGraphConnection> edges : previous.values())
+			for (int i = 0; i < edges.size(); i++)
+				removeGraphEdge(edges.get(i));
+		
 	}
 	
-	public CorticalNetworkGraphNode getNode(AbstractCorticalRegion region){
+	/************************************
+	 * Ensures that there is an edge from {@code node} to the node of each of {@code targets}, for 
+	 * {@code conn}; reusing edges in {@code previous}, and removing those which are not reused.
+	 * 
+	 */
+	protected void updateEdges(AbstractCorticalConnection conn, CorticalNetworkGraphNode node, 
+							   List<AbstractCorticalRegion> targets,
+							   IdentityHashMap<AbstractCorticalConnection, ArrayList<CorticalNetworkGraphConnection>> previous){
 		
-		//search vertices and return if found
-		TreeSet<AbstractGraphNode> nodes = new TreeSet<AbstractGraphNode>(getNodes());
-		Iterator<AbstractGraphNode> itr = nodes.iterator();
+		//previous edges of this connection, by target node
+		IdentityHashMap<CorticalNetworkGraphNode, CorticalNetworkGraphConnection> old_edges = null;
+		ArrayList<CorticalNetworkGraphConnection> old_list = previous.remove(conn);
+		if (old_list != null){
+			old_edges = new IdentityHashMap<CorticalNetworkGraphNode, CorticalNetworkGraphConnection>();
+			for (int k = 0; k < old_list.size(); k++){
+				CorticalNetworkGraphConnection old_edge = old_list.get(k);
+				if (old_edge.getSourceNode() != node || old_edges.containsKey(old_edge.getTargetNode()))
+					removeGraphEdge(old_edge);
+				else
+					old_edges.put(old_edge.getTargetNode(), old_edge);
+				}
+			}
+		ArrayList<CorticalNetworkGraphConnection> edges = connection_edges.get(conn);
+		if (edges == null){
+			edges = new ArrayList<CorticalNetworkGraphConnection>(targets.size());
+			connection_edges.put(conn, edges);
+			}
 		
-		while (itr.hasNext()){
-			CorticalNetworkGraphNode node = (CorticalNetworkGraphNode)itr.next();
-			if (node.getRegion().equals(region))
-				return node;
+		for (int j = 0; j < targets.size(); j++){
+			CorticalNetworkGraphNode target = region_nodes.get(targets.get(j));
+			if (target == null) continue;
+			CorticalNetworkGraphConnection edge = null;
+			if (old_edges != null)
+				edge = old_edges.remove(target);
+			if (edge == null){
+				edge = new CorticalNetworkGraphConnection(conn, node, target);
+				addGraphEdge(edge);
+				}
+			edges.add(edge);
 			}
 		
-		return null;
+		if (old_edges != null)
+			for (CorticalNetworkGraphConnection old_edge : old_edges.values())
+				removeGraphEdge(old_edge);
+	}
+	
+	protected void removeGraphEdge(CorticalNetworkGraphConnection edge){
+		removeEdge(edge);
+		edge.detach();
+	}
+	
+	public CorticalNetworkGraphNode getNode(AbstractCorticalRegion region){
+		return region_nodes.get(region);
 	}
 	
 	public void networkUpdated(NetworkEvent e){
-		try{
-			setFromNetwork(network);
-		}catch (NetworkException ex){
-			ex.printStackTrace();
-			return;
-			}
+		if (network == null) return;
+		updateFromNetwork();
 		fireGraphListeners();
 	}
 	
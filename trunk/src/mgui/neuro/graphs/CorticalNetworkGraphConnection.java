@@ -25,10 +25,35 @@ import mgui.neuro.components.cortical.AbstractCorticalConnection;
 
 public class CorticalNetworkGraphConnection extends AbstractNetworkGraphConnection {
 
+	protected AbstractCorticalConnection connection;
+	protected CorticalNetworkGraphNode source, target;
+	
 	public CorticalNetworkGraphConnection(AbstractCorticalConnection conn, CorticalNetworkGraphNode from, CorticalNetworkGraphNode to) {
 		super(from, to);
+		this.connection = conn;
+		this.source = from;
+		this.target = to;
 		conn.addListener(this);
 	}
 	
+	public AbstractCorticalConnection getConnection(){
+		return connection;
+	}
+	
+	public CorticalNetworkGraphNode getSourceNode(){
+		return source;
+	}
+	
+	public CorticalNetworkGraphNode getTargetNode(){
+		return target;
+	}
+	
+	/************************************
+	 * Stops listening to the underlying connection; called when this edge is removed from its graph.
+	 * 
+	 */
+	public void detach(){
+		connection.listeners.remove(this);
+	}
 	
 }
\ No newline at end of file
@@ -64,6 +64,14 @@ public class CorticalNetworkGraphNode extends AbstractNetworkGraphNode {
 		return region;
 	}
 	
+	/************************************
+	 * Stops listening to the underlying region; called when this node is removed from its graph.
+	 * 
+	 */
+	public void detach(){
+		region.listeners.remove(this);
+	}
+	
 	public String getLabel(){
 		return getRegion().getName();
 	}
@@ -27,7 +27,6 @@ import mgui.interfaces.io.InterfaceDataSource;
 import mgui.interfaces.neuro.InterfaceNeuroComponentListener;
 import mgui.interfaces.trees.InterfaceTreeNode;
 import mgui.models.dynamic.DynamicModelComponent;
-import mgui.models.networks.AbstractNetwork;
 import mgui.models.networks.components.NetworkComponentEvent;
 import mgui.neuro.components.AbstractSensoryNeuron;
 import mgui.neuro.components.types.ConnectableNeuron;
@@ -41,7 +40,7 @@ import mgui.neuro.graphs.NeuralNetGraph;
  * @author Andrew Reid
  *
  */
-public abstract class AbstractNeuralNet extends AbstractNetwork
+public abstract class AbstractNeuralNet extends AbstractNeuroNetwork
 										implements InterfaceNeuroComponentListener{
 
 	public static final int MODE_TRAIN = 0;
@@ -116,6 +115,12 @@ public abstract class AbstractNeuralNet extends AbstractNetwork
 		//TODO connect this unit?
 		unit.addListener(this);
 		unit.setID(idFactory.getID());
+		if (scheduler != null){
+			ArrayList<DynamicModelComponent> list = new ArrayList<DynamicModelComponent>();
+			list.add(unit);
+			list.addAll(unit.getSubComponents());
+			setEventScheduler(list);
+			}
 		fireUnitAdded(unit);
 		if (fire) fireListeners();
 		return true;
@@ -0,0 +1,75 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+package mgui.neuro.networks;
+
+import java.util.ArrayList;
+
+import mgui.models.dynamic.DynamicModelComponent;
+import mgui.models.networks.AbstractNetwork;
+import mgui.neuro.components.AbstractNeuroComponent;
+import mgui.neuro.components.EventScheduler;
+
+/************************************
+ * Base class for neural and cortical networks, which holds the shared {@link EventScheduler} for the 
+ * delayed events of their components.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public abstract class AbstractNeuroNetwork extends AbstractNetwork {
+
+	protected EventScheduler scheduler;
+	
+	/*********************************
+	 * Sets a shared scheduler for the delayed events of all components of this network, including
+	 * those added later; if <code>null</code>, each component holds its own events. See 
+	 * {@link EventScheduler}.
+	 * 
+	 * @param scheduler
+	 */
+	public void setEventScheduler(EventScheduler scheduler){
+		this.scheduler = scheduler;
+		if (scheduler != null) scheduler.clear();
+		setEventScheduler(getComponents());
+	}
+	
+	public EventScheduler getEventScheduler(){
+		return scheduler;
+	}
+	
+	/*********************************
+	 * Sets this network's scheduler for those of <code>components</code> which are 
+	 * {@link AbstractNeuroComponent}s.
+	 * 
+	 * @param components
+	 */
+	protected void setEventScheduler(ArrayList<DynamicModelComponent> components){
+		if (components == null) return;
+		for (int i = 0; i < components.size(); i++)
+			if (components.get(i) instanceof AbstractNeuroComponent)
+				((AbstractNeuroComponent)components.get(i)).setEventScheduler(scheduler);
+	}
+	
+	public abstract ArrayList<DynamicModelComponent> getComponents();
+	
+}
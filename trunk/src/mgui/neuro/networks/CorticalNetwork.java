@@ -22,6 +22,7 @@ package mgui.neuro.networks;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 
 import mgui.interfaces.attributes.Attribute;
 import mgui.interfaces.graphs.InterfaceAbstractGraph;
@@ -32,16 +33,23 @@ import mgui.models.dynamic.DynamicModelComponent;
 import mgui.models.dynamic.DynamicModelEnvironment;
 import mgui.models.dynamic.DynamicModelException;
 import mgui.models.environments.SimpleEnvironment;
-import mgui.models.networks.AbstractNetwork;
 import mgui.models.networks.components.NetworkComponentEvent;
+import mgui.neuro.components.EventScheduler;
+import mgui.neuro.components.cortical.AbstractCorticalConnection;
 import mgui.neuro.components.cortical.AbstractCorticalRegion;
+import mgui.neuro.components.cortical.simple.SimpleCorticalConnection;
+import mgui.neuro.components.cortical.simple.SimpleCorticalCoupling;
 import mgui.neuro.components.cortical.simple.SimpleCorticalInput;
+import mgui.neuro.exceptions.NeuroException;
 import mgui.neuro.graphs.CorticalNetworkGraph;
+import mgui.neuro.networks.compiled.CompiledCorticalNetwork;
 
 
-public class CorticalNetwork extends AbstractNetwork implements InterfaceNeuroComponentListener {
+public class CorticalNetwork extends AbstractNeuroNetwork implements InterfaceNeuroComponentListener {
 
 	public ArrayList<AbstractCorticalRegion> regions = new ArrayList<AbstractCorticalRegion>();
+	protected ArrayList<SimpleCorticalInput> inputs = new ArrayList<SimpleCorticalInput>();
+	protected SimpleCorticalCoupling coupling;
 	
 	public CorticalNetwork(){
 		this("No-name");
@@ -90,6 +98,7 @@ public class CorticalNetwork extends AbstractNetwork implements InterfaceNeuroCo
 		SimpleCorticalInput input = new SimpleCorticalInput();
 		input.connectTo(region);
 		this.addSensor(input);
+		inputs.add(input);
 		return true;
 	}
 	
@@ -98,9 +107,49 @@ public class CorticalNetwork extends AbstractNetwork implements InterfaceNeuroCo
 		if (!hasRegion(region)) return false;
 		input.connectTo(region);
 		this.addSensor(input);
+		inputs.add(input);
 		return true;
 	}
 	
+	/*********************************
+	 * Returns the list of external inputs added to this network with <code>addInput</code>.
+	 * 
+	 * @return
+	 */
+	public ArrayList<SimpleCorticalInput> getInputs(){
+		return inputs;
+	}
+	
+	/*********************************
+	 * Compiles this network into an array-backed representation which can be stepped without
+	 * the event machinery. See {@link CompiledCorticalNetwork}.
+	 * 
+	 * @param step 	the time step (ms)
+	 * @return
+	 * @throws NeuroException if this network contains components which cannot be compiled
+	 */
+	public CompiledCorticalNetwork compile(double step) throws NeuroException{
+		return new CompiledCorticalNetwork(this, step);
+	}
+	
+	/*********************************
+	 * Sets a sparse coupling matrix for connections between this network's regions, in addition to any
+	 * connection objects. See {@link SimpleCorticalCoupling}. All regions of <code>coupling</code> must
+	 * belong to this network.
+	 * 
+	 * @param coupling
+	 */
+	public void setCoupling(SimpleCorticalCoupling coupling){
+		this.coupling = coupling;
+		if (coupling != null && scheduler != null)
+			coupling.setEventScheduler(scheduler);
+		fireListeners();
+	}
+	
+	public SimpleCorticalCoupling getCoupling(){
+		return coupling;
+	}
+	
 	public boolean addRegion(AbstractCorticalRegion region){
 		return addRegion(region, true);
 	}
@@ -114,6 +163,10 @@ public class CorticalNetwork extends AbstractNetwork implements InterfaceNeuroCo
 		index = -index - 1;
 		
 		regions.add(index, region);
+		if (scheduler != null){
+			region.setEventScheduler(scheduler);
+			setEventScheduler(region.getSubComponents());
+			}
 		if (environment != null){
 			region.getOutput().setIndex(index);
 			region.getOutput().setEnvironment(environment);
@@ -181,28 +234,88 @@ public class CorticalNetwork extends AbstractNetwork implements InterfaceNeuroCo
 			if (subs != null)
 				components.addAll(subs);
 			}
+		
+		//coupling must be updated after its regions
+		if (coupling != null)
+			components.add(coupling);
 
 		return components;
 	}
 	
+	/*********************************
+	 * Returns a deep copy of this network: its environment, regions (with their transfer functions, 
+	 * solvers and state), connections and inputs are all cloned, and connections are remapped to the 
+	 * cloned regions. Pending events are not copied, so networks should be cloned between runs. Returns
+	 * <code>null</code> if a component cannot be cloned.
+	 * 
+	 */
 	public Object clone() {
-		CorticalNetwork net = new CorticalNetwork();
-		SimpleEnvironment env = (SimpleEnvironment)((SimpleEnvironment)net.getEnvironment()).clone();
+		CorticalNetwork net = new CorticalNetwork(getName());
 		
 		try{
-			net.setEnvironment(env);
+			if (getEnvironment() instanceof SimpleEnvironment)
+				net.setEnvironment((SimpleEnvironment)((SimpleEnvironment)getEnvironment()).clone());
 			
-			//add all components
+			//regions
+			IdentityHashMap<AbstractCorticalRegion, AbstractCorticalRegion> map = 
+								new IdentityHashMap<AbstractCorticalRegion, AbstractCorticalRegion>();
+			for (int i = 0; i < regions.size(); i++){
+				AbstractCorticalRegion region = (AbstractCorticalRegion)regions.get(i).clone();
+				if (region == null)
+					throw new NeuroException("CorticalNetwork: cannot clone region '" + 
+											 regions.get(i).getName() + "'.");
+				map.put(regions.get(i), region);
+				net.addRegion(region, false);
+				}
 			
+			//connections
+			for (int i = 0; i < regions.size(); i++){
+				AbstractCorticalRegion region = regions.get(i);
+				AbstractCorticalRegion copy = map.get(region);
+				ArrayList<DynamicModelComponent> connections = region.getConnections();
+				for (int j = 0; j < connections.size(); j++){
+					if (!(connections.get(j) instanceof AbstractCorticalConnection)) continue;
+					AbstractCorticalConnection connection = (AbstractCorticalConnection)connections.get(j);
+					AbstractCorticalConnection c = (AbstractCorticalConnection)connection.clone();
+					if (c == null)
+						throw new NeuroException("CorticalNetwork: cannot clone connection from '" + 
+												 region.getName() + "'.");
+					copy.addConnection(c);
+					ArrayList<AbstractCorticalRegion> targets = connection.getTargets();
+					for (int k = 0; k < targets.size(); k++){
+						AbstractCorticalRegion target = map.get(targets.get(k));
+						if (target != null)
+							c.addConnection(target);
+						}
+					}
+				}
 			
+			if (coupling != null)
+				net.setCoupling(coupling.copy(map));
 			
+			//inputs
+			for (int i = 0; i < inputs.size(); i++){
+				SimpleCorticalInput input = inputs.get(i);
+				SimpleCorticalInput c = (SimpleCorticalInput)input.clone();
+				ArrayList<AbstractCorticalRegion> targets = input.getTargets();
+				for (int k = 0; k < targets.size(); k++){
+					AbstractCorticalRegion target = map.get(targets.get(k));
+					if (target != null)
+						c.connectTo(target);
+					}
+				net.addSensor(c);
+				net.inputs.add(c);
+				}
 			
+			if (scheduler != null)
+				net.setEventScheduler(new EventScheduler(scheduler.getStep()));
 		
 		}catch (Exception e){
 			e.printStackTrace();
+			return null;
 			}
 		
-		return null;
+		return net;
 	}
 	
 	public void setTreeNode(InterfaceTreeNode treeNode){
@@ -214,7 +327,17 @@ public class CorticalNetwork extends AbstractNetwork implements InterfaceNeuroCo
 		InterfaceTreeNode unitNode = new InterfaceTreeNode("Regions");
 		for (int i = 0; i < regions.size(); i++){
 			//regions.get(i).setTreeNode();
-			unitNode.add(regions.get(i).issueTreeNode());
+			InterfaceTreeNode node = regions.get(i).issueTreeNode();
+			if (coupling != null){
+				//connection objects are only created for display
+				int index = coupling.indexOf(regions.get(i));
+				if (index >= 0){
+					ArrayList<SimpleCorticalConnection> connections = coupling.getConnections(index);
+					for (int j = 0; j < connections.size(); j++)
+						node.add(connections.get(j).issueTreeNode());
+					}
+				}
+			unitNode.add(node);
 			}
 		treeNode.add(unitNode);
 	}
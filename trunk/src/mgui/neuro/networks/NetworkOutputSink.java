@@ -0,0 +1,68 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks;
+
+import java.io.IOException;
+
+/****************************************
+ * Receives the per-step output of a simulated network, as one or more channels (e.g., firing rates and
+ * observable outputs) of one value per region. Implementations must copy the values passed to 
+ * <code>write</code>, since callers reuse these arrays between steps.
+ * 
+ * <p>Sinks are currently supplied by <code>CompiledCorticalNetwork</code> only; the event path of 
+ * <code>CorticalNetwork</code> does not write to a sink.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public interface NetworkOutputSink {
+
+	/**************************************
+	 * Prepares this sink to receive output.
+	 * 
+	 * @param regions 		names of the regions
+	 * @param channels 		names of the channels
+	 * @param start 		time of the first step written (ms)
+	 * @param step 			time step (ms)
+	 * @throws IOException
+	 */
+	public void open(String[] regions, String[] channels, double start, double step) throws IOException;
+	
+	/**************************************
+	 * Writes the output for one time step, where <code>values[c][i]</code> is the value of channel
+	 * <code>c</code> for region <code>i</code>.
+	 * 
+	 * @param values
+	 * @throws IOException
+	 */
+	public void write(double[][] values) throws IOException;
+	
+	/**************************************
+	 * Flushes all output and releases this sink's resources.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException;
+	
+}
@@ -0,0 +1,785 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.compiled;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.logs.LoggingType;
+import mgui.models.dynamic.DynamicModelComponent;
+import mgui.models.dynamic.DynamicModelEnvironment;
+import mgui.neuro.components.EventScheduler;
+import mgui.neuro.components.cortical.AbstractCorticalRegion;
+import mgui.neuro.components.cortical.functions.BatchIntegrator;
+import mgui.neuro.components.cortical.functions.CorticalFunction;
+import mgui.neuro.components.cortical.functions.CorticalFunctionBatch;
+import mgui.neuro.components.cortical.simple.SimpleCorticalConnection;
+import mgui.neuro.components.cortical.simple.SimpleCorticalCoupling;
+import mgui.neuro.components.cortical.simple.SimpleCorticalInput;
+import mgui.neuro.components.cortical.simple.SimpleCorticalRegion;
+import mgui.neuro.exceptions.NeuroException;
+import mgui.neuro.networks.CorticalNetwork;
+import mgui.neuro.networks.NetworkOutputSink;
+
+import org.opensourcephysics.numerics.ODESolver;
+import org.opensourcephysics.numerics.RK4;
+
+/*************************************************
+ * <p>Array-backed ("compiled") representation of a {@link CorticalNetwork}, which can be stepped without
+ * allocating any objects. The network is flattened into structure-of-arrays form:</p>
+ * 
+ * <ul>
+ * <li>Region state vectors: input, firing rate and observable output, indexed as in 
+ * <code>CorticalNetwork.regions</code>
+ * <li>A CSR connection matrix, with rows corresponding to source regions, and columns, weights and 
+ * delays (in whole time steps) for each (connection, target) pair; and its transpose, with the incoming
+ * connections of each region ordered by descending delay
+ * <li>A ring buffer of past firing rates, from which delayed inputs are read
+ * </ul>
+ * 
+ * <p>Each call to {@link #step()} reproduces one step of the event path as driven by the model engine;
+ * i.e., all pending events are executed for all components, after which every component's clock is
+ * advanced. This means:</p>
+ * 
+ * <ul>
+ * <li>A connection emits the firing rate its source region had at the end of the previous step, scaled by
+ * its weight; this arrives at its targets <code>lag</code> steps later, where <code>lag</code> is the
+ * number of decrements of the connection's "Delay" by the time step required for it to reach zero
+ * <li>Inputs arriving at the same step are summed in the order the event path would have queued them
+ * (i.e., by emission time, then by source); external inputs are added last
+ * <li>The observable output of a region lags its firing rate by one step, as for 
+ * <code>SimpleCorticalOutput</code>
+ * </ul>
+ * 
+ * <p>Consequently, firing-rate traces are bit-identical to those of the event path. Region dynamics are
+ * integrated by each region's own transfer function and ODE solver, so these remain shared with the
+ * network; connection weights and delays are copied at compile time, and the network must be compiled
+ * again if they change. Compiling resets the network.</p>
+ * 
+ * <p>Entries of the network's sparse coupling matrix, if any (see <code>SimpleCorticalCoupling</code>), 
+ * are compiled in the same way as connection objects, following them in each row; traces then match the
+ * event path up to the order in which coupled inputs are summed.</p>
+ * 
+ * <p>Alternatively, regions sharing a transfer function type can be integrated together by a 
+ * {@link BatchIntegrator}; see {@link #setBatchIntegration(BatchIntegrator.Method)}. With the RK4 method
+ * only regions whose solver is RK4 are batched, and traces remain identical. Batched states are held 
+ * by the batch; call {@link #synchronize()} to copy them back to the transfer functions.</p>
+ * 
+ * <p>Steps can be executed in parallel by partitioning the regions over a <code>ForkJoinPool</code>; see 
+ * {@link #setParallelism(ForkJoinPool, int)}. Each region pulls its own inputs from firing rates of 
+ * previous steps, and the rate ring buffer has one slot more than the longest delay requires, so that 
+ * rates written in a step are never read in the same step. Thus no locks are taken while stepping, and 
+ * results are identical for any number of partitions.</p>
+ * 
+ * <p>Region outputs and ODE states can be streamed to a {@link NetworkOutputSink} as the network is 
+ * stepped (e.g., to a trace file with <code>TraceFileWriter</code>); see 
+ * {@link #setOutputSink(NetworkOutputSink)}. This is the only path by which traces are streamed.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CompiledCorticalNetwork {
+
+	protected CorticalNetwork network;
+	protected double step;
+	protected long clock;
+	
+	protected int n_regions;
+	protected CorticalFunction[] functions;
+	protected ODESolver[] solvers;
+	
+	//region state
+	protected double[] input;
+	protected double[] firing_rate;
+	protected double[] output;
+	
+	//CSR connection matrix; row i holds the outgoing connections of region i
+	protected int[] row_ptr;
+	protected int[] col_idx;
+	protected double[] weights;
+	protected int[] lags;
+	
+	//transpose; row j holds the incoming connections of region j, by descending lag
+	protected int[] in_ptr;
+	protected int[] in_src;
+	protected double[] in_weights;
+	protected int[] in_lags;
+	
+	//ring buffer of firing rates; the rate of region i at the end of step t is at
+	//rates[((t + 1) % ring_size) * n_regions + i], and slot 0 initially holds zero rates
+	protected int ring_size;
+	protected double[] rates;
+	
+	//batched integration; regions which are not batched use their own solvers
+	protected BatchIntegrator.Method batch_method;
+	protected BatchIntegrator[] integrators = new BatchIntegrator[0];
+	protected int[][] batch_regions = new int[0][];
+	protected int[] unbatched = new int[0];
+	
+	//external inputs; input k reads environment index input_index[k]; row j of the 
+	//input matrix lists the inputs targeting region j
+	protected int[] input_index;
+	protected double[] input_values;
+	protected boolean inputs_active;
+	protected int[] input_ptr;
+	protected int[] input_src;
+	
+	//parallel stepping
+	protected ForkJoinPool pool;
+	protected boolean owns_pool;
+	protected Partition[] partitions = new Partition[0];
+	protected RecursiveAction step_task;
+	
+	//output sink; channels are firing rate, output, and state variables
+	protected NetworkOutputSink sink;
+	protected double[][] sink_values;
+	
+	/**************************************
+	 * Compiles <code>network</code> for the time step <code>step</code>. All regions must be instances of 
+	 * <code>SimpleCorticalRegion</code>, and all of their connections instances of 
+	 * <code>SimpleCorticalConnection</code>.
+	 * 
+	 * @param network
+	 * @param step			time step (ms); must be positive
+	 * @throws NeuroException	if the network cannot be compiled
+	 */
+	public CompiledCorticalNetwork(CorticalNetwork network, double step) throws NeuroException{
+		if (!(step > 0)) 
+			throw new NeuroException("CompiledCorticalNetwork: time step must be positive.");
+		this.network = network;
+		this.step = step;
+		compile();
+	}
+	
+	protected void compile() throws NeuroException{
+		
+		ArrayList<AbstractCorticalRegion> regions = network.regions;
+		n_regions = regions.size();
+		
+		functions = new CorticalFunction[n_regions];
+		solvers = new ODESolver[n_regions];
+		HashMap<AbstractCorticalRegion, Integer> index = new HashMap<AbstractCorticalRegion, Integer>(n_regions * 2);
+		
+		for (int i = 0; i < n_regions; i++){
+			if (!(regions.get(i) instanceof SimpleCorticalRegion))
+				throw new NeuroException("CompiledCorticalNetwork: region '" + regions.get(i).getName() +
+										 "' is not an instance of SimpleCorticalRegion.");
+			SimpleCorticalRegion region = (SimpleCorticalRegion)regions.get(i);
+			if (region.getTransferFunction() == null || region.getODESolver() == null)
+				throw new NeuroException("CompiledCorticalNetwork: region '" + region.getName() +
+										 "' has no transfer function or solver.");
+			functions[i] = region.getTransferFunction();
+			solvers[i] = region.getODESolver();
+			index.put(region, i);
+			}
+		
+		//connection matrix
+		ArrayList<Integer> cols = new ArrayList<Integer>();
+		ArrayList<Double> w = new ArrayList<Double>();
+		ArrayList<Integer> l = new ArrayList<Integer>();
+		row_ptr = new int[n_regions + 1];
+		int max_lag = 1;
+		SimpleCorticalCoupling coupling = network.getCoupling();
+		
+		for (int i = 0; i < n_regions; i++){
+			row_ptr[i] = cols.size();
+			ArrayList<DynamicModelComponent> conns = regions.get(i).getConnections();
+			for (int c = 0; c < conns.size(); c++){
+				if (!(conns.get(c) instanceof SimpleCorticalConnection))
+					throw new NeuroException("CompiledCorticalNetwork: connections of region '" + 
+											 regions.get(i).getName() + 
+											 "' must be instances of SimpleCorticalConnection.");
+				SimpleCorticalConnection connection = (SimpleCorticalConnection)conns.get(c);
+				int lag = getLag(connection.getDelay(), step);
+				ArrayList<AbstractCorticalRegion> targets = connection.getTargets();
+				for (int t = 0; t < targets.size(); t++){
+					Integer j = index.get(targets.get(t));
+					if (j == null) continue;		//target is not part of this network
+					cols.add(j);
+					w.add(connection.getWeight());
+					l.add(lag);
+					max_lag = Math.max(max_lag, lag);
+					}
+				}
+			
+			//sparse coupling entries follow connection objects
+			int ci = coupling == null ? -1 : coupling.indexOf(regions.get(i));
+			if (ci >= 0){
+				int[] c_ptr = coupling.getRowPointers();
+				int[] c_cols = coupling.getColumns();
+				double[] c_weights = coupling.getWeights();
+				double[] c_delays = coupling.getDelays();
+				for (int e = c_ptr[ci]; e < c_ptr[ci + 1]; e++){
+					Integer j = index.get(coupling.getRegion(c_cols[e]));
+					if (j == null) continue;
+					int lag = getLag(c_delays[e], step);
+					cols.add(j);
+					w.add(c_weights[e]);
+					l.add(lag);
+					max_lag = Math.max(max_lag, lag);
+					}
+				}
+			}
+		row_ptr[n_regions] = cols.size();
+		
+		col_idx = new int[cols.size()];
+		weights = new double[cols.size()];
+		lags = new int[cols.size()];
+		for (int k = 0; k < col_idx.length; k++){
+			col_idx[k] = cols.get(k);
+			weights[k] = w.get(k);
+			lags[k] = l.get(k);
+			}
+		
+		transpose(max_lag);
+		
+		//external inputs
+		ArrayList<SimpleCorticalInput> inputs = network.getInputs();
+		input_index = new int[inputs.size()];
+		input_values = new double[inputs.size()];
+		int[] count = new int[n_regions + 1];
+		for (int k = 0; k < inputs.size(); k++){
+			input_index[k] = inputs.get(k).getIndex();
+			ArrayList<AbstractCorticalRegion> targets = inputs.get(k).getTargets();
+			for (int t = 0; t < targets.size(); t++){
+				Integer j = index.get(targets.get(t));
+				if (j != null) count[j + 1]++;
+				}
+			}
+		input_ptr = new int[n_regions + 1];
+		for (int j = 0; j < n_regions; j++)
+			input_ptr[j + 1] = input_ptr[j] + count[j + 1];
+		input_src = new int[input_ptr[n_regions]];
+		int[] pos = new int[n_regions];
+		for (int k = 0; k < inputs.size(); k++){
+			ArrayList<AbstractCorticalRegion> targets = inputs.get(k).getTargets();
+			for (int t = 0; t < targets.size(); t++){
+				Integer j = index.get(targets.get(t));
+				if (j != null) input_src[input_ptr[j] + pos[j]++] = k;
+				}
+			}
+		
+		ring_size = max_lag + 2;
+		input = new double[n_regions];
+		firing_rate = new double[n_regions];
+		output = new double[n_regions];
+		rates = new double[n_regions * ring_size];
+		
+		setBatchIntegration(null);
+		reset();
+	}
+	
+	/**************************************
+	 * Builds the incoming connection matrix. Within a row, connections are ordered by descending lag
+	 * (i.e., by the time they were emitted), then by their order in the outgoing matrix, which is the
+	 * order in which the event path sums them.
+	 * 
+	 * @param max_lag
+	 */
+	protected void transpose(int max_lag){
+		int n_conn = col_idx.length;
+		in_ptr = new int[n_regions + 1];
+		for (int k = 0; k < n_conn; k++)
+			in_ptr[col_idx[k] + 1]++;
+		for (int j = 0; j < n_regions; j++)
+			in_ptr[j + 1] += in_ptr[j];
+		
+		in_src = new int[n_conn];
+		in_weights = new double[n_conn];
+		in_lags = new int[n_conn];
+		int[] pos = new int[n_regions];
+		
+		//counting sort by descending lag is stable with respect to the outgoing order
+		for (int lag = max_lag; lag > 0; lag--){
+			for (int i = 0; i < n_regions; i++){
+				for (int k = row_ptr[i]; k < row_ptr[i + 1]; k++){
+					if (lags[k] != lag) continue;
+					int j = col_idx[k];
+					int e = in_ptr[j] + pos[j]++;
+					in_src[e] = i;
+					in_weights[e] = weights[k];
+					in_lags[e] = lag;
+					}
+				}
+			}
+	}
+	
+	/**************************************
+	 * Returns the number of time steps an event with delay <code>delay</code> waits before it is 
+	 * executed. Replicates the decrements of <code>SimpleEvent.timeElapsed</code> followed by the test
+	 * in <code>AbstractNeuroComponent.executeEvents</code>, so that rounding is identical.
+	 * 
+	 * @param delay
+	 * @param step
+	 * @return
+	 */
+	public static int getLag(double delay, double step){
+		return EventScheduler.getLag(delay, step);
+	}
+	
+	/**************************************
+	 * Resets this compiled network, and the underlying network, to its initial state.
+	 * 
+	 */
+	public void reset(){
+		for (int i = 0; i < n_regions; i++)
+			network.regions.get(i).reset();
+		for (int i = 0; i < n_regions; i++){
+			if (solvers[i].getStepSize() != step)
+				solvers[i].setStepSize(step);
+			input[i] = 0;
+			firing_rate[i] = 0;
+			output[i] = 0;
+			}
+		for (int i = 0; i < rates.length; i++)
+			rates[i] = 0;
+		for (int b = 0; b < integrators.length; b++){
+			integrators[b].getBatch().gather();
+			integrators[b].reset();
+			}
+		clock = 0;
+	}
+	
+	/**************************************
+	 * Sets whether regions sharing a transfer function type should be integrated together, by a
+	 * {@link BatchIntegrator} using <code>method</code>. If <code>method</code> is <code>null</code>,
+	 * each region is integrated by its own solver. Function types which do not support batching
+	 * are always integrated by their own solvers. Batch states are taken from the transfer functions'
+	 * current states.
+	 * 
+	 * @param method
+	 */
+	public void setBatchIntegration(BatchIntegrator.Method method){
+		synchronize();
+		batch_method = method;
+		boolean[] batched = new boolean[n_regions];
+		
+		LinkedHashMap<Class<?>, ArrayList<Integer>> groups = new LinkedHashMap<Class<?>, ArrayList<Integer>>();
+		for (int i = 0; method != null && i < n_regions; i++){
+			if (method == BatchIntegrator.Method.RK4 && !(solvers[i] instanceof RK4)) continue;
+			ArrayList<Integer> group = groups.get(functions[i].getClass());
+			if (group == null){
+				group = new ArrayList<Integer>();
+				groups.put(functions[i].getClass(), group);
+				}
+			group.add(i);
+			}
+		
+		ArrayList<BatchIntegrator> list = new ArrayList<BatchIntegrator>();
+		ArrayList<int[]> members = new ArrayList<int[]>();
+		for (ArrayList<Integer> group : groups.values()){
+			ArrayList<CorticalFunction> group_functions = new ArrayList<CorticalFunction>(group.size());
+			for (int i = 0; i < group.size(); i++)
+				group_functions.add(functions[group.get(i)]);
+			CorticalFunctionBatch batch = group_functions.get(0).getBatch(group_functions);
+			if (batch == null) continue;
+			int[] m = new int[group.size()];
+			for (int i = 0; i < m.length; i++){
+				m[i] = group.get(i);
+				batched[m[i]] = true;
+				}
+			list.add(new BatchIntegrator(batch, method));
+			members.add(m);
+			}
+		
+		integrators = list.toArray(new BatchIntegrator[list.size()]);
+		batch_regions = members.toArray(new int[members.size()][]);
+		
+		int n_unbatched = 0;
+		for (int i = 0; i < n_regions; i++)
+			if (!batched[i]) n_unbatched++;
+		unbatched = new int[n_unbatched];
+		n_unbatched = 0;
+		for (int i = 0; i < n_regions; i++)
+			if (!batched[i]) unbatched[n_unbatched++] = i;
+		
+		setPartitions(Math.max(1, partitions.length));
+	}
+	
+	public BatchIntegrator.Method getBatchIntegration(){
+		return batch_method;
+	}
+	
+	/**************************************
+	 * Copies the states of batched regions back to their transfer functions.
+	 * 
+	 */
+	public void synchronize(){
+		for (int b = 0; b < integrators.length; b++)
+			integrators[b].getBatch().scatter();
+	}
+	
+	/**************************************
+	 * Reloads the parameters of batched transfer functions; must be called if any have changed
+	 * since batching was set.
+	 * 
+	 */
+	public void updateParameters(){
+		for (int b = 0; b < integrators.length; b++)
+			integrators[b].getBatch().setParameters();
+	}
+	
+	/**************************************
+	 * Sets this network to step its regions in parallel, over <code>n_threads</code> partitions of a new
+	 * pool with <code>n_threads</code> threads. If <code>n_threads</code> is less than two, steps are
+	 * executed serially on the calling thread.
+	 * 
+	 * @param n_threads
+	 */
+	public void setParallelism(int n_threads){
+		if (n_threads < 2){
+			setParallelism(null, 1);
+			return;
+			}
+		setParallelism(new ForkJoinPool(n_threads), n_threads);
+		owns_pool = true;
+	}
+	
+	/**************************************
+	 * Sets this network to step its regions in parallel, over <code>n_partitions</code> partitions
+	 * executed by <code>pool</code>. If <code>pool</code> is <code>null</code>, steps are executed
+	 * serially on the calling thread. The pool is not shut down by this network.
+	 * 
+	 * @param pool
+	 * @param n_partitions
+	 */
+	public void setParallelism(ForkJoinPool pool, int n_partitions){
+		shutdown();
+		this.pool = pool;
+		setPartitions(pool == null ? 1 : Math.max(1, n_partitions));
+	}
+	
+	/**************************************
+	 * Shuts down the thread pool, if it was created by this network, and reverts to serial stepping.
+	 * 
+	 */
+	public void shutdown(){
+		if (pool != null && owns_pool)
+			pool.shutdown();
+		pool = null;
+		owns_pool = false;
+		setPartitions(1);
+	}
+	
+	/**************************************
+	 * Returns the number of partitions over which regions are stepped.
+	 * 
+	 * @return
+	 */
+	public int getPartitionCount(){
+		return partitions.length;
+	}
+	
+	protected void setPartitions(int n){
+		partitions = new Partition[n];
+		for (int p = 0; p < n; p++)
+			partitions[p] = new Partition(p, n);
+		
+		step_task = new RecursiveAction(){
+			protected void compute(){
+				for (int p = 0; p < partitions.length; p++)
+					partitions[p].reinitialize();
+				invokeAll(partitions);
+			}
+		};
+	}
+	
+	/**************************************
+	 * Advances this network by one time step. External inputs are read from the network's environment,
+	 * if it has one. Does not allocate.
+	 * 
+	 */
+	public void step(){
+		
+		DynamicModelEnvironment environment = network.getEnvironment();
+		inputs_active = environment != null;
+		for (int k = 0; inputs_active && k < input_index.length; k++)
+			input_values[k] = environment.getInputState(input_index[k]);
+		
+		if (pool == null || partitions.length == 1){
+			partitions[0].compute();
+		}else{
+			step_task.reinitialize();
+			pool.invoke(step_task);
+			}
+		
+		clock++;
+		
+		if (sink != null){
+			setSinkStates();
+			try{
+				sink.write(sink_values);
+			}catch (IOException ex){
+				InterfaceSession.log("CompiledCorticalNetwork: output sink failed at step " + clock + 
+									 "; detaching: " + ex.getLocalizedMessage(), LoggingType.Errors);
+				sink = null;
+				}
+			}
+	}
+	
+	/**************************************
+	 * Sets a sink to which the firing rates ("Firing rate" channel), observable outputs ("Output" 
+	 * channel) and ODE state variables ("State 0", "State 1", ...) of all regions are written after each
+	 * step, starting with the next step. There is one state channel for each variable of the transfer 
+	 * function with the most state variables; for regions with fewer, the remaining channels are 
+	 * <code>NaN</code>. Any current sink is closed. If <code>sink</code> is <code>null</code>, output is 
+	 * no longer written.
+	 * 
+	 * @param sink
+	 * @throws IOException
+	 */
+	public void setOutputSink(NetworkOutputSink sink) throws IOException{
+		closeOutputSink();
+		if (sink == null) return;
+		
+		String[] names = new String[n_regions];
+		ArrayList<AbstractCorticalRegion> regions = network.regions;
+		int dim = 0;
+		for (int i = 0; i < n_regions; i++){
+			names[i] = regions.get(i).getName();
+			double[] state = functions[i].getState();
+			if (state != null) dim = Math.max(dim, state.length);
+			}
+		
+		String[] channels = new String[2 + dim];
+		double[][] values = new double[2 + dim][];
+		channels[0] = "Firing rate";
+		channels[1] = "Output";
+		values[0] = firing_rate;
+		values[1] = output;
+		for (int v = 0; v < dim; v++){
+			channels[2 + v] = "State " + v;
+			values[2 + v] = new double[n_regions];
+			Arrays.fill(values[2 + v], Double.NaN);
+			}
+		
+		sink.open(names, channels, (clock + 1) * step, step);
+		sink_values = values;
+		this.sink = sink;
+	}
+	
+	/**************************************
+	 * Copies the current state variables of all regions into the state channels of the output sink;
+	 * from the batches for batched regions. Does not allocate.
+	 * 
+	 */
+	protected void setSinkStates(){
+		int dim = sink_values.length - 2;
+		if (dim == 0) return;
+		
+		for (int b = 0; b < integrators.length; b++){
+			CorticalFunctionBatch batch = integrators[b].getBatch();
+			int[] members = batch_regions[b];
+			int n = batch.getSize();
+			int d = Math.min(dim, batch.getDimension());
+			for (int v = 0; v < d; v++){
+				double[] channel = sink_values[2 + v];
+				for (int g = 0; g < n; g++)
+					channel[members[g]] = batch.state[v * n + g];
+				}
+			}
+		
+		for (int u = 0; u < unbatched.length; u++){
+			int j = unbatched[u];
+			double[] state = functions[j].getState();
+			if (state == null) continue;
+			int d = Math.min(dim, state.length);
+			for (int v = 0; v < d; v++)
+				sink_values[2 + v][j] = state[v];
+			}
+	}
+	
+	public NetworkOutputSink getOutputSink(){
+		return sink;
+	}
+	
+	/**************************************
+	 * Closes and detaches the current output sink, if any.
+	 * 
+	 * @throws IOException
+	 */
+	public void closeOutputSink() throws IOException{
+		if (sink == null) return;
+		NetworkOutputSink current = sink;
+		sink = null;
+		current.close();
+	}
+	
+	/**************************************
+	 * Executes the due events of region <code>j</code>: sums its delayed inputs and external inputs, and
+	 * passes its last firing rate to its output.
+	 * 
+	 * @param j
+	 */
+	protected void executeEvents(int j){
+		double sum = 0;
+		for (int e = in_ptr[j]; e < in_ptr[j + 1]; e++){
+			long emitted = clock - in_lags[e];
+			if (emitted < 0) continue;
+			sum += rates[(int)(emitted % ring_size) * n_regions + in_src[e]] * in_weights[e];
+			}
+		for (int e = input_ptr[j]; inputs_active && e < input_ptr[j + 1]; e++)
+			sum += input_values[input_src[e]];
+		input[j] = sum;
+		output[j] = firing_rate[j];
+	}
+	
+	/**************************************
+	 * Runs this network for <code>trace.length</code> steps, writing the observable outputs of each 
+	 * step into the rows of <code>trace</code>, which must have at least as many columns as there 
+	 * are regions. 
+	 * 
+	 * @param trace
+	 */
+	public void run(double[][] trace){
+		for (int t = 0; t < trace.length; t++){
+			step();
+			System.arraycopy(output, 0, trace[t], 0, n_regions);
+			}
+	}
+	
+	/**************************************
+	 * Returns the number of regions in this network.
+	 * 
+	 * @return
+	 */
+	public int getRegionCount(){
+		return n_regions;
+	}
+	
+	/**************************************
+	 * Returns the number of (connection, target) pairs in this network.
+	 * 
+	 * @return
+	 */
+	public int getConnectionCount(){
+		return col_idx.length;
+	}
+	
+	/**************************************
+	 * Returns the number of steps this network has been advanced since the last reset.
+	 * 
+	 * @return
+	 */
+	public long getClock(){
+		return clock;
+	}
+	
+	public double getStep(){
+		return step;
+	}
+	
+	public CorticalNetwork getNetwork(){
+		return network;
+	}
+	
+	/**************************************
+	 * Returns the current firing rates of all regions. The returned array is live and must not 
+	 * be modified.
+	 * 
+	 * @return
+	 */
+	public double[] getFiringRates(){
+		return firing_rate;
+	}
+	
+	/**************************************
+	 * Returns the current observable outputs of all regions; i.e., the values a 
+	 * <code>SimpleCorticalOutput</code> would report to the environment at this step. The returned 
+	 * array is live and must not be modified.
+	 * 
+	 * @return
+	 */
+	public double[] getOutputs(){
+		return output;
+	}
+	
+	public double getFiringRate(int region){
+		return firing_rate[region];
+	}
+	
+	public double getOutput(int region){
+		return output[region];
+	}
+	
+	/**************************************
+	 * A subset of regions which is stepped independently of all others: a contiguous range of each
+	 * batch, and a contiguous range of the unbatched regions.
+	 * 
+	 */
+	protected class Partition extends RecursiveAction{
+		
+		int[] batch_from, batch_to;
+		int unbatched_from, unbatched_to;
+		
+		Partition(int p, int n){
+			batch_from = new int[integrators.length];
+			batch_to = new int[integrators.length];
+			for (int b = 0; b < integrators.length; b++){
+				int size = batch_regions[b].length;
+				batch_from[b] = (int)((long)size * p / n);
+				batch_to[b] = (int)((long)size * (p + 1) / n);
+				}
+			unbatched_from = (int)((long)unbatched.length * p / n);
+			unbatched_to = (int)((long)unbatched.length * (p + 1) / n);
+		}
+		
+		protected void compute(){
+			
+			int slot = (int)((clock + 1) % ring_size) * n_regions;
+			
+			for (int b = 0; b < integrators.length; b++){
+				CorticalFunctionBatch batch = integrators[b].getBatch();
+				int[] members = batch_regions[b];
+				for (int g = batch_from[b]; g < batch_to[b]; g++){
+					executeEvents(members[g]);
+					batch.input[g] = input[members[g]];
+					}
+				integrators[b].step(step, batch_from[b], batch_to[b]);
+				for (int g = batch_from[b]; g < batch_to[b]; g++){
+					int j = members[g];
+					firing_rate[j] = batch.output[g];
+					rates[slot + j] = firing_rate[j];
+					}
+				}
+			
+			for (int u = unbatched_from; u < unbatched_to; u++){
+				int j = unbatched[u];
+				executeEvents(j);
+				functions[j].setInput(input[j]);
+				solvers[j].step();
+				firing_rate[j] = functions[j].getOutput();
+				rates[slot + j] = firing_rate[j];
+				}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,59 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.sweep;
+
+import java.util.ArrayList;
+
+import mgui.models.dynamic.DynamicModelComponent;
+import mgui.neuro.components.cortical.AbstractCorticalConnection;
+import mgui.neuro.exceptions.NeuroException;
+import mgui.neuro.networks.CorticalNetwork;
+
+/****************************************
+ * Sweeps the global coupling of a network, by scaling the weights of all connections between its
+ * regions, including its sparse coupling matrix, by the swept value.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CouplingSweepParameter extends SweepParameter {
+
+	public CouplingSweepParameter(){
+		super("Coupling");
+	}
+	
+	public void apply(CorticalNetwork network, double value) throws NeuroException{
+		for (int i = 0; i < network.regions.size(); i++){
+			ArrayList<DynamicModelComponent> connections = network.regions.get(i).getConnections();
+			for (int j = 0; j < connections.size(); j++)
+				if (connections.get(j) instanceof AbstractCorticalConnection){
+					AbstractCorticalConnection connection = (AbstractCorticalConnection)connections.get(j);
+					connection.setWeight(connection.getWeight() * value);
+					}
+			}
+		if (network.getCoupling() != null)
+			network.getCoupling().scaleWeights(value);
+	}
+	
+}
@@ -0,0 +1,57 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.sweep;
+
+import mgui.neuro.components.cortical.AbstractCorticalRegion;
+import mgui.neuro.components.cortical.functions.CorticalFunction;
+import mgui.neuro.components.cortical.simple.SimpleCorticalRegion;
+import mgui.neuro.exceptions.NeuroException;
+import mgui.neuro.networks.CorticalNetwork;
+
+/****************************************
+ * Sweeps a parameter of the transfer functions of all regions of a network (e.g., "Tau" for 
+ * <code>BiexponentialFunction</code>, or "a_ee[?]" for <code>MorrisLecarFunction</code>), identified
+ * by its attribute name.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class FunctionSweepParameter extends SweepParameter {
+
+	public FunctionSweepParameter(String attribute){
+		super(attribute);
+	}
+	
+	public void apply(CorticalNetwork network, double value) throws NeuroException{
+		for (int i = 0; i < network.regions.size(); i++){
+			AbstractCorticalRegion region = network.regions.get(i);
+			if (!(region instanceof SimpleCorticalRegion)) continue;
+			CorticalFunction function = ((SimpleCorticalRegion)region).getTransferFunction();
+			if (function == null || !function.setParameter(name, value))
+				throw new NeuroException("FunctionSweepParameter: region '" + region.getName() + 
+										 "' has no function parameter '" + name + "'.");
+			}
+	}
+	
+}
@@ -0,0 +1,333 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.sweep;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mgui.interfaces.InterfaceSession;
+import mgui.interfaces.ProgressUpdater;
+import mgui.interfaces.logs.LoggingType;
+import mgui.neuro.components.cortical.functions.BatchIntegrator;
+import mgui.neuro.exceptions.NeuroException;
+import mgui.neuro.networks.CorticalNetwork;
+import mgui.neuro.networks.compiled.CompiledCorticalNetwork;
+
+/****************************************
+ * <p>Runs many independent simulations of a template {@link CorticalNetwork}, one per sample of a set of 
+ * {@link SweepParameter}s. Samples are either a full grid of parameter values (see 
+ * {@link #setGrid(double[][])}) or uniform random values within given ranges (see 
+ * {@link #setRandom(int, double[], double[], long)}).</p>
+ * 
+ * <p>For each run, the template is cloned, the sample's parameter values are applied, and the clone is
+ * compiled (see {@link CompiledCorticalNetwork}) and run for a fixed number of steps. Per-region 
+ * summary statistics of firing rates, after an optional transient, are collected in a 
+ * {@link SweepResult}. Runs execute in parallel on a fixed pool of threads; clones are made on the 
+ * calling thread, and at most twice as many runs as threads are in progress at once, so memory use is
+ * bounded regardless of the number of runs. If an output file is set, each result is appended to it 
+ * as a tab-delimited line as soon as it completes.</p>
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class ParameterSweep {
+
+	protected CorticalNetwork network;
+	protected ArrayList<SweepParameter> parameters = new ArrayList<SweepParameter>();
+	protected double[][] samples = new double[0][];
+	
+	protected double step = 0.1;
+	protected int n_steps = 1000;
+	protected int n_transient = 0;
+	protected int n_threads = Runtime.getRuntime().availableProcessors();
+	protected BatchIntegrator.Method batch_method;
+	protected File output_file;
+	
+	public ParameterSweep(CorticalNetwork network){
+		this.network = network;
+	}
+	
+	public CorticalNetwork getNetwork(){
+		return network;
+	}
+	
+	public void addParameter(SweepParameter parameter){
+		parameters.add(parameter);
+	}
+	
+	public ArrayList<SweepParameter> getParameters(){
+		return parameters;
+	}
+	
+	/**************************************
+	 * Sets the samples to the full grid of <code>values</code>, where <code>values[p]</code> lists the 
+	 * values of parameter <code>p</code>. The last parameter varies fastest.
+	 * 
+	 * @param values
+	 */
+	public void setGrid(double[][] values){
+		if (values.length != parameters.size())
+			throw new IllegalArgumentException("ParameterSweep: expected values for " + parameters.size() + 
+											   " parameters.");
+		int n = 1;
+		for (int p = 0; p < values.length; p++)
+			n *= values[p].length;
+		
+		samples = new double[n][values.length];
+		for (int s = 0; s < n; s++){
+			int k = s;
+			for (int p = values.length - 1; p >= 0; p--){
+				samples[s][p] = values[p][k % values[p].length];
+				k /= values[p].length;
+				}
+			}
+	}
+	
+	/**************************************
+	 * Sets <code>n</code> samples drawn uniformly from [<code>min[p]</code>, <code>max[p]</code>) for
+	 * each parameter <code>p</code>, using <code>seed</code>.
+	 * 
+	 * @param n
+	 * @param min
+	 * @param max
+	 * @param seed
+	 */
+	public void setRandom(int n, double[] min, double[] max, long seed){
+		if (min.length != parameters.size() || max.length != parameters.size())
+			throw new IllegalArgumentException("ParameterSweep: expected ranges for " + parameters.size() + 
+											   " parameters.");
+		Random random = new Random(seed);
+		samples = new double[n][min.length];
+		for (int s = 0; s < n; s++)
+			for (int p = 0; p < min.length; p++)
+				samples[s][p] = min[p] + random.nextDouble() * (max[p] - min[p]);
+	}
+	
+	/**************************************
+	 * Sets the samples explicitly; <code>samples[s][p]</code> is the value of parameter <code>p</code>
+	 * for run <code>s</code>.
+	 * 
+	 * @param samples
+	 */
+	public void setSamples(double[][] samples){
+		this.samples = samples;
+	}
+	
+	public double[][] getSamples(){
+		return samples;
+	}
+	
+	public int getRunCount(){
+		return samples.length;
+	}
+	
+	/**************************************
+	 * Sets the time step, the number of steps per run, and the number of initial (transient) steps 
+	 * which are excluded from the summary statistics.
+	 * 
+	 * @param step
+	 * @param n_steps
+	 * @param n_transient
+	 */
+	public void setDuration(double step, int n_steps, int n_transient){
+		this.step = step;
+		this.n_steps = n_steps;
+		this.n_transient = n_transient;
+	}
+	
+	public void setThreads(int n_threads){
+		this.n_threads = Math.max(1, n_threads);
+	}
+	
+	public int getThreads(){
+		return n_threads;
+	}
+	
+	/**************************************
+	 * Sets the batch integration method for compiled runs; if <code>null</code>, regions are integrated
+	 * by their own solvers.
+	 * 
+	 * @param method
+	 */
+	public void setBatchIntegration(BatchIntegrator.Method method){
+		batch_method = method;
+	}
+	
+	/**************************************
+	 * Sets a file to which results are written as they complete; if <code>null</code>, results are only
+	 * returned.
+	 * 
+	 * @param file
+	 */
+	public void setOutputFile(File file){
+		output_file = file;
+	}
+	
+	public File getOutputFile(){
+		return output_file;
+	}
+	
+	/**************************************
+	 * Runs the sweep.
+	 * 
+	 * @param progress 		optional progress updater; may be <code>null</code>
+	 * @return the results, indexed by run; entries are <code>null</code> for failed runs
+	 * @throws IOException if the output file cannot be written
+	 */
+	public SweepResult[] run(ProgressUpdater progress) throws IOException{
+		
+		int n_runs = samples.length;
+		SweepResult[] results = new SweepResult[n_runs];
+		
+		BufferedWriter writer = null;
+		if (output_file != null){
+			writer = new BufferedWriter(new FileWriter(output_file));
+			writeHeader(writer);
+			}
+		
+		if (progress != null){
+			progress.setMinimum(0);
+			progress.setMaximum(n_runs);
+			progress.update(0);
+			}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(n_threads);
+		ExecutorCompletionService<SweepResult> completion = new ExecutorCompletionService<SweepResult>(executor);
+		int max_pending = 2 * n_threads;
+		int submitted = 0, completed = 0, pending = 0;
+		
+		try{
+			while (completed < n_runs){
+				
+				//keep the pool busy, with a bounded number of clones in memory
+				while (submitted < n_runs && pending < max_pending){
+					final int run = submitted++;
+					CorticalNetwork clone = (CorticalNetwork)network.clone();
+					if (clone == null){
+						InterfaceSession.log("ParameterSweep: could not clone network for run " + run + ".", 
+											 LoggingType.Errors);
+						completed++;
+						continue;
+						}
+					completion.submit(getRun(run, clone));
+					pending++;
+					}
+				if (pending == 0) continue;
+				
+				Future<SweepResult> future = completion.take();
+				pending--;
+				completed++;
+				try{
+					SweepResult result = future.get();
+					results[result.run] = result;
+					if (writer != null)
+						writeResult(writer, result);
+				}catch (ExecutionException ex){
+					InterfaceSession.log("ParameterSweep: run failed: " + ex.getCause().getLocalizedMessage(), 
+										 LoggingType.Errors);
+					}
+				
+				if (progress != null)
+					progress.update(completed);
+				}
+		}catch (InterruptedException ex){
+			Thread.currentThread().interrupt();
+			InterfaceSession.log("ParameterSweep: interrupted after " + completed + " runs.", LoggingType.Errors);
+		}finally{
+			executor.shutdownNow();
+			if (writer != null)
+				writer.close();
+			}
+		
+		return results;
+	}
+	
+	/**************************************
+	 * Returns a task which applies the parameters of run <code>run</code> to <code>clone</code>, then
+	 * compiles and runs it.
+	 * 
+	 * @param run
+	 * @param clone
+	 * @return
+	 */
+	protected Callable<SweepResult> getRun(final int run, final CorticalNetwork clone){
+		return new Callable<SweepResult>(){
+			public SweepResult call() throws NeuroException{
+				double[] values = samples[run];
+				for (int p = 0; p < parameters.size(); p++)
+					parameters.get(p).apply(clone, values[p]);
+				
+				CompiledCorticalNetwork compiled = clone.compile(step);
+				if (batch_method != null)
+					compiled.setBatchIntegration(batch_method);
+				
+				SweepResult result = new SweepResult(run, values, compiled.getRegionCount());
+				double[] rates = compiled.getFiringRates();
+				for (int t = 0; t < n_steps; t++){
+					compiled.step();
+					if (t >= n_transient)
+						result.add(rates);
+					}
+				return result;
+			}
+		};
+	}
+	
+	protected void writeHeader(BufferedWriter writer) throws IOException{
+		writer.write("Run");
+		for (int p = 0; p < parameters.size(); p++)
+			writer.write("\t" + parameters.get(p).getName());
+		for (int i = 0; i < network.regions.size(); i++){
+			String name = network.regions.get(i).getName();
+			writer.write("\t" + name + ".mean\t" + name + ".var\t" + name + ".min\t" + name + ".max");
+			}
+		writer.newLine();
+	}
+	
+	protected void writeResult(BufferedWriter writer, SweepResult result) throws IOException{
+		StringBuilder line = new StringBuilder();
+		line.append(result.run);
+		for (int p = 0; p < result.parameters.length; p++)
+			line.append('\t').append(result.parameters[p]);
+		for (int i = 0; i < result.getRegionCount(); i++)
+			line.append('\t').append(result.getMean(i))
+				.append('\t').append(result.getVariance(i))
+				.append('\t').append(result.getMin(i))
+				.append('\t').append(result.getMax(i));
+		writer.write(line.toString());
+		writer.newLine();
+		writer.flush();
+	}
+	
+}
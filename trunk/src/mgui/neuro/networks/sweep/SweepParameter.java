@@ -0,0 +1,61 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.sweep;
+
+import mgui.neuro.exceptions.NeuroException;
+import mgui.neuro.networks.CorticalNetwork;
+
+/****************************************
+ * A parameter varied by a {@link ParameterSweep}. Implementations apply a value to a (cloned) network
+ * before it is compiled and run.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public abstract class SweepParameter {
+
+	protected String name;
+	
+	protected SweepParameter(String name){
+		this.name = name;
+	}
+	
+	public String getName(){
+		return name;
+	}
+	
+	/**************************************
+	 * Applies <code>value</code> to <code>network</code>.
+	 * 
+	 * @param network
+	 * @param value
+	 * @throws NeuroException if the parameter cannot be applied to this network
+	 */
+	public abstract void apply(CorticalNetwork network, double value) throws NeuroException;
+	
+	public String toString(){
+		return name;
+	}
+	
+}
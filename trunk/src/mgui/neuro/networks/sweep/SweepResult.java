@@ -0,0 +1,107 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.sweep;
+
+import java.util.Arrays;
+
+/****************************************
+ * Summary statistics of the firing rates of each region, for a single run of a {@link ParameterSweep}.
+ * Statistics are accumulated as the run proceeds, so traces are not held in memory.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SweepResult {
+
+	public final int run;
+	public final double[] parameters;
+	
+	protected long n;
+	protected double[] mean, m2, min, max;
+	
+	public SweepResult(int run, double[] parameters, int n_regions){
+		this.run = run;
+		this.parameters = parameters;
+		mean = new double[n_regions];
+		m2 = new double[n_regions];
+		min = new double[n_regions];
+		max = new double[n_regions];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+	}
+	
+	/**************************************
+	 * Adds one time step of firing rates to these statistics (Welford's algorithm).
+	 * 
+	 * @param rates
+	 */
+	public void add(double[] rates){
+		n++;
+		for (int i = 0; i < mean.length; i++){
+			double x = rates[i];
+			double delta = x - mean[i];
+			mean[i] += delta / n;
+			m2[i] += delta * (x - mean[i]);
+			if (x < min[i]) min[i] = x;
+			if (x > max[i]) max[i] = x;
+			}
+	}
+	
+	/**************************************
+	 * Returns the number of time steps summarized.
+	 * 
+	 * @return
+	 */
+	public long getCount(){
+		return n;
+	}
+	
+	public double getMean(int region){
+		return mean[region];
+	}
+	
+	/**************************************
+	 * Returns the sample variance of the firing rate of <code>region</code>.
+	 * 
+	 * @param region
+	 * @return
+	 */
+	public double getVariance(int region){
+		if (n < 2) return 0;
+		return m2[region] / (n - 1);
+	}
+	
+	public double getMin(int region){
+		return min[region];
+	}
+	
+	public double getMax(int region){
+		return max[region];
+	}
+	
+	public int getRegionCount(){
+		return mean.length;
+	}
+	
+}
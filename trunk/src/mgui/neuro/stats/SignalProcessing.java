@@ -55,18 +55,37 @@ public class SignalProcessing extends Utility {
 		
 		if (NumberFunctions.isEven(n)) return curve;
 		
-		ArrayList<Double> smoothed = new ArrayList<Double>(curve.size());
+		double[] smoothed = smoothCurveMovingAverage(toArray(curve), n);
+		return toList(smoothed);
+	}
+	
+	/****************************************************
+	 * Smooths <code>curve</code> using a moving-average algorithm, as for 
+	 * {@link #smoothCurveMovingAverage(ArrayList, int)}. The window sum is updated incrementally, so
+	 * this runs in O(N) time regardless of <code>n</code>.
+	 * 
+	 * @param curve
+	 * @param n
+	 * @return the smoothed curve, or <code>curve</code> if <code>n</code> is even
+	 */
+	public static double[] smoothCurveMovingAverage(double[] curve, int n){
+		
+		if (NumberFunctions.isEven(n)) return curve;
+		
+		double[] smoothed = new double[curve.length];
 		int m = (n - 1) / 2;
 		
-		for (int i = 0; i < curve.size(); i++){
-			double v = 0;
-			int c = 0;
-			for (int k = -m; k < m; k++)
-				if (i + k >= 0 && i + k < curve.size()){
-					v += curve.get(i + k);
-					c++;
-					}
-			smoothed.add(v / (double)c);
+		//window for point i is [i - m, i + m)
+		double v = 0;
+		int start = 0, end = 0;
+		for (int i = 0; i < curve.length; i++){
+			int first = Math.max(0, i - m);
+			int last = Math.min(curve.length, i + m);
+			while (end < last)
+				v += curve[end++];
+			while (start < first)
+				v -= curve[start++];
+			smoothed[i] = v / (double)(end - start);
 			}
 		
 		return smoothed;
@@ -83,14 +102,28 @@ public class SignalProcessing extends Utility {
 	 */
 	public static ArrayList<Double> getDerivative(ArrayList<Double> curve, int order){
 		
-		ArrayList<Double> smoothed = new ArrayList<Double>(curve.size());
+		return toList(getDerivative(toArray(curve), order));
 		
-		for (int i = 1; i < curve.size(); i++)
-			smoothed.add(curve.get(i) - curve.get(i - 1));
+	}
+	
+	/******************************************************
+	 * Returns the <code>order</code>th order derivative of <code>curve</code>, as for 
+	 * {@link #getDerivative(ArrayList, int)}.
+	 * 
+	 * @param curve the curve for which to compute the derivative
+	 * @param order the order of the derivative to compute
+	 * @return the derivative for <code>curve</code>, with n - <code>order</code> elements
+	 */
+	public static double[] getDerivative(double[] curve, int order){
 		
-		if (order > 1) return getDerivative(smoothed, order - 1);
+		double[] derivative = new double[Math.max(0, curve.length - 1)];
 		
-		return smoothed;
+		for (int i = 1; i < curve.length; i++)
+			derivative[i - 1] = curve[i] - curve[i - 1];
+		
+		if (order > 1) return getDerivative(derivative, order - 1);
+		
+		return derivative;
 		
 	}
 	
@@ -106,22 +139,35 @@ public class SignalProcessing extends Utility {
 	*/
 	public static ArrayList<Double> getResampledCurve(ArrayList<Double> curve, int samples, int order){
 		
-		int length = curve.size();
+		return toList(getResampledCurve(toArray(curve), samples, order));
+		
+	}
+	
+	/***************************
+	* Resample (interpolate with order) curve to specified number of samples, as for 
+	* {@link #getResampledCurve(ArrayList, int, int)}.
+	*
+	* @param curve the curve to resample
+	* @param samples the number of samples in the resulting curve
+	* @param the order of the interpolation (currently does nothing as only linear interpolation is
+	* 		 implemented.
+	* @return the resampled curve
+	*/
+	public static double[] getResampledCurve(double[] curve, int samples, int order){
+		
+		int length = curve.length;
 		double rate = (double)length / (double)samples;
-		ArrayList<Double> resampled = new ArrayList<Double>();
+		double[] resampled = new double[samples];
 		double m = 0;
 		
-		for (double i = 0; i < samples; i++){
+		for (int i = 0; i < samples; i++){
 			int k = (int)Math.floor(m);
 			if (k < length - 1){
 				double p = m - (double)k;
-				double diff = curve.get(k + 1) - curve.get(k);
-				resampled.add(curve.get(k) + (p * diff));
+				resampled[i] = curve[k] + (p * (curve[k + 1] - curve[k]));
 			}else{
-				resampled.add(curve.get(k));
+				resampled[i] = curve[k];
 				}
-			if (Double.isNaN(resampled.get((int)i)))
-				m += 0;
 			m += rate;
 			}
 		
@@ -139,12 +185,38 @@ public class SignalProcessing extends Utility {
 	 */
 	public static ArrayList<Double> getNormalizedCurve(ArrayList<Double> curve){
 		
+		return toList(getNormalizedCurve(toArray(curve)));
+		
+	}
+	
+	/****************************
+	 * Normalizes this curve to max and min.
+	 * 
+	 * @param curve the curve to normalize
+	 * @param min the minimum for the normalization
+	 * @param max the maximum for the normalization
+	 * @return the normalized curve
+	 */
+	public static ArrayList<Double> getNormalizedCurve(ArrayList<Double> curve, double min, double max){
+		
+		return toList(getNormalizedCurve(toArray(curve), min, max));
+		
+	}
+	
+	/****************************
+	 * Normalizes this curve to the max and min of its values.
+	 * 
+	 * @param curve the curve to normalize
+	 * @return the normalized curve
+	 */
+	public static double[] getNormalizedCurve(double[] curve){
+		
 		double max = -Double.MAX_VALUE;
 		double min = Double.MAX_VALUE;
 		
-		for (int i = 0; i < curve.size(); i++){
-			max = Math.max(max, curve.get(i));
-			min = Math.min(min, curve.get(i));
+		for (int i = 0; i < curve.length; i++){
+			max = Math.max(max, curve[i]);
+			min = Math.min(min, curve[i]);
 			}
 		
 		return getNormalizedCurve(curve, min, max);
@@ -159,23 +231,43 @@ public class SignalProcessing extends Utility {
 	 * @param max the maximum for the normalization
 	 * @return the normalized curve
 	 */
-	public static ArrayList<Double> getNormalizedCurve(ArrayList<Double> curve, double min, double max){
+	public static double[] getNormalizedCurve(double[] curve, double min, double max){
 		
-		ArrayList<Double> normalized = new ArrayList<Double>(curve.size());
-		if (NumberFunctions.compare(min, max, 5) == 0){
-			for (int i = 0; i < curve.size(); i++)
-				normalized.add(0.0);
-		}else{
-			for (int i = 0; i < curve.size(); i++){
-				double d = (curve.get(i) - min) / (max - min);
-				normalized.add(d);
-				if (Double.isNaN(d))
-					d += 0;
-				}
+		double[] normalized = new double[curve.length];
+		if (NumberFunctions.compare(min, max, 5) != 0){
+			double range = max - min;
+			for (int i = 0; i < curve.length; i++)
+				normalized[i] = (curve[i] - min) / range;
 			}
 		
 		return normalized;
 	}
 	
+	/****************************
+	 * Returns the values of <code>curve</code> as a primitive array.
+	 * 
+	 * @param curve
+	 * @return
+	 */
+	public static double[] toArray(ArrayList<Double> curve){
+		double[] array = new double[curve.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = curve.get(i);
+		return array;
+	}
+	
+	/****************************
+	 * Returns the values of <code>curve</code> as a list.
+	 * 
+	 * @param curve
+	 * @return
+	 */
+	public static ArrayList<Double> toList(double[] curve){
+		ArrayList<Double> list = new ArrayList<Double>(curve.length);
+		for (int i = 0; i < curve.length; i++)
+			list.add(curve[i]);
+		return list;
+	}
+	
 	
-}
\ No newline at end of file
+}
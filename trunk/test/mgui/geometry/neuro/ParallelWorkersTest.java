@@ -0,0 +1,145 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mgui.interfaces.ProgressUpdater;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that {@link ParallelWorkers} runs all workers, and that a failing worker or a cancelled 
+ * progress updater stops the others.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class ParallelWorkersTest {
+
+	@Test
+	public void runsAllWorkers(){
+		final AtomicInteger done = new AtomicInteger(0);
+		Runnable[] workers = new Runnable[4];
+		for (int t = 0; t < workers.length; t++)
+			workers[t] = new Runnable(){
+				public void run(){
+					done.incrementAndGet();
+				}
+			};
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		assertTrue(ParallelWorkers.run(workers, null, done, cancelled, "ParallelWorkersTest"));
+		assertEquals(4, done.get());
+		assertFalse(cancelled.get());
+	}
+	
+	@Test
+	public void failureCancelsOtherWorkers() throws InterruptedException{
+		final AtomicBoolean cancelled = new AtomicBoolean(false);
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+		Runnable[] workers = new Runnable[2];
+		//polls cancelled, as the mapping workers do, and ignores interrupts
+		workers[0] = new Runnable(){
+			public void run(){
+				long end = System.currentTimeMillis() + 10000;
+				while (!cancelled.get() && System.currentTimeMillis() < end)
+					Thread.yield();
+				stopped.set(cancelled.get());
+			}
+		};
+		workers[1] = new Runnable(){
+			public void run(){
+				throw new IllegalStateException("failed");
+			}
+		};
+		
+		try{
+			ParallelWorkers.invokeAll(workers, null, null, cancelled);
+			fail("Expected the worker failure to be thrown.");
+		}catch (ExecutionException ex){
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+			}
+		assertTrue(cancelled.get());
+		
+		//the polling worker should now stop promptly
+		long end = System.currentTimeMillis() + 5000;
+		while (!stopped.get() && System.currentTimeMillis() < end)
+			Thread.sleep(10);
+		assertTrue(stopped.get());
+	}
+	
+	@Test
+	public void singleWorkerFailureIsThrown() throws InterruptedException{
+		AtomicBoolean cancelled = new AtomicBoolean(false);
+		Runnable[] workers = new Runnable[]{ new Runnable(){
+			public void run(){
+				throw new IllegalStateException("failed");
+			}
+		}};
+		
+		try{
+			ParallelWorkers.invokeAll(workers, null, null, cancelled);
+			fail("Expected the worker failure to be thrown.");
+		}catch (ExecutionException ex){
+			assertTrue(ex.getCause() instanceof IllegalStateException);
+			}
+		assertTrue(cancelled.get());
+		assertFalse(ParallelWorkers.run(workers, null, null, new AtomicBoolean(false), "ParallelWorkersTest"));
+	}
+	
+	@Test
+	public void cancelledProgressStopsWorkers(){
+		final AtomicBoolean cancelled = new AtomicBoolean(false);
+		Runnable[] workers = new Runnable[2];
+		for (int t = 0; t < workers.length; t++)
+			workers[t] = new Runnable(){
+				public void run(){
+					long end = System.currentTimeMillis() + 10000;
+					while (!cancelled.get() && System.currentTimeMillis() < end)
+						Thread.yield();
+				}
+			};
+		
+		ProgressUpdater progress = new ProgressUpdater(){
+			public void setMinimum(int i){}
+			public void setMaximum(int i){}
+			public void update(int i){}
+			public boolean isCancelled(){ return true; }
+		};
+		
+		long start = System.currentTimeMillis();
+		assertFalse(ParallelWorkers.run(workers, progress, new AtomicInteger(0), cancelled, "ParallelWorkersTest"));
+		assertTrue(cancelled.get());
+		assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+	
+}
@@ -0,0 +1,177 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.connectivity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import Jama.Matrix;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that dense and sparse correlation files, written in several bands, read back the same values 
+ * as {@link CorticalPatchMatrix#getCorrelationMatrix()}.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CorrelationMatrixFileTest {
+
+	static final int N = 301;
+	static final int P = 16;
+	static final int INVALID = 7;
+	
+	static CorticalPatchMatrix createPatches(){
+		CorticalPatchMatrix patches = new CorticalPatchMatrix(N, P);
+		Random random = new Random(3);
+		double[] values = new double[P];
+		for (int i = 0; i < N; i++){
+			for (int k = 0; k < P; k++)
+				values[k] = random.nextGaussian() + (i % 5) * Math.sin(k);
+			patches.setPatch(i, i == INVALID ? null : values);
+			}
+		return patches;
+	}
+	
+	@Test
+	public void denseMatchesCorrelationMatrix() throws IOException{
+		CorticalPatchMatrix patches = createPatches();
+		Matrix C = patches.getCorrelationMatrix(2);
+		
+		long band_bytes = CorrelationMatrixFile.band_bytes;
+		File file = File.createTempFile("dense", ".crm");
+		DenseCorrelationFile dense = null;
+		try{
+			CorrelationMatrixFile.band_bytes = 4L * N * 40;
+			dense = DenseCorrelationFile.write(patches, file, 3, null);
+			float[] row = new float[N];
+			float[] column = new float[N];
+			for (int i = 0; i < N; i++){
+				dense.getRow(i, row);
+				dense.getColumn(i, column);
+				for (int j = 0; j < N; j++){
+					assertEquals(C.get(i, j), row[j], 1e-6);
+					assertEquals(row[j], column[j], 0);
+					}
+				assertEquals(C.get(i, i), dense.get(i, i), 0);
+				}
+		}finally{
+			CorrelationMatrixFile.band_bytes = band_bytes;
+			if (dense != null) dense.close();
+			file.delete();
+			}
+	}
+	
+	@Test
+	public void sparseMatchesDense() throws IOException{
+		CorticalPatchMatrix patches = createPatches();
+		
+		long band_bytes = CorrelationMatrixFile.band_bytes;
+		File dense_file = File.createTempFile("dense", ".crm");
+		File sparse_file = File.createTempFile("sparse", ".crm");
+		DenseCorrelationFile dense = null;
+		SparseCorrelationFile sparse = null;
+		try{
+			CorrelationMatrixFile.band_bytes = 4L * N * 40;
+			dense = DenseCorrelationFile.write(patches, dense_file, 3, null);
+			sparse = SparseCorrelationFile.write(patches, sparse_file, 0.3, 0, 3, null);
+			float[] dense_row = new float[N];
+			float[] sparse_row = new float[N];
+			float[] column = new float[N];
+			for (int i = 0; i < N; i++){
+				dense.getRow(i, dense_row);
+				sparse.getRow(i, sparse_row);
+				sparse.getColumn(i, column);
+				for (int j = 0; j < N; j++){
+					float expected = dense_row[j];
+					if (i != j && !(Math.abs(expected) > 0.3f)) expected = 0;
+					assertEquals(expected, sparse_row[j], 0);
+					assertEquals(sparse_row[j], column[j], 0);
+					}
+				// Diagonal reads the same as dense, including NaN for an invalid patch
+				assertEquals(dense.get(i, i), sparse.get(i, i), 0);
+				}
+		}finally{
+			CorrelationMatrixFile.band_bytes = band_bytes;
+			if (dense != null) dense.close();
+			if (sparse != null) sparse.close();
+			dense_file.delete();
+			sparse_file.delete();
+			}
+	}
+	
+	@Test
+	public void sparseRetainsTopK() throws IOException{
+		CorticalPatchMatrix patches = createPatches();
+		Matrix C = patches.getCorrelationMatrix(2);
+		int top_k = 10;
+		
+		long band_bytes = CorrelationMatrixFile.band_bytes;
+		File file = File.createTempFile("sparse", ".crm");
+		SparseCorrelationFile sparse = null;
+		try{
+			CorrelationMatrixFile.band_bytes = 4L * N * 40;
+			sparse = SparseCorrelationFile.write(patches, file, 0, top_k, 3, null);
+			int[] columns = new int[N];
+			float[] values = new float[N];
+			float[] expected = new float[N];
+			for (int i = 0; i < N; i++){
+				int m = 0;
+				for (int j = 0; j < N; j++){
+					float v = (float)C.get(i, j);
+					if (j != i && Math.abs(v) > 0) expected[m++] = Math.abs(v);
+					}
+				Arrays.sort(expected, 0, m);
+				int k = Math.min(top_k, m);
+				
+				int count = sparse.getRowEntries(i, columns, values);
+				assertEquals(k + 1, count);
+				int diagonal = 0;
+				for (int r = 0; r < count; r++){
+					if (r > 0) assertTrue(columns[r] > columns[r - 1]);
+					if (columns[r] == i){
+						diagonal++;
+						assertEquals(C.get(i, i), values[r], 0);
+						continue;
+						}
+					assertEquals(C.get(i, columns[r]), values[r], 1e-6);
+					assertTrue(Math.abs(values[r]) >= expected[m - k] - 1e-6f);
+					}
+				assertEquals(1, diagonal);
+				}
+		}finally{
+			CorrelationMatrixFile.band_bytes = band_bytes;
+			if (sparse != null) sparse.close();
+			file.delete();
+			}
+	}
+	
+}
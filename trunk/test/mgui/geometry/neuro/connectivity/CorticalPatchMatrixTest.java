@@ -0,0 +1,174 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.connectivity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import Jama.Matrix;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests {@link CorticalPatchMatrix} correlations against Pearson correlations computed directly from 
+ * the patch values, for single entries, blocks, partial rows and the multithreaded full matrix.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CorticalPatchMatrixTest {
+
+	static final int N = 150;
+	static final int P = 12;
+	static final int INVALID = 9;
+	static final int CONSTANT = 70;
+	
+	static double[][] createValues(){
+		Random random = new Random(11);
+		double[][] values = new double[N][P];
+		for (int i = 0; i < N; i++)
+			for (int k = 0; k < P; k++)
+				values[i][k] = i == CONSTANT ? 2.5 : random.nextGaussian() + (i % 4) * Math.cos(k);
+		return values;
+	}
+	
+	static CorticalPatchMatrix createPatches(double[][] values){
+		CorticalPatchMatrix patches = new CorticalPatchMatrix(N, P);
+		for (int i = 0; i < N; i++)
+			patches.setPatch(i, i == INVALID ? null : values[i]);
+		return patches;
+	}
+	
+	static double pearson(double[] x, double[] y){
+		double mx = 0, my = 0;
+		for (int k = 0; k < P; k++){
+			mx += x[k];
+			my += y[k];
+			}
+		mx /= P;
+		my /= P;
+		double sxy = 0, sxx = 0, syy = 0;
+		for (int k = 0; k < P; k++){
+			sxy += (x[k] - mx) * (y[k] - my);
+			sxx += (x[k] - mx) * (x[k] - mx);
+			syy += (y[k] - my) * (y[k] - my);
+			}
+		return sxy / Math.sqrt(sxx * syy);
+	}
+	
+	static double expected(double[][] values, int i, int j){
+		if (i == INVALID || j == INVALID || i == CONSTANT || j == CONSTANT) return Double.NaN;
+		if (i == j) return 1;
+		return pearson(values[i], values[j]);
+	}
+	
+	@Test
+	public void correlationMatchesPearson(){
+		double[][] values = createValues();
+		CorticalPatchMatrix patches = createPatches(values);
+		
+		assertFalse(patches.isValid(INVALID));
+		assertFalse(patches.isValid(CONSTANT));
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				assertEquals(expected(values, i, j), patches.getCorrelation(i, j), 1e-12);
+	}
+	
+	@Test
+	public void setPatchRevalidatesRow(){
+		double[][] values = createValues();
+		CorticalPatchMatrix patches = createPatches(values);
+		
+		assertTrue(patches.setPatch(INVALID, values[0]));
+		assertEquals(1, patches.getCorrelation(INVALID, 0), 1e-12);
+		assertFalse(patches.setPatch(INVALID, null));
+		assertTrue(Double.isNaN(patches.getCorrelation(INVALID, 0)));
+		double[] z = patches.getNormalizedValues();
+		for (int k = 0; k < P; k++)
+			assertEquals(0, z[INVALID * P + k], 0);
+	}
+	
+	@Test
+	public void correlationMatrixMatchesAcrossThreads(){
+		double[][] values = createValues();
+		CorticalPatchMatrix patches = createPatches(values);
+		
+		int block_size = CorticalPatchMatrix.BLOCK_SIZE;
+		try{
+			// A block size which does not divide N leaves a partial last block
+			CorticalPatchMatrix.BLOCK_SIZE = 32;
+			for (int n_threads : new int[]{1, 4}){
+				Matrix C = patches.getCorrelationMatrix(n_threads);
+				for (int i = 0; i < N; i++)
+					for (int j = 0; j < N; j++)
+						assertEquals(patches.getCorrelation(i, j), C.get(i, j), 0);
+				}
+		}finally{
+			CorticalPatchMatrix.BLOCK_SIZE = block_size;
+			}
+	}
+	
+	@Test
+	public void correlationRowsFromColumn(){
+		double[][] values = createValues();
+		CorticalPatchMatrix patches = createPatches(values);
+		
+		int row0 = 5, row1 = 40, col0 = 37;
+		float[] out = new float[(row1 - row0) * N];
+		Arrays.fill(out, -2);
+		patches.getCorrelationRows(row0, row1, col0, out);
+		for (int i = row0; i < row1; i++)
+			for (int j = 0; j < N; j++){
+				float r = out[(i - row0) * N + j];
+				if (j < col0)
+					assertEquals(-2, r, 0);
+				else
+					assertEquals((float)patches.getCorrelation(i, j), r, 0);
+				}
+		
+		patches.getCorrelationRows(row0, row1, out);
+		for (int i = row0; i < row1; i++)
+			for (int j = 0; j < N; j++)
+				assertEquals((float)patches.getCorrelation(i, j), out[(i - row0) * N + j], 0);
+	}
+	
+	@Test
+	public void correlationsBlock(){
+		double[][] values = createValues();
+		CorticalPatchMatrix patches = createPatches(values);
+		
+		int row0 = 60, row1 = 80, col0 = 3, col1 = 20;
+		double[][] out = new double[row1 - row0][col1 - col0];
+		patches.getCorrelations(row0, row1, col0, col1, out);
+		for (int i = row0; i < row1; i++)
+			for (int j = col0; j < col1; j++)
+				assertEquals(expected(values, i, j), out[i - row0][j - col0], 1e-12);
+	}
+	
+}
@@ -0,0 +1,199 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.connectivity;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import Jama.Matrix;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests {@link PatchCorrelationResampler}: observed statistics against direct computation, detection of
+ * a group difference, and reproducibility of permutations and bootstraps across runs and thread counts.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class PatchCorrelationResamplerTest {
+
+	static final int N = 30;
+	static final int P = 15;
+	static final int SUBJECTS = 24;
+	
+	/*********************************
+	 * Creates subjects in two alternating groups; in group 1, patches 0 to 4 share a strong common signal.
+	 * 
+	 */
+	static ArrayList<CorticalPatchMatrix> createSubjects(int[] groups){
+		Random random = new Random(5);
+		ArrayList<CorticalPatchMatrix> subjects = new ArrayList<CorticalPatchMatrix>();
+		for (int s = 0; s < SUBJECTS; s++){
+			groups[s] = s % 2;
+			CorticalPatchMatrix patches = new CorticalPatchMatrix(N, P);
+			double[] base = new double[P];
+			for (int k = 0; k < P; k++)
+				base[k] = random.nextGaussian();
+			double[] values = new double[P];
+			for (int i = 0; i < N; i++){
+				double c = i < 5 && groups[s] == 1 ? 2 : 0.2;
+				for (int k = 0; k < P; k++)
+					values[k] = c * base[k] + random.nextGaussian();
+				patches.setPatch(i, values);
+				}
+			subjects.add(patches);
+			}
+		return subjects;
+	}
+	
+	@Test
+	public void observedMatchesGroupMeans(){
+		int[] groups = new int[SUBJECTS];
+		ArrayList<CorticalPatchMatrix> subjects = createSubjects(groups);
+		PatchCorrelationResampler resampler = new PatchCorrelationResampler(subjects);
+		assertEquals(N, resampler.getPatchCount());
+		assertEquals(SUBJECTS, resampler.getSubjectCount());
+		
+		Matrix difference = resampler.permute(groups, 10, 1, null).getObserved();
+		Matrix mean = resampler.bootstrap(10, 1, null).getObserved();
+		for (int i = 0; i < N; i++)
+			for (int j = i + 1; j < N; j++){
+				double m1 = 0, m0 = 0, m = 0;
+				for (int s = 0; s < SUBJECTS; s++){
+					double z = PatchCorrelationResampler.fisher(subjects.get(s).getCorrelation(i, j));
+					if (groups[s] == 1) m1 += z;
+					else m0 += z;
+					m += z;
+					}
+				assertEquals(2 * (m1 - m0) / SUBJECTS, difference.get(i, j), 1e-6);
+				assertEquals(difference.get(i, j), difference.get(j, i), 0);
+				assertEquals(m / SUBJECTS, mean.get(i, j), 1e-6);
+				}
+	}
+	
+	@Test
+	public void permutationIsReproducible(){
+		int[] groups = new int[SUBJECTS];
+		PatchCorrelationResampler resampler = new PatchCorrelationResampler(createSubjects(groups));
+		
+		int threads = PatchCorrelationResampler.resampling_threads;
+		try{
+			PatchCorrelationResampler.resampling_threads = 1;
+			PatchCorrelationResampler.PermutationResult single = resampler.permute(groups, 500, 42, null);
+			PatchCorrelationResampler.resampling_threads = 4;
+			PatchCorrelationResampler.PermutationResult multi = resampler.permute(groups, 500, 42, null);
+			PatchCorrelationResampler.PermutationResult again = resampler.permute(groups, 500, 42, null);
+			
+			assertEquals(500, multi.getPermutationCount());
+			assertArrayEquals(single.getMaxNull(), multi.getMaxNull(), 0);
+			assertArrayEquals(multi.getMaxNull(), again.getMaxNull(), 0);
+			assertMatrixEquals(single.getUncorrectedP(), multi.getUncorrectedP());
+			assertMatrixEquals(multi.getUncorrectedP(), again.getUncorrectedP());
+			assertMatrixEquals(single.getCorrectedP(), multi.getCorrectedP());
+		}finally{
+			PatchCorrelationResampler.resampling_threads = threads;
+			}
+	}
+	
+	@Test
+	public void permutationDetectsGroupDifference(){
+		int[] groups = new int[SUBJECTS];
+		PatchCorrelationResampler resampler = new PatchCorrelationResampler(createSubjects(groups));
+		PatchCorrelationResampler.PermutationResult result = resampler.permute(groups, 1000, 7, null);
+		
+		Matrix p = result.getUncorrectedP();
+		Matrix p_fwe = result.getCorrectedP();
+		assertTrue(p.get(0, 1) < 0.01);
+		assertTrue(p_fwe.get(0, 1) < 0.05);
+		for (int i = 0; i < N; i++)
+			for (int j = i + 1; j < N; j++){
+				assertTrue(p.get(i, j) > 0 && p.get(i, j) <= 1);
+				assertTrue(p_fwe.get(i, j) >= p.get(i, j));
+				}
+		assertTrue(Double.isNaN(p.get(3, 3)));
+	}
+	
+	@Test
+	public void bootstrapIsReproducible(){
+		int[] groups = new int[SUBJECTS];
+		PatchCorrelationResampler resampler = new PatchCorrelationResampler(createSubjects(groups));
+		
+		int threads = PatchCorrelationResampler.resampling_threads;
+		try{
+			PatchCorrelationResampler.resampling_threads = 1;
+			PatchCorrelationResampler.BootstrapResult single = resampler.bootstrap(500, 3, null);
+			PatchCorrelationResampler.resampling_threads = 4;
+			PatchCorrelationResampler.BootstrapResult multi = resampler.bootstrap(500, 3, null);
+			
+			// Sums may differ in the last digits, due to the order of summation
+			Matrix mean_1 = single.getMean(), mean_4 = multi.getMean();
+			Matrix se_1 = single.getStandardError(), se_4 = multi.getStandardError();
+			Matrix observed = multi.getObserved();
+			for (int i = 0; i < N; i++)
+				for (int j = i + 1; j < N; j++){
+					assertEquals(mean_1.get(i, j), mean_4.get(i, j), 1e-9);
+					assertEquals(se_1.get(i, j), se_4.get(i, j), 1e-9);
+					assertTrue(se_4.get(i, j) > 0);
+					assertEquals(observed.get(i, j), mean_4.get(i, j), 4 * se_4.get(i, j));
+					}
+		}finally{
+			PatchCorrelationResampler.resampling_threads = threads;
+			}
+	}
+	
+	@Test
+	public void rejectsInvalidInput(){
+		int[] groups = new int[SUBJECTS];
+		ArrayList<CorticalPatchMatrix> subjects = createSubjects(groups);
+		PatchCorrelationResampler resampler = new PatchCorrelationResampler(subjects);
+		
+		assertNull(resampler.permute(new int[SUBJECTS - 1], 10, 1, null));
+		assertNull(resampler.permute(new int[SUBJECTS], 10, 1, null));
+		groups[0] = 2;
+		assertNull(resampler.permute(groups, 10, 1, null));
+		
+		subjects.add(new CorticalPatchMatrix(N + 1, P));
+		try{
+			new PatchCorrelationResampler(subjects);
+			fail("Expected an IllegalArgumentException for mismatched patch counts.");
+		}catch (IllegalArgumentException ex){
+			// expected
+			}
+	}
+	
+	static void assertMatrixEquals(Matrix expected, Matrix actual){
+		for (int i = 0; i < N; i++)
+			for (int j = 0; j < N; j++)
+				assertEquals(expected.get(i, j), actual.get(i, j), 0);
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that {@link GaussianKernelTable} evaluates both kernels to within its stated error bound of
+ * A / (8 * resolution<sup>2</sup>), and times it against direct evaluation.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class GaussianKernelTableTest {
+
+	@Test
+	public void valuesWithinErrorBound(){
+		Random random = new Random(11);
+		for (GaussianKernelTable.Kernel kernel : GaussianKernelTable.Kernel.values()){
+			for (double sigma : new double[]{0.3, 1, 4.5}){
+				for (int resolution : new int[]{16, 64, GaussianKernelTable.DEFAULT_RESOLUTION}){
+					double max_x = 4 * sigma;
+					GaussianKernelTable table = new GaussianKernelTable(kernel, sigma, max_x, resolution);
+					double peak = table.getExact(0);
+					double bound = peak / (8.0 * resolution * resolution) + 1e-15 * peak;
+					assertTrue(table.getMaxError() <= bound);
+					for (int s = 0; s < 10000; s++){
+						double x = (2 * random.nextDouble() - 1) * max_x;
+						assertEquals(table.getExact(x), table.evaluate(x), bound);
+						}
+					// Outside the table, values are exact
+					assertEquals(table.getExact(5 * sigma), table.evaluate(-5 * sigma), 0);
+					}
+				}
+			}
+	}
+	
+	@Test
+	public void evaluationBenchmark(){
+		GaussianKernelTable table = new GaussianKernelTable(GaussianKernelTable.Kernel.Gaussian2, 1.5, 6, 
+															 GaussianKernelTable.DEFAULT_RESOLUTION);
+		int n = 1 << 20;
+		double[] x = new double[n];
+		Random random = new Random(5);
+		for (int i = 0; i < n; i++)
+			x[i] = 6 * random.nextDouble();
+		
+		double exact = 0, tabulated = 0;
+		long exact_time = Long.MAX_VALUE, table_time = Long.MAX_VALUE;
+		for (int r = 0; r < 5; r++){
+			long start = System.nanoTime();
+			exact = 0;
+			for (int i = 0; i < n; i++)
+				exact += table.getExact(x[i]);
+			exact_time = Math.min(exact_time, System.nanoTime() - start);
+			
+			start = System.nanoTime();
+			tabulated = 0;
+			for (int i = 0; i < n; i++)
+				tabulated += table.evaluate(x[i]);
+			table_time = Math.min(table_time, System.nanoTime() - start);
+			}
+		
+		System.out.println("GaussianKernelTable: " + n + " evaluations; exact " + (exact_time / 1000000.0) + 
+						   " ms, table " + (table_time / 1000000.0) + " ms.");
+		assertEquals(exact, tabulated, n * table.getMaxError());
+	}
+	
+}
@@ -0,0 +1,230 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import mgui.geometry.Mesh3D;
+
+import org.jogamp.vecmath.Point3f;
+import org.junit.Test;
+
+/*****************************************************
+ * Tests {@link GeodesicSearch} and {@link GeodesicNeighbourhoodIndex} against a brute-force Dijkstra
+ * search over the edges of a jittered, triangulated sheet.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class GeodesicSearchTest {
+
+	static final int W = 30;
+	
+	@Test
+	public void searchMatchesDijkstra(){
+		Mesh3D mesh = createSheet(new Random(22));
+		int[][] neighbours = getNeighbours(mesh);
+		GeodesicSearch search = new GeodesicSearch(mesh);
+		
+		for (int source = 0; source < mesh.n; source += 7){
+			double[] expected = dijkstra(mesh, neighbours, source);
+			int count = search.search(source, 5.0, Integer.MAX_VALUE);
+			assertEquals(count, search.getCount());
+			int n_within = 0;
+			for (int i = 0; i < mesh.n; i++)
+				if (expected[i] <= 5.0) n_within++;
+			assertEquals(n_within, count);
+			
+			int[] indices = search.getIndices();
+			double[] distances = search.getDistances();
+			assertEquals(source, indices[0]);
+			assertEquals(0, distances[0], 0);
+			for (int k = 0; k < count; k++){
+				assertEquals(expected[indices[k]], distances[k], 1e-9);
+				if (k > 0) assertTrue(distances[k] >= distances[k - 1]);
+				}
+			}
+	}
+	
+	@Test
+	public void searchStopsAtMaxCount(){
+		Mesh3D mesh = createSheet(new Random(23));
+		int[][] neighbours = getNeighbours(mesh);
+		GeodesicSearch search = new GeodesicSearch(mesh);
+		
+		for (int source = 3; source < mesh.n; source += 11){
+			double[] expected = dijkstra(mesh, neighbours, source);
+			Arrays.sort(expected);
+			int count = search.search(source, Double.POSITIVE_INFINITY, 15);
+			assertEquals(15, count);
+			for (int k = 0; k < count; k++)
+				assertEquals(expected[k], search.getDistances()[k], 1e-9);
+			}
+	}
+	
+	@Test
+	public void indexMatchesSearch() throws IOException{
+		Mesh3D mesh = createSheet(new Random(24));
+		GeodesicSearch search = new GeodesicSearch(mesh);
+		
+		// More vertices than one index block, built on several threads
+		GeodesicNeighbourhoodIndex index = GeodesicNeighbourhoodIndex.build(mesh, 4.0, 30, 3, null);
+		assertNotNull(index);
+		assertEquals(mesh.n, index.getVertexCount());
+		int[] row_ptr = index.getRowPointers();
+		int[] col_idx = index.getNeighbourIndices();
+		float[] distances = index.getDistances();
+		for (int i = 0; i < mesh.n; i++){
+			int count = search.search(i, 4.0, 30);
+			assertEquals(count, index.getCount(i));
+			assertEquals(count, row_ptr[i + 1] - row_ptr[i]);
+			for (int k = 0; k < count; k++){
+				assertEquals(search.getIndices()[k], col_idx[row_ptr[i] + k]);
+				assertEquals((float)search.getDistances()[k], distances[row_ptr[i] + k], 0);
+				}
+			assertEquals(search.search(i, 2.5, 10), index.getCount(i, 2.5, 10));
+			}
+		
+		File file = File.createTempFile("geodesic", ".idx");
+		try{
+			index.write(file);
+			GeodesicNeighbourhoodIndex read = GeodesicNeighbourhoodIndex.read(file);
+			assertEquals(index.getRadius(), read.getRadius(), 0);
+			assertEquals(index.getMaxCount(), read.getMaxCount());
+			assertArrayEquals(row_ptr, read.getRowPointers());
+			assertArrayEquals(col_idx, read.getNeighbourIndices());
+			assertArrayEquals(distances, read.getDistances(), 0);
+		}finally{
+			file.delete();
+			}
+	}
+	
+	@Test
+	public void getIndexUsesCache() throws IOException{
+		Mesh3D mesh = createSheet(new Random(25));
+		
+		File cache_dir = GeodesicNeighbourhoodIndex.cache_dir;
+		File dir = File.createTempFile("geodesic", "");
+		dir.delete();
+		try{
+			GeodesicNeighbourhoodIndex.cache_dir = dir;
+			GeodesicNeighbourhoodIndex.last_index = null;
+			GeodesicNeighbourhoodIndex index = GeodesicNeighbourhoodIndex.getIndex(mesh, 4.0, 30, null);
+			assertNotNull(index);
+			assertEquals(1, dir.listFiles().length);
+			
+			// A smaller neighbourhood is covered by the index in memory
+			assertSame(index, GeodesicNeighbourhoodIndex.getIndex(mesh, 3.0, 20, null));
+			
+			// Otherwise it is read from the disk cache
+			GeodesicNeighbourhoodIndex.last_index = null;
+			GeodesicNeighbourhoodIndex read = GeodesicNeighbourhoodIndex.getIndex(mesh, 4.0, 30, null);
+			assertTrue(read != index);
+			assertArrayEquals(index.getRowPointers(), read.getRowPointers());
+			assertArrayEquals(index.getNeighbourIndices(), read.getNeighbourIndices());
+		}finally{
+			GeodesicNeighbourhoodIndex.cache_dir = cache_dir;
+			GeodesicNeighbourhoodIndex.last_index = null;
+			File[] files = dir.listFiles();
+			if (files != null)
+				for (File file : files)
+					file.delete();
+			dir.delete();
+			}
+	}
+	
+	static double[] dijkstra(Mesh3D mesh, int[][] neighbours, int source){
+		int n = mesh.n;
+		double[] d = new double[n];
+		boolean[] done = new boolean[n];
+		Arrays.fill(d, Double.POSITIVE_INFINITY);
+		d[source] = 0;
+		for (int it = 0; it < n; it++){
+			int v = -1;
+			for (int i = 0; i < n; i++)
+				if (!done[i] && (v < 0 || d[i] < d[v])) v = i;
+			done[v] = true;
+			for (int u : neighbours[v]){
+				double dx = mesh.nodes[u * 3] - mesh.nodes[v * 3];
+				double dy = mesh.nodes[u * 3 + 1] - mesh.nodes[v * 3 + 1];
+				double dz = mesh.nodes[u * 3 + 2] - mesh.nodes[v * 3 + 2];
+				d[u] = Math.min(d[u], d[v] + Math.sqrt(dx * dx + dy * dy + dz * dz));
+				}
+			}
+		return d;
+	}
+	
+	static int[][] getNeighbours(Mesh3D mesh){
+		ArrayList<ArrayList<Integer>> lists = new ArrayList<ArrayList<Integer>>();
+		for (int i = 0; i < mesh.n; i++)
+			lists.add(new ArrayList<Integer>());
+		for (int f = 0; f < mesh.f; f++)
+			for (int j = 0; j < 3; j++){
+				int a = mesh.faces[f * 3 + j], b = mesh.faces[f * 3 + (j + 1) % 3];
+				if (!lists.get(a).contains(b)) lists.get(a).add(b);
+				if (!lists.get(b).contains(a)) lists.get(b).add(a);
+				}
+		int[][] neighbours = new int[mesh.n][];
+		for (int i = 0; i < mesh.n; i++){
+			neighbours[i] = new int[lists.get(i).size()];
+			for (int k = 0; k < neighbours[i].length; k++)
+				neighbours[i][k] = lists.get(i).get(k);
+			}
+		return neighbours;
+	}
+	
+	/*********************************
+	 * Creates a W x W sheet of unit spacing, with vertices jittered by up to 0.3 in each direction, 
+	 * and each square split into two triangles.
+	 * 
+	 */
+	static Mesh3D createSheet(Random random){
+		Mesh3D mesh = new Mesh3D();
+		for (int y = 0; y < W; y++)
+			for (int x = 0; x < W; x++)
+				mesh.addVertex(new Point3f(x + 0.3f * random.nextFloat(), 
+										   y + 0.3f * random.nextFloat(), 
+										   0.3f * random.nextFloat()));
+		for (int y = 0; y < W - 1; y++)
+			for (int x = 0; x < W - 1; x++){
+				int a = y * W + x;
+				mesh.addFace(a, a + 1, a + W + 1);
+				mesh.addFace(a, a + W + 1, a + W);
+				}
+		mesh.finalize();
+		return mesh;
+	}
+	
+}
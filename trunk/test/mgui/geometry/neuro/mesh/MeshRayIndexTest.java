@@ -0,0 +1,186 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mgui.geometry.Mesh3D;
+import mgui.geometry.mesh.MeshFunctions;
+
+import org.jogamp.vecmath.Point3f;
+import org.jogamp.vecmath.Vector3f;
+import org.junit.Test;
+
+/*****************************************************
+ * Tests {@link MeshRayIndex} against brute-force intersection with the full mesh, for random rays on a 
+ * small, irregular sphere, including rays which miss it and rays which graze its vertices and edges.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class MeshRayIndexTest {
+
+	static final float RADIUS = 10;
+	
+	@Test
+	public void matchesBruteForce(){
+		Random random = new Random(15);
+		Mesh3D mesh = createSphere(12, 20, random);
+		MeshRayIndex index = new MeshRayIndex(mesh);
+		
+		int hits = 0, misses = 0;
+		for (int r = 0; r < 400; r++){
+			Point3f p = new Point3f();
+			Vector3f v = new Vector3f();
+			switch (r % 4){
+				case 0:
+					// Random ray, which may or may not hit
+					p.set(uniform(random, 15), uniform(random, 15), uniform(random, 15));
+					v = getRandomDirection(random);
+					break;
+				case 1:
+					// Outside, pointing away
+					v = getRandomDirection(random);
+					p.scale(2 * RADIUS, v);
+					break;
+				case 2:
+					// Through a vertex or an edge mid-point of a random face
+					Point3f target = getFacePoint(mesh, random.nextInt(mesh.f), random.nextBoolean());
+					v = getRandomDirection(random);
+					p.scaleAdd(-3 * RADIUS, v, target);
+					break;
+				default:
+					// Axis-aligned, through a face point; some direction components are zero
+					target = getFacePoint(mesh, random.nextInt(mesh.f), random.nextBoolean());
+					v.set(0, 0, 0);
+					switch (random.nextInt(3)){
+						case 0: v.x = 1; break;
+						case 1: v.y = 1; break;
+						default: v.z = 1;
+						}
+					p.scaleAdd(-3 * RADIUS, v, target);
+				}
+			
+			Point3f expected = MeshFunctions.getIntersectionPoint(mesh, p, v);
+			Point3f actual = index.getIntersectionPoint(p, v);
+			if (expected == null){
+				assertNull(actual);
+				misses++;
+			}else{
+				assertEquals(expected.x, actual.x, 0);
+				assertEquals(expected.y, actual.y, 0);
+				assertEquals(expected.z, actual.z, 0);
+				hits++;
+				}
+			
+			// Every face which the ray hits must be a candidate
+			int[] candidates = index.getCandidateFaces(p, v);
+			for (int f = 0; f < mesh.f; f++)
+				if (MeshFunctions.getIntersectionPoint(getFace(mesh, f), p, v) != null)
+					assertTrue(Arrays.binarySearch(candidates, f) >= 0);
+			}
+		
+		assertTrue(hits > 0);
+		assertTrue(misses > 0);
+	}
+	
+	static float uniform(Random random, float max){
+		return (2 * random.nextFloat() - 1) * max;
+	}
+	
+	static Vector3f getRandomDirection(Random random){
+		Vector3f v = new Vector3f((float)random.nextGaussian(), (float)random.nextGaussian(), 
+								  (float)random.nextGaussian());
+		v.normalize();
+		return v;
+	}
+	
+	/*********************************
+	 * Returns the first vertex of face <code>f</code>, or the mid-point of its first edge.
+	 * 
+	 */
+	static Point3f getFacePoint(Mesh3D mesh, int f, boolean vertex){
+		Point3f a = getNode(mesh, mesh.faces[f * 3]);
+		if (vertex) return a;
+		Point3f b = getNode(mesh, mesh.faces[f * 3 + 1]);
+		a.interpolate(b, 0.5f);
+		return a;
+	}
+	
+	static Point3f getNode(Mesh3D mesh, int node){
+		return new Point3f(mesh.nodes[node * 3], mesh.nodes[node * 3 + 1], mesh.nodes[node * 3 + 2]);
+	}
+	
+	static Mesh3D getFace(Mesh3D mesh, int f){
+		Mesh3D face = new Mesh3D();
+		for (int j = 0; j < 3; j++)
+			face.addVertex(getNode(mesh, mesh.faces[f * 3 + j]));
+		face.addFace(0, 1, 2);
+		face.finalize();
+		return face;
+	}
+	
+	/*********************************
+	 * Creates a sphere of <code>n_lat</code> rings of <code>n_lon</code> vertices between two poles, 
+	 * with radii jittered by up to 10%.
+	 * 
+	 */
+	static Mesh3D createSphere(int n_lat, int n_lon, Random random){
+		Mesh3D mesh = new Mesh3D();
+		mesh.addVertex(new Point3f(0, 0, RADIUS));
+		for (int i = 1; i <= n_lat; i++){
+			double theta = Math.PI * i / (n_lat + 1);
+			for (int j = 0; j < n_lon; j++){
+				double phi = 2 * Math.PI * j / n_lon;
+				float r = RADIUS * (1 + 0.1f * uniform(random, 1));
+				mesh.addVertex(new Point3f((float)(r * Math.sin(theta) * Math.cos(phi)), 
+										   (float)(r * Math.sin(theta) * Math.sin(phi)),
+										   (float)(r * Math.cos(theta))));
+				}
+			}
+		mesh.addVertex(new Point3f(0, 0, -RADIUS));
+		int south = n_lat * n_lon + 1;
+		for (int j = 0; j < n_lon; j++){
+			int j1 = (j + 1) % n_lon;
+			mesh.addFace(0, 1 + j, 1 + j1);
+			for (int i = 0; i < n_lat - 1; i++){
+				int a = 1 + i * n_lon;
+				int b = a + n_lon;
+				mesh.addFace(a + j, b + j, b + j1);
+				mesh.addFace(a + j, b + j1, a + j1);
+				}
+			int a = 1 + (n_lat - 1) * n_lon;
+			mesh.addFace(a + j, south, a + j1);
+			}
+		mesh.finalize();
+		return mesh;
+	}
+	
+}
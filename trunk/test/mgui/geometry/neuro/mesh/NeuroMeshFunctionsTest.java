@@ -0,0 +1,455 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import mgui.geometry.Box3D;
+import mgui.geometry.Grid3D;
+import mgui.geometry.Mesh3D;
+import mgui.geometry.util.GeometryFunctions;
+import mgui.interfaces.shapes.Mesh3DInt;
+import mgui.interfaces.shapes.Volume3DInt;
+import mgui.numbers.MguiDouble;
+import mgui.numbers.MguiNumber;
+import mgui.stats.StatFunctions;
+
+import org.jogamp.vecmath.Point3f;
+import org.jogamp.vecmath.Vector3f;
+import org.junit.Test;
+
+/*****************************************************
+ * Tests the parallel surface-volume mapping functions of {@link NeuroMeshFunctions} against their
+ * serial results and the original serial implementations, and the primitive buffers used by their 
+ * workers.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class NeuroMeshFunctionsTest {
+
+	//enough vertices for four mapping threads
+	static final int SHEET_SIZE = 80;
+	
+	@Test
+	public void cortexToVolumeParallelMatchesSerial(){
+		
+		Mesh3DInt mesh_int = createSheet(SHEET_SIZE);
+		Volume3DInt volume = createVolume(SHEET_SIZE);
+		
+		int threads = NeuroMeshFunctions.mapping_threads;
+		int debug_index = NeuroMeshFunctions.debug_index;
+		try{
+			//original serial implementation
+			NeuroMeshFunctions.debug_index = 0;
+			Volume3DInt serial = mapCortexToVolume(mesh_int, volume);
+			NeuroMeshFunctions.debug_index = -1;
+			
+			NeuroMeshFunctions.mapping_threads = 1;
+			Volume3DInt single = mapCortexToVolume(mesh_int, volume);
+			NeuroMeshFunctions.mapping_threads = 4;
+			Volume3DInt parallel = mapCortexToVolume(mesh_int, volume);
+			Volume3DInt repeated = mapCortexToVolume(mesh_int, volume);
+			
+			int size = volume.getGrid().getSize();
+			int mapped = 0;
+			for (int i = 0; i < size; i++){
+				double s = getValue(single, "_denom", i);
+				if (s > 0) mapped++;
+				
+				//same thread count; identical
+				assertEquals(getValue(parallel, "mapped", i), getValue(repeated, "mapped", i), 0);
+				
+				//different thread counts; rounding only
+				assertEquals(s, getValue(parallel, "_denom", i), 1e-12 * Math.max(1, s));
+				assertEquals(getValue(single, "mapped", i), getValue(parallel, "mapped", i), 1e-12);
+				
+				//serial implementation projects in single precision
+				assertEquals(getValue(serial, "_denom", i), s, 1e-4 * Math.max(1, s));
+				assertEquals(getValue(serial, "mapped", i), getValue(single, "mapped", i), 1e-4);
+				}
+			assertTrue(mapped > 0);
+		}finally{
+			NeuroMeshFunctions.mapping_threads = threads;
+			NeuroMeshFunctions.debug_index = debug_index;
+			}
+	}
+	
+	@Test
+	public void tiledAccumulatorMatchesDenseSums(){
+		
+		//not a multiple of the tile size; only some tiles touched
+		int size = 5 * NeuroMeshFunctions.TiledVoxelAccumulator.TILE + 17;
+		NeuroMeshFunctions.TiledVoxelAccumulator[] accumulators = new NeuroMeshFunctions.TiledVoxelAccumulator[]{
+				new NeuroMeshFunctions.TiledVoxelAccumulator(size, false),
+				new NeuroMeshFunctions.TiledVoxelAccumulator(size, true)};
+		double[] sum = new double[size];
+		double[] denom = new double[size];
+		
+		Random random = new Random(1);
+		for (int n = 0; n < 20000; n++){
+			int index = random.nextInt(size);
+			if (index / NeuroMeshFunctions.TiledVoxelAccumulator.TILE == 2) continue;
+			double value = random.nextDouble(), weight = random.nextDouble();
+			sum[index] += value;
+			denom[index] += weight;
+			for (int a = 0; a < accumulators.length; a++)
+				accumulators[a].add(index, value, weight);
+			}
+		
+		assertEquals(6, NeuroMeshFunctions.TiledVoxelAccumulator.getTileCount(size));
+		assertTrue(accumulators[0].d_tiles[2] == null);
+		for (int a = 0; a < accumulators.length; a++){
+			double delta = accumulators[a].single ? 1e-5 : 1e-12;
+			
+			//reduce in two tile-aligned ranges, onto non-zero totals
+			double[] a_sum = new double[size], a_denom = new double[size];
+			Arrays.fill(a_sum, 1);
+			int mid = 3 * NeuroMeshFunctions.TiledVoxelAccumulator.TILE;
+			accumulators[a].reduce(0, mid, a_sum, a_denom);
+			accumulators[a].reduce(mid, size, a_sum, a_denom);
+			for (int i = 0; i < size; i++){
+				assertEquals(sum[i] + 1, a_sum[i], delta);
+				assertEquals(denom[i], a_denom[i], delta);
+				}
+			}
+	}
+	
+	@Test
+	public void volumeSamplerMatchesVolume(){
+		
+		Volume3DInt volume = createVolume(8);
+		volume.addVertexData("t1", DataBuffer.TYPE_DOUBLE);
+		Grid3D grid = volume.getGrid();
+		int size = grid.getSize();
+		for (int i = 0; i < size; i++)
+			volume.setDatumAtVertex("t1", i, (i * 37) % 101);
+		
+		VolumeSampler sampler = new VolumeSampler(volume, "t1");
+		Random random = new Random(2);
+		for (int n = 0; n < 200; n++){
+			int[] voxel = new int[]{random.nextInt(16), random.nextInt(16), random.nextInt(12)};
+			double expected = volume.getDatumAtVertex("t1", grid.getAbsoluteIndex(voxel[0], voxel[1], voxel[2])).getValue();
+			assertEquals(expected, sampler.getValue(voxel[0], voxel[1], voxel[2]), 0);
+			assertEquals(expected, sampler.getValueAtPoint(grid.getVoxelMidPoint(voxel[0], voxel[1], voxel[2])), 0);
+			
+			//a kernel narrower than a voxel only sees the centre voxel
+			assertEquals(expected, sampler.getGaussianSmoothedValue(voxel, new Vector3f(0, 0, 1), 0.1, 0.1, 3), 0);
+			}
+		assertTrue(Double.isNaN(sampler.getValueAtPoint(new Point3f(-100, 0, 0))));
+		
+		//a constant volume is unchanged by smoothing
+		for (int i = 0; i < size; i++)
+			volume.setDatumAtVertex("t1", i, 5);
+		sampler = new VolumeSampler(volume, "t1");
+		assertEquals(5, sampler.getGaussianSmoothedValue(new int[]{8, 8, 6}, new Vector3f(1, 1, 0), 2, 1, 3), 1e-12);
+	}
+	
+	@Test
+	public void volumeToCortexMatchesOriginal(){
+		
+		Mesh3DInt mesh_int = createSheet(SHEET_SIZE);
+		Volume3DInt volume = createVolume(SHEET_SIZE);
+		volume.addVertexData("data", DataBuffer.TYPE_DOUBLE);
+		Grid3D grid = volume.getGrid();
+		int size = grid.getSize();
+		for (int i = 0; i < size; i++)
+			volume.setDatumAtVertex("data", i, Math.sin(0.01 * i) + 0.1 * (i % 7));
+		
+		int threads = NeuroMeshFunctions.mapping_threads;
+		try{
+			NeuroMeshFunctions.mapping_threads = 4;
+			ArrayList<MguiNumber> mapped = NeuroMeshFunctions.mapGrid3DToCortexGaussianBlocking(mesh_int.getMesh(), 
+														volume, "data", 1.0, 2.0, 3.0, 3.0, new Double(1.0), 
+														false, null, false, null);
+			double[] expected = mapVolumeToCortexOriginal(mesh_int.getMesh(), volume, "data", 
+														  1.0, 2.0, 3.0, 3.0, 1.0);
+			assertEquals(expected.length, mapped.size());
+			for (int m = 0; m < expected.length; m++)
+				assertEquals("vertex " + m, expected[m], mapped.get(m).getValue(), 1e-5);
+		}finally{
+			NeuroMeshFunctions.mapping_threads = threads;
+			}
+	}
+	
+	@Test
+	public void voxelMidPointsMatchGrid(){
+		Grid3D grid = createVolume(8).getGrid();
+		NeuroMeshFunctions.VoxelMidPoints mid_points = new NeuroMeshFunctions.VoxelMidPoints(grid);
+		Point3f p = new Point3f();
+		for (int i = 0; i < grid.getSizeS(); i++)
+			for (int j = 0; j < grid.getSizeT(); j++)
+				for (int k = 0; k < grid.getSizeR(); k++){
+					mid_points.get(i, j, k, p);
+					Point3f expected = grid.getVoxelMidPoint(i, j, k);
+					assertTrue(expected.distance(p) < 1e-5);
+					}
+	}
+	
+	@Test
+	public void mapTimeSeriesMatchesOperator(){
+		Grid3D grid = createVolume(4).getGrid();
+		int n_vertices = 50;
+		SurfaceVolumeTransferOperator operator = createRandomOperator(n_vertices, grid.getSize(), 17);
+		
+		int buffers = NeuroMeshFunctions.time_series_buffers;
+		try{
+			for (int b = 1; b <= 3; b++){
+				NeuroMeshFunctions.time_series_buffers = b;
+				TestTimeSeries series = new TestTimeSeries(grid, 7, -1);
+				CollectingSink sink = new CollectingSink();
+				assertTrue(NeuroMeshFunctions.mapTimeSeries(operator, series, sink, null));
+				assertTrue(sink.closed);
+				assertEquals(7, sink.written);
+				
+				double[] x = new double[grid.getSize()];
+				for (int t = 0; t < 7; t++){
+					series.fill(t, x);
+					double[] expected = operator.apply(x);
+					for (int i = 0; i < n_vertices; i++)
+						assertEquals((float)expected[i], sink.values[t][i], 0);
+					}
+				}
+		}finally{
+			NeuroMeshFunctions.time_series_buffers = buffers;
+			}
+	}
+	
+	@Test
+	public void mapTimeSeriesStopsOnReadError(){
+		Grid3D grid = createVolume(4).getGrid();
+		SurfaceVolumeTransferOperator operator = createRandomOperator(20, grid.getSize(), 19);
+		CollectingSink sink = new CollectingSink();
+		assertFalse(NeuroMeshFunctions.mapTimeSeries(operator, new TestTimeSeries(grid, 7, 3), sink, null));
+		assertTrue(sink.closed);
+		assertEquals(3, sink.written);
+	}
+	
+	/*********************************
+	 * Returns an operator with up to 8 random entries per row.
+	 * 
+	 */
+	static SurfaceVolumeTransferOperator createRandomOperator(int n_rows, int n_cols, long seed){
+		Random random = new Random(seed);
+		int[] row_ptr = new int[n_rows + 1];
+		int[] col_idx = new int[n_rows * 8];
+		float[] weights = new float[n_rows * 8];
+		for (int i = 0; i < n_rows; i++){
+			int n = random.nextInt(9);
+			int start = row_ptr[i];
+			for (int k = 0; k < n; k++){
+				col_idx[start + k] = random.nextInt(n_cols);
+				weights[start + k] = random.nextFloat();
+				}
+			Arrays.sort(col_idx, start, start + n);
+			row_ptr[i + 1] = start + n;
+			}
+		return new SurfaceVolumeTransferOperator(SurfaceVolumeTransferOperator.Type.VolumeToCortex, n_cols, 
+												 row_ptr, Arrays.copyOf(col_idx, row_ptr[n_rows]), 
+												 Arrays.copyOf(weights, row_ptr[n_rows]));
+	}
+	
+	/*********************************
+	 * A time series of computed values, which fails when time point <code>fail_at</code> is read.
+	 * 
+	 */
+	static class TestTimeSeries implements VolumeTimeSeries {
+		
+		final Grid3D grid;
+		final int n_times, fail_at;
+		
+		TestTimeSeries(Grid3D grid, int n_times, int fail_at){
+			this.grid = grid;
+			this.n_times = n_times;
+			this.fail_at = fail_at;
+		}
+		
+		public Grid3D getGrid(){
+			return grid;
+		}
+		
+		public int getTimePointCount(){
+			return n_times;
+		}
+		
+		public void read(int t, double[] data) throws IOException{
+			if (t == fail_at) throw new IOException("Test failure at time point " + t + ".");
+			fill(t, data);
+		}
+		
+		void fill(int t, double[] data){
+			for (int i = 0; i < data.length; i++)
+				data[i] = Math.sin(0.1 * i + t);
+		}
+		
+	}
+	
+	static class CollectingSink implements VertexTimeSeriesSink {
+		
+		float[][] values;
+		int written;
+		boolean closed;
+		
+		public void open(int n_vertices, int n_times){
+			values = new float[n_times][n_vertices];
+		}
+		
+		public void write(int t, float[] v){
+			assertEquals(written, t);
+			System.arraycopy(v, 0, values[t], 0, v.length);
+			written++;
+		}
+		
+		public void close(){
+			closed = true;
+		}
+		
+	}
+	
+	/*********************************
+	 * The serial volume-to-cortex mapping as originally written, with the projection of 
+	 * {@link GeometryFunctions#getProjectedVector}, for comparison with the parallel workers.
+	 * 
+	 */
+	static double[] mapVolumeToCortexOriginal(Mesh3D mesh, Volume3DInt volume, String channel, 
+											  double sigma_normal, double sigma_tangent, 
+											  double sigma_max_normal, double sigma_max_tangent, 
+											  double thickness){
+		Grid3D grid = volume.getGrid();
+		ArrayList<Vector3f> normals = mesh.getNormals();
+		double[] values = new double[mesh.n];
+		
+		for (int m = 0; m < mesh.n; m++){
+			Point3f node = mesh.getVertex(m);
+			Vector3f normal = new Vector3f(normals.get(m));
+			normal.normalize();
+			normal.scale((float)(thickness + (sigma_normal * sigma_max_normal)));
+			Point3f p1 = new Point3f(), p2 = new Point3f();
+			p1.add(node, normal);
+			p2.sub(node, normal);
+			float max_t = (float)(sigma_tangent * sigma_max_tangent);
+			int[] sub_vol = grid.getSubGrid(new Point3f(Math.min(p1.x, p2.x) - max_t, 
+														Math.min(p1.y, p2.y) - max_t, 
+														Math.min(p1.z, p2.z) - max_t), 
+											new Point3f(Math.max(p1.x, p2.x) + max_t, 
+														Math.max(p1.y, p2.y) + max_t, 
+														Math.max(p1.z, p2.z) + max_t));
+			if (sub_vol == null) continue;
+			
+			double value = 0, denom = 0;
+			Point3f mp = new Point3f();
+			Vector3f v_mp = new Vector3f();
+			Vector3f v_proj = new Vector3f();
+			Point3f ep = new Point3f();
+			for (int i = sub_vol[0]; i < sub_vol[3]; i++)
+				for (int j = sub_vol[1]; j < sub_vol[4]; j++)
+					for (int k = sub_vol[2]; k < sub_vol[5]; k++){
+						mp.set(grid.getVoxelMidPoint(i, j, k));
+						normal.normalize();
+						v_mp.set(mp);
+						v_mp.sub(node);
+						v_proj.set(GeometryFunctions.getProjectedVector(v_mp, normal));
+						if ((v_proj.length() - thickness / 2.0) / sigma_normal < sigma_max_normal){
+							double w_normal = 0;
+							if (v_proj.length() < (thickness / 2.0))
+								w_normal = 1.0;
+							else
+								w_normal = StatFunctions.getGaussian2((v_proj.length() - thickness / 2.0), 0, sigma_normal);
+							ep.set(node);
+							ep.add(v_proj);
+							v_mp.sub(mp, ep);
+							if (v_mp.length() / sigma_tangent < sigma_max_tangent){
+								double w_tangent = StatFunctions.getGaussian2(v_mp.length(), 0, sigma_tangent);
+								value += volume.getDatumAtVoxel(channel, new int[]{i, j, k}).getValue() * w_normal * w_tangent;
+								denom += w_normal * w_tangent;
+								}
+							}
+						}
+			value /= denom;
+			if (Double.isNaN(value) || Double.isInfinite(value))
+				value = 0;
+			values[m] = value;
+			}
+		return values;
+	}
+	
+	static Volume3DInt mapCortexToVolume(Mesh3DInt mesh_int, Volume3DInt volume){
+		Volume3DInt mapped = NeuroMeshFunctions.mapCortexToVolumeGaussian(mesh_int, volume, "values", "mapped", 
+																		   1.0, 2.0, 3.0, 3.0, 
+																		   new Double(1.0), false, null);
+		assertNotNull(mapped);
+		return mapped;
+	}
+	
+	static double getValue(Volume3DInt volume, String channel, int i){
+		return volume.getDatumAtVertex(channel, i).getValue();
+	}
+	
+	/*********************************
+	 * Returns an <code>n x n</code> triangulated sheet in the plane z = 0, with unit vertex spacing 
+	 * and a smooth, positive vertex column "values".
+	 * 
+	 */
+	static Mesh3DInt createSheet(int n){
+		Mesh3D mesh = new Mesh3D();
+		ArrayList<MguiNumber> values = new ArrayList<MguiNumber>(n * n);
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++){
+				mesh.addVertex(new Point3f(i, j, 0));
+				values.add(new MguiDouble(2 + Math.sin(0.3 * i) * Math.cos(0.2 * j)));
+				}
+		for (int i = 0; i < n - 1; i++)
+			for (int j = 0; j < n - 1; j++){
+				int a = i * n + j;
+				mesh.addFace(a, a + n, a + 1);
+				mesh.addFace(a + 1, a + n, a + n + 1);
+				}
+		Mesh3DInt mesh_int = new Mesh3DInt(mesh, "sheet");
+		mesh_int.addVertexData("values", values);
+		return mesh_int;
+	}
+	
+	/*********************************
+	 * Returns a volume with 1 mm voxels, enclosing the sheet of {@link #createSheet(int)}.
+	 * 
+	 */
+	static Volume3DInt createVolume(int n){
+		Box3D box = new Box3D(new Point3f(-4, -4, -6), 
+							  new Vector3f(n + 8, 0, 0), 
+							  new Vector3f(0, n + 8, 0), 
+							  new Vector3f(0, 0, 12));
+		return new Volume3DInt(new Grid3D(n + 8, n + 8, 12, box));
+	}
+	
+}
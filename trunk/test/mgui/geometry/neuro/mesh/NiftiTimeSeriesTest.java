@@ -0,0 +1,176 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPOutputStream;
+
+import mgui.geometry.Box3D;
+import mgui.geometry.Grid3D;
+
+import org.jogamp.vecmath.Point3f;
+import org.jogamp.vecmath.Vector3f;
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that {@link NiftiTimeSeries} reads each time point of small 4D NIfTI-1 images, for several 
+ * data types, byte orders and compression.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class NiftiTimeSeriesTest {
+
+	static final int NX = 5, NY = 4, NZ = 3, NT = 6;
+	
+	@Test
+	public void readsInt16LittleEndian() throws IOException{
+		testRoundTrip(4, ByteOrder.LITTLE_ENDIAN, 0.5f, 1, false);
+	}
+	
+	@Test
+	public void readsFloat32BigEndian() throws IOException{
+		testRoundTrip(16, ByteOrder.BIG_ENDIAN, 0, 0, false);
+	}
+	
+	@Test
+	public void readsCompressedFloat64() throws IOException{
+		testRoundTrip(64, ByteOrder.LITTLE_ENDIAN, 0, 0, true);
+	}
+	
+	@Test
+	public void rejectsMismatchedGrid() throws IOException{
+		File file = File.createTempFile("series", ".nii");
+		try{
+			writeNifti(file, 16, ByteOrder.LITTLE_ENDIAN, 0, 0, false);
+			try{
+				new NiftiTimeSeries(file, createGrid(NX + 1, NY, NZ));
+				fail("Expected an IOException.");
+			}catch (IOException ex){
+				//expected
+				}
+		}finally{
+			file.delete();
+			}
+	}
+	
+	static void testRoundTrip(int datatype, ByteOrder order, float slope, float intercept, 
+							  boolean compressed) throws IOException{
+		File file = File.createTempFile("series", compressed ? ".nii.gz" : ".nii");
+		NiftiTimeSeries series = null;
+		try{
+			writeNifti(file, datatype, order, slope, intercept, compressed);
+			Grid3D grid = createGrid(NX, NY, NZ);
+			series = new NiftiTimeSeries(file, grid);
+			assertEquals(NT, series.getTimePointCount());
+			
+			double[] data = new double[grid.getSize()];
+			// Out of order, so that compressed files are reopened
+			for (int t : new int[]{0, 1, 4, 2, 5, 3}){
+				series.read(t, data);
+				for (int k = 0; k < NZ; k++)
+					for (int j = 0; j < NY; j++)
+						for (int i = 0; i < NX; i++){
+							double expected = getStoredValue(i, j, k, t);
+							if (slope != 0) expected = slope * expected + intercept;
+							assertEquals(expected, data[grid.getAbsoluteIndex(i, j, k)], 0);
+							}
+				}
+		}finally{
+			if (series != null) series.close();
+			file.delete();
+			}
+	}
+	
+	static double getStoredValue(int i, int j, int k, int t){
+		return i + 10 * j + 100 * k - 50 * t;
+	}
+	
+	static Grid3D createGrid(int nx, int ny, int nz){
+		Box3D box = new Box3D(new Point3f(0, 0, 0), 
+							  new Vector3f(nx, 0, 0), 
+							  new Vector3f(0, ny, 0), 
+							  new Vector3f(0, 0, nz));
+		return new Grid3D(nx, ny, nz, box);
+	}
+	
+	/*********************************
+	 * Writes a single-file NIfTI-1 image of {@link #getStoredValue}, with the minimal header fields
+	 * read by {@link NiftiTimeSeries}.
+	 * 
+	 */
+	static void writeNifti(File file, int datatype, ByteOrder order, float slope, float intercept, 
+						   boolean compressed) throws IOException{
+		int bytes = datatype == 4 ? 2 : datatype == 16 ? 4 : 8;
+		int vox_offset = 352;
+		ByteBuffer buffer = ByteBuffer.allocate(vox_offset + NX * NY * NZ * NT * bytes).order(order);
+		buffer.putInt(0, 348);
+		short[] dims = {4, NX, NY, NZ, NT, 1, 1, 1};
+		for (int d = 0; d < dims.length; d++)
+			buffer.putShort(40 + 2 * d, dims[d]);
+		buffer.putShort(70, (short)datatype);
+		buffer.putShort(72, (short)(bytes * 8));
+		buffer.putFloat(108, vox_offset);
+		buffer.putFloat(112, slope);
+		buffer.putFloat(116, intercept);
+		buffer.put(344, (byte)'n').put(345, (byte)'+').put(346, (byte)'1');
+		
+		int position = vox_offset;
+		for (int t = 0; t < NT; t++)
+			for (int k = 0; k < NZ; k++)
+				for (int j = 0; j < NY; j++)
+					for (int i = 0; i < NX; i++){
+						double value = getStoredValue(i, j, k, t);
+						switch (datatype){
+							case 4:
+								buffer.putShort(position, (short)value);
+								break;
+							case 16:
+								buffer.putFloat(position, (float)value);
+								break;
+							default:
+								buffer.putDouble(position, value);
+							}
+						position += bytes;
+						}
+		
+		OutputStream out = new FileOutputStream(file);
+		if (compressed) out = new GZIPOutputStream(out);
+		try{
+			out.write(buffer.array());
+		}finally{
+			out.close();
+			}
+	}
+	
+}
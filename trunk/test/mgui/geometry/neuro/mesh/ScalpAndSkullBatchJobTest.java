@@ -0,0 +1,76 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests the input handling of {@link ScalpAndSkullBatchJob}.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class ScalpAndSkullBatchJobTest {
+
+	@Test
+	public void runWithoutLoadersFails() throws IOException{
+		File output_dir = new File(System.getProperty("java.io.tmpdir"), "batch_job_test_" + System.nanoTime());
+		ScalpAndSkullBatchJob job = new ScalpAndSkullBatchJob("{subject}_t1.nii", "{subject}_hull.tri", output_dir);
+		job.addSubject("s01");
+		try{
+			job.run(null);
+			fail("Expected an IllegalStateException.");
+		}catch (IllegalStateException ex){
+			// Nothing is created before the failure
+			assertFalse(output_dir.exists());
+			}
+	}
+	
+	@Test
+	public void readsControlPoints() throws IOException{
+		File file = File.createTempFile("control_points", ".txt");
+		try{
+			FileWriter writer = new FileWriter(file);
+			writer.write("1 2 3 4\n\n5 6 7 8 9\n10 11\n");
+			writer.close();
+			int[][] points = ScalpAndSkullBatchJob.readControlPoints(file);
+			assertEquals(2, points.length);
+			assertArrayEquals(new int[]{1, 2, 3, 4}, points[0]);
+			assertArrayEquals(new int[]{5, 6, 7, 8}, points[1]);
+		}finally{
+			file.delete();
+			}
+	}
+	
+}
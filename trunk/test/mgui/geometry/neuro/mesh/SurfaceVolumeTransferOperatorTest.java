@@ -0,0 +1,197 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.geometry.neuro.mesh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that {@link SurfaceVolumeTransferOperator}s are unchanged by writing and mapping 
+ * <code>MGXFER01</code> files, and that their products, and the operators assembled from blocks of 
+ * rows, match dense computations.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SurfaceVolumeTransferOperatorTest {
+
+	@Test
+	public void fileRoundTrip() throws IOException{
+		// Sizes which fill the write buffer several times, and odd counts which need padding
+		int[][] sizes = {{4999, 3001}, {1, 7}, {6, 5}};
+		for (int s = 0; s < sizes.length; s++){
+			SurfaceVolumeTransferOperator operator = 
+					NeuroMeshFunctionsTest.createRandomOperator(sizes[s][0], sizes[s][1], 13 + s);
+			File file = File.createTempFile("operator", ".xfer");
+			try{
+				operator.writeToFile(file);
+				SurfaceVolumeTransferOperator mapped = SurfaceVolumeTransferOperator.map(file);
+				assertEquals(operator.getType(), mapped.getType());
+				assertEquals(operator.getRowCount(), mapped.getRowCount());
+				assertEquals(operator.getColumnCount(), mapped.getColumnCount());
+				assertEquals(operator.getEntryCount(), mapped.getEntryCount());
+				for (int i = 0; i <= operator.getRowCount(); i++)
+					assertEquals(operator.row_ptr.get(i), mapped.row_ptr.get(i));
+				for (int e = 0; e < operator.getEntryCount(); e++){
+					assertEquals(operator.col_idx.get(e), mapped.col_idx.get(e));
+					assertEquals(operator.weights.get(e), mapped.weights.get(e), 0);
+					}
+			}finally{
+				file.delete();
+				}
+			}
+	}
+	
+	@Test
+	public void mapRejectsOtherFiles() throws IOException{
+		File file = File.createTempFile("operator", ".xfer");
+		try{
+			byte[][] contents = {new byte[8], new byte[64]};
+			for (byte[] content : contents){
+				FileOutputStream out = new FileOutputStream(file);
+				out.write(content);
+				out.close();
+				try{
+					SurfaceVolumeTransferOperator.map(file);
+					fail("Expected an IOException.");
+				}catch (IOException ex){
+					//expected
+					}
+				}
+		}finally{
+			file.delete();
+			}
+	}
+	
+	@Test
+	public void applyMatchesDense(){
+		int n_rows = 4 * NeuroMeshFunctions.MAPPING_BLOCK + 3, n_cols = 500;
+		SurfaceVolumeTransferOperator operator = NeuroMeshFunctionsTest.createRandomOperator(n_rows, n_cols, 29);
+		double[][] dense = toDense(operator);
+		
+		Random random = new Random(31);
+		double[][] x = new double[2][n_cols];
+		for (int t = 0; t < x.length; t++)
+			for (int j = 0; j < n_cols; j++)
+				x[t][j] = random.nextGaussian();
+		
+		int threads = NeuroMeshFunctions.mapping_threads;
+		try{
+			for (int n_threads : new int[]{1, 4}){
+				NeuroMeshFunctions.mapping_threads = n_threads;
+				double[][] y = new double[2][n_rows];
+				assertEquals(true, operator.apply(x, y));
+				for (int t = 0; t < x.length; t++)
+					for (int i = 0; i < n_rows; i++){
+						double expected = 0;
+						for (int j = 0; j < n_cols; j++)
+							expected += dense[i][j] * x[t][j];
+						assertEquals(expected, y[t][i], 1e-12);
+						}
+				}
+		}finally{
+			NeuroMeshFunctions.mapping_threads = threads;
+			}
+	}
+	
+	@Test
+	public void blocksConcatenateAndTranspose(){
+		int n_cols = 40;
+		Random random = new Random(37);
+		SurfaceVolumeTransferOperator.Rows[] blocks = createBlocks(random, n_cols, true);
+		double[][] weights = new double[blocks[0].ends.length + blocks[1].ends.length][n_cols];
+		double[] denoms = new double[n_cols];
+		for (SurfaceVolumeTransferOperator.Rows rows : blocks){
+			int start = 0;
+			for (int r = 0; r < rows.n_rows; r++){
+				for (int e = start; e < rows.ends[r]; e++){
+					weights[rows.first + r][rows.cols[e]] += rows.weights[e];
+					denoms[rows.cols[e]] += rows.denoms[e];
+					}
+				start = rows.ends[r];
+				}
+			}
+		
+		SurfaceVolumeTransferOperator transposed = 
+				SurfaceVolumeTransferOperator.transpose(SurfaceVolumeTransferOperator.Type.CortexToVolume, 
+														n_cols, blocks);
+		assertEquals(n_cols, transposed.getRowCount());
+		assertEquals(weights.length, transposed.getColumnCount());
+		double[][] dense = toDense(transposed);
+		for (int j = 0; j < n_cols; j++)
+			for (int i = 0; i < weights.length; i++){
+				double expected = denoms[j] > 0 ? weights[i][j] / denoms[j] : weights[i][j];
+				assertEquals(expected, dense[j][i], 1e-6);
+				}
+		
+		random = new Random(37);
+		blocks = createBlocks(random, n_cols, false);
+		SurfaceVolumeTransferOperator concatenated = 
+				SurfaceVolumeTransferOperator.concatenate(SurfaceVolumeTransferOperator.Type.VolumeToCortex, 
+														  n_cols, blocks);
+		assertEquals(weights.length, concatenated.getRowCount());
+		dense = toDense(concatenated);
+		for (int i = 0; i < weights.length; i++)
+			for (int j = 0; j < n_cols; j++)
+				assertEquals(weights[i][j], dense[i][j], 1e-6);
+	}
+	
+	/*********************************
+	 * Returns two blocks of 7 and 5 rows, of random entries in distinct columns.
+	 * 
+	 */
+	static SurfaceVolumeTransferOperator.Rows[] createBlocks(Random random, int n_cols, boolean with_denoms){
+		SurfaceVolumeTransferOperator.Rows[] blocks = {new SurfaceVolumeTransferOperator.Rows(0, 7, with_denoms),
+													   new SurfaceVolumeTransferOperator.Rows(7, 5, with_denoms)};
+		for (SurfaceVolumeTransferOperator.Rows rows : blocks){
+			for (int r = 0; r < rows.ends.length; r++){
+				int n = random.nextInt(6);
+				int col = random.nextInt(n_cols / 8);
+				for (int k = 0; k < n; k++){
+					col += 1 + random.nextInt(6);
+					rows.add(col, random.nextDouble(), 0.5 + random.nextDouble());
+					}
+				rows.endRow();
+				}
+			}
+		return blocks;
+	}
+	
+	static double[][] toDense(SurfaceVolumeTransferOperator operator){
+		double[][] dense = new double[operator.getRowCount()][operator.getColumnCount()];
+		for (int i = 0; i < operator.getRowCount(); i++)
+			for (int e = operator.row_ptr.get(i); e < operator.row_ptr.get(i + 1); e++)
+				dense[i][operator.col_idx.get(e)] += operator.weights.get(e);
+		return dense;
+	}
+	
+}
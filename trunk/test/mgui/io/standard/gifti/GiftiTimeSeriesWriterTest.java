@@ -0,0 +1,129 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.io.standard.gifti;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import mgui.io.standard.gifti.GiftiOutputOptions.ByteOrder;
+import mgui.io.standard.gifti.GiftiOutputOptions.GiftiEncoding;
+import mgui.io.standard.gifti.xml.GiftiXMLHandler;
+
+import org.junit.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/*****************************************************
+ * Tests that time series written by {@link GiftiTimeSeriesWriter} are read back unchanged by 
+ * {@link GiftiXMLHandler}, for each supported encoding and byte order.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class GiftiTimeSeriesWriterTest {
+
+	static final int N_VERTICES = 30;
+	static final int N_TIMES = 4;
+	
+	@Test
+	public void roundTrip() throws Exception{
+		float[][] values = new float[N_TIMES][N_VERTICES];
+		for (int t = 0; t < N_TIMES; t++)
+			for (int i = 0; i < N_VERTICES; i++)
+				values[t][i] = (float)(Math.sin(0.37 * i + t) * Math.pow(10, t - 2));
+		
+		for (GiftiEncoding encoding : new GiftiEncoding[]{GiftiEncoding.Ascii, GiftiEncoding.Base64Binary, 
+														  GiftiEncoding.GZipBase64Binary}){
+			for (ByteOrder order : ByteOrder.values()){
+				File file = File.createTempFile("series", ".func.gii");
+				try{
+					GiftiTimeSeriesWriter writer = new GiftiTimeSeriesWriter(file, encoding, order);
+					writer.open(N_VERTICES, N_TIMES);
+					for (int t = 0; t < N_TIMES; t++)
+						writer.write(t, values[t]);
+					writer.close();
+					
+					ArrayList<float[]> series = read(file);
+					assertEquals(N_TIMES, series.size());
+					for (int t = 0; t < N_TIMES; t++){
+						assertEquals(N_VERTICES, series.get(t).length);
+						for (int i = 0; i < N_VERTICES; i++)
+							assertEquals(encoding + ", " + order, values[t][i], series.get(t)[i], 0);
+						}
+				}finally{
+					file.delete();
+					}
+				}
+			}
+	}
+	
+	@Test
+	public void closeFailsWhenTimePointsAreMissing() throws IOException{
+		File file = File.createTempFile("series", ".func.gii");
+		try{
+			GiftiTimeSeriesWriter writer = new GiftiTimeSeriesWriter(file);
+			writer.open(N_VERTICES, N_TIMES);
+			writer.write(0, new float[N_VERTICES]);
+			try{
+				writer.close();
+				fail("Expected an IOException.");
+			}catch (IOException ex){
+				//expected
+				}
+		}finally{
+			file.delete();
+			}
+	}
+	
+	static ArrayList<float[]> read(File file) throws Exception{
+		XMLReader reader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+		// Don't fetch the DTD
+		reader.setEntityResolver(new EntityResolver(){
+			public InputSource resolveEntity(String public_id, String system_id){
+				return new InputSource(new StringReader(""));
+			}
+		});
+		GiftiXMLHandler handler = new GiftiXMLHandler();
+		reader.setContentHandler(handler);
+		reader.setErrorHandler(handler);
+		FileReader in = new FileReader(file);
+		try{
+			reader.parse(new InputSource(in));
+		}finally{
+			in.close();
+			}
+		return handler.getTimeSeries();
+	}
+	
+}
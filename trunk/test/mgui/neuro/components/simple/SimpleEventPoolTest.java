@@ -0,0 +1,164 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+
+package mgui.neuro.components.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that {@link SimpleEventPool} reuses events and that recycled events are cleared, and compares
+ * the allocation of pooled events with that of new events.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class SimpleEventPoolTest {
+
+	static final int N_EVENTS = 1000000;
+	
+	static SimpleEventPool<SimpleAxonEvent> createPool(){
+		return new SimpleEventPool<SimpleAxonEvent>(){
+			protected SimpleAxonEvent create(){
+				return new SimpleAxonEvent();
+			}
+		};
+	}
+	
+	@Test
+	public void recycledEventsAreReusedAndCleared(){
+		SimpleEventPool<SimpleAxonEvent> pool = createPool();
+		SimpleAxonEvent event = pool.acquire();
+		event.output = 2.5;
+		event.delay = 3;
+		event.recycle();
+		assertEquals(1, pool.getSize());
+		
+		// Recycling twice must not add the event twice
+		event.recycle();
+		assertEquals(1, pool.getSize());
+		
+		SimpleAxonEvent reused = pool.acquire();
+		assertSame(event, reused);
+		assertEquals(0, pool.getSize());
+		assertEquals(0, reused.output, 0);
+		assertEquals(0, reused.getDelay(), 0);
+	}
+	
+	@Test
+	public void clearResetsEventFields(){
+		SimpleSynapseEvent synapse = new SimpleSynapseEvent();
+		synapse.potential = 1;
+		synapse.delay = 1;
+		synapse.clear();
+		assertEquals(0, synapse.potential, 0);
+		assertEquals(0, synapse.getDelay(), 0);
+		
+		SimpleSomaEvent soma = new SimpleSomaEvent(1, 1);
+		soma.clear();
+		assertEquals(0, soma.output, 0);
+		assertEquals(0, soma.getDelay(), 0);
+		
+		SimpleDendriteEvent dendrite = new SimpleDendriteEvent(1, 1);
+		dendrite.clear();
+		assertEquals(0, dendrite.potential, 0);
+		assertEquals(0, dendrite.getDelay(), 0);
+		
+		SimpleAxonEvent axon = new SimpleAxonEvent();
+		axon.output = 1;
+		axon.clear();
+		assertEquals(0, axon.output, 0);
+		
+		SimpleMotorNeuronEvent motor = new SimpleMotorNeuronEvent(3, 1);
+		motor.clear();
+		assertEquals(0, motor.getOutput(), 0);
+		assertEquals(0, motor.getIndex());
+	}
+	
+	@Test
+	public void allocationBenchmark(){
+		SimpleEventPool<SimpleAxonEvent> pool = createPool();
+		// Events escape into a ring of pending events, as they would into a target's event queue
+		SimpleAxonEvent[] pending = new SimpleAxonEvent[64];
+		
+		long pooled_bytes = Long.MAX_VALUE, new_bytes = Long.MAX_VALUE;
+		long pooled_time = Long.MAX_VALUE, new_time = Long.MAX_VALUE;
+		double sum = 0;
+		for (int r = 0; r < 3; r++){
+			long bytes = getAllocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < N_EVENTS; i++){
+				int k = i & 63;
+				if (pending[k] != null) pending[k].recycle();
+				SimpleAxonEvent event = pool.acquire();
+				event.output = i;
+				pending[k] = event;
+				sum += event.output;
+				}
+			pooled_time = Math.min(pooled_time, System.nanoTime() - start);
+			pooled_bytes = Math.min(pooled_bytes, getAllocatedBytes() - bytes);
+			
+			bytes = getAllocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < N_EVENTS; i++){
+				SimpleAxonEvent event = new SimpleAxonEvent();
+				event.output = i;
+				pending[i & 63] = event;
+				sum += event.output;
+				}
+			new_time = Math.min(new_time, System.nanoTime() - start);
+			new_bytes = Math.min(new_bytes, getAllocatedBytes() - bytes);
+			Arrays.fill(pending, null);
+			}
+		
+		System.out.println("SimpleEventPool: " + N_EVENTS + " events; pooled " + (pooled_time / 1000000.0) + 
+						   " ms, " + pooled_bytes + " bytes; new " + (new_time / 1000000.0) + " ms, " + 
+						   new_bytes + " bytes.");
+		assertTrue(sum > 0);
+		if (pooled_bytes >= 0 && new_bytes > 0)
+			assertTrue(pooled_bytes < new_bytes / 10);
+	}
+	
+	/*********************************
+	 * Returns the number of bytes allocated by the current thread, or -1 if this is not supported by the 
+	 * virtual machine.
+	 * 
+	 */
+	static long getAllocatedBytes(){
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		com.sun.management.ThreadMXBean sun_bean = (com.sun.management.ThreadMXBean)bean;
+		if (!sun_bean.isThreadAllocatedMemorySupported() || !sun_bean.isThreadAllocatedMemoryEnabled()) 
+			return -1;
+		return sun_bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.graphs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import mgui.neuro.components.cortical.simple.SimpleCorticalCoupling;
+import mgui.neuro.components.cortical.simple.SimpleCorticalRegion;
+import mgui.neuro.networks.CorticalNetwork;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Tests that {@link CorticalNetworkGraph} keeps its nodes and edges when its network is updated without
+ * structural changes.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CorticalNetworkGraphTest {
+
+	@Test
+	public void unchangedNetworkKeepsEdges(){
+		
+		CorticalNetwork network = new CorticalNetwork("test");
+		ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+		for (int i = 0; i < 4; i++)
+			regions.add(new SimpleCorticalRegion("region" + i));
+		network.addRegions(regions, false);
+		network.connect(0, 1, 0.5);
+		
+		SimpleCorticalCoupling coupling = new SimpleCorticalCoupling(regions);
+		coupling.add(1, 2, 0.25, 10);
+		coupling.add(2, 3, 0.25, 10);
+		coupling.add(3, 0, 0.25, 20);
+		network.setCoupling(coupling);
+		
+		CorticalNetworkGraph graph = new CorticalNetworkGraph(network);
+		assertEquals(4, graph.getVertexCount());
+		assertEquals(4, graph.getEdgeCount());
+		Set<Object> nodes = identitySet(graph.getVertices());
+		Set<Object> edges = identitySet(graph.getEdges());
+		
+		//no changes; no edges should be added or removed
+		graph.updateFromNetwork();
+		assertEquals(nodes, identitySet(graph.getVertices()));
+		assertEquals(edges, identitySet(graph.getEdges()));
+		
+		//a new coupling entry, which precedes others in CSR order; all existing edges are kept
+		coupling.add(0, 2, 0.25, 10);
+		graph.updateFromNetwork();
+		assertEquals(5, graph.getEdgeCount());
+		assertEquals(nodes, identitySet(graph.getVertices()));
+		Set<Object> after = identitySet(graph.getEdges());
+		assertTrue(after.containsAll(edges));
+		
+		edges = after;
+		graph.updateFromNetwork();
+		assertEquals(edges, identitySet(graph.getEdges()));
+	}
+	
+	protected static Set<Object> identitySet(Iterable<?> objects){
+		Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (Object object : objects)
+			set.add(object);
+		return set;
+	}
+	
+}
@@ -0,0 +1,264 @@
+/*
+* Copyright (C) 2020 Andrew Reid and the ModelGUI Project <http://www.modelgui.org>
+* 
+* This file is part of ModelGUI[neuro] (mgui-neuro).
+* 
+* ModelGUI[neuro] is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+* 
+* ModelGUI[neuro] is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+* 
+* You should have received a copy of the GNU General Public License
+* along with ModelGUI[neuro]. If not, see <http://www.gnu.org/licenses/>.
+*/
+
+
+
+package mgui.neuro.networks.compiled;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import mgui.models.dynamic.DynamicModelComponent;
+import mgui.neuro.components.AbstractNeuroComponent;
+import mgui.neuro.components.EventScheduler;
+import mgui.neuro.components.cortical.AbstractCorticalRegion;
+import mgui.neuro.components.cortical.functions.BatchIntegrator;
+import mgui.neuro.components.cortical.functions.BiexponentialFunction;
+import mgui.neuro.components.cortical.simple.SimpleCorticalCoupling;
+import mgui.neuro.components.cortical.simple.SimpleCorticalRegion;
+import mgui.neuro.exceptions.NeuroException;
+import mgui.neuro.networks.CorticalNetwork;
+
+import org.junit.Test;
+
+/*****************************************************
+ * Regression tests comparing the traces of small networks run through the event path of 
+ * {@link CorticalNetwork}, with and without a shared {@link EventScheduler}, with those of 
+ * {@link CompiledCorticalNetwork}, with and without batched integration, and serially and in 
+ * parallel.
+ * 
+ * @author Andrew Reid
+ * @version 1.0
+ * @since 1.0
+ *
+ */
+public class CompiledCorticalNetworkTest {
+
+	static final double STEP = 0.5;
+	static final int N_STEPS = 400;
+	
+	/*********************************
+	 * Returns a network of four biexponential regions with recurrent connections of differing delays.
+	 * Regions have non-zero baseline activity, so the network is driven without an environment.
+	 * 
+	 * @return
+	 */
+	static CorticalNetwork createNetwork(){
+		CorticalNetwork network = new CorticalNetwork("test");
+		ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+		for (int i = 0; i < 4; i++)
+			regions.add(new SimpleCorticalRegion("region" + i, 
+												 new BiexponentialFunction(0.2 + 0.1 * i, 1, 5 + i, 2)));
+		network.addRegions(regions, false);
+		
+		connect(network, 0, 1, 0.4, 1.0);
+		connect(network, 1, 2, 0.3, 2.5);
+		connect(network, 2, 3, -0.2, 0);
+		connect(network, 3, 0, 0.25, 4.0);
+		connect(network, 2, 0, 0.1, 1.5);
+		return network;
+	}
+	
+	static void connect(CorticalNetwork network, int source, int target, double weight, double delay){
+		network.connect(source, target, weight);
+		ArrayList<DynamicModelComponent> connections = network.regions.get(source).getConnections();
+		((AbstractNeuroComponent)connections.get(connections.size() - 1)).setDelay(delay);
+	}
+	
+	/*********************************
+	 * Runs <code>network</code> through its event path, as the model engine does: executes the events
+	 * of all components, then advances each component's clock. Returns the firing rates of each step.
+	 * 
+	 * @param network
+	 * @param n_steps
+	 * @return
+	 */
+	static double[][] runEventPath(CorticalNetwork network, int n_steps){
+		ArrayList<DynamicModelComponent> components = network.getComponents();
+		ArrayList<AbstractCorticalRegion> regions = network.regions;
+		double[][] trace = new double[n_steps][regions.size()];
+		for (int t = 0; t < n_steps; t++){
+			for (int i = 0; i < components.size(); i++)
+				((AbstractNeuroComponent)components.get(i)).executeEvents(STEP);
+			for (int i = 0; i < components.size(); i++)
+				((AbstractNeuroComponent)components.get(i)).timeElapsed(STEP);
+			for (int i = 0; i < regions.size(); i++)
+				trace[t][i] = ((SimpleCorticalRegion)regions.get(i)).getFiringRate();
+			}
+		return trace;
+	}
+	
+	/*********************************
+	 * Runs <code>compiled</code> for <code>n_steps</code> steps, returning the firing rates of each step.
+	 * 
+	 * @param compiled
+	 * @param n_steps
+	 * @return
+	 */
+	static double[][] runCompiled(CompiledCorticalNetwork compiled, int n_steps){
+		double[][] trace = new double[n_steps][];
+		for (int t = 0; t < n_steps; t++){
+			compiled.step();
+			trace[t] = compiled.getFiringRates().clone();
+			}
+		return trace;
+	}
+	
+	static void assertTracesEqual(double[][] expected, double[][] actual, double delta){
+		for (int t = 0; t < expected.length; t++)
+			assertArrayEquals("step " + t, expected[t], actual[t], delta);
+	}
+	
+	@Test
+	public void compiledMatchesEventPath() throws NeuroException{
+		double[][] expected = runEventPath(createNetwork(), N_STEPS);
+		
+		CompiledCorticalNetwork compiled = createNetwork().compile(STEP);
+		assertTracesEqual(expected, runCompiled(compiled, N_STEPS), 0);
+		
+		//again after a reset, and in parallel
+		compiled.reset();
+		compiled.setParallelism(2);
+		try{
+			assertTracesEqual(expected, runCompiled(compiled, N_STEPS), 0);
+		}finally{
+			compiled.shutdown();
+			}
+	}
+	
+	@Test
+	public void batchedRK4MatchesSolvers() throws NeuroException{
+		double[][] expected = runCompiled(createNetwork().compile(STEP), N_STEPS);
+		
+		CompiledCorticalNetwork compiled = createNetwork().compile(STEP);
+		compiled.setBatchIntegration(BatchIntegrator.Method.RK4);
+		assertTracesEqual(expected, runCompiled(compiled, N_STEPS), 0);
+	}
+	
+	@Test
+	public void batchedRK45MatchesRelaxation() throws NeuroException{
+		//unconnected regions relax to their baseline as a_base * (1 - exp(-t / tau))
+		CorticalNetwork network = new CorticalNetwork("test");
+		ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+		for (int i = 0; i < 4; i++)
+			regions.add(new SimpleCorticalRegion("region" + i, 
+												 new BiexponentialFunction(0.2 + 0.1 * i, 1, 5 + i, 2)));
+		network.addRegions(regions, false);
+		
+		CompiledCorticalNetwork compiled = network.compile(STEP);
+		compiled.setBatchIntegration(BatchIntegrator.Method.RK45);
+		double[][] trace = runCompiled(compiled, N_STEPS);
+		
+		double[][] expected = new double[N_STEPS][4];
+		for (int t = 0; t < N_STEPS; t++)
+			for (int i = 0; i < 4; i++)
+				expected[t][i] = (0.2 + 0.1 * i) * (1 - Math.exp(-(t + 1) * STEP / (5 + i)));
+		assertTracesEqual(expected, trace, 1e-4);
+	}
+	
+	/*********************************
+	 * Returns the network of {@link #createNetwork()}, with a sparse coupling matrix in addition to its
+	 * connections.
+	 * 
+	 * @return
+	 */
+	static CorticalNetwork createCoupledNetwork(){
+		CorticalNetwork network = createNetwork();
+		ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+		for (int i = 0; i < network.regions.size(); i++)
+			regions.add((SimpleCorticalRegion)network.regions.get(i));
+		SimpleCorticalCoupling coupling = new SimpleCorticalCoupling(regions);
+		coupling.add(0, 2, 0.15, 3.0);
+		coupling.add(1, 3, 0.2, 0.5);
+		coupling.add(3, 1, -0.1, 2.0);
+		network.setCoupling(coupling);
+		return network;
+	}
+	
+	@Test
+	public void schedulerMatchesComponentEvents() throws NeuroException{
+		double[][] expected = runEventPath(createCoupledNetwork(), N_STEPS);
+		
+		CorticalNetwork network = createCoupledNetwork();
+		network.setEventScheduler(new EventScheduler(STEP));
+		assertTracesEqual(expected, runEventPath(network, N_STEPS), 0);
+		
+		//coupled inputs are summed in a different order when compiled
+		assertTracesEqual(expected, runCompiled(createCoupledNetwork().compile(STEP), N_STEPS), 1e-12);
+	}
+	
+	/*********************************
+	 * Returns a network of <code>n</code> biexponential regions, each with three random outgoing 
+	 * connections and one random coupling entry, of random weights and delays.
+	 * 
+	 * @param n
+	 * @param seed
+	 * @return
+	 */
+	static CorticalNetwork createRandomNetwork(int n, long seed){
+		Random random = new Random(seed);
+		CorticalNetwork network = new CorticalNetwork("random");
+		ArrayList<SimpleCorticalRegion> regions = new ArrayList<SimpleCorticalRegion>();
+		for (int i = 0; i < n; i++)
+			regions.add(new SimpleCorticalRegion("region" + i, 
+												 new BiexponentialFunction(0.1 + 0.4 * random.nextDouble(), 1, 
+														 				   3 + 5 * random.nextDouble(), 2)));
+		network.addRegions(regions, false);
+		
+		for (int i = 0; i < n; i++)
+			for (int c = 0; c < 3; c++)
+				connect(network, i, (i + 1 + random.nextInt(n - 1)) % n, 0.5 * random.nextDouble() - 0.2, 
+						STEP * random.nextInt(8));
+		
+		SimpleCorticalCoupling coupling = new SimpleCorticalCoupling(regions);
+		for (int i = 0; i < n; i++)
+			coupling.add(i, (i + 1 + random.nextInt(n - 1)) % n, 0.3 * random.nextDouble() - 0.1, STEP * random.nextInt(8));
+		network.setCoupling(coupling);
+		return network;
+	}
+	
+	@Test
+	public void parallelMatchesSerial() throws NeuroException{
+		for (BatchIntegrator.Method method : new BatchIntegrator.Method[]{null, BatchIntegrator.Method.RK4, 
+																		 BatchIntegrator.Method.RK45}){
+			CompiledCorticalNetwork serial = createRandomNetwork(37, 1).compile(STEP);
+			if (method != null)
+				serial.setBatchIntegration(method);
+			double[][] expected = runCompiled(serial, N_STEPS);
+			
+			//37 regions, so partitions are of unequal size
+			for (int n_threads = 2; n_threads <= 8; n_threads *= 2){
+				CompiledCorticalNetwork compiled = createRandomNetwork(37, 1).compile(STEP);
+				if (method != null)
+					compiled.setBatchIntegration(method);
+				compiled.setParallelism(n_threads);
+				try{
+					assertEquals(n_threads, compiled.getPartitionCount());
+					assertTracesEqual(expected, runCompiled(compiled, N_STEPS), 0);
+				}finally{
+					compiled.shutdown();
+					}
+				}
+			}
+	}
+	
+}